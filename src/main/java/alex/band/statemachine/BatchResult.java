@@ -0,0 +1,138 @@
+package alex.band.statemachine;
+
+import java.util.Arrays;
+
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Результаты пакетной обработки сообщений {@link StateMachine#acceptAll(Iterable)}.
+ *
+ * <p>Для каждого сообщения пакета хранит само сообщение, результат обработки и управляющее состояние перед обработкой.
+ * Экземпляр конечного автомата повторно использует один буфер для всех пакетов, поэтому результаты действительны
+ * только до следующего вызова {@code acceptAll()}. Для долгого хранения следует использовать {@link #copy()}.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class BatchResult<S, E> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Object[] messages;
+	private Object[] previousStates;
+	private boolean[] accepted;
+	private int size;
+	private int acceptedCount;
+	private boolean inUse;
+
+	BatchResult(int capacity) {
+		messages = new Object[capacity];
+		previousStates = new Object[capacity];
+		accepted = new boolean[capacity];
+	}
+
+	BatchResult() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Количество обработанных сообщений пакета.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Количество сообщений пакета, которые были приняты конечным автоматом.
+	 */
+	public int getAcceptedCount() {
+		return acceptedCount;
+	}
+
+	/**
+	 * Результат обработки сообщения с заданным номером, аналогичный {@link StateMachine#accept(StateMachineMessage)}.
+	 */
+	public boolean isAccepted(int index) {
+		checkIndex(index);
+		return accepted[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public StateMachineMessage<E> getMessage(int index) {
+		checkIndex(index);
+		return (StateMachineMessage<E>) messages[index];
+	}
+
+	/**
+	 * Управляющее состояние конечного автомата перед обработкой сообщения с заданным номером.
+	 */
+	@SuppressWarnings("unchecked")
+	public State<S, E> getPreviousState(int index) {
+		checkIndex(index);
+		return (State<S, E>) previousStates[index];
+	}
+
+	/**
+	 * Возвращает независимую копию результатов, не затрагиваемую последующими вызовами {@code acceptAll()}.
+	 */
+	public BatchResult<S, E> copy() {
+		BatchResult<S, E> copy = new BatchResult<>(Math.max(size, 1));
+		System.arraycopy(messages, 0, copy.messages, 0, size);
+		System.arraycopy(previousStates, 0, copy.previousStates, 0, size);
+		System.arraycopy(accepted, 0, copy.accepted, 0, size);
+		copy.size = size;
+		copy.acceptedCount = acceptedCount;
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResult [size=" + size + ", acceptedCount=" + acceptedCount + "]";
+	}
+
+	void add(StateMachineMessage<E> message, State<S, E> previousState, boolean messageAccepted) {
+		if (size == messages.length) {
+			int capacity = messages.length * 2;
+			messages = Arrays.copyOf(messages, capacity);
+			previousStates = Arrays.copyOf(previousStates, capacity);
+			accepted = Arrays.copyOf(accepted, capacity);
+		}
+
+		messages[size] = message;
+		previousStates[size] = previousState;
+		accepted[size] = messageAccepted;
+		size++;
+		if (messageAccepted) {
+			acceptedCount++;
+		}
+	}
+
+	/**
+	 * Очищает буфер перед обработкой нового пакета.
+	 */
+	void acquire() {
+		Arrays.fill(messages, 0, size, null);
+		Arrays.fill(previousStates, 0, size, null);
+		size = 0;
+		acceptedCount = 0;
+		inUse = true;
+	}
+
+	void release() {
+		inUse = false;
+	}
+
+	boolean isInUse() {
+		return inUse;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+}
@@ -1,8 +1,11 @@
 package alex.band.statemachine;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import alex.band.statemachine.listener.BatchStateMachineListener;
+import alex.band.statemachine.listener.ListenerFilter;
 import alex.band.statemachine.listener.StateMachineListener;
 import alex.band.statemachine.message.StateMachineMessage;
 import alex.band.statemachine.message.StateMachineMessageImpl;
@@ -11,18 +14,40 @@ import alex.band.statemachine.state.State;
 /**
  * Абстрактная реализация {@link StateMachine}, реализующая механизм регистрации/удаления/оповещения слушателей {@link StateMachineListener}.
  *
+ * <p>Слушатели хранятся в массиве, копируемом при изменении: регистрация безопасна из любого потока,
+ * а оповещение не требует синхронизации и не создает итераторов. Слушатели, зарегистрированные с фильтром {@link ListenerFilter},
+ * оповещаются через индекс {@link ListenerIndex} по паре (состояние, событие): незаинтересованные слушатели не перебираются.
+ *
+ * <p>При пакетной обработке {@link #acceptAll(Iterable)} слушатели {@link BatchStateMachineListener} исключаются из оповещения
+ * по каждому сообщению и получают один вызов на пакет, а результаты пакета накапливаются в повторно используемом буфере {@link BatchResult}.
+ *
+ * <p>Результат обработки сообщения передается слушателям и в пакет через {@link MessageResultHandler}. По умолчанию результат
+ * один на сообщение; автомат из нескольких частей переопределяет {@link #process(StateMachineMessage, MessageResultHandler)}
+ * и сообщает результат каждой части вместе с ее состоянием.
+ *
  * @author Aliaksandr Bandarchyk
  */
 public abstract class ListenableStateMachine<S, E> implements StateMachine<S, E> {
 
-	private Set<StateMachineListener<S, E>> listeners = new HashSet<>();
+	private static final StateMachineListener<?, ?>[] NO_LISTENERS = new StateMachineListener<?, ?>[0];
+	private static final ListenerFilter<?, ?>[] NO_FILTERS = new ListenerFilter<?, ?>[0];
+	private static final BatchStateMachineListener<?, ?>[] NO_BATCH_LISTENERS = new BatchStateMachineListener<?, ?>[0];
 
+	@SuppressWarnings("unchecked")
+	private volatile ListenerIndex<S, E> listeners = new ListenerIndex<>((StateMachineListener<S, E>[]) NO_LISTENERS, (ListenerFilter<S, E>[]) NO_FILTERS);
+	private volatile ListenerIndex<S, E> messageListeners = listeners;
+	@SuppressWarnings("unchecked")
+	private volatile BatchStateMachineListener<S, E>[] batchListeners = (BatchStateMachineListener<S, E>[]) NO_BATCH_LISTENERS;
+
+	private final MessageResultHandler<S, E> listenersNotifier = this::notifyListeners;
+
+	private BatchResult<S, E> batchResult;
 
 	@Override
 	public void start() {
 		doStart();
 
-		for (StateMachineListener<S, E> listener: listeners) {
+		for (StateMachineListener<S, E> listener: listeners.getListeners()) {
 			listener.onStart(this);
 		}
 	}
@@ -36,7 +61,7 @@ public abstract class ListenableStateMachine<S, E> implements StateMachine<S, E>
 	public void stop() {
 		doStop();
 
-		for (StateMachineListener<S, E> listener: listeners) {
+		for (StateMachineListener<S, E> listener: listeners.getListeners()) {
 			listener.onStop(this);
 		}
 	}
@@ -53,20 +78,65 @@ public abstract class ListenableStateMachine<S, E> implements StateMachine<S, E>
 
 	@Override
 	public boolean accept(StateMachineMessage<E> message) {
+		return process(message, listenersNotifier);
+	}
+
+	@Override
+	public BatchResult<S, E> acceptAll(Iterable<? extends StateMachineMessage<E>> messages) {
+		BatchResult<S, E> result = acquireBatchResult();
+		try {
+			ListenerIndex<S, E> currentMessageListeners = messageListeners;
+			MessageResultHandler<S, E> batchHandler = (message, previousState, messageAccepted, details) -> {
+				result.add(message, previousState, messageAccepted);
+				if (!currentMessageListeners.isEmpty()) {
+					currentMessageListeners.notifyListeners(message, previousState, messageAccepted, details);
+				}
+			};
+			for (StateMachineMessage<E> message: messages) {
+				process(message, batchHandler);
+			}
+			notifyBatchListeners(result);
+		} finally {
+			result.release();
+		}
+		return result;
+	}
+
+	/**
+	 * Обрабатывает сообщение и передает результат обработки {@code resultHandler}: состояние до обработки и сам автомат.
+	 */
+	protected boolean process(StateMachineMessage<E> message, MessageResultHandler<S, E> resultHandler) {
 		State<S, E> previousState = getCurrentState();
 		boolean messageAccepted = doAccept(message);
+		resultHandler.handle(message, previousState, messageAccepted, this);
+		return messageAccepted;
+	}
 
-		for (StateMachineListener<S, E> listener: listeners) {
-
-			if (messageAccepted) {
-				listener.onStateChanged(message, previousState, this);
+	private void notifyListeners(StateMachineMessage<E> message, State<S, E> previousState, boolean messageAccepted,
+			StateMachineDetails<S, E> details) {
+		ListenerIndex<S, E> currentListeners = listeners;
+		if (!currentListeners.isEmpty()) {
+			currentListeners.notifyListeners(message, previousState, messageAccepted, details);
+		}
+	}
 
-			} else {
-				listener.onEventNotAccepted(message, this);
-			}
+	private void notifyBatchListeners(BatchResult<S, E> result) {
+		for (BatchStateMachineListener<S, E> listener: batchListeners) {
+			listener.onBatchProcessed(result, this);
 		}
+	}
 
-		return messageAccepted;
+	/**
+	 * Возвращает буфер результатов экземпляра. Если буфер еще заполняется (вложенный вызов {@code acceptAll()} из действия),
+	 * создается новый.
+	 */
+	private BatchResult<S, E> acquireBatchResult() {
+		if (batchResult == null) {
+			batchResult = new BatchResult<>();
+		}
+		BatchResult<S, E> result = batchResult.isInUse() ? new BatchResult<S, E>() : batchResult;
+		result.acquire();
+		return result;
 	}
 
 	/**
@@ -76,12 +146,74 @@ public abstract class ListenableStateMachine<S, E> implements StateMachine<S, E>
 
 	@Override
 	public void addListener(StateMachineListener<S, E> listener) {
-		listeners.add(listener);
+		addListener(listener, null);
+	}
+
+	@Override
+	public synchronized void addListener(StateMachineListener<S, E> listener, ListenerFilter<S, E> filter) {
+		StateMachineListener<S, E>[] currentListeners = listeners.getListeners();
+		for (StateMachineListener<S, E> registered: currentListeners) {
+			if (registered.equals(listener)) {
+				return;
+			}
+		}
+		StateMachineListener<S, E>[] newListeners = Arrays.copyOf(currentListeners, currentListeners.length + 1);
+		newListeners[currentListeners.length] = listener;
+		ListenerFilter<S, E>[] newFilters = Arrays.copyOf(listeners.getFilters(), currentListeners.length + 1);
+		newFilters[currentListeners.length] = filter;
+		setListeners(newListeners, newFilters);
 	}
 
 	@Override
-	public void removeListener(StateMachineListener<S, E> listener) {
-		listeners.remove(listener);
+	public synchronized void removeListener(StateMachineListener<S, E> listener) {
+		StateMachineListener<S, E>[] currentListeners = listeners.getListeners();
+		ListenerFilter<S, E>[] currentFilters = listeners.getFilters();
+		for (int i = 0; i < currentListeners.length; i++) {
+			if (currentListeners[i].equals(listener)) {
+				StateMachineListener<S, E>[] newListeners = Arrays.copyOf(currentListeners, currentListeners.length - 1);
+				System.arraycopy(currentListeners, i + 1, newListeners, i, currentListeners.length - i - 1);
+				ListenerFilter<S, E>[] newFilters = Arrays.copyOf(currentFilters, currentFilters.length - 1);
+				System.arraycopy(currentFilters, i + 1, newFilters, i, currentFilters.length - i - 1);
+				setListeners(newListeners, newFilters);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Публикует новый набор слушателей и его разбиение на слушателей отдельных сообщений и пакетов.
+	 * Ранее вычисленные индексы по паре (состояние, событие) отбрасываются.
+	 */
+	@SuppressWarnings("unchecked")
+	private void setListeners(StateMachineListener<S, E>[] newListeners, ListenerFilter<S, E>[] newFilters) {
+		List<StateMachineListener<S, E>> newMessageListeners = new ArrayList<>();
+		List<ListenerFilter<S, E>> newMessageFilters = new ArrayList<>();
+		List<BatchStateMachineListener<S, E>> newBatchListeners = new ArrayList<>();
+		for (int i = 0; i < newListeners.length; i++) {
+			if (newListeners[i] instanceof BatchStateMachineListener) {
+				newBatchListeners.add((BatchStateMachineListener<S, E>) newListeners[i]);
+			} else {
+				newMessageListeners.add(newListeners[i]);
+				newMessageFilters.add(newFilters[i]);
+			}
+		}
+
+		listeners = new ListenerIndex<>(newListeners, newFilters);
+		messageListeners = new ListenerIndex<>(newMessageListeners.toArray(new StateMachineListener[newMessageListeners.size()]),
+				newMessageFilters.toArray(new ListenerFilter[newMessageFilters.size()]));
+		batchListeners = newBatchListeners.toArray(new BatchStateMachineListener[newBatchListeners.size()]);
+	}
+
+	/**
+	 * Получатель результата обработки сообщения {@link #process(StateMachineMessage, MessageResultHandler)}.
+	 */
+	protected interface MessageResultHandler<S, E> {
+
+		/**
+		 * @param details - автомат либо его часть, обработавшая сообщение; фильтры слушателей проверяются по ее состояниям
+		 */
+		void handle(StateMachineMessage<E> message, State<S, E> previousState, boolean messageAccepted, StateMachineDetails<S, E> details);
+
 	}
 
 }
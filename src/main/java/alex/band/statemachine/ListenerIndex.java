@@ -0,0 +1,170 @@
+package alex.band.statemachine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import alex.band.statemachine.listener.ListenerFilter;
+import alex.band.statemachine.listener.StateMachineListener;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Неизменяемый набор слушателей конечного автомата с индексом по паре (состояние, событие).
+ *
+ * <p>Если ни один слушатель не зарегистрирован с фильтром {@link ListenerFilter}, оповещаются все слушатели массива.
+ * Иначе массивы заинтересованных слушателей вычисляются при создании индекса для каждой пары (состояние при получении сообщения,
+ * событие), упомянутых в фильтрах; все не упомянутые состояния (события) фильтры различают одинаково, поэтому им соответствует
+ * одна общая строка (столбец) {@code OTHER}. Размер индекса ограничен размером фильтров, после создания индекс не изменяется.
+ * Фильтр целевого состояния проверяется при оповещении.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+final class ListenerIndex<S, E> {
+
+	private final StateMachineListener<S, E>[] listeners;
+	private final ListenerFilter<S, E>[] filters;
+	private final boolean filtered;
+
+	/**
+	 * Общий ключ состояний и событий, не упомянутых ни в одном фильтре.
+	 */
+	private static final Object OTHER = new Object();
+
+	private final Map<Object, Map<Object, Entry<S, E>>> entries;
+
+	/**
+	 * @param filters - фильтры слушателей с теми же индексами; {@code null} - слушатель без фильтра
+	 */
+	ListenerIndex(StateMachineListener<S, E>[] listeners, ListenerFilter<S, E>[] filters) {
+		this.listeners = listeners;
+		this.filters = filters;
+
+		boolean hasFilters = false;
+		Set<Object> states = new HashSet<>();
+		Set<Object> events = new HashSet<>();
+		for (ListenerFilter<S, E> filter: filters) {
+			if (filter != null) {
+				hasFilters = true;
+				states.addAll(filter.getSourceStates());
+				events.addAll(filter.getEvents());
+			}
+		}
+		this.filtered = hasFilters;
+		this.entries = hasFilters ? createEntries(states, events) : null;
+	}
+
+	StateMachineListener<S, E>[] getListeners() {
+		return listeners;
+	}
+
+	ListenerFilter<S, E>[] getFilters() {
+		return filters;
+	}
+
+	boolean isEmpty() {
+		return listeners.length == 0;
+	}
+
+	void notifyListeners(StateMachineMessage<E> message, State<S, E> previousState, boolean messageAccepted, StateMachineDetails<S, E> details) {
+		if (!filtered) {
+			for (StateMachineListener<S, E> listener: listeners) {
+
+				if (messageAccepted) {
+					listener.onStateChanged(message, previousState, details);
+
+				} else {
+					listener.onEventNotAccepted(message, details);
+				}
+			}
+			return;
+		}
+
+		Entry<S, E> entry = getEntry(previousState.getId(), message.getEvent());
+		if (messageAccepted) {
+			StateMachineListener<S, E>[] stateChangedListeners = entry.stateChangedListeners;
+			ListenerFilter<S, E>[] targetFilters = entry.targetFilters;
+			for (int i = 0; i < stateChangedListeners.length; i++) {
+				if (targetFilters[i] == null || targetFilters[i].acceptsTargetState(details.getCurrentState().getId())) {
+					stateChangedListeners[i].onStateChanged(message, previousState, details);
+				}
+			}
+
+		} else {
+			for (StateMachineListener<S, E> listener: entry.notAcceptedListeners) {
+				listener.onEventNotAccepted(message, details);
+			}
+		}
+	}
+
+	private Entry<S, E> getEntry(S state, E event) {
+		Map<Object, Entry<S, E>> stateEntries = entries.get(state);
+		if (stateEntries == null) {
+			stateEntries = entries.get(OTHER);
+		}
+
+		Entry<S, E> entry = stateEntries.get(event);
+		return entry != null ? entry : stateEntries.get(OTHER);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Object, Map<Object, Entry<S, E>>> createEntries(Set<Object> states, Set<Object> events) {
+		states.add(OTHER);
+		events.add(OTHER);
+
+		Map<Object, Map<Object, Entry<S, E>>> result = new HashMap<>();
+		for (Object state: states) {
+			Map<Object, Entry<S, E>> stateEntries = new HashMap<>();
+			for (Object event: events) {
+				stateEntries.put(event, createEntry((S) state, (E) event));
+			}
+			result.put(state, stateEntries);
+		}
+		return result;
+	}
+
+	/**
+	 * Ключ {@code OTHER} не содержится ни в одном фильтре, поэтому проверки фильтров для него дают результат, общий
+	 * для всех не упомянутых состояний (событий).
+	 */
+	@SuppressWarnings("unchecked")
+	private Entry<S, E> createEntry(S state, E event) {
+		List<StateMachineListener<S, E>> stateChangedListeners = new ArrayList<>();
+		List<ListenerFilter<S, E>> targetFilters = new ArrayList<>();
+		List<StateMachineListener<S, E>> notAcceptedListeners = new ArrayList<>();
+
+		for (int i = 0; i < listeners.length; i++) {
+			ListenerFilter<S, E> filter = filters[i];
+
+			if (filter == null || filter.acceptsStateChange(state, event)) {
+				stateChangedListeners.add(listeners[i]);
+				targetFilters.add(filter != null && filter.hasTargetStates() ? filter : null);
+			}
+			if (filter == null || filter.acceptsNotAccepted(state, event)) {
+				notAcceptedListeners.add(listeners[i]);
+			}
+		}
+
+		return new Entry<>(stateChangedListeners.toArray(new StateMachineListener[stateChangedListeners.size()]),
+				targetFilters.toArray(new ListenerFilter[targetFilters.size()]),
+				notAcceptedListeners.toArray(new StateMachineListener[notAcceptedListeners.size()]));
+	}
+
+	private static final class Entry<S, E> {
+
+		private final StateMachineListener<S, E>[] stateChangedListeners;
+		private final ListenerFilter<S, E>[] targetFilters;
+		private final StateMachineListener<S, E>[] notAcceptedListeners;
+
+		Entry(StateMachineListener<S, E>[] stateChangedListeners, ListenerFilter<S, E>[] targetFilters,
+				StateMachineListener<S, E>[] notAcceptedListeners) {
+			this.stateChangedListeners = stateChangedListeners;
+			this.targetFilters = targetFilters;
+			this.notAcceptedListeners = notAcceptedListeners;
+		}
+	}
+
+}
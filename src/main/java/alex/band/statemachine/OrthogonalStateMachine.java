@@ -0,0 +1,56 @@
+package alex.band.statemachine;
+
+import java.util.List;
+
+import alex.band.statemachine.builder.OrthogonalStateMachineBuilder;
+import alex.band.statemachine.state.State;
+
+/**
+ * Конечный автомат из нескольких ортогональных областей (регионов), построенный {@link OrthogonalStateMachineBuilder}.
+ *
+ * <p>Каждая область имеет собственное текущее состояние, а каждое сообщение {@code accept()} передается всем работающим
+ * областям. Сообщение считается принятым, если его приняла хотя бы одна область. Слушатели регистрируются один раз
+ * для всего автомата и получают результат каждой обработавшей сообщение области: в {@code onStateChanged()}
+ * и {@code onEventNotAccepted()} передается сама область, по ее состояниям выполняются и фильтры слушателей. Пакет
+ * {@link BatchResult} содержит по результату на каждую обработавшую сообщение область. Области разделяют общий контекст.
+ *
+ * <p>Текущее состояние определено только для области ({@link #getCurrentState(String)}); {@link #getCurrentState()}
+ * автомата из нескольких областей выбрасывает {@link IllegalStateException}.
+ *
+ * <p>Область, вошедшая в свое финальное состояние, перестает получать сообщения. Автомат останавливается, когда остановлены
+ * все области.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface OrthogonalStateMachine<S, E> extends StateMachine<S, E> {
+
+	/**
+	 * Возвращает имена областей в порядке их определения.
+	 */
+	List<String> getRegionNames();
+
+	/**
+	 * Возвращает текущее состояние области.
+	 *
+	 * @throws IllegalArgumentException если область не определена
+	 */
+	State<S, E> getCurrentState(String regionName);
+
+	/**
+	 * {@code True} - если область еще не вошла в финальное состояние и автомат запущен.
+	 *
+	 * @throws IllegalArgumentException если область не определена
+	 */
+	boolean isRunning(String regionName);
+
+	/**
+	 * {@code True} - если текущее состояние {@code details} определено, т.е. это не автомат из нескольких областей.
+	 */
+	static boolean hasCurrentState(StateMachineDetails<?, ?> details) {
+		return !(details instanceof OrthogonalStateMachine) || ((OrthogonalStateMachine<?, ?>) details).getRegionNames().size() == 1;
+	}
+
+}
@@ -1,15 +1,21 @@
 package alex.band.statemachine;
 
+import java.util.Arrays;
+
+import alex.band.statemachine.listener.ListenerFilter;
 import alex.band.statemachine.listener.StateMachineListener;
 import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
 
 /**
  * Интерфейс, предоставляющий базовый набор методов по работе с конечным автоматом (КА).
  *
  * <p>Содержит методы:
  * <ul><li>Запуска и остановки КА - {@link #start()}, {@link #stop()}.</li>
- * <li>управления жизненным циклом КА посредством событий и сообщений - {@link #accept(Object)}, {@link #accept(StateMachineMessage)}.</li>
- * <li>регистрации слушателей работы КА - {@link #addListener(StateMachineListener)}, {@link #removeListener(StateMachineListener)}.</li></ul>
+ * <li>управления жизненным циклом КА посредством событий и сообщений - {@link #accept(Object)}, {@link #accept(StateMachineMessage)},
+ * {@link #acceptAll(Iterable)}.</li>
+ * <li>регистрации слушателей работы КА - {@link #addListener(StateMachineListener)}, {@link #addListener(StateMachineListener, ListenerFilter)},
+ * {@link #removeListener(StateMachineListener)}.</li></ul>
  *
  * @param <S> - тип идентификатора состояния
  * @param <E> - тип идентификатора события
@@ -38,11 +44,47 @@ public interface StateMachine<S, E> extends StateMachineDetails<S, E> {
 	 */
 	boolean accept(StateMachineMessage<E> message);
 
+	/**
+	 * Пакетная обработка сообщений в порядке итерации.
+	 *
+	 * <p>Каждое сообщение обрабатывается так же, как {@link #accept(StateMachineMessage)}. Слушатели
+	 * {@link alex.band.statemachine.listener.BatchStateMachineListener} оповещаются один раз после обработки всего пакета.
+	 *
+	 * <p>По умолчанию сообщения по одному передаются в {@link #accept(StateMachineMessage)}.
+	 *
+	 * @return результаты обработки, действительные до следующего вызова {@code acceptAll()}
+	 */
+	default BatchResult<S, E> acceptAll(Iterable<? extends StateMachineMessage<E>> messages) {
+		BatchResult<S, E> result = new BatchResult<>();
+		for (StateMachineMessage<E> message: messages) {
+			State<S, E> previousState = getCurrentState();
+			result.add(message, previousState, accept(message));
+		}
+		return result;
+	}
+
+	/**
+	 * Пакетная обработка массива сообщений. Аналог {@link #acceptAll(Iterable)}.
+	 */
+	default BatchResult<S, E> acceptAll(StateMachineMessage<E>[] messages) {
+		return acceptAll(Arrays.asList(messages));
+	}
+
 	/**
 	 * Регистрация слушателя жизненного цикла конечным автоматом.
 	 */
 	void addListener(StateMachineListener<S, E> listener);
 
+	/**
+	 * Регистрация слушателя, оповещаемого только о сообщениях, удовлетворяющих фильтру.
+	 * Фильтр {@code null} эквивалентен {@link #addListener(StateMachineListener)}.
+	 *
+	 * <p>По умолчанию регистрируется обертка слушателя {@link ListenerFilter#wrap(StateMachineListener)}.
+	 */
+	default void addListener(StateMachineListener<S, E> listener, ListenerFilter<S, E> filter) {
+		addListener(filter != null ? filter.wrap(listener) : listener);
+	}
+
 	/**
 	 * Удаления слушателя жизненного цикла конечным автоматом.
 	 */
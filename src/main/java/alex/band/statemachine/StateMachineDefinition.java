@@ -0,0 +1,54 @@
+package alex.band.statemachine;
+
+import java.util.Collection;
+
+import com.google.common.base.Optional;
+
+import alex.band.statemachine.builder.OptionsConfigurer;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.metrics.StateMachineMetrics;
+import alex.band.statemachine.state.State;
+
+/**
+ * Неизменяемое, прошедшее валидацию описание конечного автомата {@link StateMachine}: состояния, переходы, стартовые и терминальные действия.
+ *
+ * <p>Описание строится один раз при помощи {@link StateMachineBuilder#buildDefinition()} и разделяется всеми экземплярами,
+ * созданными через {@link #newStateMachine()}. Каждый экземпляр хранит только собственное текущее состояние,
+ * контекст и отложенные сообщения.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface StateMachineDefinition<S, E> extends StateMachineFactory<S, E> {
+
+	/**
+	 * Возвращает стартовое состояние.
+	 */
+	State<S, E> getInitialState();
+
+	/**
+	 * Возвращает финальное (терминальное) состояние.
+	 */
+	State<S, E> getFinalState();
+
+	/**
+	 * Возвращает состояние по его идентификатору.
+	 */
+	Optional<State<S, E>> getState(S stateId);
+
+	/**
+	 * Возвращает все состояния конечного автомата.
+	 */
+	Collection<State<S, E>> getStates();
+
+	/**
+	 * Возвращает метрики всех экземпляров описания, если их сбор включен через {@link OptionsConfigurer#collectMetrics()}.
+	 * По умолчанию метрики не собираются.
+	 */
+	default Optional<StateMachineMetrics> getMetrics() {
+		return Optional.absent();
+	}
+
+}
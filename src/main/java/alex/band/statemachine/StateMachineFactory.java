@@ -0,0 +1,18 @@
+package alex.band.statemachine;
+
+/**
+ * Фабрика экземпляров конечного автомата {@link StateMachine}.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface StateMachineFactory<S, E> {
+
+	/**
+	 * Создает новый, не запущенный экземпляр конечного автомата.
+	 */
+	StateMachine<S, E> newStateMachine();
+
+}
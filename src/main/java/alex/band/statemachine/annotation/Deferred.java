@@ -0,0 +1,21 @@
+package alex.band.statemachine.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Имена констант событий, откладываемых в состоянии модели {@link StateMachineModel}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Deferred {
+
+	String[] value();
+
+}
@@ -0,0 +1,48 @@
+package alex.band.statemachine.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Переход из состояния модели {@link StateMachineModel} по событию.
+ *
+ * <p>{@code Guard} и действия задаются открытыми классами с открытым конструктором без параметров; сгенерированный код
+ * создает их экземпляры оператором {@code new}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+@Repeatable(OnEvents.class)
+public @interface OnEvent {
+
+	/**
+	 * Имя константы события.
+	 */
+	String event();
+
+	/**
+	 * Имя константы целевого состояния; по умолчанию переход внутренний.
+	 */
+	String target() default "";
+
+	/**
+	 * Класс {@code Guard}; по умолчанию переход не защищен.
+	 */
+	@SuppressWarnings("rawtypes")
+	Class<? extends Guard> guard() default Guard.class;
+
+	@SuppressWarnings("rawtypes")
+	Class<? extends TransitionAction>[] actions() default {};
+
+	int priority() default 0;
+
+}
@@ -0,0 +1,25 @@
+package alex.band.statemachine.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import alex.band.statemachine.state.StateAction;
+
+/**
+ * Классы действий входа и выхода состояния модели {@link StateMachineModel}: открытые классы с открытым конструктором
+ * без параметров.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface StateActions {
+
+	@SuppressWarnings("rawtypes")
+	Class<? extends StateAction>[] value();
+
+}
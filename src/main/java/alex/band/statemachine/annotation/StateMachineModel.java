@@ -0,0 +1,51 @@
+package alex.band.statemachine.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.annotation.processor.StateMachineModelProcessor;
+
+/**
+ * Статическое описание конечного автомата на перечислении его состояний.
+ *
+ * <p>Каждая константа перечисления - состояние. Константы размечаются аннотациями {@link Initial}, {@link Final},
+ * {@link OnEvent}, {@link Deferred}, {@link StateActions}; события задаются именами констант перечисления {@link #events()}.
+ *
+ * <p>Процессор {@link StateMachineModelProcessor} проверяет описание при компиляции и генерирует в пакете перечисления класс
+ * {@code <Перечисление>Definition} с методом {@code create()}, возвращающим готовое {@link StateMachineDefinition}
+ * без построения и проверки конфигурации при запуске и без обращений к рефлексии.
+ *
+ * <pre>
+ * &#64;StateMachineModel(events = OrderEvent.class)
+ * enum OrderState {
+ *     &#64;Initial &#64;OnEvent(event = "PAY", target = "PAID", guard = PaymentGuard.class)
+ *     NEW,
+ *     &#64;OnEvent(event = "SHIP", target = "SHIPPED")
+ *     PAID,
+ *     &#64;Final
+ *     SHIPPED
+ * }
+ * </pre>
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface StateMachineModel {
+
+	/**
+	 * Перечисление событий.
+	 */
+	Class<? extends Enum<?>> events();
+
+	/**
+	 * Простое имя генерируемого класса; по умолчанию - имя перечисления состояний с суффиксом {@code Definition}.
+	 */
+	String definitionName() default "";
+
+}
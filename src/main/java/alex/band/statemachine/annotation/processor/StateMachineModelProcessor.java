@@ -0,0 +1,422 @@
+package alex.band.statemachine.annotation.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.MirroredTypesException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import alex.band.statemachine.annotation.Deferred;
+import alex.band.statemachine.annotation.Final;
+import alex.band.statemachine.annotation.Initial;
+import alex.band.statemachine.annotation.OnEvent;
+import alex.band.statemachine.annotation.StateActions;
+import alex.band.statemachine.annotation.StateMachineModel;
+import alex.band.statemachine.builder.impl.PrecompiledDefinitions;
+import alex.band.statemachine.builder.impl.StateGraph;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Процессор аннотаций {@link StateMachineModel}.
+ *
+ * <p>Выполняет для модели те же проверки, что и {@link StateMachineBuilderImpl} при построении описания, и сообщает об ошибках
+ * как об ошибках компиляции. Для корректной модели генерирует класс, передающий в {@link PrecompiledDefinitions} номера
+ * состояний и событий, переходы, упорядоченные по убыванию приоритета, и создающий {@code Guard} и действия оператором {@code new}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@SupportedAnnotationTypes("alex.band.statemachine.annotation.StateMachineModel")
+public class StateMachineModelProcessor extends AbstractProcessor {
+
+	static final String MODEL_IS_NOT_ENUM = "@StateMachineModel should annotate enum of States: %s";
+	static final String EVENTS_ARE_NOT_ENUM = "Events of State machine model should be enum: %s";
+	static final String INITIAL_STATE_IS_NOT_DEFINED = "Initial State is not defined.";
+	static final String FINAL_STATE_IS_NOT_DEFINED = "Final State is not defined.";
+	static final String INITIAL_STATE_ALREADY_DEFINED = "Initial State already defined. Defined State %s, new State %s";
+	static final String FINAL_STATE_ALREADY_DEFINED = "Final State already defined. Defined State %s, new State %s";
+	static final String UNKNOWN_EVENT = "State %s refers to unknown Event %s";
+	static final String UNKNOWN_TARGET_STATE = "Transition has unkown target State: %s";
+	static final String ILLEGAL_TRANSITION_FROM_FINAL_STATE = "Final State should not be used as source of Transition: %s";
+	static final String STATES_WITHOUT_PATH_TO_FINAL_STATE = "There are States from which final State is unreachable: %s";
+	static final String UNREACHABLE_STATES = "There are States which are unreachable from initial State: %s";
+	static final String ILLEGAL_COMPONENT_CLASS = "%s should be a public non-abstract class with public no-arg constructor implementing %s";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element: roundEnv.getElementsAnnotatedWith(StateMachineModel.class)) {
+			Model model = readModel(element);
+			if (model != null) {
+				writeDefinition(model);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Читает и проверяет модель.
+	 *
+	 * @return модель либо {@code null}, если найдены ошибки
+	 */
+	private Model readModel(Element element) {
+		if (element.getKind() != ElementKind.ENUM) {
+			return error(element, MODEL_IS_NOT_ENUM, element);
+		}
+		StateMachineModel annotation = element.getAnnotation(StateMachineModel.class);
+		TypeMirror eventType = typeOf(() -> annotation.events());
+		if (eventType.getKind() != TypeKind.DECLARED || ((DeclaredType) eventType).asElement().getKind() != ElementKind.ENUM) {
+			return error(element, EVENTS_ARE_NOT_ENUM, eventType);
+		}
+
+		Model model = new Model((TypeElement) element, (TypeElement) ((DeclaredType) eventType).asElement(), annotation.definitionName());
+		boolean valid = true;
+		for (Element stateField: model.stateFields) {
+			valid &= readState(model, stateField);
+		}
+		if (!valid) {
+			return null;
+		}
+
+		if (model.initialState < 0) {
+			return error(element, INITIAL_STATE_IS_NOT_DEFINED);
+		}
+		if (model.finalState < 0) {
+			return error(element, FINAL_STATE_IS_NOT_DEFINED);
+		}
+
+		StateGraph graph = new StateGraph(model.states.size(), model.transitions.size());
+		for (TransitionModel transition: model.transitions) {
+			if (transition.source == model.finalState) {
+				return error(model.stateFields.get(transition.source), ILLEGAL_TRANSITION_FROM_FINAL_STATE, model.states.get(transition.source));
+			}
+			if (transition.target >= 0) {
+				graph.addEdge(transition.source, transition.target);
+			}
+		}
+		BitSet unreachableStates = graph.unreachableFrom(model.initialState);
+		if (!unreachableStates.isEmpty()) {
+			return error(element, UNREACHABLE_STATES, StateGraph.select(unreachableStates, model.states));
+		}
+		BitSet deadEndStates = graph.notReaching(model.finalState);
+		if (!deadEndStates.isEmpty()) {
+			return error(element, STATES_WITHOUT_PATH_TO_FINAL_STATE, StateGraph.select(deadEndStates, model.states));
+		}
+
+		model.transitions.sort(Comparator.comparingInt((TransitionModel transition) -> transition.source)
+				.thenComparing(Comparator.comparingInt((TransitionModel transition) -> transition.priority).reversed()));
+		return model;
+	}
+
+	private boolean readState(Model model, Element stateField) {
+		int state = model.stateFields.indexOf(stateField);
+		String stateName = stateField.getSimpleName().toString();
+		boolean valid = true;
+
+		if (stateField.getAnnotation(Initial.class) != null) {
+			if (model.initialState >= 0) {
+				return reportError(stateField, INITIAL_STATE_ALREADY_DEFINED, model.states.get(model.initialState), stateName);
+			}
+			model.initialState = state;
+		}
+		if (stateField.getAnnotation(Final.class) != null) {
+			if (model.finalState >= 0) {
+				return reportError(stateField, FINAL_STATE_ALREADY_DEFINED, model.states.get(model.finalState), stateName);
+			}
+			model.finalState = state;
+		}
+
+		Deferred deferred = stateField.getAnnotation(Deferred.class);
+		if (deferred != null) {
+			for (String event: deferred.value()) {
+				if (!model.events.contains(event)) {
+					valid = reportError(stateField, UNKNOWN_EVENT, stateName, event);
+					continue;
+				}
+				model.deferredEvents.get(state).add(model.events.indexOf(event));
+			}
+		}
+
+		StateActions stateActions = stateField.getAnnotation(StateActions.class);
+		if (stateActions != null) {
+			for (TypeMirror action: typesOf(() -> stateActions.value())) {
+				String actionClass = instantiableClass(stateField, action, StateAction.class);
+				valid &= actionClass != null;
+				model.stateActions.get(state).add(actionClass);
+			}
+		}
+
+		for (OnEvent onEvent: stateField.getAnnotationsByType(OnEvent.class)) {
+			valid &= readTransition(model, stateField, state, onEvent);
+		}
+		return valid;
+	}
+
+	private boolean readTransition(Model model, Element stateField, int source, OnEvent onEvent) {
+		TransitionModel transition = new TransitionModel(source, model.events.indexOf(onEvent.event()), onEvent.priority());
+		if (transition.event < 0) {
+			return reportError(stateField, UNKNOWN_EVENT, model.states.get(source), onEvent.event());
+		}
+		if (!onEvent.target().isEmpty()) {
+			transition.target = model.states.indexOf(onEvent.target());
+			if (transition.target < 0) {
+				return reportError(stateField, UNKNOWN_TARGET_STATE, onEvent.target());
+			}
+		}
+
+		boolean valid = true;
+		TypeMirror guard = typeOf(() -> onEvent.guard());
+		if (!isType(guard, Guard.class)) {
+			transition.guard = instantiableClass(stateField, guard, Guard.class);
+			valid = transition.guard != null;
+		}
+		for (TypeMirror action: typesOf(() -> onEvent.actions())) {
+			String actionClass = instantiableClass(stateField, action, TransitionAction.class);
+			valid &= actionClass != null;
+			transition.actions.add(actionClass);
+		}
+		model.transitions.add(transition);
+		return valid;
+	}
+
+	/**
+	 * Проверяет, что экземпляр класса {@code type} можно создать оператором {@code new} в сгенерированном коде.
+	 *
+	 * @return каноническое имя класса либо {@code null}, если класс не подходит
+	 */
+	private String instantiableClass(Element element, TypeMirror type, Class<?> componentType) {
+		if (type.getKind() == TypeKind.DECLARED) {
+			TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+			Set<Modifier> modifiers = typeElement.getModifiers();
+			boolean instantiable = typeElement.getKind() == ElementKind.CLASS && modifiers.contains(Modifier.PUBLIC)
+					&& !modifiers.contains(Modifier.ABSTRACT)
+					&& (typeElement.getNestingKind() == NestingKind.TOP_LEVEL || modifiers.contains(Modifier.STATIC))
+					&& hasPublicNoArgConstructor(typeElement)
+					&& processingEnv.getTypeUtils().isAssignable(erasure(type), erasure(componentType));
+			if (instantiable) {
+				return typeElement.getQualifiedName().toString();
+			}
+		}
+		return error(element, ILLEGAL_COMPONENT_CLASS, type, componentType.getSimpleName());
+	}
+
+	private boolean hasPublicNoArgConstructor(TypeElement typeElement) {
+		for (ExecutableElement constructor: ElementFilter.constructorsIn(typeElement.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isType(TypeMirror type, Class<?> expectedType) {
+		return processingEnv.getTypeUtils().isSameType(erasure(type), erasure(expectedType));
+	}
+
+	private TypeMirror erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type);
+	}
+
+	private TypeMirror erasure(Class<?> type) {
+		return erasure(processingEnv.getElementUtils().getTypeElement(type.getCanonicalName()).asType());
+	}
+
+	/**
+	 * Значение атрибута-класса аннотации: при компиляции класс недоступен, и javac сообщает его тип исключением.
+	 */
+	private TypeMirror typeOf(Supplier<Class<?>> value) {
+		try {
+			return processingEnv.getElementUtils().getTypeElement(value.get().getCanonicalName()).asType();
+		} catch (MirroredTypeException e) {
+			return e.getTypeMirror();
+		}
+	}
+
+	private List<? extends TypeMirror> typesOf(Supplier<Class<?>[]> values) {
+		try {
+			List<TypeMirror> types = new ArrayList<>();
+			for (Class<?> value: values.get()) {
+				types.add(processingEnv.getElementUtils().getTypeElement(value.getCanonicalName()).asType());
+			}
+			return types;
+		} catch (MirroredTypesException e) {
+			return e.getTypeMirrors();
+		}
+	}
+
+	private <T> T error(Element element, String message, Object ...args) {
+		reportError(element, message, args);
+		return null;
+	}
+
+	/**
+	 * @return всегда {@code false}
+	 */
+	private boolean reportError(Element element, String message, Object ...args) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, String.format(message, args), element);
+		return false;
+	}
+
+	private void writeDefinition(Model model) {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(model.stateType);
+		String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+		String className = model.definitionName.isEmpty() ? model.stateType.getSimpleName() + "Definition" : model.definitionName;
+		String stateType = model.stateType.getQualifiedName().toString();
+		String eventType = model.eventType.getQualifiedName().toString();
+
+		// Сгенерированный исходник содержит только ASCII: кодировка компиляции проекта может быть любой
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n")
+				.append(" * State machine definition of {@link ").append(stateType).append("} generated by {@code ")
+				.append(getClass().getSimpleName()).append("}.\n")
+				.append(" */\n")
+				.append("public final class ").append(className).append(" {\n\n")
+				.append("\tprivate ").append(className).append("() {\n")
+				.append("\t}\n\n")
+				.append("\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+				.append("\tpublic static alex.band.statemachine.StateMachineDefinition<").append(stateType).append(", ").append(eventType)
+				.append("> create() {\n")
+				.append("\t\treturn alex.band.statemachine.builder.impl.PrecompiledDefinitions.create(").append(stateType).append(".class, ")
+				.append(eventType).append(".class, ").append(model.initialState).append(", ").append(model.finalState).append(",\n");
+
+		List<String> transitionSources = new ArrayList<>();
+		List<String> transitionEvents = new ArrayList<>();
+		List<String> transitionTargets = new ArrayList<>();
+		List<String> transitionPriorities = new ArrayList<>();
+		List<String> transitionGuards = new ArrayList<>();
+		List<String> transitionActions = new ArrayList<>();
+		for (TransitionModel transition: model.transitions) {
+			transitionSources.add(String.valueOf(transition.source));
+			transitionEvents.add(String.valueOf(transition.event));
+			transitionTargets.add(String.valueOf(transition.target));
+			transitionPriorities.add(String.valueOf(transition.priority));
+			transitionGuards.add(transition.guard == null ? "null" : "new " + transition.guard + "()");
+			transitionActions.add(instances(transition.actions));
+		}
+		List<String> stateActions = new ArrayList<>();
+		List<String> deferredEvents = new ArrayList<>();
+		for (int state = 0; state < model.states.size(); state++) {
+			stateActions.add(instances(model.stateActions.get(state)));
+			deferredEvents.add(array("", model.deferredEvents.get(state)));
+		}
+
+		source.append("\t\t\t\t").append(array("new alex.band.statemachine.state.StateAction[][] ", stateActions)).append(",\n")
+				.append("\t\t\t\t").append(array("new int[][] ", deferredEvents)).append(",\n")
+				.append("\t\t\t\t").append(array("new int[] ", transitionSources)).append(",\n")
+				.append("\t\t\t\t").append(array("new int[] ", transitionEvents)).append(",\n")
+				.append("\t\t\t\t").append(array("new int[] ", transitionTargets)).append(",\n")
+				.append("\t\t\t\t").append(array("new int[] ", transitionPriorities)).append(",\n")
+				.append("\t\t\t\t").append(array("new alex.band.statemachine.transition.Guard[] ", transitionGuards)).append(",\n")
+				.append("\t\t\t\t").append(array("new alex.band.statemachine.transition.TransitionAction[][] ", transitionActions)).append(");\n")
+				.append("\t}\n\n")
+				.append("}\n");
+
+		String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, model.stateType).openWriter()) {
+			writer.write(source.toString());
+		} catch (IOException e) {
+			error(model.stateType, "Can't write %s: %s", qualifiedName, e.getMessage());
+		}
+	}
+
+	private static String instances(List<String> classNames) {
+		List<String> instances = new ArrayList<>();
+		for (String className: classNames) {
+			instances.add("new " + className + "()");
+		}
+		return array("", instances);
+	}
+
+	private static String array(String prefix, List<?> values) {
+		StringBuilder array = new StringBuilder(prefix).append('{');
+		for (int i = 0; i < values.size(); i++) {
+			array.append(i > 0 ? ", " : "").append(values.get(i));
+		}
+		return array.append('}').toString();
+	}
+
+	/**
+	 * Прочитанная модель: состояния и события - имена констант в порядке объявления.
+	 */
+	private static final class Model {
+
+		private final TypeElement stateType;
+		private final TypeElement eventType;
+		private final String definitionName;
+		private final List<Element> stateFields = new ArrayList<>();
+		private final List<String> states = new ArrayList<>();
+		private final List<String> events = new ArrayList<>();
+		private final List<List<Integer>> deferredEvents = new ArrayList<>();
+		private final List<List<String>> stateActions = new ArrayList<>();
+		private final List<TransitionModel> transitions = new ArrayList<>();
+		private int initialState = -1;
+		private int finalState = -1;
+
+		Model(TypeElement stateType, TypeElement eventType, String definitionName) {
+			this.stateType = stateType;
+			this.eventType = eventType;
+			this.definitionName = definitionName;
+			for (Element constant: stateType.getEnclosedElements()) {
+				if (constant.getKind() == ElementKind.ENUM_CONSTANT) {
+					stateFields.add(constant);
+					states.add(constant.getSimpleName().toString());
+					deferredEvents.add(new ArrayList<Integer>());
+					stateActions.add(new ArrayList<String>());
+				}
+			}
+			for (Element constant: eventType.getEnclosedElements()) {
+				if (constant.getKind() == ElementKind.ENUM_CONSTANT) {
+					events.add(constant.getSimpleName().toString());
+				}
+			}
+		}
+	}
+
+	private static final class TransitionModel {
+
+		private final int source;
+		private final int event;
+		private final int priority;
+		private int target = -1;
+		private String guard;
+		private final List<String> actions = new ArrayList<>();
+
+		TransitionModel(int source, int event, int priority) {
+			this.source = source;
+			this.event = event;
+			this.priority = priority;
+		}
+	}
+
+}
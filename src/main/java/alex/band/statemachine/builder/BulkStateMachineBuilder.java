@@ -0,0 +1,77 @@
+package alex.band.statemachine.builder;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.transition.Guard;
+
+/**
+ * {@code Builder} для построения больших (десятки тысяч состояний) сгенерированных конечных автоматов.
+ *
+ * <p>В отличие от {@link StateMachineBuilder} состояния и переходы задаются массивами и списками смежности, а не конфигураторами:
+ * на переход не создается ни одного объекта до компиляции описания. Состояния плоские, без вложенности, действий,
+ * откладываемых событий и таймаутов; переходы одного состояния по одному событию проверяются в порядке добавления.
+ *
+ * <p>Проверка выполняется за один проход по переходам, достижимость состояний проверяется обходом в ширину:
+ * время и память построения линейны по числу состояний и переходов.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface BulkStateMachineBuilder<S, E> {
+
+	/**
+	 * Конфигурация дополнительных режимов работы конечного автомата {@link StateMachine}
+	 */
+	OptionsConfigurer<S, E> defineOptions();
+
+	/**
+	 * Добавляет состояния конечного автомата {@link StateMachine}
+	 */
+	BulkStateMachineBuilder<S, E> withStates(Collection<S> states);
+
+	BulkStateMachineBuilder<S, E> withInitialState(S state);
+
+	BulkStateMachineBuilder<S, E> withFinalState(S state);
+
+	/**
+	 * Добавляет переходы, заданные параллельными массивами: {@code i}-й переход выполняется из состояния {@code sources[i]}
+	 * по событию {@code events[i]} в состояние {@code targets[i]}.
+	 *
+	 * @param targets - целевые состояния; {@code null} - переход внутренний
+	 * @param guards - {@code Guard} переходов; {@code null} - переходы без {@code Guard}
+	 *
+	 * @throws IllegalArgumentException если размеры массивов не совпадают
+	 */
+	BulkStateMachineBuilder<S, E> withTransitions(S[] sources, E[] events, S[] targets, Guard<S, E>[] guards);
+
+	/**
+	 * Добавляет переходы одного состояния (строку списка смежности): по событию {@code events[i]} в состояние {@code targets[i]}.
+	 *
+	 * @param targets - целевые состояния; {@code null} - переход внутренний
+	 *
+	 * @throws IllegalArgumentException если размеры массивов не совпадают
+	 */
+	BulkStateMachineBuilder<S, E> withTransitions(S source, E[] events, S[] targets);
+
+	/**
+	 * Включает параллельное сопоставление переходов с состояниями на {@code pool} и параллельную проверку достижимости.
+	 * Окупается начиная с сотен тысяч переходов.
+	 */
+	BulkStateMachineBuilder<S, E> withParallelValidation(ForkJoinPool pool);
+
+	/**
+	 * Создание {@link StateMachine} заданной конфигурации
+	 */
+	StateMachine<S, E> build();
+
+	/**
+	 * Создание неизменяемого описания {@link StateMachineDefinition} заданной конфигурации.
+	 */
+	StateMachineDefinition<S, E> buildDefinition();
+
+}
@@ -0,0 +1,28 @@
+package alex.band.statemachine.builder;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.context.ContextKey;
+import alex.band.statemachine.context.IntKey;
+import alex.band.statemachine.context.LongKey;
+import alex.band.statemachine.context.StateMachineContext;
+
+/**
+ * Конфигуратор типизированных ключей контекста {@link StateMachineContext} конечного автомата {@link StateMachine}.
+ *
+ * <p>Каждому зарегистрированному ключу в каждом экземпляре выделяется ячейка фиксированного массива.
+ * Имена ключей должны быть уникальны.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface ContextConfigurer<S, E> {
+
+	ContextConfigurer<S, E> withKey(ContextKey<?> key);
+
+	ContextConfigurer<S, E> withKey(IntKey key);
+
+	ContextConfigurer<S, E> withKey(LongKey key);
+
+}
@@ -0,0 +1,27 @@
+package alex.band.statemachine.builder;
+
+import alex.band.statemachine.StateMachine;
+
+/**
+ * Поведение конечного автомата {@link StateMachine} при переполнении очереди отложенных событий.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public enum DeferredEventsOverflowPolicy {
+
+	/**
+	 * Новое событие не откладывается, {@code accept()} возвращает {@code false}.
+	 */
+	REJECT,
+
+	/**
+	 * Из очереди удаляется самое раннее отложенное событие, новое событие откладывается.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * {@code accept()} выбрасывает {@link IllegalStateException}.
+	 */
+	FAIL
+
+}
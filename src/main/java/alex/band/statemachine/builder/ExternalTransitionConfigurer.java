@@ -30,6 +30,11 @@ public interface ExternalTransitionConfigurer<S, E> {
 	 */
 	ExternalTransitionConfigurer<S, E> guardedBy(Guard<S, E> guard);
 
+	/**
+	 * Задает приоритет перехода (по умолчанию {@code 0}). Защиты переходов с большим приоритетом оцениваются раньше.
+	 */
+	ExternalTransitionConfigurer<S, E> withPriority(int priority);
+
 	/**
 	 * Задает {@link TransitionAction}, которое будет выполнено во время перехода
 	 */
@@ -25,6 +25,11 @@ public interface InternalTransitionConfigurer<S, E> {
 	 */
 	InternalTransitionConfigurer<S, E> guardedBy(Guard<S, E> guard);
 
+	/**
+	 * Задает приоритет перехода (по умолчанию {@code 0}). Защиты переходов с большим приоритетом оцениваются раньше.
+	 */
+	InternalTransitionConfigurer<S, E> withPriority(int priority);
+
 	/**
 	 * Задает {@link TransitionAction}, которое будет выполнено во время перехода
 	 */
@@ -0,0 +1,74 @@
+package alex.band.statemachine.builder;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.metrics.StateMachineMetrics;
+import alex.band.statemachine.timer.EventScheduler;
+import alex.band.statemachine.timer.TimingWheel;
+import alex.band.statemachine.transition.Guard;
+
+/**
+ * Конфигуратор дополнительных режимов работы конечного автомата {@link StateMachine}
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface OptionsConfigurer<S, E> {
+
+	/**
+	 * Включает повторное использование сообщений {@link StateMachineMessage}, создаваемых в {@link StateMachine#accept(Object)}.
+	 *
+	 * <p>Каждый экземпляр конечного автомата создает одно изменяемое сообщение и использует его для всех событий без полезной нагрузки,
+	 * поэтому обработка события не создает объектов. Сообщение действительно только на время вызова {@code accept()}:
+	 * компоненты конечного автомата и слушатели не должны сохранять ссылку на него. Отложенные сообщения копируются автоматически.
+	 */
+	OptionsConfigurer<S, E> reuseEventMessages();
+
+	/**
+	 * Включает адаптивный порядок оценки переходов: из переходов одного состояния по одному событию с равным приоритетом
+	 * первым оценивается переход, который чаще других выбирался ранее. Статистика общая для всех экземпляров описания.
+	 *
+	 * <p>Режим сокращает среднее число вычислений {@link Guard} на событие, но порядок оценки переходов с равным приоритетом
+	 * перестает быть детерминированным.
+	 */
+	OptionsConfigurer<S, E> adaptTransitionsOrder();
+
+	/**
+	 * Задает емкость очереди отложенных событий каждого экземпляра и поведение при ее переполнении.
+	 *
+	 * <p>По умолчанию в очереди помещается 64 события, а при переполнении новое событие отклоняется
+	 * ({@link DeferredEventsOverflowPolicy#REJECT}).
+	 */
+	OptionsConfigurer<S, E> withDeferredEventsLimit(int capacity, DeferredEventsOverflowPolicy overflowPolicy);
+
+	/**
+	 * Включает сбор метрик {@link StateMachineMetrics}, общих для всех экземпляров описания и доступных через
+	 * {@link StateMachineDefinition#getMetrics()}: длительность обработки сообщений, выбора и выполнения переходов,
+	 * количество переходов и непринятых сообщений, время пребывания в состояниях.
+	 *
+	 * <p>Запись метрик не создает объектов, но добавляет к обработке каждого сообщения несколько вызовов {@link System#nanoTime()}.
+	 */
+	OptionsConfigurer<S, E> collectMetrics();
+
+	/**
+	 * Включает специализированную диспетчеризацию: при построении описания генерируется собственный класс, который вызывает
+	 * {@link Guard} и действия переходов и состояний этого описания отдельными инструкциями байт-кода.
+	 *
+	 * <p>Без режима все описания в JVM вызывают {@code Guard} и действия из одних и тех же мест, и при большом числе разных
+	 * реализаций JIT-компилятор перестает встраивать эти вызовы. Режим увеличивает время построения описания и расходует
+	 * память под сгенерированный класс; для очень больших описаний класс не генерируется и режим не действует.
+	 */
+	OptionsConfigurer<S, E> specializeDispatch();
+
+	/**
+	 * Задает колесо таймеров, обслуживающее тайм-ауты состояний {@link StatesConfigurer#withTimeout(java.time.Duration, Object)}
+	 * и отложенные сообщения {@link EventScheduler} всех экземпляров описания.
+	 *
+	 * <p>По умолчанию используется общее колесо {@link TimingWheel#shared()}.
+	 */
+	OptionsConfigurer<S, E> withTimer(TimingWheel timer);
+
+}
@@ -0,0 +1,54 @@
+package alex.band.statemachine.builder;
+
+import java.util.concurrent.ForkJoinPool;
+
+import alex.band.statemachine.OrthogonalStateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.context.StateMachineContext;
+import alex.band.statemachine.timer.TimingWheel;
+
+/**
+ * {@code Builder} для построения конечного автомата из ортогональных областей {@link OrthogonalStateMachine}.
+ *
+ * <p>Каждая область задается готовым описанием {@link StateMachineDefinition}, построенным {@link StateMachineBuilder}.
+ * Области разделяют один контекст {@link StateMachineContext}, в котором зарегистрированы типизированные ключи всех областей.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface OrthogonalStateMachineBuilder<S, E> {
+
+	/**
+	 * Добавляет область. Порядок добавления определяет порядок обработки сообщения областями.
+	 */
+	OrthogonalStateMachineBuilder<S, E> withRegion(String name, StateMachineDefinition<S, E> definition);
+
+	/**
+	 * Включает параллельную обработку сообщения областями на {@code pool}: первая область обрабатывает сообщение в вызывающем
+	 * потоке, остальные - в задачах пула; {@code accept()} возвращает управление после завершения всех областей.
+	 *
+	 * <p>Области должны быть независимыми: типизированные ключи контекста разных областей не должны совпадать, а действия
+	 * и {@code Guard} области должны использовать только ключи своей области. Нетипизированные (строковые) значения
+	 * контекст в этом режиме отклоняет исключением {@link IllegalArgumentException}.
+	 * Параллельная обработка окупается только для областей с длительными действиями.
+	 */
+	OrthogonalStateMachineBuilder<S, E> withParallelRegions(ForkJoinPool pool);
+
+	/**
+	 * Проверяет конфигурацию и возвращает фабрику экземпляров, разделяющих описания областей.
+	 *
+	 * @throws IllegalStateException если области не заданы, используют разные колеса таймеров
+	 * {@link OptionsConfigurer#withTimer(TimingWheel)} или параллельно обрабатываемые области
+	 * используют общие ключи контекста
+	 */
+	StateMachineFactory<S, E> buildFactory();
+
+	/**
+	 * Строит новый, не запущенный экземпляр.
+	 */
+	OrthogonalStateMachine<S, E> build();
+
+}
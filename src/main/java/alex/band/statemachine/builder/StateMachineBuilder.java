@@ -3,8 +3,10 @@ package alex.band.statemachine.builder;
 import java.util.Set;
 
 import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
 import alex.band.statemachine.StateMachineStartAction;
 import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.context.StateMachineContext;
 import alex.band.statemachine.transition.Transition;
 
 /**
@@ -13,7 +15,9 @@ import alex.band.statemachine.transition.Transition;
  * <p>Позволяет конфигурировать следующие компоненты конечного автомата (КА):
  * <ul><li>Стартовые и терминальные действия КА - {@link #defineStartStopActions()}</li>
  * <li>Управляющие состояния - {@link #defineState(Object)}, {@link #defineStates(Set)}</li>
- * <li>Внешние и внутренние переходы - {@link #defineExternalTransitionFor(Object)}, {@link #defineInternalTransitionFor(Object)}</li></ul>
+ * <li>Внешние и внутренние переходы - {@link #defineExternalTransitionFor(Object)}, {@link #defineInternalTransitionFor(Object)}</li>
+ * <li>Дополнительные режимы работы - {@link #defineOptions()}</li>
+ * <li>Типизированные ключи контекста - {@link #defineContext()}</li></ul>
  *
  * @param <S> - тип идентификатора состояния
  * @param <E> - тип идентификатора события
@@ -28,6 +32,16 @@ public interface StateMachineBuilder<S, E> {
 	 */
 	StartStopActionsConfigurer<S, E> defineStartStopActions();
 
+	/**
+	 * Конфигурация дополнительных режимов работы конечного автомата {@link StateMachine}
+	 */
+	OptionsConfigurer<S, E> defineOptions();
+
+	/**
+	 * Конфигурация типизированных ключей контекста {@link StateMachineContext} конечного автомата {@link StateMachine}
+	 */
+	ContextConfigurer<S, E> defineContext();
+
 	/**
 	 * Конфигурация нового состояния {@link State} конечного автомата {@link StateMachine}
 	 */
@@ -53,4 +67,11 @@ public interface StateMachineBuilder<S, E> {
 	 */
 	StateMachine<S, E> build();
 
+	/**
+	 * Создание неизменяемого описания {@link StateMachineDefinition} заданной конфигурации.
+	 *
+	 * <p>Описание строится и валидируется один раз, после чего служит фабрикой легковесных экземпляров {@link StateMachine}.
+	 */
+	StateMachineDefinition<S, E> buildDefinition();
+
 }
@@ -1,9 +1,14 @@
 package alex.band.statemachine.builder;
 
+import java.time.Duration;
 import java.util.Set;
 
 import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.concurrent.AsyncStateMachine;
+import alex.band.statemachine.concurrent.ConcurrentStateMachine;
 import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.timer.EventScheduler;
+import alex.band.statemachine.timer.TimingWheel;
 
 /**
  * Конфигуратор состояний {@link State} конечного автомата {@link StateMachine}
@@ -30,6 +35,25 @@ public interface StatesConfigurer<S, E> {
 	 */
 	StatesConfigurer<S, E> withActions(Set<StateAction<S, E>> actions);
 
+	/**
+	 * Делает конфигурируемое состояние вложенным в составное состояние {@code parentState}.
+	 *
+	 * <p>Вложенное состояние наследует переходы и отложенные события всех своих предков. Переходы вложенного состояния
+	 * оцениваются раньше унаследованных, а собственный переход по событию отменяет унаследованное откладывание этого события.
+	 * При смене состояния выполняются действия выхода из всех покидаемых и входа во все новые вложенные друг в друга состояния.
+	 *
+	 * <p>Составное состояние не может быть текущим: переход в него, как и старт в нем, продолжается в стартовое вложенное
+	 * состояние ({@link #asInitialChild()}). Иерархия разворачивается в таблицы переходов вложенных состояний при построении
+	 * описания, поэтому во время обработки сообщений иерархия не обходится.
+	 */
+	StatesConfigurer<S, E> childOf(S parentState);
+
+	/**
+	 * Помечает вложенное состояние как стартовое для его родителя. У каждого составного состояния должно быть ровно одно
+	 * стартовое вложенное состояние.
+	 */
+	StatesConfigurer<S, E> asInitialChild();
+
 	/**
 	 * Задает действие {@link StateAction} для конфигурируемого состояния
 	 */
@@ -45,4 +69,15 @@ public interface StatesConfigurer<S, E> {
 	 */
 	StatesConfigurer<S, E> withDeferredEvents(Set<E> deferredEvents);
 
+	/**
+	 * Задает тайм-аут конфигурируемого состояния: если конечный автомат находится в состоянии дольше {@code timeout},
+	 * он получает событие {@code event}. Таймер взводится при каждом входе в состояние и отменяется при выходе из него,
+	 * внутренние переходы таймер не перезапускают.
+	 *
+	 * <p>Таймеры всех экземпляров обслуживаются колесом {@link TimingWheel}, заданным {@link OptionsConfigurer#withTimer(TimingWheel)}.
+	 * Экземпляр с тайм-аутами состояний запускается только после назначения получателя сработавших событий
+	 * {@link EventScheduler#deliverTo(AsyncStateMachine)}, например обернутый в {@link ConcurrentStateMachine}.
+	 */
+	StatesConfigurer<S, E> withTimeout(Duration timeout, E event);
+
 }
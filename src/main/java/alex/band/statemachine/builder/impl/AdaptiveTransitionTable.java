@@ -0,0 +1,85 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Таблица диспетчеризации, адаптирующая порядок переходов-кандидатов к статистике их выбора.
+ *
+ * <p>Оборачивает заполненную таблицу {@link TransitionTable}. Для каждой пары (состояние, событие), у которой больше одного кандидата,
+ * хранится текущий порядок кандидатов. Когда выбранный переход выбирался чаще предшествующего ему кандидата с тем же приоритетом,
+ * они меняются местами, поэтому часто выбираемые переходы постепенно перемещаются в начало своей группы приоритета.
+ * Переходы с разным приоритетом, а также переходы разных состояний-источников (собственные и унаследованные от составного
+ * состояния) местами не меняются.
+ *
+ * <p>Порядок кандидатов заменяется целиком (копирование при записи), поэтому одновременные читатели всегда видят
+ * полный набор кандидатов, а описание можно разделять между потоками.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class AdaptiveTransitionTable<S, E> extends TransitionTable<S, E> {
+
+	private final TransitionTable<S, E> transitionTable;
+	private final AtomicReferenceArray<CompiledTransition<S, E>[]> candidates;
+
+	AdaptiveTransitionTable(TransitionTable<S, E> transitionTable, Collection<CompiledState<S, E>> states, Collection<E> events) {
+		this.transitionTable = transitionTable;
+
+		List<CompiledTransition<S, E>[]> adaptiveCandidates = new ArrayList<>();
+		for (CompiledState<S, E> state: states) {
+			for (E event: events) {
+				CompiledTransition<S, E>[] eventCandidates = transitionTable.getTransitions(state.getIndex(), event);
+				if (eventCandidates.length > 1) {
+					for (CompiledTransition<S, E> transition: eventCandidates) {
+						transition.setCandidatesIndex(adaptiveCandidates.size());
+					}
+					adaptiveCandidates.add(eventCandidates.clone());
+				}
+			}
+		}
+
+		candidates = new AtomicReferenceArray<>(adaptiveCandidates.size());
+		for (int i = 0; i < adaptiveCandidates.size(); i++) {
+			candidates.set(i, adaptiveCandidates.get(i));
+		}
+	}
+
+	@Override
+	CompiledTransition<S, E>[] getTransitions(int stateIndex, E event) {
+		CompiledTransition<S, E>[] initialCandidates = transitionTable.getTransitions(stateIndex, event);
+		if (initialCandidates.length < 2) {
+			return initialCandidates;
+		}
+		return candidates.get(initialCandidates[0].getCandidatesIndex());
+	}
+
+	@Override
+	boolean isDeferred(int stateIndex, E event) {
+		return transitionTable.isDeferred(stateIndex, event);
+	}
+
+	@Override
+	void onTransitionSelected(CompiledTransition<S, E>[] currentCandidates, int position) {
+		CompiledTransition<S, E> selected = currentCandidates[position];
+		long selectionsCount = selected.incrementSelectionsCount();
+		if (position == 0) {
+			return;
+		}
+
+		CompiledTransition<S, E> previous = currentCandidates[position - 1];
+		if (previous.getPriority() == selected.getPriority() && previous.getSource().equals(selected.getSource())
+				&& previous.getSelectionsCount() < selectionsCount) {
+			CompiledTransition<S, E>[] reorderedCandidates = currentCandidates.clone();
+			reorderedCandidates[position - 1] = selected;
+			reorderedCandidates[position] = previous;
+			candidates.compareAndSet(selected.getCandidatesIndex(), currentCandidates, reorderedCandidates);
+		}
+	}
+
+	TransitionTable<S, E> getTransitionTable() {
+		return transitionTable;
+	}
+
+}
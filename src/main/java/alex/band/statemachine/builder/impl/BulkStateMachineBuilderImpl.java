@@ -0,0 +1,286 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineStartAction;
+import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.builder.BulkStateMachineBuilder;
+import alex.band.statemachine.builder.OptionsConfigurer;
+import alex.band.statemachine.context.ContextLayout;
+import alex.band.statemachine.metrics.StateMachineMetrics;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Реализация {@link BulkStateMachineBuilder}
+ *
+ * <p>Переходы хранятся в параллельных списках. При построении идентификаторы состояний переходов один раз сопоставляются
+ * номерам состояний (параллельно, если задан пул), после чего проверки и граф достижимости {@link StateGraph}
+ * работают только с массивами номеров.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class BulkStateMachineBuilderImpl<S, E> implements BulkStateMachineBuilder<S, E> {
+
+	static final String INITIAL_STATE_IS_UNKNOWN = "Initial State is not in defined States: %s";
+	static final String FINAL_STATE_IS_UNKNOWN = "Final State is not in defined States: %s";
+	static final String TRANSITION_ARRAYS_HAVE_DIFFERENT_SIZES = "Transition arrays have different sizes.";
+
+	/**
+	 * Число переходов, сопоставляемых одной задачей пула в параллельном режиме.
+	 */
+	static final int PARALLEL_CHUNK_SIZE = 8192;
+
+	private static final int UNKNOWN = -1;
+	private static final int INTERNAL = -2;
+
+	private final List<S> states = new ArrayList<>();
+	private S initialState;
+	private S finalState;
+	private final List<S> sources = new ArrayList<>();
+	private final List<E> events = new ArrayList<>();
+	private final List<S> targets = new ArrayList<>();
+	private final List<Guard<S, E>> guards = new ArrayList<>();
+	private final OptionsConfigurerImpl<S, E> options = new OptionsConfigurerImpl<>();
+	private ForkJoinPool pool;
+
+	@Override
+	public OptionsConfigurer<S, E> defineOptions() {
+		return options;
+	}
+
+	@Override
+	public BulkStateMachineBuilder<S, E> withStates(Collection<S> states) {
+		this.states.addAll(states);
+		return this;
+	}
+
+	@Override
+	public BulkStateMachineBuilder<S, E> withInitialState(S state) {
+		Preconditions.checkState(initialState == null, StateMachineBuilderImpl.INITIAL_STATE_ALREADY_DEFINED, initialState, state);
+		initialState = state;
+		return this;
+	}
+
+	@Override
+	public BulkStateMachineBuilder<S, E> withFinalState(S state) {
+		Preconditions.checkState(finalState == null, StateMachineBuilderImpl.FINAL_STATE_ALREADY_DEFINED, finalState, state);
+		finalState = state;
+		return this;
+	}
+
+	@Override
+	public BulkStateMachineBuilder<S, E> withTransitions(S[] sources, E[] events, S[] targets, Guard<S, E>[] guards) {
+		Preconditions.checkArgument(events.length == sources.length && targets.length == sources.length
+				&& (guards == null || guards.length == sources.length), TRANSITION_ARRAYS_HAVE_DIFFERENT_SIZES);
+		this.sources.addAll(Arrays.asList(sources));
+		this.events.addAll(Arrays.asList(events));
+		this.targets.addAll(Arrays.asList(targets));
+		this.guards.addAll(guards != null ? Arrays.asList(guards) : Collections.<Guard<S, E>>nCopies(sources.length, null));
+		return this;
+	}
+
+	@Override
+	public BulkStateMachineBuilder<S, E> withTransitions(S source, E[] events, S[] targets) {
+		Preconditions.checkArgument(targets.length == events.length, TRANSITION_ARRAYS_HAVE_DIFFERENT_SIZES);
+		this.sources.addAll(Collections.nCopies(events.length, source));
+		this.events.addAll(Arrays.asList(events));
+		this.targets.addAll(Arrays.asList(targets));
+		this.guards.addAll(Collections.<Guard<S, E>>nCopies(events.length, null));
+		return this;
+	}
+
+	@Override
+	public BulkStateMachineBuilder<S, E> withParallelValidation(ForkJoinPool pool) {
+		this.pool = Preconditions.checkNotNull(pool);
+		return this;
+	}
+
+	@Override
+	public StateMachine<S, E> build() {
+		return buildDefinition().newStateMachine();
+	}
+
+	@Override
+	public StateMachineDefinition<S, E> buildDefinition() {
+		Preconditions.checkState(!states.isEmpty(), StateMachineBuilderImpl.THERE_ARE_NO_STATES_DEFINED);
+		Preconditions.checkState(initialState != null, StateMachineBuilderImpl.INITIAL_STATE_IS_NOT_DEFINED);
+		Preconditions.checkState(finalState != null, StateMachineBuilderImpl.FINAL_STATE_IS_NOT_DEFINED);
+
+		Map<S, Integer> stateIndexes = new HashMap<>(states.size() * 2);
+		for (S state: states) {
+			Preconditions.checkState(stateIndexes.put(state, stateIndexes.size()) == null, StateMachineBuilderImpl.STATE_ALREADY_DEFINED, state);
+		}
+		Integer initialIndex = stateIndexes.get(initialState);
+		Preconditions.checkState(initialIndex != null, INITIAL_STATE_IS_UNKNOWN, initialState);
+		Integer finalIndex = stateIndexes.get(finalState);
+		Preconditions.checkState(finalIndex != null, FINAL_STATE_IS_UNKNOWN, finalState);
+
+		int[] sourceIndexes = new int[sources.size()];
+		int[] targetIndexes = new int[sources.size()];
+		IndexesTask indexesTask = new IndexesTask(stateIndexes, sourceIndexes, targetIndexes, 0, sources.size());
+		if (pool != null) {
+			pool.invoke(indexesTask);
+		} else {
+			indexesTask.compute();
+		}
+
+		validate(sourceIndexes, targetIndexes, initialIndex, finalIndex);
+		return createDefinition(sourceIndexes, targetIndexes, initialIndex, finalIndex);
+	}
+
+	/**
+	 * Единственный проход по переходам: неизвестные состояния, переходы из финального состояния и ребра графа достижимости.
+	 */
+	private void validate(int[] sourceIndexes, int[] targetIndexes, int initialIndex, int finalIndex) {
+		Set<S> unknownSources = new LinkedHashSet<>();
+		Set<S> unknownTargets = new LinkedHashSet<>();
+		StateGraph graph = new StateGraph(states.size(), sourceIndexes.length);
+		for (int i = 0; i < sourceIndexes.length; i++) {
+			if (sourceIndexes[i] == UNKNOWN) {
+				unknownSources.add(sources.get(i));
+			}
+			if (targetIndexes[i] == UNKNOWN) {
+				unknownTargets.add(targets.get(i));
+			}
+			if (sourceIndexes[i] == finalIndex) {
+				throw new IllegalStateException(String.format(StateMachineBuilderImpl.ILLEGAL_TRANSITION_FROM_FINAL_STATE, describe(i)));
+			}
+			if (sourceIndexes[i] >= 0 && targetIndexes[i] >= 0) {
+				graph.addEdge(sourceIndexes[i], targetIndexes[i]);
+			}
+		}
+		Preconditions.checkState(unknownSources.isEmpty(), StateMachineBuilderImpl.UNKOWN_SOURCE_STATES_IN_TRANSITIONS, unknownSources);
+		Preconditions.checkState(unknownTargets.isEmpty(), StateMachineBuilderImpl.UNKOWN_TARGET_STATES_IN_TRANSITIONS, unknownTargets);
+
+		ForkJoinTask<BitSet> deadEndStatesTask = pool != null ? pool.submit(() -> graph.notReaching(finalIndex)) : null;
+		List<S> unreachableStates = StateGraph.select(graph.unreachableFrom(initialIndex), states);
+		BitSet deadEndStates = deadEndStatesTask != null ? deadEndStatesTask.join() : graph.notReaching(finalIndex);
+		Preconditions.checkState(unreachableStates.isEmpty(), StateMachineBuilderImpl.UNREACHABLE_STATES, unreachableStates);
+		Preconditions.checkState(deadEndStates.isEmpty(), StateMachineBuilderImpl.STATES_WITHOUT_PATH_TO_FINAL_STATE,
+				StateGraph.select(deadEndStates, states));
+	}
+
+	@SuppressWarnings("unchecked")
+	private StateMachineDefinition<S, E> createDefinition(int[] sourceIndexes, int[] targetIndexes, int initialIndex, int finalIndex) {
+		Class<?> stateEnumType = TransitionTable.commonEnumType(states);
+		Class<?> eventEnumType = TransitionTable.commonEnumType(events);
+		TransitionTableBuilder<S, E> tableBuilder = TransitionTableBuilder.create(states.size(), stateEnumType, eventEnumType);
+		TransitionTable<S, E> transitionTable = tableBuilder.getTable();
+		StateMachineOptions definitionOptions = options.toOptions();
+		boolean useOrdinals = stateEnumType != null && eventEnumType != null;
+
+		List<CompiledState<S, E>> compiledStates = new ArrayList<>(states.size());
+		Map<S, CompiledState<S, E>> compiledStatesById = new LinkedHashMap<>(states.size() * 2);
+		for (S state: states) {
+			int index = useOrdinals ? ((Enum<?>) state).ordinal() : compiledStates.size();
+			CompiledState<S, E> compiledState = new CompiledState<>(state, index, new StateAction[0], Collections.<E>emptySet(), 0, null);
+			compiledState.setPath(new CompiledState[] {compiledState});
+			compiledState.setTransitionTable(transitionTable);
+			compiledStates.add(compiledState);
+			compiledStatesById.put(state, compiledState);
+		}
+
+		TransitionAction<S, E>[] noActions = new TransitionAction[0];
+		List<CompiledTransition<S, E>> compiledTransitions = new ArrayList<>(sourceIndexes.length);
+		for (int i = 0; i < sourceIndexes.length; i++) {
+			boolean external = targetIndexes[i] != INTERNAL;
+			CompiledTransition<S, E> transition = new CompiledTransition<>(external, sources.get(i), targets.get(i), events.get(i), guards.get(i), 0,
+					noActions, external ? compiledStates.get(targetIndexes[i]) : null, -1);
+			tableBuilder.addTransition(compiledStates.get(sourceIndexes[i]).getIndex(), transition.getEvent(), transition);
+			compiledTransitions.add(transition);
+		}
+
+		StateMachineMetrics metrics = definitionOptions.isCollectMetrics()
+				? StateMachineBuilderImpl.createMetrics(compiledStates, compiledTransitions) : null;
+		StateMachineDispatcher<S, E> dispatcher = definitionOptions.isSpecializeDispatch()
+				? DispatcherGenerator.generate(compiledStates, compiledTransitions) : null;
+		for (CompiledState<S, E> compiledState: compiledStates) {
+			compiledState.setDispatcher(dispatcher);
+		}
+
+		if (definitionOptions.isAdaptTransitionsOrder()) {
+			transitionTable = new AdaptiveTransitionTable<>(transitionTable, compiledStates, new LinkedHashSet<>(events));
+			for (CompiledState<S, E> compiledState: compiledStates) {
+				compiledState.setTransitionTable(transitionTable);
+			}
+		}
+
+		DeferredEventsIndex<E> deferredEventsIndex = new DeferredEventsIndex<>(Collections.<E>emptySet(), eventEnumType);
+		for (CompiledState<S, E> compiledState: compiledStates) {
+			compiledState.initReplayableDeferredEvents(deferredEventsIndex);
+		}
+
+		return new StateMachineDefinitionImpl<>(compiledStates.get(initialIndex), compiledStates.get(finalIndex), compiledStatesById,
+				transitionTable, deferredEventsIndex, ContextLayout.EMPTY, Collections.<StateMachineStartAction<S, E>>emptySet(),
+				Collections.<StateMachineStopAction<S, E>>emptySet(), definitionOptions, metrics, dispatcher);
+	}
+
+	private String describe(int transition) {
+		return sources.get(transition) + " -" + events.get(transition) + "-> "
+				+ (targets.get(transition) != null ? String.valueOf(targets.get(transition)) : "(internal)");
+	}
+
+	/**
+	 * Сопоставляет состояниям переходов их номера. В параллельном режиме диапазон делится пополам до {@link #PARALLEL_CHUNK_SIZE}
+	 * переходов; задачи пишут в непересекающиеся участки общих массивов.
+	 */
+	private final class IndexesTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Map<S, Integer> stateIndexes;
+		private final int[] sourceIndexes;
+		private final int[] targetIndexes;
+		private final int from;
+		private final int to;
+
+		IndexesTask(Map<S, Integer> stateIndexes, int[] sourceIndexes, int[] targetIndexes, int from, int to) {
+			this.stateIndexes = stateIndexes;
+			this.sourceIndexes = sourceIndexes;
+			this.targetIndexes = targetIndexes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (pool != null && to - from > PARALLEL_CHUNK_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new IndexesTask(stateIndexes, sourceIndexes, targetIndexes, from, middle),
+						new IndexesTask(stateIndexes, sourceIndexes, targetIndexes, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				sourceIndexes[i] = indexOf(sources.get(i));
+				S target = targets.get(i);
+				targetIndexes[i] = target != null ? indexOf(target) : INTERNAL;
+			}
+		}
+
+		private int indexOf(S state) {
+			Integer index = stateIndexes.get(state);
+			return index != null ? index : UNKNOWN;
+		}
+
+	}
+
+}
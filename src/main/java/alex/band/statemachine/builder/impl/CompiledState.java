@@ -0,0 +1,198 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.state.StateImpl;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.Transition;
+
+/**
+ * Неизменяемое представление состояния {@link State}, входящее в состав {@link StateMachineDefinitionImpl}.
+ *
+ * <p>Создается из конфигурации {@link StateImpl} в момент построения описания и разделяется всеми экземплярами конечного автомата.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class CompiledState<S, E> implements State<S, E> {
+
+	private final S stateId;
+	private final int index;
+	private final StateAction<S, E>[] actions;
+	private final ImmutableSet<E> deferredEvents;
+	private final long timeoutNanos;
+	private final E timeoutEvent;
+	private TransitionTable<S, E> transitionTable;
+	private StateMachineDispatcher<S, E> dispatcher;
+	private CompiledState<S, E>[] path;
+	private boolean composite;
+	private int[] replayableDeferredEvents;
+
+	@SuppressWarnings("unchecked")
+	CompiledState(StateImpl<S, E> state, int index) {
+		this(state.getId(), index, state.getActions().toArray(new StateAction[0]), state.getDeferredEvents(),
+				state.getTimeout().isPresent() ? state.getTimeout().get().toNanos() : 0, state.getTimeoutEvent());
+	}
+
+	CompiledState(S stateId, int index, StateAction<S, E>[] actions, Set<E> deferredEvents, long timeoutNanos, E timeoutEvent) {
+		this.stateId = stateId;
+		this.index = index;
+		this.actions = actions;
+		this.deferredEvents = ImmutableSet.copyOf(deferredEvents);
+		this.timeoutNanos = timeoutNanos;
+		this.timeoutEvent = timeoutEvent;
+	}
+
+	@Override
+	public Optional<Transition<S, E>> getSuitableTransition(StateMachineMessage<E> message, StateMachineDetails<S, E> context) {
+		return Optional.<Transition<S, E>>fromNullable(findTransition(message, context));
+	}
+
+	/**
+	 * Возвращает первый переход, {@link Guard} которого разрешает обработку сообщения, либо {@code null}.
+	 */
+	CompiledTransition<S, E> findTransition(StateMachineMessage<E> message, StateMachineDetails<S, E> context) {
+		CompiledTransition<S, E>[] candidates = transitionTable.getTransitions(index, message.getEvent());
+		for (int i = 0; i < candidates.length; i++) {
+			boolean allowed = dispatcher == null ? candidates[i].isAllowed(message, context)
+					: dispatcher.evaluateGuard(candidates[i].getDispatchIndex(), message, context);
+			if (allowed) {
+				transitionTable.onTransitionSelected(candidates, i);
+				return candidates[i];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void onEnter(StateMachineDetails<S, E> context) {
+		if (dispatcher != null) {
+			dispatcher.enter(index, context);
+			return;
+		}
+		for (StateAction<S, E> action: actions) {
+			action.onEnter(context);
+		}
+	}
+
+	@Override
+	public void onExit(StateMachineDetails<S, E> context) {
+		if (dispatcher != null) {
+			dispatcher.exit(index, context);
+			return;
+		}
+		for (StateAction<S, E> action: actions) {
+			action.onExit(context);
+		}
+	}
+
+	@Override
+	public S getId() {
+		return stateId;
+	}
+
+	@Override
+	public boolean canBeDeferred(StateMachineMessage<E> message) {
+		return transitionTable.isDeferred(index, message.getEvent());
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledState [stateId=" + stateId + ", deferredEvents=" + deferredEvents + "]";
+	}
+
+	int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Действия состояния в виде массива.
+	 */
+	StateAction<S, E>[] getActionsArray() {
+		return actions;
+	}
+
+	Set<E> getDeferredEvents() {
+		return deferredEvents;
+	}
+
+	/**
+	 * Тайм-аут состояния в наносекундах; {@code 0} - тайм-аут не задан.
+	 */
+	long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	E getTimeoutEvent() {
+		return timeoutEvent;
+	}
+
+	/**
+	 * Цепочка вложенных друг в друга состояний от корневого предка до этого состояния включительно.
+	 * Для состояния без родителя содержит только его само.
+	 */
+	CompiledState<S, E>[] getPath() {
+		return path;
+	}
+
+	void setPath(CompiledState<S, E>[] path) {
+		this.path = path;
+	}
+
+	/**
+	 * Глубина вложенности: {@code 0} - состояние без родителя.
+	 */
+	int getDepth() {
+		return path.length - 1;
+	}
+
+	/**
+	 * {@code True} - если в состояние вложены другие состояния. Составное состояние не бывает текущим.
+	 */
+	boolean isComposite() {
+		return composite;
+	}
+
+	void setComposite(boolean composite) {
+		this.composite = composite;
+	}
+
+	void setTransitionTable(TransitionTable<S, E> transitionTable) {
+		this.transitionTable = transitionTable;
+	}
+
+	/**
+	 * Задает сгенерированный диспетчер описания, через который вызываются {@code Guard} переходов и действия состояния.
+	 */
+	void setDispatcher(StateMachineDispatcher<S, E> dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Номера ({@link DeferredEventsIndex}) отложенных событий, которые принимаются этим состоянием: у состояния есть переходы
+	 * по событию и событие в нем не откладывается. Только такие события извлекаются из очереди после входа в состояние.
+	 */
+	int[] getReplayableDeferredEvents() {
+		return replayableDeferredEvents;
+	}
+
+	void initReplayableDeferredEvents(DeferredEventsIndex<E> deferredEventsIndex) {
+		int[] eventIndexes = new int[deferredEventsIndex.size()];
+		int count = 0;
+		for (int i = 0; i < deferredEventsIndex.size(); i++) {
+			E event = deferredEventsIndex.getEvent(i);
+			if (!transitionTable.isDeferred(index, event) && transitionTable.getTransitions(index, event).length > 0) {
+				eventIndexes[count++] = i;
+			}
+		}
+		replayableDeferredEvents = Arrays.copyOf(eventIndexes, count);
+	}
+
+}
@@ -0,0 +1,193 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.Transition;
+import alex.band.statemachine.transition.TransitionAction;
+import alex.band.statemachine.transition.TransitionImpl;
+
+/**
+ * Неизменяемое представление перехода {@link Transition}, входящее в состав {@link StateMachineDefinitionImpl}.
+ *
+ * <p>В отличие от {@link TransitionImpl} хранит ссылку на уже разрешенное целевое состояние {@link CompiledState}
+ * (для составного целевого состояния - на его стартовое вложенное состояние) и глубину ближайшего общего предка источника
+ * и цели: при внешнем переходе покидаются и заново входятся только состояния глубже этого предка.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class CompiledTransition<S, E> implements Transition<S, E> {
+
+	private final boolean external;
+	private final S source;
+	private final S target;
+	private final E event;
+	private final Guard<S, E> guard;
+	private final int priority;
+	private final ImmutableSet<TransitionAction<S, E>> actions;
+	private final TransitionAction<S, E>[] actionsArray;
+	private final CompiledState<S, E> targetState;
+	private final int commonAncestorDepth;
+
+	private int candidatesIndex = -1;
+	private int metricsIndex = -1;
+	private int dispatchIndex = -1;
+	private long selectionsCount;
+
+	@SuppressWarnings("unchecked")
+	CompiledTransition(Transition<S, E> transition, CompiledState<S, E> targetState, int commonAncestorDepth) {
+		this(transition.isExternal(), transition.getSource(), transition.getTarget().orNull(), transition.getEvent(), transition.getGuard().orNull(),
+				transition.getPriority(), transition.getActions().toArray(new TransitionAction[0]), targetState, commonAncestorDepth);
+	}
+
+	/**
+	 * @param target - объявленное целевое состояние; {@code null} - переход внутренний
+	 * @param targetState - разрешенное вложенное целевое состояние либо {@code null} для внутреннего перехода
+	 */
+	@SuppressWarnings("unchecked")
+	CompiledTransition(boolean external, S source, S target, E event, Guard<S, E> guard, int priority, TransitionAction<S, E>[] actions,
+			CompiledState<S, E> targetState, int commonAncestorDepth) {
+		this.external = external;
+		this.source = source;
+		this.target = target;
+		this.event = event;
+		this.guard = guard;
+		this.priority = priority;
+		this.actions = ImmutableSet.copyOf(actions);
+		this.actionsArray = this.actions.toArray(new TransitionAction[this.actions.size()]);
+		this.targetState = targetState;
+		this.commonAncestorDepth = commonAncestorDepth;
+	}
+
+	/**
+	 * Копия перехода с собственным порядком в {@link AdaptiveTransitionTable}: унаследованный переход, развернутый
+	 * в таблицу вложенного состояния.
+	 */
+	CompiledTransition(CompiledTransition<S, E> transition) {
+		this.external = transition.external;
+		this.source = transition.source;
+		this.target = transition.target;
+		this.event = transition.event;
+		this.guard = transition.guard;
+		this.priority = transition.priority;
+		this.actions = transition.actions;
+		this.actionsArray = transition.actionsArray;
+		this.targetState = transition.targetState;
+		this.commonAncestorDepth = transition.commonAncestorDepth;
+		this.metricsIndex = transition.metricsIndex;
+		this.dispatchIndex = transition.dispatchIndex;
+	}
+
+	@Override
+	public S getSource() {
+		return source;
+	}
+
+	@Override
+	public Optional<S> getTarget() {
+		return Optional.fromNullable(target);
+	}
+
+	@Override
+	public E getEvent() {
+		return event;
+	}
+
+	@Override
+	public Optional<Guard<S, E>> getGuard() {
+		return Optional.fromNullable(guard);
+	}
+
+	@Override
+	public Set<TransitionAction<S, E>> getActions() {
+		return actions;
+	}
+
+	@Override
+	public boolean isExternal() {
+		return external;
+	}
+
+	@Override
+	public int getPriority() {
+		return priority;
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledTransition [external=" + external + ", source=" + source + ", target=" + target + ", event=" + event + "]";
+	}
+
+	boolean isAllowed(StateMachineMessage<E> message, StateMachineDetails<S, E> context) {
+		return guard == null || guard.evaluate(message, context);
+	}
+
+	/**
+	 * Действия перехода в виде массива: обход не создает итераторов.
+	 */
+	TransitionAction<S, E>[] getActionsArray() {
+		return actionsArray;
+	}
+
+	CompiledState<S, E> getTargetState() {
+		return targetState;
+	}
+
+	/**
+	 * Глубина ближайшего общего предка источника и цели перехода; {@code -1} - общего предка нет.
+	 */
+	int getCommonAncestorDepth() {
+		return commonAncestorDepth;
+	}
+
+	/**
+	 * Номер набора переходов-кандидатов в {@link AdaptiveTransitionTable} либо {@code -1}, если порядок кандидатов не адаптируется.
+	 */
+	int getCandidatesIndex() {
+		return candidatesIndex;
+	}
+
+	void setCandidatesIndex(int candidatesIndex) {
+		this.candidatesIndex = candidatesIndex;
+	}
+
+	/**
+	 * Номер перехода в {@link alex.band.statemachine.metrics.StateMachineMetrics} либо {@code -1}, если метрики не собираются.
+	 */
+	int getMetricsIndex() {
+		return metricsIndex;
+	}
+
+	void setMetricsIndex(int metricsIndex) {
+		this.metricsIndex = metricsIndex;
+	}
+
+	/**
+	 * Номер перехода в сгенерированном {@link StateMachineDispatcher} либо {@code -1}, если диспетчер не создавался.
+	 */
+	int getDispatchIndex() {
+		return dispatchIndex;
+	}
+
+	void setDispatchIndex(int dispatchIndex) {
+		this.dispatchIndex = dispatchIndex;
+	}
+
+	/**
+	 * Увеличивает и возвращает число выборов перехода. Счетчик не синхронизируется и при одновременном использовании
+	 * описания из нескольких потоков приблизителен.
+	 */
+	long incrementSelectionsCount() {
+		return ++selectionsCount;
+	}
+
+	long getSelectionsCount() {
+		return selectionsCount;
+	}
+
+}
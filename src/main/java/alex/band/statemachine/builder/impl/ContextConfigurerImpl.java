@@ -0,0 +1,50 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.builder.ContextConfigurer;
+import alex.band.statemachine.context.ContextKey;
+import alex.band.statemachine.context.ContextLayout;
+import alex.band.statemachine.context.IntKey;
+import alex.band.statemachine.context.LongKey;
+
+/**
+ * Реализация {@link ContextConfigurer}
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class ContextConfigurerImpl<S, E> implements ContextConfigurer<S, E> {
+
+	private final Set<ContextKey<?>> objectKeys = new LinkedHashSet<>();
+	private final Set<IntKey> intKeys = new LinkedHashSet<>();
+	private final Set<LongKey> longKeys = new LinkedHashSet<>();
+
+	@Override
+	public ContextConfigurer<S, E> withKey(ContextKey<?> key) {
+		objectKeys.add(Preconditions.checkNotNull(key));
+		return this;
+	}
+
+	@Override
+	public ContextConfigurer<S, E> withKey(IntKey key) {
+		intKeys.add(Preconditions.checkNotNull(key));
+		return this;
+	}
+
+	@Override
+	public ContextConfigurer<S, E> withKey(LongKey key) {
+		longKeys.add(Preconditions.checkNotNull(key));
+		return this;
+	}
+
+	ContextLayout toLayout() {
+		if (objectKeys.isEmpty() && intKeys.isEmpty() && longKeys.isEmpty()) {
+			return ContextLayout.EMPTY;
+		}
+		return new ContextLayout(objectKeys, intKeys, longKeys);
+	}
+
+}
@@ -0,0 +1,71 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Плотная нумерация событий, которые откладываются хотя бы в одном состоянии описания {@link StateMachineDefinitionImpl}.
+ *
+ * <p>Номер события используется как индекс цепочки в {@link DeferredEventsQueue}. Для событий-перечислений номер вычисляется
+ * по порядковому номеру константы, для остальных - поиском в {@link HashMap}. Константы других перечислений не откладываются.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class DeferredEventsIndex<E> {
+
+	private final Object[] events;
+	private final Class<?> eventEnumType;
+	private final int[] indexesByOrdinal;
+	private final Map<E, Integer> indexesByEvent;
+
+	DeferredEventsIndex(Collection<E> deferrableEvents, Class<?> eventEnumType) {
+		events = deferrableEvents.toArray();
+		this.eventEnumType = eventEnumType;
+
+		if (eventEnumType != null) {
+			indexesByOrdinal = new int[eventEnumType.getEnumConstants().length];
+			Arrays.fill(indexesByOrdinal, -1);
+			indexesByEvent = null;
+		} else {
+			indexesByOrdinal = null;
+			indexesByEvent = new HashMap<>();
+		}
+
+		for (int i = 0; i < events.length; i++) {
+			@SuppressWarnings("unchecked")
+			E event = (E) events[i];
+			if (indexesByOrdinal != null) {
+				indexesByOrdinal[((Enum<?>) event).ordinal()] = i;
+			} else {
+				indexesByEvent.put(event, i);
+			}
+		}
+	}
+
+	/**
+	 * Возвращает номер события либо {@code -1}, если событие не откладывается ни в одном состоянии.
+	 */
+	int indexOf(E event) {
+		if (event == null) {
+			return -1;
+		}
+		if (indexesByOrdinal != null) {
+			boolean ownEvent = event instanceof Enum && ((Enum<?>) event).getDeclaringClass() == eventEnumType;
+			return ownEvent ? indexesByOrdinal[((Enum<?>) event).ordinal()] : -1;
+		}
+		Integer index = indexesByEvent.get(event);
+		return index == null ? -1 : index;
+	}
+
+	@SuppressWarnings("unchecked")
+	E getEvent(int index) {
+		return (E) events[index];
+	}
+
+	int size() {
+		return events.length;
+	}
+
+}
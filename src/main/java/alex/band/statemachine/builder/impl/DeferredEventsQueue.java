@@ -0,0 +1,184 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.builder.DeferredEventsOverflowPolicy;
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Ограниченная очередь отложенных сообщений экземпляра {@link StateMachineImpl}.
+ *
+ * <p>Сообщения хранятся в фиксированном наборе ячеек, выделяемом один раз. Ячейки связаны в две структуры:
+ * общий список в порядке откладывания (для вытеснения самого раннего сообщения) и отдельная цепочка для каждого
+ * события из {@link DeferredEventsIndex}. Поэтому выбор самого раннего сообщения среди заданных событий
+ * ({@link #poll(int[])}) зависит только от числа этих событий, но не от длины очереди.
+ *
+ * <p>Все операции выполняются за постоянное время и не создают объектов.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class DeferredEventsQueue<E> {
+
+	private static final int NONE = -1;
+
+	private final StateMachineMessage<E>[] messages;
+	private final int[] eventIndexes;
+	private final long[] sequences;
+	private final int[] nextInChain;
+	private final int[] previousInOrder;
+	private final int[] nextInOrder;
+
+	private final int[] chainHeads;
+	private final int[] chainTails;
+
+	private int oldest = NONE;
+	private int newest = NONE;
+	private int freeSlot;
+	private int size;
+	private long nextSequence;
+
+	@SuppressWarnings("unchecked")
+	DeferredEventsQueue(int capacity, int eventsCount) {
+		messages = new StateMachineMessage[capacity];
+		eventIndexes = new int[capacity];
+		sequences = new long[capacity];
+		nextInChain = new int[capacity];
+		previousInOrder = new int[capacity];
+		nextInOrder = new int[capacity];
+		chainHeads = new int[eventsCount];
+		chainTails = new int[eventsCount];
+		clear();
+	}
+
+	/**
+	 * Добавляет сообщение в конец очереди.
+	 *
+	 * @return {@code false} - если очередь заполнена и политика {@link DeferredEventsOverflowPolicy#REJECT} запретила добавление
+	 *
+	 * @throws IllegalStateException если очередь заполнена и задана политика {@link DeferredEventsOverflowPolicy#FAIL}
+	 */
+	boolean offer(int eventIndex, StateMachineMessage<E> message, DeferredEventsOverflowPolicy overflowPolicy) {
+		if (size == messages.length) {
+			switch (overflowPolicy) {
+			case REJECT:
+				return false;
+			case DROP_OLDEST:
+				remove(oldest);
+				break;
+			default:
+				Preconditions.checkState(false, "Deferred events queue is full (capacity = %s).", messages.length);
+			}
+		}
+
+		int slot = freeSlot;
+		freeSlot = nextInChain[slot];
+
+		messages[slot] = message;
+		eventIndexes[slot] = eventIndex;
+		sequences[slot] = nextSequence++;
+		nextInChain[slot] = NONE;
+
+		if (chainTails[eventIndex] == NONE) {
+			chainHeads[eventIndex] = slot;
+		} else {
+			nextInChain[chainTails[eventIndex]] = slot;
+		}
+		chainTails[eventIndex] = slot;
+
+		previousInOrder[slot] = newest;
+		nextInOrder[slot] = NONE;
+		if (newest == NONE) {
+			oldest = slot;
+		} else {
+			nextInOrder[newest] = slot;
+		}
+		newest = slot;
+
+		size++;
+		return true;
+	}
+
+	/**
+	 * Извлекает самое раннее сообщение среди заданных событий либо возвращает {@code null}, если таких сообщений нет.
+	 */
+	StateMachineMessage<E> poll(int[] eventIndexes) {
+		int earliest = NONE;
+		for (int eventIndex: eventIndexes) {
+			int head = chainHeads[eventIndex];
+			if (head != NONE && (earliest == NONE || sequences[head] < sequences[earliest])) {
+				earliest = head;
+			}
+		}
+		if (earliest == NONE) {
+			return null;
+		}
+
+		StateMachineMessage<E> message = messages[earliest];
+		remove(earliest);
+		return message;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Добавляет все сообщения очереди в порядке откладывания в заданный список.
+	 */
+	void copyTo(List<StateMachineMessage<E>> target) {
+		for (int slot = oldest; slot != NONE; slot = nextInOrder[slot]) {
+			target.add(messages[slot]);
+		}
+	}
+
+	void clear() {
+		Arrays.fill(messages, null);
+		Arrays.fill(chainHeads, NONE);
+		Arrays.fill(chainTails, NONE);
+		for (int i = 0; i < nextInChain.length; i++) {
+			nextInChain[i] = i + 1 < nextInChain.length ? i + 1 : NONE;
+		}
+		freeSlot = 0;
+		oldest = NONE;
+		newest = NONE;
+		size = 0;
+	}
+
+	/**
+	 * Удаляет ячейку из очереди. Ячейка всегда является головой цепочки своего события: сообщения удаляются
+	 * либо как самые ранние в очереди, либо как самые ранние для события.
+	 */
+	private void remove(int slot) {
+		int eventIndex = eventIndexes[slot];
+		chainHeads[eventIndex] = nextInChain[slot];
+		if (chainHeads[eventIndex] == NONE) {
+			chainTails[eventIndex] = NONE;
+		}
+
+		int previous = previousInOrder[slot];
+		int next = nextInOrder[slot];
+		if (previous == NONE) {
+			oldest = next;
+		} else {
+			nextInOrder[previous] = next;
+		}
+		if (next == NONE) {
+			newest = previous;
+		} else {
+			previousInOrder[next] = previous;
+		}
+
+		messages[slot] = null;
+		nextInChain[slot] = freeSlot;
+		freeSlot = slot;
+		size--;
+	}
+
+}
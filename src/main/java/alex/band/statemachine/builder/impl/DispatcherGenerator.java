@@ -0,0 +1,420 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Генератор классов {@link StateMachineDispatcher}, специализированных для одного описания конечного автомата.
+ *
+ * <p>Каждый метод сгенерированного класса - {@code tableswitch} по номеру перехода или состояния, в ветвях которого
+ * {@code Guard} и действия вызываются отдельными инструкциями {@code invokeinterface}. У каждой инструкции собственный профиль
+ * типов, поэтому JIT-компилятор видит в ней один класс и встраивает его вызов, даже если в JVM работает множество описаний
+ * с разными {@code Guard} и действиями. Каждый класс загружается собственным загрузчиком и выгружается вместе с описанием.
+ *
+ * <p>Класс генерируется в формате Java 5 (версия 49), который проверяется без таблиц {@code StackMapTable}. Если длина
+ * хотя бы одного метода превышает {@link #MAX_METHOD_LENGTH}, диспетчер не создается: такой метод не компилировался бы JIT.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+final class DispatcherGenerator {
+
+	/**
+	 * Предельная длина байт-кода метода, который компилирует JIT-компилятор HotSpot ({@code -XX:HugeMethodLimit}).
+	 */
+	static final int MAX_METHOD_LENGTH = 8000;
+
+	private static final String CLASS_NAME_PREFIX = DispatcherGenerator.class.getPackage().getName() + ".GeneratedDispatcher$";
+	private static final AtomicInteger NEXT_CLASS_NUMBER = new AtomicInteger();
+
+	private static final int CLASS_FILE_VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ICONST_0 = 0x03;
+	private static final int ICONST_1 = 0x04;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int ILOAD_1 = 0x1b;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c;
+	private static final int AALOAD = 0x32;
+	private static final int TABLESWITCH = 0xaa;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int PUTFIELD = 0xb5;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKEINTERFACE = 0xb9;
+
+	private static final String MESSAGE = descriptor(StateMachineMessage.class);
+	private static final String DETAILS = descriptor(StateMachineDetails.class);
+
+	private DispatcherGenerator() {
+	}
+
+	/**
+	 * Назначает переходам номера {@link CompiledTransition#setDispatchIndex(int)} и создает диспетчер описания.
+	 * Состояния диспетчеризуются по номерам {@link CompiledState#getIndex()}.
+	 *
+	 * @return диспетчер либо {@code null}, если описание слишком велико для специализации
+	 */
+	@SuppressWarnings("unchecked")
+	static <S, E> StateMachineDispatcher<S, E> generate(Collection<CompiledState<S, E>> states, List<CompiledTransition<S, E>> transitions) {
+		List<Guard<S, E>> guards = new ArrayList<>();
+		List<TransitionAction<S, E>> actions = new ArrayList<>();
+		int[][] guardSlots = new int[transitions.size()][];
+		int[][] actionSlots = new int[transitions.size()][];
+		for (int i = 0; i < transitions.size(); i++) {
+			CompiledTransition<S, E> transition = transitions.get(i);
+			transition.setDispatchIndex(i);
+
+			guards.add(transition.getGuard().orNull());
+			guardSlots[i] = transition.getGuard().isPresent() ? new int[] {i} : new int[0];
+			actionSlots[i] = addAll(actions, transition.getActionsArray());
+		}
+
+		int statesCount = 0;
+		for (CompiledState<S, E> state: states) {
+			statesCount = Math.max(statesCount, state.getIndex() + 1);
+		}
+		List<StateAction<S, E>> stateActions = new ArrayList<>();
+		int[][] stateActionSlots = new int[statesCount][0];
+		for (CompiledState<S, E> state: states) {
+			stateActionSlots[state.getIndex()] = addAll(stateActions, state.getActionsArray());
+		}
+
+		String className = CLASS_NAME_PREFIX + NEXT_CLASS_NUMBER.incrementAndGet();
+		byte[] classBytes = new ClassWriter(className.replace('.', '/')).write(guardSlots, actionSlots, stateActionSlots);
+		if (classBytes == null) {
+			return null;
+		}
+
+		try {
+			Class<?> dispatcherClass = new DispatcherClassLoader().define(className, classBytes);
+			return (StateMachineDispatcher<S, E>) dispatcherClass.getConstructor(Guard[].class, TransitionAction[].class, StateAction[].class)
+					.newInstance(guards.toArray(new Guard[guards.size()]), actions.toArray(new TransitionAction[actions.size()]),
+							stateActions.toArray(new StateAction[stateActions.size()]));
+
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new IllegalStateException("Can't create dispatcher " + className, e);
+		}
+	}
+
+	private static <T> int[] addAll(List<T> target, T[] values) {
+		int[] slots = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			slots[i] = target.size();
+			target.add(values[i]);
+		}
+		return slots;
+	}
+
+	private static String internalName(Class<?> type) {
+		return type.getName().replace('.', '/');
+	}
+
+	private static String descriptor(Class<?> type) {
+		return "L" + internalName(type) + ";";
+	}
+
+	/**
+	 * Запись класса диспетчера.
+	 */
+	private static final class ClassWriter {
+
+		private final ConstantPool constantPool = new ConstantPool();
+		private final int thisClass;
+		private final int guardsField;
+		private final int actionsField;
+		private final int stateActionsField;
+
+		ClassWriter(String internalName) {
+			this.thisClass = constantPool.classRef(internalName);
+			this.guardsField = constantPool.fieldRef(thisClass, "guards", "[" + descriptor(Guard.class));
+			this.actionsField = constantPool.fieldRef(thisClass, "actions", "[" + descriptor(TransitionAction.class));
+			this.stateActionsField = constantPool.fieldRef(thisClass, "stateActions", "[" + descriptor(StateAction.class));
+		}
+
+		/**
+		 * @return байты класса либо {@code null}, если длина метода превышает {@link DispatcherGenerator#MAX_METHOD_LENGTH}
+		 */
+		byte[] write(int[][] guardSlots, int[][] actionSlots, int[][] stateActionSlots) {
+			int evaluate = constantPool.interfaceMethodRef(Guard.class, "evaluate", "(" + MESSAGE + DETAILS + ")Z");
+			int execute = constantPool.interfaceMethodRef(TransitionAction.class, "execute", "(" + MESSAGE + DETAILS + ")V");
+			int onEnter = constantPool.interfaceMethodRef(StateAction.class, "onEnter", "(" + DETAILS + ")V");
+			int onExit = constantPool.interfaceMethodRef(StateAction.class, "onExit", "(" + DETAILS + ")V");
+
+			List<byte[]> methods = new ArrayList<>();
+			methods.add(method("<init>", "([" + descriptor(Guard.class) + "[" + descriptor(TransitionAction.class) + "["
+					+ descriptor(StateAction.class) + ")V", 2, 4, constructorCode()));
+			methods.add(method("evaluateGuard", "(I" + MESSAGE + DETAILS + ")Z", 3, 4,
+					switchCode(guardSlots, guardsField, evaluate, 2, IRETURN, ICONST_1, IRETURN)));
+			methods.add(method("executeActions", "(I" + MESSAGE + DETAILS + ")V", 3, 4,
+					switchCode(actionSlots, actionsField, execute, 2, RETURN, RETURN)));
+			methods.add(method("enter", "(I" + DETAILS + ")V", 2, 3, switchCode(stateActionSlots, stateActionsField, onEnter, 1, RETURN, RETURN)));
+			methods.add(method("exit", "(I" + DETAILS + ")V", 2, 3, switchCode(stateActionSlots, stateActionsField, onExit, 1, RETURN, RETURN)));
+			for (byte[] method: methods) {
+				if (method == null) {
+					return null;
+				}
+			}
+
+			int superClass = constantPool.classRef(internalName(Object.class));
+			int dispatcherInterface = constantPool.classRef(internalName(StateMachineDispatcher.class));
+			int[] fieldNames = {constantPool.utf8("guards"), constantPool.utf8("actions"), constantPool.utf8("stateActions")};
+			int[] fieldDescriptors = {constantPool.utf8("[" + descriptor(Guard.class)), constantPool.utf8("[" + descriptor(TransitionAction.class)),
+					constantPool.utf8("[" + descriptor(StateAction.class))};
+
+			ByteArrayDataOutput out = ByteStreams.newDataOutput();
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_FILE_VERSION);
+			constantPool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(dispatcherInterface);
+
+			out.writeShort(fieldNames.length);
+			for (int i = 0; i < fieldNames.length; i++) {
+				out.writeShort(ACC_PRIVATE | ACC_FINAL);
+				out.writeShort(fieldNames[i]);
+				out.writeShort(fieldDescriptors[i]);
+				out.writeShort(0);
+			}
+
+			out.writeShort(methods.size());
+			for (byte[] method: methods) {
+				out.write(method);
+			}
+			out.writeShort(0);
+			return out.toByteArray();
+		}
+
+		private byte[] constructorCode() {
+			ByteArrayDataOutput code = ByteStreams.newDataOutput();
+			code.writeByte(ALOAD_0);
+			code.writeByte(INVOKESPECIAL);
+			code.writeShort(constantPool.methodRef(internalName(Object.class), "<init>", "()V"));
+			int[] fields = {guardsField, actionsField, stateActionsField};
+			for (int i = 0; i < fields.length; i++) {
+				code.writeByte(ALOAD_0);
+				code.writeByte(ALOAD_1 + i);
+				code.writeByte(PUTFIELD);
+				code.writeShort(fields[i]);
+			}
+			code.writeByte(RETURN);
+			return code.toByteArray();
+		}
+
+		/**
+		 * Код {@code tableswitch} по первому аргументу метода: ветвь {@code key} вызывает метод {@code method} у элементов
+		 * массива {@code field} с номерами {@code slotsByKey[key]}, передавая ему {@code argumentsCount} следующих аргументов,
+		 * и завершается инструкцией {@code caseEnd}. Пустые ветви и значения вне диапазона выполняют {@code defaultCode}.
+		 *
+		 * @return код либо {@code null}, если он длиннее {@link DispatcherGenerator#MAX_METHOD_LENGTH}
+		 */
+		private byte[] switchCode(int[][] slotsByKey, int field, int method, int argumentsCount, int caseEnd, int ...defaultCode) {
+			int casesCount = 0;
+			for (int key = 0; key < slotsByKey.length; key++) {
+				if (slotsByKey[key].length > 0) {
+					casesCount = key + 1;
+				}
+			}
+
+			List<byte[]> cases = new ArrayList<>();
+			int switchLength = casesCount == 0 ? 0 : 1 + 1 + 2 + 12 + 4 * casesCount;
+			int bodiesLength = 0;
+			for (int key = 0; key < casesCount; key++) {
+				byte[] body = slotsByKey[key].length == 0 ? null : caseCode(slotsByKey[key], field, method, argumentsCount, caseEnd);
+				cases.add(body);
+				bodiesLength += body == null ? 0 : body.length;
+				if (switchLength + bodiesLength > MAX_METHOD_LENGTH) {
+					return null;
+				}
+			}
+
+			ByteArrayDataOutput code = ByteStreams.newDataOutput();
+			if (casesCount > 0) {
+				// iload_1 по смещению 0, tableswitch - по смещению 1, выравнивание до смещения 4
+				int defaultOffset = switchLength - 1 + bodiesLength;
+				code.writeByte(ILOAD_1);
+				code.writeByte(TABLESWITCH);
+				code.writeShort(0);
+				code.writeInt(defaultOffset);
+				code.writeInt(0);
+				code.writeInt(casesCount - 1);
+				int caseOffset = switchLength - 1;
+				for (byte[] body: cases) {
+					code.writeInt(body == null ? defaultOffset : caseOffset);
+					caseOffset += body == null ? 0 : body.length;
+				}
+				for (byte[] body: cases) {
+					if (body != null) {
+						code.write(body);
+					}
+				}
+			}
+			for (int opcode: defaultCode) {
+				code.writeByte(opcode);
+			}
+			return code.toByteArray();
+		}
+
+		private byte[] caseCode(int[] slots, int field, int method, int argumentsCount, int caseEnd) {
+			ByteArrayDataOutput code = ByteStreams.newDataOutput();
+			for (int slot: slots) {
+				code.writeByte(ALOAD_0);
+				code.writeByte(GETFIELD);
+				code.writeShort(field);
+				pushInt(code, slot);
+				code.writeByte(AALOAD);
+				for (int i = 0; i < argumentsCount; i++) {
+					code.writeByte(ALOAD_2 + i);
+				}
+				code.writeByte(INVOKEINTERFACE);
+				code.writeShort(method);
+				code.writeByte(argumentsCount + 1);
+				code.writeByte(0);
+			}
+			code.writeByte(caseEnd);
+			return code.toByteArray();
+		}
+
+		private static void pushInt(ByteArrayDataOutput code, int value) {
+			if (value <= 5) {
+				code.writeByte(ICONST_0 + value);
+			} else if (value <= Byte.MAX_VALUE) {
+				code.writeByte(BIPUSH);
+				code.writeByte(value);
+			} else {
+				code.writeByte(SIPUSH);
+				code.writeShort(value);
+			}
+		}
+
+		private byte[] method(String name, String descriptor, int maxStack, int maxLocals, byte[] code) {
+			if (code == null || code.length > MAX_METHOD_LENGTH) {
+				return null;
+			}
+			ByteArrayDataOutput out = ByteStreams.newDataOutput();
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(constantPool.utf8(name));
+			out.writeShort(constantPool.utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(constantPool.utf8("Code"));
+			out.writeInt(12 + code.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0);
+			out.writeShort(0);
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Пул констант класса. Одинаковые константы записываются один раз.
+	 */
+	private static final class ConstantPool {
+
+		private static final int CONSTANT_UTF8 = 1;
+		private static final int CONSTANT_CLASS = 7;
+		private static final int CONSTANT_FIELDREF = 9;
+		private static final int CONSTANT_METHODREF = 10;
+		private static final int CONSTANT_INTERFACE_METHODREF = 11;
+		private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+		private final ByteArrayDataOutput entries = ByteStreams.newDataOutput();
+		private final Map<String, Integer> indexes = new HashMap<>();
+
+		int utf8(String value) {
+			Integer index = indexes.get("utf8:" + value);
+			if (index == null) {
+				entries.writeByte(CONSTANT_UTF8);
+				entries.writeUTF(value);
+				index = register("utf8:" + value);
+			}
+			return index;
+		}
+
+		int classRef(String internalName) {
+			int name = utf8(internalName);
+			return reference(CONSTANT_CLASS, name, -1);
+		}
+
+		int fieldRef(int ownerClass, String name, String descriptor) {
+			return reference(CONSTANT_FIELDREF, ownerClass, nameAndType(name, descriptor));
+		}
+
+		int methodRef(String ownerInternalName, String name, String descriptor) {
+			return reference(CONSTANT_METHODREF, classRef(ownerInternalName), nameAndType(name, descriptor));
+		}
+
+		int interfaceMethodRef(Class<?> owner, String name, String descriptor) {
+			return reference(CONSTANT_INTERFACE_METHODREF, classRef(internalName(owner)), nameAndType(name, descriptor));
+		}
+
+		void writeTo(ByteArrayDataOutput out) {
+			out.writeShort(indexes.size() + 1);
+			out.write(entries.toByteArray());
+		}
+
+		private int nameAndType(String name, String descriptor) {
+			return reference(CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+		}
+
+		private int reference(int tag, int first, int second) {
+			String key = tag + ":" + first + ":" + second;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				entries.writeByte(tag);
+				entries.writeShort(first);
+				if (second >= 0) {
+					entries.writeShort(second);
+				}
+				index = register(key);
+			}
+			return index;
+		}
+
+		private int register(String key) {
+			int index = indexes.size() + 1;
+			indexes.put(key, index);
+			return index;
+		}
+	}
+
+	/**
+	 * Собственный загрузчик каждого сгенерированного класса: класс выгружается, как только становится недостижимым описание.
+	 */
+	private static final class DispatcherClassLoader extends ClassLoader {
+
+		DispatcherClassLoader() {
+			super(StateMachineDispatcher.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] classBytes) {
+			return defineClass(name, classBytes, 0, classBytes.length);
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package alex.band.statemachine.builder.impl;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Плотная таблица диспетчеризации {@code [stateOrdinal][eventOrdinal]} для конечных автоматов,
+ * состояния и события которых заданы перечислениями.
+ *
+ * <p>Поиск переходов сводится к индексации массива: без вычисления хэшей, вызовов {@code equals()} и создания итераторов.
+ * Событие, не являющееся константой перечисления событий описания, не имеет переходов и не откладывается.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class EnumTransitionTable<S, E> extends TransitionTable<S, E> implements TransitionTableBuilder<S, E> {
+
+	private final Class<?> eventEnumType;
+	private final CompiledTransition<S, E>[][][] transitions;
+	private final boolean[][] deferredEvents;
+
+	@SuppressWarnings("unchecked")
+	EnumTransitionTable(int statesCount, Class<?> eventEnumType) {
+		int eventsCount = eventEnumType.getEnumConstants().length;
+		this.eventEnumType = eventEnumType;
+		transitions = new CompiledTransition[statesCount][eventsCount][];
+		deferredEvents = new boolean[statesCount][eventsCount];
+
+		for (CompiledTransition<S, E>[][] row: transitions) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = noTransitions();
+			}
+		}
+	}
+
+	@Override
+	CompiledTransition<S, E>[] getTransitions(int stateIndex, E event) {
+		int eventIndex = indexOf(event);
+		return eventIndex >= 0 ? transitions[stateIndex][eventIndex] : TransitionTable.<S, E>noTransitions();
+	}
+
+	@Override
+	boolean isDeferred(int stateIndex, E event) {
+		int eventIndex = indexOf(event);
+		return eventIndex >= 0 && deferredEvents[stateIndex][eventIndex];
+	}
+
+	@Override
+	public void addTransition(int stateIndex, E event, CompiledTransition<S, E> transition) {
+		int eventIndex = ordinalOf(event);
+		transitions[stateIndex][eventIndex] = append(transitions[stateIndex][eventIndex], transition);
+	}
+
+	@Override
+	public void addDeferredEvent(int stateIndex, E event) {
+		deferredEvents[stateIndex][ordinalOf(event)] = true;
+	}
+
+	@Override
+	public TransitionTable<S, E> getTable() {
+		return this;
+	}
+
+	/**
+	 * Номер константы перечисления событий описания либо {@code -1} для {@code null} и событий другого типа.
+	 */
+	private int indexOf(E event) {
+		if (event instanceof Enum && ((Enum<?>) event).getDeclaringClass() == eventEnumType) {
+			return ((Enum<?>) event).ordinal();
+		}
+		return -1;
+	}
+
+	private int ordinalOf(E event) {
+		int eventIndex = indexOf(event);
+		Preconditions.checkArgument(eventIndex >= 0, "Event doesn't belong to %s: %s", eventEnumType, event);
+		return eventIndex;
+	}
+
+}
@@ -41,6 +41,12 @@ public class ExternalTransitionConfigurerImpl<S, E> implements ExternalTransitio
 		return this;
 	}
 
+	@Override
+	public ExternalTransitionConfigurer<S, E> withPriority(int priority) {
+		transition.setPriority(priority);
+		return this;
+	}
+
 	@Override
 	public ExternalTransitionConfigurer<S, E> withAction(TransitionAction<S, E> action) {
 		transition.addAction(action);
@@ -0,0 +1,61 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Таблица диспетчеризации для произвольных типов идентификаторов событий.
+ *
+ * <p>Строка таблицы выбирается по индексу состояния, переходы внутри строки ищутся по событию за один поиск в {@link HashMap}.
+ * Строки создаются только для состояний, у которых есть переходы или отложенные события.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class HashTransitionTable<S, E> extends TransitionTable<S, E> implements TransitionTableBuilder<S, E> {
+
+	private final Map<E, CompiledTransition<S, E>[]>[] transitions;
+	private final Set<E>[] deferredEvents;
+
+	@SuppressWarnings("unchecked")
+	HashTransitionTable(int statesCount) {
+		transitions = new Map[statesCount];
+		deferredEvents = new Set[statesCount];
+	}
+
+	@Override
+	CompiledTransition<S, E>[] getTransitions(int stateIndex, E event) {
+		Map<E, CompiledTransition<S, E>[]> row = transitions[stateIndex];
+		CompiledTransition<S, E>[] candidates = row == null ? null : row.get(event);
+		return candidates == null ? TransitionTable.<S, E>noTransitions() : candidates;
+	}
+
+	@Override
+	boolean isDeferred(int stateIndex, E event) {
+		return deferredEvents[stateIndex] != null && deferredEvents[stateIndex].contains(event);
+	}
+
+	@Override
+	public void addTransition(int stateIndex, E event, CompiledTransition<S, E> transition) {
+		CompiledTransition<S, E>[] candidates = getTransitions(stateIndex, event);
+		if (transitions[stateIndex] == null) {
+			transitions[stateIndex] = new HashMap<>();
+		}
+		transitions[stateIndex].put(event, append(candidates, transition));
+	}
+
+	@Override
+	public void addDeferredEvent(int stateIndex, E event) {
+		if (deferredEvents[stateIndex] == null) {
+			deferredEvents[stateIndex] = new HashSet<>();
+		}
+		deferredEvents[stateIndex].add(event);
+	}
+
+	@Override
+	public TransitionTable<S, E> getTable() {
+		return this;
+	}
+
+}
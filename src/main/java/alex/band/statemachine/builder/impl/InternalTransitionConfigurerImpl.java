@@ -35,6 +35,12 @@ public class InternalTransitionConfigurerImpl<S, E> implements InternalTransitio
 		return this;
 	}
 
+	@Override
+	public InternalTransitionConfigurer<S, E> withPriority(int priority) {
+		transition.setPriority(priority);
+		return this;
+	}
+
 	@Override
 	public InternalTransitionConfigurer<S, E> withAction(TransitionAction<S, E> action) {
 		transition.addAction(action);
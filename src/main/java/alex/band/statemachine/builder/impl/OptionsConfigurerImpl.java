@@ -0,0 +1,96 @@
+package alex.band.statemachine.builder.impl;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.builder.DeferredEventsOverflowPolicy;
+import alex.band.statemachine.builder.OptionsConfigurer;
+import alex.band.statemachine.timer.TimingWheel;
+
+/**
+ * Реализация {@link OptionsConfigurer}
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class OptionsConfigurerImpl<S, E> implements OptionsConfigurer<S, E> {
+
+	public static final int DEFAULT_DEFERRED_EVENTS_CAPACITY = 64;
+
+	private boolean reuseEventMessages;
+	private boolean adaptTransitionsOrder;
+	private boolean collectMetrics;
+	private boolean specializeDispatch;
+	private int deferredEventsCapacity = DEFAULT_DEFERRED_EVENTS_CAPACITY;
+	private DeferredEventsOverflowPolicy deferredEventsOverflowPolicy = DeferredEventsOverflowPolicy.REJECT;
+	private TimingWheel timer;
+
+	@Override
+	public OptionsConfigurer<S, E> reuseEventMessages() {
+		reuseEventMessages = true;
+		return this;
+	}
+
+	@Override
+	public OptionsConfigurer<S, E> adaptTransitionsOrder() {
+		adaptTransitionsOrder = true;
+		return this;
+	}
+
+	@Override
+	public OptionsConfigurer<S, E> withDeferredEventsLimit(int capacity, DeferredEventsOverflowPolicy overflowPolicy) {
+		Preconditions.checkArgument(capacity > 0, "Deferred events capacity must be positive.");
+		deferredEventsCapacity = capacity;
+		deferredEventsOverflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+		return this;
+	}
+
+	@Override
+	public OptionsConfigurer<S, E> collectMetrics() {
+		collectMetrics = true;
+		return this;
+	}
+
+	@Override
+	public OptionsConfigurer<S, E> specializeDispatch() {
+		specializeDispatch = true;
+		return this;
+	}
+
+	@Override
+	public OptionsConfigurer<S, E> withTimer(TimingWheel timer) {
+		this.timer = Preconditions.checkNotNull(timer);
+		return this;
+	}
+
+	boolean isReuseEventMessages() {
+		return reuseEventMessages;
+	}
+
+	boolean isAdaptTransitionsOrder() {
+		return adaptTransitionsOrder;
+	}
+
+	boolean isCollectMetrics() {
+		return collectMetrics;
+	}
+
+	boolean isSpecializeDispatch() {
+		return specializeDispatch;
+	}
+
+	int getDeferredEventsCapacity() {
+		return deferredEventsCapacity;
+	}
+
+	DeferredEventsOverflowPolicy getDeferredEventsOverflowPolicy() {
+		return deferredEventsOverflowPolicy;
+	}
+
+	TimingWheel getTimer() {
+		return timer;
+	}
+
+	StateMachineOptions toOptions() {
+		return new StateMachineOptions(this);
+	}
+
+}
@@ -0,0 +1,96 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import alex.band.statemachine.OrthogonalStateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.builder.OrthogonalStateMachineBuilder;
+import alex.band.statemachine.context.ContextLayout;
+
+/**
+ * Реализация {@link OrthogonalStateMachineBuilder}
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class OrthogonalStateMachineBuilderImpl<S, E> implements OrthogonalStateMachineBuilder<S, E> {
+
+	static final String THERE_ARE_NO_REGIONS_DEFINED = "There are no Regions defined.";
+	static final String REGION_ALREADY_DEFINED = "Region with equal name already defined: %s";
+	static final String REGIONS_SHARE_CONTEXT_KEYS = "Regions %s and %s share context keys %s and can't be processed in parallel.";
+	static final String REGIONS_USE_DIFFERENT_TIMERS = "Regions %s and %s use different timers.";
+
+	private final Map<String, StateMachineDefinitionImpl<S, E>> regions = new LinkedHashMap<>();
+	private ForkJoinPool pool;
+
+	@Override
+	public OrthogonalStateMachineBuilder<S, E> withRegion(String name, StateMachineDefinition<S, E> definition) {
+		Preconditions.checkState(!regions.containsKey(name), REGION_ALREADY_DEFINED, name);
+		Preconditions.checkArgument(definition instanceof StateMachineDefinitionImpl, "Unsupported definition: %s", definition);
+		regions.put(name, (StateMachineDefinitionImpl<S, E>) definition);
+		return this;
+	}
+
+	@Override
+	public OrthogonalStateMachineBuilder<S, E> withParallelRegions(ForkJoinPool pool) {
+		this.pool = Preconditions.checkNotNull(pool);
+		return this;
+	}
+
+	@Override
+	public StateMachineFactory<S, E> buildFactory() {
+		Preconditions.checkState(!regions.isEmpty(), THERE_ARE_NO_REGIONS_DEFINED);
+
+		List<ContextLayout> layouts = new ArrayList<>();
+		for (StateMachineDefinitionImpl<S, E> definition: regions.values()) {
+			layouts.add(definition.getContextLayout());
+		}
+		validateTimers();
+		if (pool != null) {
+			validateIndependence();
+		}
+
+		return new OrthogonalStateMachineFactory<>(new ArrayList<>(regions.keySet()), new ArrayList<>(regions.values()),
+				ContextLayout.merge(layouts), regions.size() > 1 ? pool : null);
+	}
+
+	@Override
+	public OrthogonalStateMachine<S, E> build() {
+		return (OrthogonalStateMachine<S, E>) buildFactory().newStateMachine();
+	}
+
+	/**
+	 * Сообщения {@code schedule()} автомата планируются одним колесом таймеров для всех областей.
+	 */
+	private void validateTimers() {
+		List<String> names = new ArrayList<>(regions.keySet());
+		for (int i = 1; i < names.size(); i++) {
+			Preconditions.checkState(regions.get(names.get(i)).getOptions().getTimer() == regions.get(names.get(0)).getOptions().getTimer(),
+					REGIONS_USE_DIFFERENT_TIMERS, names.get(0), names.get(i));
+		}
+	}
+
+	/**
+	 * Параллельно обрабатываемые области изменяют общий контекст только через собственные типизированные ключи.
+	 */
+	private void validateIndependence() {
+		List<String> names = new ArrayList<>(regions.keySet());
+		for (int i = 0; i < names.size(); i++) {
+			for (int j = i + 1; j < names.size(); j++) {
+				Set<String> sharedKeys = new HashSet<>(Sets.intersection(regions.get(names.get(i)).getContextLayout().getKeyNames(),
+						regions.get(names.get(j)).getContextLayout().getKeyNames()));
+				Preconditions.checkState(sharedKeys.isEmpty(), REGIONS_SHARE_CONTEXT_KEYS, names.get(i), names.get(j), sharedKeys);
+			}
+		}
+	}
+
+}
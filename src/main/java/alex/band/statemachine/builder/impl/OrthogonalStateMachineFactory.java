@@ -0,0 +1,57 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.common.collect.ImmutableList;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.context.ContextLayout;
+
+/**
+ * Неизменяемая конфигурация {@link OrthogonalStateMachineImpl}, созданная {@link OrthogonalStateMachineBuilderImpl}
+ * и разделяемая всеми экземплярами.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class OrthogonalStateMachineFactory<S, E> implements StateMachineFactory<S, E> {
+
+	private final ImmutableList<String> regionNames;
+	private final ImmutableList<StateMachineDefinitionImpl<S, E>> regionDefinitions;
+	private final ContextLayout contextLayout;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param pool - пул параллельной обработки областей либо {@code null}
+	 */
+	OrthogonalStateMachineFactory(List<String> regionNames, List<StateMachineDefinitionImpl<S, E>> regionDefinitions,
+			ContextLayout contextLayout, ForkJoinPool pool) {
+		this.regionNames = ImmutableList.copyOf(regionNames);
+		this.regionDefinitions = ImmutableList.copyOf(regionDefinitions);
+		this.contextLayout = contextLayout;
+		this.pool = pool;
+	}
+
+	@Override
+	public StateMachine<S, E> newStateMachine() {
+		return new OrthogonalStateMachineImpl<>(this);
+	}
+
+	ImmutableList<String> getRegionNames() {
+		return regionNames;
+	}
+
+	ImmutableList<StateMachineDefinitionImpl<S, E>> getRegionDefinitions() {
+		return regionDefinitions;
+	}
+
+	ContextLayout getContextLayout() {
+		return contextLayout;
+	}
+
+	ForkJoinPool getPool() {
+		return pool;
+	}
+
+}
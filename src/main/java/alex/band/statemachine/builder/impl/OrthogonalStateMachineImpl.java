@@ -0,0 +1,343 @@
+package alex.band.statemachine.builder.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.ListenableStateMachine;
+import alex.band.statemachine.OrthogonalStateMachine;
+import alex.band.statemachine.concurrent.AsyncStateMachine;
+import alex.band.statemachine.context.StateMachineContext;
+import alex.band.statemachine.context.StateMachineContextImpl;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+import alex.band.statemachine.timer.EventScheduler;
+import alex.band.statemachine.timer.Timeout;
+
+/**
+ * Реализация {@link OrthogonalStateMachine}.
+ *
+ * <p>Каждая область - экземпляр {@link StateMachineImpl} своего описания с общим контекстом. Сообщение передается областям
+ * напрямую, минуя их собственные механизмы оповещения: слушатели автомата получают результат каждой обработавшей сообщение
+ * области вместе с этой областью. Тайм-ауты состояний области обрабатываются только этой областью, а сообщения
+ * {@link EventScheduler#schedule(Object, Duration)} - всеми областями.
+ *
+ * <p>В режиме параллельной обработки каждая область, кроме первой, обрабатывает сообщение в собственной повторно используемой
+ * задаче {@link RecursiveAction}, поэтому обработка сообщения не создает объектов. Контекст в этом режиме хранит только
+ * значения типизированных ключей. Слушатели оповещаются в вызывающем потоке после завершения всех областей; исключение
+ * любой области пробрасывается из {@code accept()} без оповещения.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class OrthogonalStateMachineImpl<S, E> extends ListenableStateMachine<S, E> implements OrthogonalStateMachine<S, E>, EventScheduler<S, E> {
+
+	static final String SEVERAL_REGIONS = "State machine has several regions, current state is defined only for a region.";
+
+	private static final MessageResultHandler<?, ?> NO_RESULT_HANDLER = (message, previousState, messageAccepted, details) -> {
+	};
+
+	private final OrthogonalStateMachineFactory<S, E> factory;
+	private final StateMachineContextImpl context;
+	private final StateMachineImpl<S, E>[] regions;
+	private final RegionTask<S, E>[] regionTasks;
+
+	private boolean running;
+
+	@SuppressWarnings("unchecked")
+	OrthogonalStateMachineImpl(OrthogonalStateMachineFactory<S, E> factory) {
+		this.factory = factory;
+		this.context = new StateMachineContextImpl(factory.getContextLayout(), factory.getPool() != null);
+
+		List<StateMachineDefinitionImpl<S, E>> definitions = factory.getRegionDefinitions();
+		this.regions = new StateMachineImpl[definitions.size()];
+		for (int i = 0; i < regions.length; i++) {
+			regions[i] = new StateMachineImpl<>(definitions.get(i), context);
+		}
+
+		if (factory.getPool() == null) {
+			this.regionTasks = null;
+		} else {
+			this.regionTasks = new RegionTask[regions.length];
+			for (int i = 1; i < regions.length; i++) {
+				regionTasks[i] = new RegionTask<>(regions[i]);
+			}
+		}
+	}
+
+	@Override
+	protected void doStart() {
+		Preconditions.checkState(!running, "Statemachine is already running.");
+
+		running = true;
+		for (StateMachineImpl<S, E> region: regions) {
+			region.doStart();
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		for (StateMachineImpl<S, E> region: regions) {
+			if (region.isRunning()) {
+				region.doStop();
+			}
+		}
+		running = false;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Сообщения таймера, сработавшие после остановки автомата или области либо после выхода области из состояния,
+	 * для которого взведен тайм-аут, отбрасываются без оповещения слушателей.
+	 */
+	@Override
+	public boolean accept(StateMachineMessage<E> message) {
+		if (message instanceof ScheduledMessage && isStale((ScheduledMessage<E>) message)) {
+			return false;
+		}
+		return super.accept(message);
+	}
+
+	/**
+	 * Обработка сообщения без оповещения слушателей.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected boolean doAccept(StateMachineMessage<E> message) {
+		return process(message, (MessageResultHandler<S, E>) NO_RESULT_HANDLER);
+	}
+
+	/**
+	 * Передает {@code resultHandler} результат каждой обработавшей сообщение области: ее состояние до обработки и саму область.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected boolean process(StateMachineMessage<E> message, MessageResultHandler<S, E> resultHandler) {
+		Preconditions.checkState(running, "Statemachine is not running yet.");
+
+		if (message == null) {
+			return false;
+		}
+
+		boolean messageAccepted;
+		if (isStateTimeout(message)) {
+			StateMachineImpl<S, E> region = (StateMachineImpl<S, E>) ((ScheduledMessage<E>) message).getStateMachine();
+			State<S, E> previousState = region.getCurrentState();
+			messageAccepted = region.doAccept(message);
+			resultHandler.handle(message, previousState, messageAccepted, region);
+		} else if (regionTasks == null) {
+			messageAccepted = dispatchSequentially(message, resultHandler);
+		} else {
+			messageAccepted = dispatchInParallel(message, resultHandler);
+		}
+
+		stopIfRegionsCompleted();
+		return messageAccepted;
+	}
+
+	private boolean dispatchSequentially(StateMachineMessage<E> message, MessageResultHandler<S, E> resultHandler) {
+		boolean messageAccepted = false;
+		for (StateMachineImpl<S, E> region: regions) {
+			if (region.isRunning()) {
+				State<S, E> previousState = region.getCurrentState();
+				boolean regionAccepted = region.doAccept(message);
+				resultHandler.handle(message, previousState, regionAccepted, region);
+				messageAccepted |= regionAccepted;
+			}
+		}
+		return messageAccepted;
+	}
+
+	private boolean dispatchInParallel(StateMachineMessage<E> message, MessageResultHandler<S, E> resultHandler) {
+		ForkJoinPool pool = factory.getPool();
+		for (int i = 1; i < regions.length; i++) {
+			if (regions[i].isRunning()) {
+				regionTasks[i].prepare(message);
+				pool.execute(regionTasks[i]);
+			}
+		}
+
+		boolean firstRegionRunning = regions[0].isRunning();
+		State<S, E> firstRegionPreviousState = regions[0].getCurrentState();
+		boolean firstRegionAccepted = false;
+		RuntimeException failure = null;
+		try {
+			firstRegionAccepted = firstRegionRunning && regions[0].doAccept(message);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+
+		for (int i = 1; i < regions.length; i++) {
+			RegionTask<S, E> task = regionTasks[i];
+			if (task.isSubmitted()) {
+				try {
+					task.join();
+				} catch (RuntimeException e) {
+					failure = failure == null ? e : failure;
+				}
+			}
+		}
+
+		try {
+			if (failure != null) {
+				throw failure;
+			}
+
+			boolean messageAccepted = firstRegionAccepted;
+			if (firstRegionRunning) {
+				resultHandler.handle(message, firstRegionPreviousState, firstRegionAccepted, regions[0]);
+			}
+			for (int i = 1; i < regions.length; i++) {
+				RegionTask<S, E> task = regionTasks[i];
+				if (task.isSubmitted()) {
+					resultHandler.handle(message, task.getPreviousState(), task.isMessageAccepted(), regions[i]);
+					messageAccepted |= task.isMessageAccepted();
+				}
+			}
+			return messageAccepted;
+		} finally {
+			for (int i = 1; i < regions.length; i++) {
+				regionTasks[i].clear();
+			}
+		}
+	}
+
+	private void stopIfRegionsCompleted() {
+		if (!running) {
+			return;
+		}
+		for (StateMachineImpl<S, E> region: regions) {
+			if (region.isRunning()) {
+				return;
+			}
+		}
+		stop();
+	}
+
+	private boolean isStateTimeout(StateMachineMessage<E> message) {
+		return message instanceof ScheduledMessage && ((ScheduledMessage<E>) message).getStateEntry() != ScheduledMessage.ANY_STATE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean isStale(ScheduledMessage<E> message) {
+		if (!running) {
+			return true;
+		}
+		if (message.getStateEntry() == ScheduledMessage.ANY_STATE) {
+			return false;
+		}
+		StateMachineImpl<S, E> region = (StateMachineImpl<S, E>) message.getStateMachine();
+		return !region.isRunning() || region.isStale(message);
+	}
+
+	/**
+	 * Текущее состояние единственной области.
+	 *
+	 * @throws IllegalStateException если областей несколько
+	 */
+	@Override
+	public State<S, E> getCurrentState() {
+		Preconditions.checkState(regions.length == 1, SEVERAL_REGIONS);
+		return regions[0].getCurrentState();
+	}
+
+	@Override
+	public StateMachineContext getContext() {
+		return context;
+	}
+
+	@Override
+	public List<String> getRegionNames() {
+		return factory.getRegionNames();
+	}
+
+	@Override
+	public State<S, E> getCurrentState(String regionName) {
+		return getRegion(regionName).getCurrentState();
+	}
+
+	@Override
+	public boolean isRunning(String regionName) {
+		return running && getRegion(regionName).isRunning();
+	}
+
+	/**
+	 * Планируемые сообщения передаются всем областям. Колесо таймеров у всех областей общее
+	 * ({@link OrthogonalStateMachineBuilderImpl}), поэтому сообщение планируется через любую из них.
+	 */
+	@Override
+	public Timeout schedule(E event, Duration delay) {
+		return regions[0].schedule(event, delay);
+	}
+
+	@Override
+	public Timeout schedule(StateMachineMessage<E> message, Duration delay) {
+		return regions[0].schedule(message, delay);
+	}
+
+	@Override
+	public void deliverTo(AsyncStateMachine<S, E> target) {
+		for (StateMachineImpl<S, E> region: regions) {
+			region.deliverTo(target);
+		}
+	}
+
+	private StateMachineImpl<S, E> getRegion(String regionName) {
+		int index = factory.getRegionNames().indexOf(regionName);
+		Preconditions.checkArgument(index >= 0, "Unknown region %s.", regionName);
+		return regions[index];
+	}
+
+	/**
+	 * Повторно используемая задача обработки сообщения одной областью.
+	 */
+	private static final class RegionTask<S, E> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient StateMachineImpl<S, E> region;
+		private transient StateMachineMessage<E> message;
+		private transient State<S, E> previousState;
+		private boolean messageAccepted;
+
+		RegionTask(StateMachineImpl<S, E> region) {
+			this.region = region;
+		}
+
+		@Override
+		protected void compute() {
+			messageAccepted = region.doAccept(message);
+		}
+
+		void prepare(StateMachineMessage<E> message) {
+			reinitialize();
+			this.message = message;
+			this.previousState = region.getCurrentState();
+			this.messageAccepted = false;
+		}
+
+		boolean isSubmitted() {
+			return message != null;
+		}
+
+		State<S, E> getPreviousState() {
+			return previousState;
+		}
+
+		boolean isMessageAccepted() {
+			return messageAccepted;
+		}
+
+		void clear() {
+			message = null;
+			previousState = null;
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineStartAction;
+import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.annotation.StateMachineModel;
+import alex.band.statemachine.context.ContextLayout;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Создание описаний {@link StateMachineDefinitionImpl} из таблиц, подготовленных и проверенных заранее: при компиляции
+ * по модели {@link StateMachineModel} либо при первой загрузке текстового описания.
+ *
+ * <p>Описание собирается сразу из скомпилированных состояний и переходов: конфигураторы не создаются, проверки
+ * {@link StateMachineBuilderImpl} не выполняются. Состояния и события задаются номерами в таблицах, переходы каждого
+ * состояния - в порядке убывания приоритета.
+ *
+ * <p>Класс предназначен для сгенерированного кода и загрузчиков описаний.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class PrecompiledDefinitions {
+
+	private PrecompiledDefinitions() {
+	}
+
+	/**
+	 * Состояния и события задаются номерами констант перечислений ({@link Enum#ordinal()}).
+	 *
+	 * @param stateActions - действия каждого состояния
+	 * @param deferredEvents - номера событий, откладываемых каждым состоянием
+	 * @param transitionSources - номера исходных состояний переходов
+	 * @param transitionEvents - номера событий переходов
+	 * @param transitionTargets - номера целевых состояний переходов; {@code -1} - переход внутренний
+	 * @param transitionPriorities - приоритеты переходов
+	 * @param transitionGuards - {@code Guard} переходов; {@code null} - переход без {@code Guard}
+	 * @param transitionActions - действия переходов
+	 *
+	 * @throws IllegalArgumentException если размеры таблиц не согласованы
+	 */
+	public static <S extends Enum<S>, E extends Enum<E>> StateMachineDefinition<S, E> create(Class<S> stateType, Class<E> eventType,
+			int initialState, int finalState, StateAction<S, E>[][] stateActions, int[][] deferredEvents,
+			int[] transitionSources, int[] transitionEvents, int[] transitionTargets, int[] transitionPriorities,
+			Guard<S, E>[] transitionGuards, TransitionAction<S, E>[][] transitionActions) {
+		return create(Arrays.asList(stateType.getEnumConstants()), Arrays.asList(eventType.getEnumConstants()), initialState, finalState,
+				stateActions, deferredEvents, transitionSources, transitionEvents, transitionTargets, transitionPriorities, transitionGuards,
+				transitionActions);
+	}
+
+	/**
+	 * Состояния и события задаются номерами в списках {@code states} и {@code events}. Если идентификаторы являются
+	 * константами перечислений, используется плотная таблица переходов {@link EnumTransitionTable}.
+	 *
+	 * @throws IllegalArgumentException если размеры таблиц не согласованы
+	 */
+	public static <S, E> StateMachineDefinition<S, E> create(List<S> states, List<E> events, int initialState, int finalState,
+			StateAction<S, E>[][] stateActions, int[][] deferredEvents, int[] transitionSources, int[] transitionEvents, int[] transitionTargets,
+			int[] transitionPriorities, Guard<S, E>[] transitionGuards, TransitionAction<S, E>[][] transitionActions) {
+		Preconditions.checkArgument(stateActions.length == states.size() && deferredEvents.length == states.size(),
+				"State tables don't match States %s", states);
+		int transitionsCount = transitionSources.length;
+		Preconditions.checkArgument(transitionEvents.length == transitionsCount && transitionTargets.length == transitionsCount
+				&& transitionPriorities.length == transitionsCount && transitionGuards.length == transitionsCount
+				&& transitionActions.length == transitionsCount, "Transition tables have different sizes.");
+
+		Class<?> stateEnumType = TransitionTable.commonEnumType(states);
+		Class<?> eventEnumType = TransitionTable.commonEnumType(events);
+		boolean useOrdinals = stateEnumType != null && eventEnumType != null;
+		TransitionTableBuilder<S, E> tableBuilder = TransitionTableBuilder.create(states.size(), stateEnumType, eventEnumType);
+		TransitionTable<S, E> transitionTable = tableBuilder.getTable();
+		Set<E> deferrableEvents = new LinkedHashSet<>();
+		List<CompiledState<S, E>> compiledStates = new ArrayList<>(states.size());
+		Map<S, CompiledState<S, E>> compiledStatesById = new LinkedHashMap<>();
+		for (int state = 0; state < states.size(); state++) {
+			S stateId = states.get(state);
+			int index = useOrdinals ? ((Enum<?>) stateId).ordinal() : state;
+			Set<E> stateDeferredEvents = new LinkedHashSet<>();
+			for (int event: deferredEvents[state]) {
+				stateDeferredEvents.add(events.get(event));
+				tableBuilder.addDeferredEvent(index, events.get(event));
+			}
+			deferrableEvents.addAll(stateDeferredEvents);
+
+			CompiledState<S, E> compiledState = new CompiledState<>(stateId, index, stateActions[state], stateDeferredEvents, 0, null);
+			compiledState.setPath(pathOf(compiledState));
+			compiledState.setTransitionTable(transitionTable);
+			compiledStates.add(compiledState);
+			compiledStatesById.put(stateId, compiledState);
+		}
+
+		for (int i = 0; i < transitionsCount; i++) {
+			boolean external = transitionTargets[i] >= 0;
+			CompiledState<S, E> targetState = external ? compiledStates.get(transitionTargets[i]) : null;
+			CompiledTransition<S, E> transition = new CompiledTransition<>(external, states.get(transitionSources[i]),
+					external ? states.get(transitionTargets[i]) : null, events.get(transitionEvents[i]), transitionGuards[i], transitionPriorities[i],
+					transitionActions[i], targetState, -1);
+			tableBuilder.addTransition(compiledStates.get(transitionSources[i]).getIndex(), transition.getEvent(), transition);
+		}
+
+		DeferredEventsIndex<E> deferredEventsIndex = new DeferredEventsIndex<>(deferrableEvents, eventEnumType);
+		for (CompiledState<S, E> compiledState: compiledStates) {
+			compiledState.initReplayableDeferredEvents(deferredEventsIndex);
+		}
+
+		return new StateMachineDefinitionImpl<>(compiledStates.get(initialState), compiledStates.get(finalState), compiledStatesById,
+				transitionTable, deferredEventsIndex, ContextLayout.EMPTY, Collections.<StateMachineStartAction<S, E>>emptySet(),
+				Collections.<StateMachineStopAction<S, E>>emptySet(), new OptionsConfigurerImpl<S, E>().toOptions(), null, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S, E> CompiledState<S, E>[] pathOf(CompiledState<S, E> state) {
+		return new CompiledState[] {state};
+	}
+
+}
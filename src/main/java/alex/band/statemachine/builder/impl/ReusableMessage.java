@@ -0,0 +1,58 @@
+package alex.band.statemachine.builder.impl;
+
+import com.google.common.base.Optional;
+
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+
+/**
+ * Изменяемое сообщение без полезной нагрузки, повторно используемое экземпляром {@link StateMachineImpl}
+ * в режиме {@link StateMachineOptions#isReuseEventMessages()}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class ReusableMessage<E> implements StateMachineMessage<E> {
+
+	private E event;
+	private boolean inUse;
+
+	@Override
+	public E getEvent() {
+		return event;
+	}
+
+	@Override
+	public Optional<Object> getPayload() {
+		return Optional.absent();
+	}
+
+	@Override
+	public String toString() {
+		return "ReusableMessage [event=" + event + "]";
+	}
+
+	boolean isInUse() {
+		return inUse;
+	}
+
+	void acquire(E event) {
+		this.event = event;
+		this.inUse = true;
+	}
+
+	void release() {
+		this.event = null;
+		this.inUse = false;
+	}
+
+	/**
+	 * Возвращает сообщение, которое можно безопасно сохранить после завершения обработки.
+	 */
+	static <E> StateMachineMessage<E> detach(StateMachineMessage<E> message) {
+		if (message instanceof ReusableMessage) {
+			return new StateMachineMessageImpl<>(message.getEvent());
+		}
+		return message;
+	}
+
+}
@@ -0,0 +1,76 @@
+package alex.band.statemachine.builder.impl;
+
+import com.google.common.base.Optional;
+
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.timer.Timeout;
+import alex.band.statemachine.timer.TimerTask;
+import alex.band.statemachine.timer.TimingWheel;
+
+/**
+ * Сообщение, отправляемое экземпляру {@link StateMachineImpl} колесом таймеров {@link TimingWheel}. Одновременно является
+ * задачей таймера, поэтому планирование создает только само сообщение и {@link Timeout}.
+ *
+ * <p>Тайм-аут состояния хранит номер входа в состояние, для которого он взведен: сработавший, но еще не обработанный тайм-аут
+ * отбрасывается, если автомат успел покинуть состояние. Все сообщения, запланированные до отмены таймеров экземпляра,
+ * отбрасываются по номеру отмены.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class ScheduledMessage<E> implements StateMachineMessage<E>, TimerTask {
+
+	static final long ANY_STATE = -1;
+
+	private final StateMachineImpl<?, E> stateMachine;
+	private final E event;
+	private final Object payload;
+	private final long stateEntry;
+	private final long timersEpoch;
+
+	ScheduledMessage(StateMachineImpl<?, E> stateMachine, E event, Object payload, long stateEntry, long timersEpoch) {
+		this.stateMachine = stateMachine;
+		this.event = event;
+		this.payload = payload;
+		this.stateEntry = stateEntry;
+		this.timersEpoch = timersEpoch;
+	}
+
+	@Override
+	public E getEvent() {
+		return event;
+	}
+
+	@Override
+	public Optional<Object> getPayload() {
+		return Optional.fromNullable(payload);
+	}
+
+	@Override
+	public void run(Timeout timeout) {
+		stateMachine.deliver(this);
+	}
+
+	@Override
+	public String toString() {
+		return "ScheduledMessage [event=" + event + ", payload=" + payload + ", stateEntry=" + stateEntry + "]";
+	}
+
+	StateMachineImpl<?, E> getStateMachine() {
+		return stateMachine;
+	}
+
+	/**
+	 * Номер входа в состояние, для которого взведен тайм-аут, либо {@link #ANY_STATE} для сообщений {@code schedule()}.
+	 */
+	long getStateEntry() {
+		return stateEntry;
+	}
+
+	/**
+	 * Номер отмены таймеров {@link StateMachineImpl#cancelTimers()}, действовавший при планировании сообщения.
+	 */
+	long getTimersEpoch() {
+		return timersEpoch;
+	}
+
+}
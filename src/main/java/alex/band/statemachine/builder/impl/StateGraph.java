@@ -0,0 +1,100 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Граф внешних переходов между состояниями, пронумерованными от {@code 0}, для проверки достижимости.
+ *
+ * <p>Ребра хранятся в двух массивах {@code int}, для обхода строятся массивы смежности (CSR): время и память проверок
+ * линейны по числу состояний и переходов, объекты на состояние и переход не создаются.
+ *
+ * <p>Используется {@link StateMachineBuilderImpl}, {@link BulkStateMachineBuilderImpl} и процессором аннотаций.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class StateGraph {
+
+	private final int statesCount;
+	private int[] edgeSources;
+	private int[] edgeTargets;
+	private int edgesCount;
+
+	public StateGraph(int statesCount, int expectedEdgesCount) {
+		this.statesCount = statesCount;
+		this.edgeSources = new int[Math.max(expectedEdgesCount, 16)];
+		this.edgeTargets = new int[edgeSources.length];
+	}
+
+	public void addEdge(int source, int target) {
+		if (edgesCount == edgeSources.length) {
+			edgeSources = Arrays.copyOf(edgeSources, edgesCount * 2);
+			edgeTargets = Arrays.copyOf(edgeTargets, edgesCount * 2);
+		}
+		edgeSources[edgesCount] = source;
+		edgeTargets[edgesCount] = target;
+		edgesCount++;
+	}
+
+	/**
+	 * Номера состояний, недостижимых из состояния {@code start} (обход в ширину по переходам).
+	 */
+	public BitSet unreachableFrom(int start) {
+		return unvisited(start, edgeSources, edgeTargets);
+	}
+
+	/**
+	 * Номера состояний, из которых недостижимо состояние {@code target} (обход в ширину по обращенным переходам).
+	 */
+	public BitSet notReaching(int target) {
+		return unvisited(target, edgeTargets, edgeSources);
+	}
+
+	/**
+	 * Значения {@code values} с номерами из {@code indexes}.
+	 */
+	public static <T> List<T> select(BitSet indexes, List<T> values) {
+		List<T> selected = new ArrayList<>(indexes.cardinality());
+		for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+			selected.add(values.get(i));
+		}
+		return selected;
+	}
+
+	private BitSet unvisited(int start, int[] from, int[] to) {
+		int[] offsets = new int[statesCount + 1];
+		for (int i = 0; i < edgesCount; i++) {
+			offsets[from[i] + 1]++;
+		}
+		for (int state = 0; state < statesCount; state++) {
+			offsets[state + 1] += offsets[state];
+		}
+		int[] adjacency = new int[edgesCount];
+		int[] positions = Arrays.copyOf(offsets, statesCount);
+		for (int i = 0; i < edgesCount; i++) {
+			adjacency[positions[from[i]]++] = to[i];
+		}
+
+		BitSet visited = new BitSet(statesCount);
+		int[] queue = new int[statesCount];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		visited.set(start);
+		while (head < tail) {
+			int state = queue[head++];
+			for (int i = offsets[state]; i < offsets[state + 1]; i++) {
+				if (!visited.get(adjacency[i])) {
+					visited.set(adjacency[i]);
+					queue[tail++] = adjacency[i];
+				}
+			}
+		}
+
+		visited.flip(0, statesCount);
+		return visited;
+	}
+
+}
@@ -1,7 +1,14 @@
 package alex.band.statemachine.builder.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -9,14 +16,17 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 
 import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
 import alex.band.statemachine.StateMachineStartAction;
 import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.builder.ContextConfigurer;
 import alex.band.statemachine.builder.ExternalTransitionConfigurer;
 import alex.band.statemachine.builder.InternalTransitionConfigurer;
+import alex.band.statemachine.builder.OptionsConfigurer;
 import alex.band.statemachine.builder.StartStopActionsConfigurer;
 import alex.band.statemachine.builder.StateMachineBuilder;
 import alex.band.statemachine.builder.StatesConfigurer;
-import alex.band.statemachine.context.StateMachineContextImpl;
+import alex.band.statemachine.metrics.StateMachineMetrics;
 import alex.band.statemachine.state.State;
 import alex.band.statemachine.state.StateImpl;
 import alex.band.statemachine.transition.Transition;
@@ -31,8 +41,8 @@ public class StateMachineBuilderImpl<S, E> implements StateMachineBuilder<S, E>
 	static final String FINAL_STATE_ALREADY_DEFINED = "Final State already defined. Defined State %s, new State %s";
 	static final String INITIAL_STATE_ALREADY_DEFINED = "Initial State already defined. Defined State %s, new State %s";
 	static final String STATE_ALREADY_DEFINED = "State with equal ID already defined: %s";
-	static final String STATES_WITHOUT_OUTBOUND_TRANSITION = "There are States which don't have outbound transition: %s";
-	static final String STATES_WITHOUT_INBOUND_TRANSITION = "There are States which don't have inbound transition: %s";
+	static final String STATES_WITHOUT_PATH_TO_FINAL_STATE = "There are States from which final State is unreachable: %s";
+	static final String UNREACHABLE_STATES = "There are States which are unreachable from initial State: %s";
 	static final String ILLEGAL_TRANSITION_FROM_FINAL_STATE = "Final State should not be used as source of Transition: %s";
 	static final String EXTERNAL_TRANSITION_HAS_NO_TARGET_STATE = "External Transition doesn't have target State defined: %s";
 	static final String UNKOWN_SOURCE_STATES_IN_TRANSITIONS = "Transitions have unkown source States: %s";
@@ -40,13 +50,21 @@ public class StateMachineBuilderImpl<S, E> implements StateMachineBuilder<S, E>
 	static final String FINAL_STATE_IS_NOT_DEFINED = "Final State is not defined.";
 	static final String INITIAL_STATE_IS_NOT_DEFINED = "Initial State is not defined.";
 	static final String THERE_ARE_NO_STATES_DEFINED = "There are no States defined.";
+	static final String UNKNOWN_PARENT_STATE = "State %s has unknown parent State %s";
+	static final String CYCLIC_STATES_HIERARCHY = "States hierarchy has a cycle at State %s";
+	static final String INITIAL_CHILD_STATE_WITHOUT_PARENT = "Initial child State doesn't have parent State: %s";
+	static final String ILLEGAL_INITIAL_CHILD_STATES = "Composite State should have exactly one initial child State: %s, initial child States %s";
+	static final String FINAL_STATE_HAS_CHILD_STATES = "Final State should not have child States: %s";
+	static final String COMPOSITE_STATE_HAS_TIMEOUT = "Composite State should not have timeout: %s";
 
 	private State<S, E> initialState;
 	private State<S, E> finalState;
-	private Map<S, State<S, E>> states = new HashMap<>();
+	private Map<S, State<S, E>> states = new LinkedHashMap<>();
 	private Map<S, Set<Transition<S, E>>> transitions = new HashMap<>();
 	private Set<StateMachineStartAction<S, E>> startActions = new HashSet<>();
 	private Set<StateMachineStopAction<S, E>> stopActions = new HashSet<>();
+	private OptionsConfigurerImpl<S, E> options = new OptionsConfigurerImpl<>();
+	private ContextConfigurerImpl<S, E> context = new ContextConfigurerImpl<>();
 
 	@Override
 	public StartStopActionsConfigurer defineStartStopActions() {
@@ -56,6 +74,16 @@ public class StateMachineBuilderImpl<S, E> implements StateMachineBuilder<S, E>
 		return startStopConfigurer;
 	}
 
+	@Override
+	public OptionsConfigurer<S, E> defineOptions() {
+		return options;
+	}
+
+	@Override
+	public ContextConfigurer<S, E> defineContext() {
+		return context;
+	}
+
 	@Override
 	public StatesConfigurer<S, E> defineState(S stateId) {
 		StateImpl<S, E> state = new StateImpl<>(stateId);
@@ -89,10 +117,16 @@ public class StateMachineBuilderImpl<S, E> implements StateMachineBuilder<S, E>
 
 	@Override
 	public StateMachine<S, E> build() {
+		return buildDefinition().newStateMachine();
+	}
+
+	@Override
+	public StateMachineDefinition<S, E> buildDefinition() {
 		validateStates();
+		validateHierarchy();
 		validateTransitions();
 		validateTopology();
-		return createStateMachine();
+		return createDefinition();
 	}
 
 	private void validateStates() {
@@ -101,6 +135,41 @@ public class StateMachineBuilderImpl<S, E> implements StateMachineBuilder<S, E>
 		Preconditions.checkState(finalState != null, FINAL_STATE_IS_NOT_DEFINED);
 	}
 
+	private void validateHierarchy() {
+		for (State<S, E> state: states.values()) {
+			StateImpl<S, E> stateImpl = (StateImpl<S, E>) state;
+			if (stateImpl.getParent().isPresent()) {
+				Preconditions.checkState(states.containsKey(stateImpl.getParent().get()), UNKNOWN_PARENT_STATE, state.getId(), stateImpl.getParent().get());
+			} else {
+				Preconditions.checkState(!stateImpl.isInitialChild(), INITIAL_CHILD_STATE_WITHOUT_PARENT, state.getId());
+			}
+		}
+
+		for (S stateId: states.keySet()) {
+			S ancestor = stateId;
+			for (int depth = 0; ancestor != null; depth++) {
+				Preconditions.checkState(depth <= states.size(), CYCLIC_STATES_HIERARCHY, stateId);
+				ancestor = getParent(ancestor);
+			}
+		}
+
+		Map<S, Set<S>> initialChildren = new HashMap<>();
+		for (S compositeState: getCompositeStates()) {
+			initialChildren.put(compositeState, new LinkedHashSet<S>());
+		}
+		for (State<S, E> state: states.values()) {
+			if (((StateImpl<S, E>) state).isInitialChild()) {
+				initialChildren.get(getParent(state.getId())).add(state.getId());
+			}
+		}
+		for (Map.Entry<S, Set<S>> compositeState: initialChildren.entrySet()) {
+			Preconditions.checkState(compositeState.getValue().size() == 1, ILLEGAL_INITIAL_CHILD_STATES, compositeState.getKey(), compositeState.getValue());
+			Preconditions.checkState(!compositeState.getKey().equals(finalState.getId()), FINAL_STATE_HAS_CHILD_STATES, compositeState.getKey());
+			Preconditions.checkState(!((StateImpl<S, E>) states.get(compositeState.getKey())).getTimeout().isPresent(),
+					COMPOSITE_STATE_HAS_TIMEOUT, compositeState.getKey());
+		}
+	}
+
 	private void validateTransitions() {
 		Set<S> diff = Sets.difference(transitions.keySet(), states.keySet());
 		Preconditions.checkState(diff.isEmpty(), UNKOWN_SOURCE_STATES_IN_TRANSITIONS, diff);
@@ -129,56 +198,295 @@ public class StateMachineBuilderImpl<S, E> implements StateMachineBuilder<S, E>
 		return targetStates;
 	}
 
+	/**
+	 * Проверяет, что каждое вложенное (не составное) состояние достижимо из стартового и из каждого достижимо финальное.
+	 * Переход в составное состояние входит в его стартовое вложенное состояние, а исходящий переход составного состояния
+	 * наследуется всеми вложенными в него состояниями.
+	 */
 	private void validateTopology() {
-		Set<S> enteredStates = Sets.newHashSet(states.keySet());
-		Set<S> exitedStates = Sets.newHashSet(states.keySet());
-		enteredStates.remove(initialState.getId());
-		exitedStates.remove(finalState.getId());
+		Map<S, S> initialChildren = getInitialChildren();
+		Set<S> compositeStates = getCompositeStates();
+		List<S> leafStates = new ArrayList<>();
+		Map<S, Integer> leafIndexes = new HashMap<>();
+		for (S stateId: states.keySet()) {
+			if (!compositeStates.contains(stateId)) {
+				leafIndexes.put(stateId, leafStates.size());
+				leafStates.add(stateId);
+			}
+		}
+
+		StateGraph graph = new StateGraph(leafStates.size(), leafStates.size());
+		for (S leafState: leafStates) {
+			for (S ancestor = leafState; ancestor != null; ancestor = getParent(ancestor)) {
+				for (Transition<S, E> transition: getTransitions(ancestor)) {
+					if (transition.isExternal()) {
+						graph.addEdge(leafIndexes.get(leafState), leafIndexes.get(resolveLeaf(transition.getTarget().get(), initialChildren)));
+					}
+				}
+			}
+		}
+
+		List<S> unreachableStates = StateGraph.select(graph.unreachableFrom(leafIndexes.get(resolveLeaf(initialState.getId(), initialChildren))), leafStates);
+		Preconditions.checkState(unreachableStates.isEmpty(), UNREACHABLE_STATES, unreachableStates);
+		List<S> deadEndStates = StateGraph.select(graph.notReaching(leafIndexes.get(finalState.getId())), leafStates);
+		Preconditions.checkState(deadEndStates.isEmpty(), STATES_WITHOUT_PATH_TO_FINAL_STATE, deadEndStates);
+	}
+
+	private Set<Transition<S, E>> getTransitions(S stateId) {
+		Set<Transition<S, E>> stateTransitions = transitions.get(stateId);
+		return stateTransitions != null ? stateTransitions : Collections.<Transition<S, E>>emptySet();
+	}
+
+	private StateMachineDefinition<S, E> createDefinition() {
+		Class<?> stateEnumType = TransitionTable.commonEnumType(states.keySet());
+		Class<?> eventEnumType = TransitionTable.commonEnumType(getAllEvents());
+		TransitionTableBuilder<S, E> tableBuilder = TransitionTableBuilder.create(states.size(), stateEnumType, eventEnumType);
+		TransitionTable<S, E> transitionTable = tableBuilder.getTable();
+		StateMachineOptions definitionOptions = options.toOptions();
+		boolean useOrdinals = stateEnumType != null && eventEnumType != null;
+
+		Map<S, CompiledState<S, E>> compiledStates = new LinkedHashMap<>();
+		for (State<S, E> state: states.values()) {
+			int index = useOrdinals ? ((Enum<?>) state.getId()).ordinal() : compiledStates.size();
+			CompiledState<S, E> compiledState = new CompiledState<>((StateImpl<S, E>) state, index);
+			compiledState.setTransitionTable(transitionTable);
+			compiledStates.put(state.getId(), compiledState);
+		}
+		initHierarchy(compiledStates);
+
+		Map<S, S> initialChildren = getInitialChildren();
+		Map<S, List<CompiledTransition<S, E>>> compiledTransitions = new HashMap<>();
+		List<CompiledTransition<S, E>> allCompiledTransitions = new ArrayList<>();
+		for (Map.Entry<S, Set<Transition<S, E>>> transitionsBySource: transitions.entrySet()) {
+			CompiledState<S, E> sourceState = compiledStates.get(transitionsBySource.getKey());
+			List<CompiledTransition<S, E>> sourceTransitions = new ArrayList<>();
+			for (Transition<S, E> transition: sortByPriority(transitionsBySource.getValue())) {
+				sourceTransitions.add(compileTransition(transition, sourceState, compiledStates, initialChildren));
+			}
+			compiledTransitions.put(sourceState.getId(), sourceTransitions);
+			allCompiledTransitions.addAll(sourceTransitions);
+		}
+
+		StateMachineMetrics metrics = definitionOptions.isCollectMetrics() ? createMetrics(compiledStates.values(), allCompiledTransitions) : null;
+		StateMachineDispatcher<S, E> dispatcher = definitionOptions.isSpecializeDispatch()
+				? DispatcherGenerator.generate(compiledStates.values(), allCompiledTransitions) : null;
+		for (CompiledState<S, E> compiledState: compiledStates.values()) {
+			compiledState.setDispatcher(dispatcher);
+		}
+
+		for (CompiledState<S, E> compiledState: compiledStates.values()) {
+			if (!compiledState.isComposite()) {
+				flattenHierarchy(tableBuilder, compiledState, compiledTransitions, definitionOptions.isAdaptTransitionsOrder());
+			}
+		}
+
+		if (definitionOptions.isAdaptTransitionsOrder()) {
+			transitionTable = new AdaptiveTransitionTable<>(transitionTable, compiledStates.values(), getAllEvents());
+			for (CompiledState<S, E> compiledState: compiledStates.values()) {
+				compiledState.setTransitionTable(transitionTable);
+			}
+		}
+
+		DeferredEventsIndex<E> deferredEventsIndex = new DeferredEventsIndex<>(getDeferredEvents(), eventEnumType);
+		for (CompiledState<S, E> compiledState: compiledStates.values()) {
+			compiledState.initReplayableDeferredEvents(deferredEventsIndex);
+		}
+
+		CompiledState<S, E> initialLeafState = compiledStates.get(resolveLeaf(initialState.getId(), initialChildren));
+		return new StateMachineDefinitionImpl<>(initialLeafState, compiledStates.get(finalState.getId()),
+				compiledStates, transitionTable, deferredEventsIndex, context.toLayout(), startActions, stopActions, definitionOptions, metrics,
+				dispatcher);
+	}
+
+	/**
+	 * Заполняет для каждого состояния цепочку предков {@link CompiledState#getPath()} и помечает составные состояния.
+	 */
+	@SuppressWarnings("unchecked")
+	private void initHierarchy(Map<S, CompiledState<S, E>> compiledStates) {
+		for (CompiledState<S, E> compiledState: compiledStates.values()) {
+			List<CompiledState<S, E>> path = new ArrayList<>();
+			for (S ancestor = compiledState.getId(); ancestor != null; ancestor = getParent(ancestor)) {
+				path.add(0, compiledStates.get(ancestor));
+			}
+			compiledState.setPath(path.toArray(new CompiledState[path.size()]));
+		}
+		for (S compositeState: getCompositeStates()) {
+			compiledStates.get(compositeState).setComposite(true);
+		}
+	}
+
+	private CompiledTransition<S, E> compileTransition(Transition<S, E> transition, CompiledState<S, E> sourceState,
+			Map<S, CompiledState<S, E>> compiledStates, Map<S, S> initialChildren) {
+		if (!transition.getTarget().isPresent()) {
+			return new CompiledTransition<>(transition, null, -1);
+		}
+
+		CompiledState<S, E> targetState = compiledStates.get(transition.getTarget().get());
+		CompiledState<S, E> targetLeafState = compiledStates.get(resolveLeaf(targetState.getId(), initialChildren));
+		return new CompiledTransition<>(transition, targetLeafState, getCommonAncestorDepth(sourceState, targetState));
+	}
+
+	/**
+	 * Глубина ближайшего состояния, которое является предком (но не самим состоянием) и для источника, и для цели перехода.
+	 * Поэтому переход в себя и переход между составным и вложенным в него состоянием покидают и заново входят в источник.
+	 */
+	private int getCommonAncestorDepth(CompiledState<S, E> sourceState, CompiledState<S, E> targetState) {
+		CompiledState<S, E>[] sourcePath = sourceState.getPath();
+		CompiledState<S, E>[] targetPath = targetState.getPath();
+		int depth = -1;
+		for (int i = 0; i < sourcePath.length - 1 && i < targetPath.length - 1 && sourcePath[i] == targetPath[i]; i++) {
+			depth = i;
+		}
+		return depth;
+	}
+
+	/**
+	 * Разворачивает иерархию в таблицу переходов вложенного состояния: сначала собственные переходы, затем переходы предков
+	 * от ближайшего к корневому. Событие откладывается, если ближайшее к состоянию определение этого события в цепочке предков -
+	 * откладывание, а не переход.
+	 *
+	 * <p>В режиме адаптивного порядка унаследованные переходы копируются, чтобы порядок кандидатов каждой таблицы менялся независимо.
+	 */
+	private void flattenHierarchy(TransitionTableBuilder<S, E> tableBuilder, CompiledState<S, E> leafState,
+			Map<S, List<CompiledTransition<S, E>>> compiledTransitions, boolean copyInheritedTransitions) {
+		CompiledState<S, E>[] path = leafState.getPath();
+
+		for (int level = path.length - 1; level >= 0; level--) {
+			for (E deferredEvent: path[level].getDeferredEvents()) {
+				if (isDeferredAt(path, level, deferredEvent, compiledTransitions)) {
+					tableBuilder.addDeferredEvent(leafState.getIndex(), deferredEvent);
+				}
+			}
+		}
+
+		for (int level = path.length - 1; level >= 0; level--) {
+			List<CompiledTransition<S, E>> levelTransitions = compiledTransitions.get(path[level].getId());
+			if (levelTransitions == null) {
+				continue;
+			}
+			for (CompiledTransition<S, E> transition: levelTransitions) {
+				boolean inherited = level < path.length - 1;
+				tableBuilder.addTransition(leafState.getIndex(), transition.getEvent(),
+						inherited && copyInheritedTransitions ? new CompiledTransition<>(transition) : transition);
+			}
+		}
+	}
+
+	private boolean isDeferredAt(CompiledState<S, E>[] path, int deferringLevel, E event, Map<S, List<CompiledTransition<S, E>>> compiledTransitions) {
+		for (int level = path.length - 1; level > deferringLevel; level--) {
+			if (path[level].getDeferredEvents().contains(event)) {
+				return false;
+			}
+			List<CompiledTransition<S, E>> levelTransitions = compiledTransitions.get(path[level].getId());
+			if (levelTransitions != null) {
+				for (CompiledTransition<S, E> transition: levelTransitions) {
+					if (transition.getEvent().equals(event)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private S getParent(S stateId) {
+		return ((StateImpl<S, E>) states.get(stateId)).getParent().orNull();
+	}
+
+	private Set<S> getCompositeStates() {
+		Set<S> compositeStates = new LinkedHashSet<>();
+		for (State<S, E> state: states.values()) {
+			compositeStates.addAll(((StateImpl<S, E>) state).getParent().asSet());
+		}
+		return compositeStates;
+	}
 
-		for (Set<Transition<S, E>> stateTransitions: transitions.values()) {
-			for (Transition<S, E> transition: stateTransitions) {
-				excludeStatesOfExternalTransition(enteredStates, exitedStates, transition);
+	private Map<S, S> getInitialChildren() {
+		Map<S, S> initialChildren = new HashMap<>();
+		for (State<S, E> state: states.values()) {
+			if (((StateImpl<S, E>) state).isInitialChild()) {
+				initialChildren.put(getParent(state.getId()), state.getId());
 			}
 		}
+		return initialChildren;
+	}
 
-		Preconditions.checkState(enteredStates.isEmpty(), STATES_WITHOUT_INBOUND_TRANSITION, enteredStates);
-		Preconditions.checkState(exitedStates.isEmpty(), STATES_WITHOUT_OUTBOUND_TRANSITION, exitedStates);
+	/**
+	 * Возвращает вложенное состояние, в которое фактически входит конечный автомат при входе в {@code stateId}.
+	 */
+	private S resolveLeaf(S stateId, Map<S, S> initialChildren) {
+		S leafState = stateId;
+		while (initialChildren.containsKey(leafState)) {
+			leafState = initialChildren.get(leafState);
+		}
+		return leafState;
 	}
 
-	private void excludeStatesOfExternalTransition(Set<S> enteredStates, Set<S> exitedStates, Transition<S, E> transition) {
-		if (transition.isExternal()) {
-			exitedStates.remove(transition.getSource());
-			if (transition.getTarget().isPresent()) {
-				enteredStates.remove(transition.getTarget().get());
+	/**
+	 * Создает метрики описания: состояния индексируются номерами {@link CompiledState#getIndex()}, переходам назначаются
+	 * номера в порядке компиляции.
+	 */
+	static <S, E> StateMachineMetrics createMetrics(Collection<CompiledState<S, E>> compiledStates, List<CompiledTransition<S, E>> compiledTransitions) {
+		int statesCount = 0;
+		for (CompiledState<S, E> compiledState: compiledStates) {
+			statesCount = Math.max(statesCount, compiledState.getIndex() + 1);
+		}
+		List<String> stateNames = new ArrayList<>(Collections.<String>nCopies(statesCount, null));
+		for (CompiledState<S, E> compiledState: compiledStates) {
+			stateNames.set(compiledState.getIndex(), String.valueOf(compiledState.getId()));
+		}
+
+		List<String> transitionNames = new ArrayList<>();
+		Set<String> usedNames = new HashSet<>();
+		for (CompiledTransition<S, E> transition: compiledTransitions) {
+			String name = transition.getSource() + " -" + transition.getEvent() + "-> "
+					+ (transition.isExternal() ? String.valueOf(transition.getTarget().get()) : "(internal)");
+			String uniqueName = name;
+			for (int i = 2; !usedNames.add(uniqueName); i++) {
+				uniqueName = name + " #" + i;
 			}
+			transition.setMetricsIndex(transitionNames.size());
+			transitionNames.add(uniqueName);
 		}
+		return new StateMachineMetrics(stateNames, transitionNames);
 	}
 
-	private StateMachine<S, E> createStateMachine() {
-		connectTransitionsWithSourceStates();
-		StateMachineImpl<S, E> stateMachine = new StateMachineImpl<>();
-		stateMachine.setInitialState(initialState);
-		stateMachine.setFinalState(finalState);
-		stateMachine.setStates(states);
-		stateMachine.setStartActions(startActions);
-		stateMachine.setStopActions(stopActions);
-		stateMachine.setContext(new StateMachineContextImpl());
+	/**
+	 * Упорядочивает переходы по убыванию приоритета. Сортировка устойчива: при равном приоритете сохраняется порядок определения.
+	 */
+	private List<Transition<S, E>> sortByPriority(Set<Transition<S, E>> transitions) {
+		List<Transition<S, E>> sortedTransitions = new ArrayList<>(transitions);
+		sortedTransitions.sort(Comparator.comparingInt((Transition<S, E> transition) -> transition.getPriority()).reversed());
+		return sortedTransitions;
+	}
 
-		return stateMachine;
+	private Set<E> getDeferredEvents() {
+		Set<E> events = new LinkedHashSet<>();
+		for (State<S, E> state: states.values()) {
+			events.addAll(((StateImpl<S, E>) state).getDeferredEvents());
+		}
+		return events;
 	}
 
-	private void connectTransitionsWithSourceStates() {
+	private Set<E> getAllEvents() {
+		Set<E> events = new HashSet<>();
+		for (State<S, E> state: states.values()) {
+			events.addAll(((StateImpl<S, E>) state).getDeferredEvents());
+			if (((StateImpl<S, E>) state).getTimeout().isPresent()) {
+				events.add(((StateImpl<S, E>) state).getTimeoutEvent());
+			}
+		}
 		for (Set<Transition<S, E>> transitionsBySource: transitions.values()) {
 			for (Transition<S, E> transition: transitionsBySource) {
-				StateImpl<S, E> state = (StateImpl<S, E>) states.get(transition.getSource());
-				state.addTransition(transition);
+				events.add(transition.getEvent());
 			}
 		}
+		return events;
 	}
 
 	private void addTransition(S sourceState, Transition<S, E> transition) {
 		if (!transitions.containsKey(sourceState)) {
-			transitions.put(sourceState, new HashSet<Transition<S, E>>());
+			transitions.put(sourceState, new LinkedHashSet<Transition<S, E>>());
 		}
 		transitions.get(sourceState).add(transition);
 	}
@@ -0,0 +1,147 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineStartAction;
+import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.context.ContextLayout;
+import alex.band.statemachine.metrics.StateMachineMetrics;
+import alex.band.statemachine.state.State;
+
+/**
+ * Реализация {@link StateMachineDefinition}
+ *
+ * <p>Создается {@link StateMachineBuilderImpl} после валидации конфигурации. Повторная валидация при создании экземпляров
+ * {@link #newStateMachine()} не выполняется.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class StateMachineDefinitionImpl<S, E> implements StateMachineDefinition<S, E> {
+
+	private final CompiledState<S, E> initialState;
+	private final CompiledState<S, E> finalState;
+	private final ImmutableMap<S, CompiledState<S, E>> states;
+	private final TransitionTable<S, E> transitionTable;
+	private final DeferredEventsIndex<E> deferredEventsIndex;
+	private final ContextLayout contextLayout;
+	private final StateMachineStartAction<S, E>[] startActions;
+	private final StateMachineStopAction<S, E>[] stopActions;
+	private final StateMachineOptions options;
+	private final StateMachineMetrics metrics;
+	private final StateMachineDispatcher<S, E> dispatcher;
+	private final boolean stateTimeouts;
+
+	@SuppressWarnings("unchecked")
+	StateMachineDefinitionImpl(CompiledState<S, E> initialState, CompiledState<S, E> finalState, Map<S, CompiledState<S, E>> states,
+			TransitionTable<S, E> transitionTable, DeferredEventsIndex<E> deferredEventsIndex, ContextLayout contextLayout,
+			Set<StateMachineStartAction<S, E>> startActions, Set<StateMachineStopAction<S, E>> stopActions, StateMachineOptions options,
+			StateMachineMetrics metrics, StateMachineDispatcher<S, E> dispatcher) {
+		this.initialState = initialState;
+		this.finalState = finalState;
+		this.states = ImmutableMap.copyOf(states);
+		this.transitionTable = transitionTable;
+		this.deferredEventsIndex = deferredEventsIndex;
+		this.contextLayout = contextLayout;
+		this.startActions = startActions.toArray(new StateMachineStartAction[startActions.size()]);
+		this.stopActions = stopActions.toArray(new StateMachineStopAction[stopActions.size()]);
+		this.options = options;
+		this.metrics = metrics;
+		this.dispatcher = dispatcher;
+		this.stateTimeouts = states.values().stream().anyMatch(state -> state.getTimeoutNanos() > 0);
+	}
+
+	@Override
+	public StateMachine<S, E> newStateMachine() {
+		return new StateMachineImpl<>(this);
+	}
+
+	@Override
+	public State<S, E> getInitialState() {
+		return initialState;
+	}
+
+	@Override
+	public State<S, E> getFinalState() {
+		return finalState;
+	}
+
+	@Override
+	public Optional<State<S, E>> getState(S stateId) {
+		return Optional.<State<S, E>>fromNullable(states.get(stateId));
+	}
+
+	@Override
+	public Collection<State<S, E>> getStates() {
+		return Collections.<State<S, E>>unmodifiableCollection(states.values());
+	}
+
+	@Override
+	public Optional<StateMachineMetrics> getMetrics() {
+		return Optional.fromNullable(metrics);
+	}
+
+	/**
+	 * Возвращает состояние по идентификатору либо {@code null}.
+	 */
+	CompiledState<S, E> getCompiledState(S stateId) {
+		return states.get(stateId);
+	}
+
+	CompiledState<S, E> getCompiledInitialState() {
+		return initialState;
+	}
+
+	TransitionTable<S, E> getTransitionTable() {
+		return transitionTable;
+	}
+
+	DeferredEventsIndex<E> getDeferredEventsIndex() {
+		return deferredEventsIndex;
+	}
+
+	ContextLayout getContextLayout() {
+		return contextLayout;
+	}
+
+	StateMachineStartAction<S, E>[] getStartActions() {
+		return startActions;
+	}
+
+	StateMachineStopAction<S, E>[] getStopActions() {
+		return stopActions;
+	}
+
+	StateMachineOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Метрики описания либо {@code null}, если их сбор не включен.
+	 */
+	StateMachineMetrics getCompiledMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Есть ли в описании состояния с тайм-аутом {@link CompiledState#getTimeoutNanos()}.
+	 */
+	boolean hasStateTimeouts() {
+		return stateTimeouts;
+	}
+
+	/**
+	 * Сгенерированный диспетчер описания либо {@code null}, если специализация не включена или описание слишком велико.
+	 */
+	StateMachineDispatcher<S, E> getDispatcher() {
+		return dispatcher;
+	}
+
+}
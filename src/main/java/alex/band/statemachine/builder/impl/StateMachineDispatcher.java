@@ -0,0 +1,38 @@
+package alex.band.statemachine.builder.impl;
+
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.OptionsConfigurer;
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Диспетчер вызовов {@code Guard} и действий одного описания {@link StateMachineDefinitionImpl}, реализуемый классом,
+ * который генерирует {@link DispatcherGenerator} при включенном режиме {@link OptionsConfigurer#specializeDispatch()}.
+ *
+ * <p>Интерфейс открыт только потому, что сгенерированные классы загружаются собственными загрузчиками классов
+ * и не имеют доступа к закрытым типам пакета. Пользовательский код не должен его реализовывать.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface StateMachineDispatcher<S, E> {
+
+	/**
+	 * Вычисляет {@code Guard} перехода с номером {@code transition}; переход без {@code Guard} разрешен всегда.
+	 */
+	boolean evaluateGuard(int transition, StateMachineMessage<E> message, StateMachineDetails<S, E> context);
+
+	/**
+	 * Выполняет действия перехода с номером {@code transition}.
+	 */
+	void executeActions(int transition, StateMachineMessage<E> message, StateMachineDetails<S, E> context);
+
+	/**
+	 * Выполняет действия входа в состояние с номером {@code state}.
+	 */
+	void enter(int state, StateMachineDetails<S, E> context);
+
+	/**
+	 * Выполняет действия выхода из состояния с номером {@code state}.
+	 */
+	void exit(int state, StateMachineDetails<S, E> context);
+
+}
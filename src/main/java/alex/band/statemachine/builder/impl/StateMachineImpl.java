@@ -1,19 +1,29 @@
 package alex.band.statemachine.builder.impl;
 
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 
 import alex.band.statemachine.ListenableStateMachine;
 import alex.band.statemachine.StateMachine;
 import alex.band.statemachine.StateMachineStartAction;
 import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.concurrent.AsyncStateMachine;
 import alex.band.statemachine.context.StateMachineContext;
+import alex.band.statemachine.context.StateMachineContextImpl;
 import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.metrics.StateMachineMetrics;
+import alex.band.statemachine.snapshot.SnapshotSupport;
+import alex.band.statemachine.snapshot.StateMachineSnapshot;
 import alex.band.statemachine.state.State;
-import alex.band.statemachine.transition.Transition;
+import alex.band.statemachine.timer.EventScheduler;
+import alex.band.statemachine.timer.Timeout;
+import alex.band.statemachine.timer.TimingWheel;
 import alex.band.statemachine.transition.TransitionAction;
 
 /**
@@ -30,45 +40,89 @@ import alex.band.statemachine.transition.TransitionAction;
  * <p>В качестве расширений к традиционной модели поддерживаются:
  * <ul><li>Entry and exit actions</li>
  * <li>Internal transitions</li>
- * <li>Event deferral</li></ul>
+ * <li>Event deferral</li>
+ * <li>Hierarchical states</li></ul>
+ *
+ * <p>Граф состояний и переходов хранится в разделяемом неизменяемом {@link StateMachineDefinitionImpl}.
+ * Экземпляр содержит только текущее состояние, контекст и очередь отложенных сообщений {@link DeferredEventsQueue}.
+ *
+ * <p>После обработки каждого сообщения из очереди по одному извлекаются отложенные сообщения, которые принимает текущее состояние
+ * (начиная с самого раннего), пока такие сообщения есть. Сообщения, которые текущее состояние не принимает, остаются в очереди.
+ *
+ * <p>Текущее состояние, контекст и отложенные сообщения сохраняются в снимок {@link StateMachineSnapshot} и восстанавливаются
+ * из него без вызова действий ({@link SnapshotSupport}).
+ *
+ * <p>Тайм-ауты состояний взводятся в колесе таймеров {@link TimingWheel} при входе в состояние и отменяются при выходе из него.
+ * Сработавший тайм-аут, который не успел обработаться до выхода из состояния, отбрасывается. Отложенные сообщения
+ * планируются через {@link EventScheduler}.
+ *
+ * <p>Если описание собирает метрики {@link StateMachineMetrics}, экземпляр записывает в них длительность обработки сообщений,
+ * выбора и выполнения переходов, счетчики переходов и непринятых сообщений, а также время пребывания в состояниях.
  *
  * @author Aliaksandr Bandarchyk
  */
-public class StateMachineImpl<S, E> extends ListenableStateMachine<S, E> {
+public class StateMachineImpl<S, E> extends ListenableStateMachine<S, E> implements SnapshotSupport<S, E>, EventScheduler<S, E> {
 
-	private State<S, E> initialState;
-	private State<S, E> finalState;
-	private State<S, E> currentState;
-	private Map<S, State<S, E>> states;
+	static final String NO_DELIVERY_TARGET = "Timers require a delivery target: call deliverTo() or wrap the state machine into ConcurrentStateMachine.";
 
-	private Set<StateMachineStartAction<S, E>> startActions;
-	private Set<StateMachineStopAction<S, E>> stopActions;
+	private final StateMachineDefinitionImpl<S, E> definition;
+	private final StateMachineContextImpl context;
+	private final StateMachineMetrics metrics;
+	private final StateMachineDispatcher<S, E> dispatcher;
 
+	private CompiledState<S, E> currentState;
 	private boolean running;
-	private StateMachineContext context;
 
-	private StateMachineMessage<E> deferredMessage;
+	private DeferredEventsQueue<E> deferredMessages;
+	private ReusableMessage<E> reusableMessage;
+	private long stateEnteredNanos;
+
+	private long stateEntries;
+	private Timeout stateTimeout;
+	private volatile long timersEpoch;
+	private volatile AsyncStateMachine<S, E> deliveryTarget;
+
+	StateMachineImpl(StateMachineDefinitionImpl<S, E> definition) {
+		this(definition, new StateMachineContextImpl(definition.getContextLayout()));
+	}
+
+	/**
+	 * Экземпляр с внешним контекстом: область {@link OrthogonalStateMachineImpl}.
+	 */
+	StateMachineImpl(StateMachineDefinitionImpl<S, E> definition, StateMachineContextImpl context) {
+		this.definition = definition;
+		this.context = context;
+		this.metrics = definition.getCompiledMetrics();
+		this.dispatcher = definition.getDispatcher();
+	}
 
 	@Override
 	protected void doStart() {
 		Preconditions.checkState(!running, "Statemachine is already running.");
+		Preconditions.checkState(deliveryTarget != null || !definition.hasStateTimeouts(), NO_DELIVERY_TARGET);
 
-		deferredMessage = null;
-		for (StateMachineStartAction<S, E> action: startActions) {
+		if (deferredMessages != null) {
+			deferredMessages.clear();
+		}
+		for (StateMachineStartAction<S, E> action: definition.getStartActions()) {
 			action.onStart(this);
 		}
 
 		running = true;
-		currentState = initialState;
-		currentState.onEnter(this);
+		currentState = definition.getCompiledInitialState();
+		markStateEntered();
+		armStateTimeout();
+		enterStates(-1);
 	}
 
 	@Override
 	protected void doStop() {
-		currentState.onExit(this);
+		recordDwellTime();
+		cancelStateTimeout();
+		exitStates(-1);
 		running = false;
 
-		for (StateMachineStopAction<S, E> action: stopActions) {
+		for (StateMachineStopAction<S, E> action: definition.getStopActions()) {
 			action.onStop(this);
 		}
 	}
@@ -78,6 +132,39 @@ public class StateMachineImpl<S, E> extends ListenableStateMachine<S, E> {
 		return running;
 	}
 
+	@Override
+	public boolean accept(E event) {
+		if (!definition.getOptions().isReuseEventMessages()) {
+			return super.accept(event);
+		}
+		if (reusableMessage == null) {
+			reusableMessage = new ReusableMessage<>();
+		}
+		if (reusableMessage.isInUse()) {
+			// nested accept() from an action: the shared message is still being processed
+			return super.accept(event);
+		}
+
+		reusableMessage.acquire(event);
+		try {
+			return accept(reusableMessage);
+		} finally {
+			reusableMessage.release();
+		}
+	}
+
+	/**
+	 * Сообщения таймера, сработавшие после остановки автомата или после выхода из состояния, для которого взведен тайм-аут,
+	 * отбрасываются без оповещения слушателей.
+	 */
+	@Override
+	public boolean accept(StateMachineMessage<E> message) {
+		if (message instanceof ScheduledMessage && isStale((ScheduledMessage<E>) message)) {
+			return false;
+		}
+		return super.accept(message);
+	}
+
 	@Override
 	protected boolean doAccept(StateMachineMessage<E> message) {
 		Preconditions.checkState(running, "Statemachine is not running yet.");
@@ -85,29 +172,60 @@ public class StateMachineImpl<S, E> extends ListenableStateMachine<S, E> {
 		if (message == null) {
 			return false;
 		}
-		
+
+		if (metrics == null) {
+			return acceptMessage(message);
+		}
+
+		long startNanos = System.nanoTime();
+		try {
+			return acceptMessage(message);
+		} finally {
+			metrics.recordAccept(System.nanoTime() - startNanos);
+		}
+	}
+
+	private boolean acceptMessage(StateMachineMessage<E> message) {
 		if (currentState.canBeDeferred(message)) {
-			deferredMessage = message;
-			return true;
+			return deferMessage(message);
 		}
 
 		boolean messageAccepted = processMessage(message);
+		replayDeferredMessages();
 
-		if (deferredMessage != null && !currentState.canBeDeferred(deferredMessage) && !currentState.equals(finalState)) {
-			processMessage(deferredMessage);
-			deferredMessage = null;
+		return messageAccepted;
+	}
+
+	private boolean deferMessage(StateMachineMessage<E> message) {
+		StateMachineOptions options = definition.getOptions();
+		if (deferredMessages == null) {
+			deferredMessages = new DeferredEventsQueue<>(options.getDeferredEventsCapacity(), definition.getDeferredEventsIndex().size());
 		}
 
-		return messageAccepted;
+		int eventIndex = definition.getDeferredEventsIndex().indexOf(message.getEvent());
+		return deferredMessages.offer(eventIndex, ReusableMessage.detach(message), options.getDeferredEventsOverflowPolicy());
+	}
+
+	private void replayDeferredMessages() {
+		while (running && deferredMessages != null && !deferredMessages.isEmpty()) {
+			StateMachineMessage<E> deferredMessage = deferredMessages.poll(currentState.getReplayableDeferredEvents());
+			if (deferredMessage == null) {
+				return;
+			}
+			processMessage(deferredMessage);
+		}
 	}
 
 	private boolean processMessage(StateMachineMessage<E> message) {
+		if (metrics != null) {
+			return processMessageWithMetrics(message);
+		}
 
-		Optional<Transition<S, E>> transition = currentState.getSuitableTransition(message, this);
-		if (transition.isPresent()) {
+		CompiledTransition<S, E> transition = currentState.findTransition(message, this);
+		if (transition != null) {
 
 			doCurrentStateExit(transition);
-			executeTransitionActions(message, transition.get().getActions());
+			executeTransitionActions(message, transition);
 			doNewStateEnter(transition);
 			return true;
 		}
@@ -115,28 +233,80 @@ public class StateMachineImpl<S, E> extends ListenableStateMachine<S, E> {
 		return false;
 	}
 
-	private void doCurrentStateExit(Optional<Transition<S, E>> transition) {
-		if (transition.get().isExternal()) {
-			currentState.onExit(this);
+	private boolean processMessageWithMetrics(StateMachineMessage<E> message) {
+		long startNanos = System.nanoTime();
+		CompiledTransition<S, E> transition = currentState.findTransition(message, this);
+		long selectedNanos = System.nanoTime();
+		metrics.recordGuards(selectedNanos - startNanos);
+
+		if (transition == null) {
+			metrics.recordNotAccepted(currentState.getIndex());
+			return false;
+		}
+
+		metrics.recordTransition(transition.getMetricsIndex());
+		if (transition.isExternal()) {
+			recordDwellTime();
+		}
+		try {
+			doCurrentStateExit(transition);
+			executeTransitionActions(message, transition);
+			doNewStateEnter(transition);
+		} finally {
+			metrics.recordActions(System.nanoTime() - selectedNanos);
 		}
+		return true;
 	}
 
-	private void executeTransitionActions(StateMachineMessage<E> message, Set<TransitionAction<S, E>> actions) {
-		for (TransitionAction<S, E> action:actions) {
+	private void doCurrentStateExit(CompiledTransition<S, E> transition) {
+		if (transition.isExternal()) {
+			cancelStateTimeout();
+			exitStates(transition.getCommonAncestorDepth());
+		}
+	}
+
+	private void executeTransitionActions(StateMachineMessage<E> message, CompiledTransition<S, E> transition) {
+		if (dispatcher != null) {
+			dispatcher.executeActions(transition.getDispatchIndex(), message, this);
+			return;
+		}
+		for (TransitionAction<S, E> action: transition.getActionsArray()) {
 			action.execute(message, this);
 		}
 	}
 
-	private void doNewStateEnter(Optional<Transition<S, E>> transition) {
-		if (transition.get().isExternal()) {
-			currentState = states.get(transition.get().getTarget().get());
-			currentState.onEnter(this);
+	private void doNewStateEnter(CompiledTransition<S, E> transition) {
+		if (transition.isExternal()) {
+			currentState = transition.getTargetState();
+			markStateEntered();
+			armStateTimeout();
+			enterStates(transition.getCommonAncestorDepth());
 		}
-		if (finalState.equals(currentState)) {
+		if (definition.getFinalState() == currentState) {
 			stop();
 		}
 	}
 
+	/**
+	 * Вызывает действия выхода из текущего состояния и его предков глубже {@code commonAncestorDepth}, начиная с текущего.
+	 */
+	private void exitStates(int commonAncestorDepth) {
+		CompiledState<S, E>[] path = currentState.getPath();
+		for (int depth = path.length - 1; depth > commonAncestorDepth; depth--) {
+			path[depth].onExit(this);
+		}
+	}
+
+	/**
+	 * Вызывает действия входа в предков текущего состояния глубже {@code commonAncestorDepth} и в само состояние, начиная с внешнего.
+	 */
+	private void enterStates(int commonAncestorDepth) {
+		CompiledState<S, E>[] path = currentState.getPath();
+		for (int depth = commonAncestorDepth + 1; depth < path.length; depth++) {
+			path[depth].onEnter(this);
+		}
+	}
+
 	@Override
 	public State<S, E> getCurrentState() {
 		return currentState;
@@ -146,33 +316,125 @@ public class StateMachineImpl<S, E> extends ListenableStateMachine<S, E> {
 	public StateMachineContext getContext() {
 		return context;
 	}
-	
-	boolean hasDeferredMessage() {
-		return deferredMessage != null;
+
+	@Override
+	public StateMachineSnapshot<S, E> snapshot() {
+		List<StateMachineMessage<E>> messages = new ArrayList<>(getDeferredMessagesCount());
+		if (deferredMessages != null) {
+			deferredMessages.copyTo(messages);
+		}
+		return new StateMachineSnapshot<>(currentState == null ? null : currentState.getId(), running, new HashMap<>(context.getValues()), messages);
 	}
 
-	void setInitialState(State<S, E> initialState) {
-		this.initialState = initialState;
+	@Override
+	public void restore(StateMachineSnapshot<S, E> snapshot) {
+		Preconditions.checkState(!running, "Statemachine is already running.");
+
+		S stateId = snapshot.getCurrentStateId();
+		CompiledState<S, E> state = stateId == null ? null : definition.getCompiledState(stateId);
+		Preconditions.checkArgument(stateId == null || state != null, "Unknown state %s.", stateId);
+		Preconditions.checkArgument(state == null || !state.isComposite(), "Composite state %s can't be current.", stateId);
+		Preconditions.checkArgument(state != null || !snapshot.isRunning(), "Running snapshot without current state.");
+		Preconditions.checkState(deliveryTarget != null || !snapshot.isRunning() || !definition.hasStateTimeouts(), NO_DELIVERY_TARGET);
+
+		List<StateMachineMessage<E>> messages = snapshot.getDeferredMessages();
+		Preconditions.checkArgument(messages.size() <= definition.getOptions().getDeferredEventsCapacity(), "Deferred events limit is exceeded.");
+		for (StateMachineMessage<E> message: messages) {
+			Preconditions.checkArgument(definition.getDeferredEventsIndex().indexOf(message.getEvent()) >= 0,
+					"Event %s is not deferred in any state.", message.getEvent());
+		}
+
+		if (deferredMessages != null) {
+			deferredMessages.clear();
+		}
+		for (StateMachineMessage<E> message: messages) {
+			deferMessage(message);
+		}
+
+		context.setValues(snapshot.getContextValues());
+		currentState = state;
+		running = snapshot.isRunning();
+		if (running) {
+			markStateEntered();
+			armStateTimeout();
+		}
 	}
 
-	void setFinalState(State<S, E> finalState) {
-		this.finalState = finalState;
+	@Override
+	public Timeout schedule(E event, Duration delay) {
+		return schedule(new StateMachineMessageImpl<>(event), delay);
 	}
 
-	void setStates(Map<S, State<S, E>> states) {
-		this.states = states;
+	@Override
+	public Timeout schedule(StateMachineMessage<E> message, Duration delay) {
+		Preconditions.checkState(deliveryTarget != null, NO_DELIVERY_TARGET);
+		ScheduledMessage<E> scheduledMessage = new ScheduledMessage<>(this, message.getEvent(), message.getPayload().orNull(),
+				ScheduledMessage.ANY_STATE, timersEpoch);
+		return definition.getOptions().getTimer().schedule(scheduledMessage, delay.toNanos(), TimeUnit.NANOSECONDS);
 	}
 
-	void setContext(StateMachineContext context) {
-		this.context = context;
+	@Override
+	public void cancelTimers() {
+		cancelStateTimeout();
+		timersEpoch++;
+	}
+
+	@Override
+	public void deliverTo(AsyncStateMachine<S, E> target) {
+		deliveryTarget = Preconditions.checkNotNull(target);
+	}
+
+	/**
+	 * Передает сработавшее сообщение получателю {@link #deliverTo(AsyncStateMachine)}. Вызывается в потоке колеса таймеров,
+	 * который только ставит сообщение в очередь получателя и не обрабатывает его.
+	 */
+	void deliver(ScheduledMessage<E> message) {
+		if (message.getTimersEpoch() == timersEpoch) {
+			deliveryTarget.acceptAsync(message);
+		}
+	}
+
+	boolean isStale(ScheduledMessage<E> message) {
+		return !running || message.getTimersEpoch() != timersEpoch || (message.getStateEntry() != ScheduledMessage.ANY_STATE && message.getStateEntry() != stateEntries);
+	}
+
+	private void armStateTimeout() {
+		stateEntries++;
+		if (currentState.getTimeoutNanos() > 0) {
+			ScheduledMessage<E> timeoutMessage = new ScheduledMessage<>(this, currentState.getTimeoutEvent(), null, stateEntries, timersEpoch);
+			stateTimeout = definition.getOptions().getTimer().schedule(timeoutMessage, currentState.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void cancelStateTimeout() {
+		if (stateTimeout != null) {
+			stateTimeout.cancel();
+			stateTimeout = null;
+		}
+	}
+
+	private void markStateEntered() {
+		if (metrics != null) {
+			stateEnteredNanos = System.nanoTime();
+		}
+	}
+
+	private void recordDwellTime() {
+		if (metrics != null) {
+			metrics.recordDwellTime(currentState.getIndex(), System.nanoTime() - stateEnteredNanos);
+		}
+	}
+
+	boolean hasDeferredMessage() {
+		return deferredMessages != null && !deferredMessages.isEmpty();
 	}
 
-	void setStartActions(Set<StateMachineStartAction<S, E>> startActions) {
-		this.startActions = startActions;
+	int getDeferredMessagesCount() {
+		return deferredMessages == null ? 0 : deferredMessages.size();
 	}
 
-	void setStopActions(Set<StateMachineStopAction<S, E>> stopActions) {
-		this.stopActions = stopActions;
+	StateMachineDefinitionImpl<S, E> getDefinition() {
+		return definition;
 	}
 
 }
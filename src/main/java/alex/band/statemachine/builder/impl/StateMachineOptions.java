@@ -0,0 +1,62 @@
+package alex.band.statemachine.builder.impl;
+
+import alex.band.statemachine.builder.DeferredEventsOverflowPolicy;
+import alex.band.statemachine.timer.TimingWheel;
+
+/**
+ * Неизменяемый набор режимов работы, заданных через {@link OptionsConfigurerImpl} и зафиксированных в {@link StateMachineDefinitionImpl}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class StateMachineOptions {
+
+	private final boolean reuseEventMessages;
+	private final boolean adaptTransitionsOrder;
+	private final boolean collectMetrics;
+	private final boolean specializeDispatch;
+	private final int deferredEventsCapacity;
+	private final DeferredEventsOverflowPolicy deferredEventsOverflowPolicy;
+	private final TimingWheel timer;
+
+	StateMachineOptions(OptionsConfigurerImpl<?, ?> configurer) {
+		this.reuseEventMessages = configurer.isReuseEventMessages();
+		this.adaptTransitionsOrder = configurer.isAdaptTransitionsOrder();
+		this.collectMetrics = configurer.isCollectMetrics();
+		this.specializeDispatch = configurer.isSpecializeDispatch();
+		this.deferredEventsCapacity = configurer.getDeferredEventsCapacity();
+		this.deferredEventsOverflowPolicy = configurer.getDeferredEventsOverflowPolicy();
+		this.timer = configurer.getTimer();
+	}
+
+	boolean isReuseEventMessages() {
+		return reuseEventMessages;
+	}
+
+	boolean isAdaptTransitionsOrder() {
+		return adaptTransitionsOrder;
+	}
+
+	boolean isCollectMetrics() {
+		return collectMetrics;
+	}
+
+	boolean isSpecializeDispatch() {
+		return specializeDispatch;
+	}
+
+	int getDeferredEventsCapacity() {
+		return deferredEventsCapacity;
+	}
+
+	DeferredEventsOverflowPolicy getDeferredEventsOverflowPolicy() {
+		return deferredEventsOverflowPolicy;
+	}
+
+	/**
+	 * Колесо таймеров описания; если оно не задано - общее {@link TimingWheel#shared()}, создаваемое при первом обращении.
+	 */
+	TimingWheel getTimer() {
+		return timer != null ? timer : TimingWheel.shared();
+	}
+
+}
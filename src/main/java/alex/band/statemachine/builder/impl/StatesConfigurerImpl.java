@@ -1,7 +1,10 @@
 package alex.band.statemachine.builder.impl;
 
+import java.time.Duration;
 import java.util.Set;
 
+import com.google.common.base.Preconditions;
+
 import alex.band.statemachine.builder.StatesConfigurer;
 import alex.band.statemachine.state.StateAction;
 import alex.band.statemachine.state.StateImpl;
@@ -33,6 +36,18 @@ public class StatesConfigurerImpl<S, E> implements StatesConfigurer<S, E> {
 		return this;
 	}
 
+	@Override
+	public StatesConfigurer<S, E> childOf(S parentState) {
+		state.setParent(Preconditions.checkNotNull(parentState));
+		return this;
+	}
+
+	@Override
+	public StatesConfigurer<S, E> asInitialChild() {
+		state.setInitialChild(true);
+		return this;
+	}
+
 	@Override
 	public StatesConfigurer<S, E> withActions(Set<StateAction<S, E>> actions) {
 		state.addActions(actions);
@@ -57,4 +72,11 @@ public class StatesConfigurerImpl<S, E> implements StatesConfigurer<S, E> {
 		return this;
 	}
 
+	@Override
+	public StatesConfigurer<S, E> withTimeout(Duration timeout, E event) {
+		Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "Timeout must be positive.");
+		state.setTimeout(timeout, Preconditions.checkNotNull(event));
+		return this;
+	}
+
 }
@@ -0,0 +1,66 @@
+package alex.band.statemachine.builder.impl;
+
+import java.util.Arrays;
+
+/**
+ * Таблица диспетчеризации переходов описания конечного автомата {@link StateMachineDefinitionImpl}.
+ *
+ * <p>Каждому состоянию {@link CompiledState} назначается плотный индекс. Для пары (индекс состояния, событие) таблица хранит
+ * упорядоченный массив переходов-кандидатов и признак отложенного события.
+ *
+ * <p>Таблица заполняется только на этапе построения описания через {@link TransitionTableBuilder} и далее не изменяется.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+abstract class TransitionTable<S, E> {
+
+	@SuppressWarnings("rawtypes")
+	private static final CompiledTransition[] NO_TRANSITIONS = new CompiledTransition[0];
+
+	/**
+	 * Возвращает общий для всех переходов тип перечисления либо {@code null}, если хотя бы один из идентификаторов
+	 * не является константой перечисления или константы принадлежат разным перечислениям.
+	 */
+	static Class<?> commonEnumType(Iterable<?> ids) {
+		Class<?> enumType = null;
+		for (Object id: ids) {
+			if (!(id instanceof Enum)) {
+				return null;
+			}
+			Class<?> idType = ((Enum<?>) id).getDeclaringClass();
+			if (enumType != null && enumType != idType) {
+				return null;
+			}
+			enumType = idType;
+		}
+		return enumType;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <S, E> CompiledTransition<S, E>[] noTransitions() {
+		return NO_TRANSITIONS;
+	}
+
+	static <S, E> CompiledTransition<S, E>[] append(CompiledTransition<S, E>[] transitions, CompiledTransition<S, E> transition) {
+		CompiledTransition<S, E>[] result = Arrays.copyOf(transitions, transitions.length + 1);
+		result[transitions.length] = transition;
+		return result;
+	}
+
+	/**
+	 * Возвращает переходы-кандидаты для состояния и события. Никогда не возвращает {@code null}.
+	 */
+	abstract CompiledTransition<S, E>[] getTransitions(int stateIndex, E event);
+
+	/**
+	 * {@code True} - если событие откладывается в заданном состоянии.
+	 */
+	abstract boolean isDeferred(int stateIndex, E event);
+
+	/**
+	 * Вызывается после выбора перехода {@code candidates[position]} для обработки сообщения. По умолчанию ничего не делает.
+	 */
+	void onTransitionSelected(CompiledTransition<S, E>[] candidates, int position) {
+	}
+
+}
@@ -0,0 +1,34 @@
+package alex.band.statemachine.builder.impl;
+
+/**
+ * Заполнение таблицы диспетчеризации {@link TransitionTable} на этапе построения описания конечного автомата.
+ *
+ * <p>Доступно только построителям описания; заполненная таблица {@link #getTable()} далее не изменяется.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+interface TransitionTableBuilder<S, E> {
+
+	/**
+	 * Создает таблицу, подходящую для заданных типов идентификаторов.
+	 *
+	 * <p>Если идентификаторы состояний и событий являются константами перечислений, создается плотная таблица
+	 * {@link EnumTransitionTable}, в противном случае - {@link HashTransitionTable}.
+	 */
+	static <S, E> TransitionTableBuilder<S, E> create(int statesCount, Class<?> stateEnumType, Class<?> eventEnumType) {
+		if (stateEnumType != null && eventEnumType != null) {
+			return new EnumTransitionTable<>(stateEnumType.getEnumConstants().length, eventEnumType);
+		}
+		return new HashTransitionTable<>(statesCount);
+	}
+
+	void addTransition(int stateIndex, E event, CompiledTransition<S, E> transition);
+
+	void addDeferredEvent(int stateIndex, E event);
+
+	/**
+	 * Заполняемая таблица.
+	 */
+	TransitionTable<S, E> getTable();
+
+}
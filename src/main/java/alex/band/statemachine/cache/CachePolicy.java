@@ -0,0 +1,31 @@
+package alex.band.statemachine.cache;
+
+/**
+ * Порядок вытеснения ключей {@link StateMachineCache}. Хранит только ключи; значения хранит кэш.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+abstract class CachePolicy<K> {
+
+	static <K> CachePolicy<K> create(EvictionPolicy policy, int maximumSize) {
+		return policy == EvictionPolicy.LRU ? new LruCachePolicy<K>(maximumSize) : new TinyLfuCachePolicy<K>(maximumSize);
+	}
+
+	/**
+	 * Обращение к ключу, находящемуся в кэше.
+	 */
+	abstract void onHit(K key);
+
+	/**
+	 * Добавление ключа.
+	 *
+	 * @return вытесняемый ключ либо {@code null}. Только что добавленный ключ не вытесняется
+	 */
+	abstract K onInsert(K key);
+
+	/**
+	 * Удаление ключа из кэша не по причине вытеснения.
+	 */
+	abstract void onRemove(K key);
+
+}
@@ -0,0 +1,22 @@
+package alex.band.statemachine.cache;
+
+/**
+ * Алгоритм выбора экземпляра, вытесняемого из {@link StateMachineCache}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public enum EvictionPolicy {
+
+	/**
+	 * Вытесняется экземпляр, к которому дольше всего не обращались.
+	 */
+	LRU,
+
+	/**
+	 * W-TinyLFU: новые экземпляры попадают в небольшое LRU-окно, а в основную (сегментированную LRU) область допускаются,
+	 * только если к ним обращаются чаще, чем к кандидату на вытеснение. Частота оценивается вероятностным счетчиком
+	 * с периодическим старением. Устойчив к однократным обращениям к большому числу экземпляров.
+	 */
+	TINY_LFU
+
+}
@@ -0,0 +1,78 @@
+package alex.band.statemachine.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Хранилище снимков {@link SnapshotStore} в локальном каталоге: один файл на экземпляр.
+ *
+ * <p>Имя файла - строковое представление ключа ({@link String#valueOf(Object)}) в кодировке URL, поэтому разные ключи
+ * должны иметь разные строковые представления. Снимок записывается во временный файл и атомарно переименовывается,
+ * поэтому после сбоя остается либо старый, либо новый снимок. Ошибки ввода-вывода сообщаются исключением {@link UncheckedIOException}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class FileSnapshotStore<K> implements SnapshotStore<K> {
+
+	private static final String FILE_SUFFIX = ".snapshot";
+
+	private final Path directory;
+
+	public FileSnapshotStore(Path directory) {
+		this.directory = checkNotNull(directory);
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void save(K key, byte[] snapshot) {
+		Path file = fileOf(key);
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Files.write(temporary, snapshot);
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public byte[] load(K key) {
+		try {
+			return Files.readAllBytes(fileOf(key));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void delete(K key) {
+		try {
+			Files.deleteIfExists(fileOf(key));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Path fileOf(K key) {
+		try {
+			return directory.resolve(URLEncoder.encode(String.valueOf(key), "UTF-8") + FILE_SUFFIX);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package alex.band.statemachine.cache;
+
+/**
+ * Приближенный счетчик частоты обращений (count-min sketch) для {@link TinyLfuCachePolicy}.
+ *
+ * <p>Четыре строки 4-битных счетчиков упакованы по 16 в {@code long}. После числа обращений, в 10 раз превышающего емкость кэша,
+ * все счетчики делятся пополам, поэтому давние обращения постепенно перестают учитываться.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class FrequencySketch {
+
+	private static final int ROWS = 4;
+	private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	private static final long HALF_MASK = 0x7777777777777777L;
+
+	private final long[][] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	FrequencySketch(int maximumSize) {
+		int width = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+		this.table = new long[ROWS][width / 16];
+		this.mask = width - 1;
+		this.sampleSize = 10 * Math.max(1, maximumSize);
+	}
+
+	void increment(int hash) {
+		boolean added = false;
+		for (int row = 0; row < ROWS; row++) {
+			int index = indexOf(hash, row);
+			long word = table[row][index >>> 4];
+			int shift = (index & 15) << 2;
+			if (((word >>> shift) & 15) < 15) {
+				table[row][index >>> 4] = word + (1L << shift);
+				added = true;
+			}
+		}
+		if (added && ++additions == sampleSize) {
+			reset();
+		}
+	}
+
+	int frequency(int hash) {
+		int frequency = 15;
+		for (int row = 0; row < ROWS; row++) {
+			int index = indexOf(hash, row);
+			frequency = Math.min(frequency, (int) ((table[row][index >>> 4] >>> ((index & 15) << 2)) & 15));
+		}
+		return frequency;
+	}
+
+	private int indexOf(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h += h >>> 32;
+		return (int) h & mask;
+	}
+
+	private void reset() {
+		for (long[] row: table) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = (row[i] >>> 1) & HALF_MASK;
+			}
+		}
+		additions /= 2;
+	}
+
+}
@@ -0,0 +1,42 @@
+package alex.band.statemachine.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Реализация {@link EvictionPolicy#LRU}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class LruCachePolicy<K> extends CachePolicy<K> {
+
+	private final int maximumSize;
+	private final LinkedHashMap<K, Boolean> keys = new LinkedHashMap<>(16, 0.75f, true);
+
+	LruCachePolicy(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	@Override
+	void onHit(K key) {
+		keys.get(key);
+	}
+
+	@Override
+	K onInsert(K key) {
+		keys.put(key, Boolean.TRUE);
+		if (keys.size() <= maximumSize) {
+			return null;
+		}
+		Iterator<K> eldest = keys.keySet().iterator();
+		K victim = eldest.next();
+		eldest.remove();
+		return victim;
+	}
+
+	@Override
+	void onRemove(K key) {
+		keys.remove(key);
+	}
+
+}
@@ -0,0 +1,29 @@
+package alex.band.statemachine.cache;
+
+import alex.band.statemachine.snapshot.SnapshotSerializer;
+
+/**
+ * Хранилище двоичных снимков ({@link SnapshotSerializer}) экземпляров, вытесненных из {@link StateMachineCache}.
+ *
+ * @param <K> - тип ключа экземпляра
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface SnapshotStore<K> {
+
+	/**
+	 * Сохраняет снимок экземпляра, заменяя предыдущий.
+	 */
+	void save(K key, byte[] snapshot);
+
+	/**
+	 * Возвращает снимок экземпляра либо {@code null}, если он не сохранялся.
+	 */
+	byte[] load(K key);
+
+	/**
+	 * Удаляет снимок экземпляра, если он есть.
+	 */
+	void delete(K key);
+
+}
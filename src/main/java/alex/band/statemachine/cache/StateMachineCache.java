@@ -0,0 +1,176 @@
+package alex.band.statemachine.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.snapshot.SnapshotSerializer;
+import alex.band.statemachine.snapshot.SnapshotSupport;
+
+/**
+ * Ограниченный по количеству кэш активных экземпляров конечного автомата с пассивацией.
+ *
+ * <p>Экземпляр, вытесненный по {@link EvictionPolicy}, сохраняется в хранилище снимков {@link SnapshotStore} и удаляется из памяти.
+ * При следующем обращении ({@link #get(Object)}, {@link #accept(Object, StateMachineMessage)}) экземпляр восстанавливается
+ * из снимка без вызова действий; если снимка нет, создается и запускается новый экземпляр.
+ *
+ * <p>Вытесняемый экземпляр не должен обрабатывать сообщения. Поэтому ссылки, полученные через {@link #get(Object)},
+ * действительны только до следующего обращения к кэшу, а слушатели, подключенные к экземпляру, при пассивации теряются.
+ *
+ * <p>Кэш не является потокобезопасным: как и сами экземпляры, он используется из одного потока
+ * (например, отдельный кэш на каждый поток {@link alex.band.statemachine.concurrent.StateMachineRegistry}).
+ *
+ * @param <K> - тип ключа экземпляра
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class StateMachineCache<K, S, E> {
+
+	private final StateMachineFactory<S, E> factory;
+	private final SnapshotSerializer<S, E> serializer;
+	private final SnapshotStore<K> store;
+	private final CachePolicy<K> policy;
+	private final Map<K, StateMachine<S, E>> stateMachines = new HashMap<>();
+
+	private long hitCount;
+	private long missCount;
+	private long activationCount;
+	private long evictionCount;
+
+	/**
+	 * @param maximumSize - максимальное количество экземпляров в памяти
+	 */
+	public StateMachineCache(StateMachineFactory<S, E> factory, SnapshotSerializer<S, E> serializer, SnapshotStore<K> store,
+			int maximumSize, EvictionPolicy evictionPolicy) {
+		checkArgument(maximumSize > 0, "Maximum size must be positive.");
+		this.factory = checkNotNull(factory);
+		this.serializer = checkNotNull(serializer);
+		this.store = checkNotNull(store);
+		this.policy = CachePolicy.create(checkNotNull(evictionPolicy), maximumSize);
+	}
+
+	/**
+	 * Возвращает экземпляр по ключу, при необходимости восстанавливая его из снимка либо создавая новый.
+	 */
+	public StateMachine<S, E> get(K key) {
+		checkNotNull(key);
+
+		StateMachine<S, E> stateMachine = stateMachines.get(key);
+		if (stateMachine != null) {
+			hitCount++;
+			policy.onHit(key);
+			return stateMachine;
+		}
+
+		missCount++;
+		stateMachine = activate(key);
+		stateMachines.put(key, stateMachine);
+
+		K victim = policy.onInsert(key);
+		if (victim != null) {
+			passivate(victim);
+		}
+		return stateMachine;
+	}
+
+	public boolean accept(K key, E event) {
+		return accept(key, new StateMachineMessageImpl<>(event));
+	}
+
+	/**
+	 * Передает сообщение экземпляру, при необходимости активируя его.
+	 */
+	public boolean accept(K key, StateMachineMessage<E> message) {
+		StateMachine<S, E> stateMachine = stateMachines.get(key);
+		if (stateMachine != null) {
+			hitCount++;
+			policy.onHit(key);
+			return stateMachine.accept(message);
+		}
+		return get(key).accept(message);
+	}
+
+	/**
+	 * Удаляет экземпляр из памяти и из хранилища снимков.
+	 */
+	public void invalidate(K key) {
+		StateMachine<S, E> stateMachine = stateMachines.remove(key);
+		if (stateMachine != null) {
+			cancelTimers(stateMachine);
+			policy.onRemove(key);
+		}
+		store.delete(key);
+	}
+
+	/**
+	 * Сохраняет снимки всех экземпляров, находящихся в памяти. Экземпляры остаются в кэше.
+	 */
+	public void flush() {
+		for (Map.Entry<K, StateMachine<S, E>> entry: stateMachines.entrySet()) {
+			store.save(entry.getKey(), serializer.snapshot(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Количество экземпляров в памяти.
+	 */
+	public int size() {
+		return stateMachines.size();
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Количество экземпляров, восстановленных из снимков.
+	 */
+	public long getActivationCount() {
+		return activationCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	private StateMachine<S, E> activate(K key) {
+		StateMachine<S, E> stateMachine = factory.newStateMachine();
+		byte[] snapshot = store.load(key);
+		if (snapshot == null) {
+			stateMachine.start();
+		} else {
+			serializer.restore(stateMachine, snapshot);
+			activationCount++;
+		}
+		return stateMachine;
+	}
+
+	private void passivate(K key) {
+		StateMachine<S, E> stateMachine = stateMachines.remove(key);
+		cancelTimers(stateMachine);
+		store.save(key, serializer.snapshot(stateMachine));
+		evictionCount++;
+	}
+
+	/**
+	 * Таймеры вытесненного экземпляра не должны срабатывать: восстановленный из снимка экземпляр взводит их заново.
+	 */
+	private static void cancelTimers(StateMachine<?, ?> stateMachine) {
+		if (stateMachine instanceof SnapshotSupport) {
+			((SnapshotSupport<?, ?>) stateMachine).cancelTimers();
+		}
+	}
+
+}
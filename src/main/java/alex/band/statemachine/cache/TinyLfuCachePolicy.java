@@ -0,0 +1,90 @@
+package alex.band.statemachine.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Реализация {@link EvictionPolicy#TINY_LFU}.
+ *
+ * <p>Ключи распределены между LRU-окном (около 1% емкости) и основной областью, разделенной на испытательный и защищенный
+ * (80% основной области) сегменты. Ключ, вытесненный из окна, допускается в испытательный сегмент, если его частота
+ * обращений выше, чем у самого старого ключа испытательного сегмента; повторное обращение переводит ключ в защищенный сегмент.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class TinyLfuCachePolicy<K> extends CachePolicy<K> {
+
+	private final int windowMaximumSize;
+	private final int mainMaximumSize;
+	private final int protectedMaximumSize;
+
+	private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<K, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<K, Boolean> protectedKeys = new LinkedHashMap<>(16, 0.75f, true);
+	private final FrequencySketch sketch;
+
+	TinyLfuCachePolicy(int maximumSize) {
+		this.windowMaximumSize = Math.max(1, maximumSize / 100);
+		this.mainMaximumSize = maximumSize - windowMaximumSize;
+		this.protectedMaximumSize = mainMaximumSize * 8 / 10;
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	@Override
+	void onHit(K key) {
+		sketch.increment(key.hashCode());
+
+		if (window.get(key) != null || protectedKeys.get(key) != null) {
+			return;
+		}
+		if (probation.remove(key) != null) {
+			protectedKeys.put(key, Boolean.TRUE);
+			if (protectedKeys.size() > protectedMaximumSize) {
+				probation.put(removeEldest(protectedKeys), Boolean.TRUE);
+			}
+		}
+	}
+
+	@Override
+	K onInsert(K key) {
+		sketch.increment(key.hashCode());
+
+		window.put(key, Boolean.TRUE);
+		if (window.size() <= windowMaximumSize) {
+			return null;
+		}
+
+		K candidate = removeEldest(window);
+		if (probation.size() + protectedKeys.size() < mainMaximumSize) {
+			probation.put(candidate, Boolean.TRUE);
+			return null;
+		}
+		if (mainMaximumSize == 0) {
+			return candidate;
+		}
+
+		LinkedHashMap<K, Boolean> victimSegment = probation.isEmpty() ? protectedKeys : probation;
+		K victim = victimSegment.keySet().iterator().next();
+		if (sketch.frequency(candidate.hashCode()) > sketch.frequency(victim.hashCode())) {
+			victimSegment.remove(victim);
+			probation.put(candidate, Boolean.TRUE);
+			return victim;
+		}
+		return candidate;
+	}
+
+	@Override
+	void onRemove(K key) {
+		if (window.remove(key) == null && probation.remove(key) == null) {
+			protectedKeys.remove(key);
+		}
+	}
+
+	private static <K> K removeEldest(LinkedHashMap<K, Boolean> segment) {
+		Iterator<K> eldest = segment.keySet().iterator();
+		K key = eldest.next();
+		eldest.remove();
+		return key;
+	}
+
+}
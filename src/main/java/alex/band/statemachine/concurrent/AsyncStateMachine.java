@@ -0,0 +1,35 @@
+package alex.band.statemachine.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Конечный автомат {@link StateMachine}, поддерживающий асинхронную обработку событий и сообщений.
+ *
+ * <p>Вызывающий поток не ожидает выполнения действий {@code TransitionAction} и {@code StateAction}: сообщение ставится в очередь,
+ * а результат обработки становится доступен через {@link CompletableFuture}.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface AsyncStateMachine<S, E> extends StateMachine<S, E> {
+
+	/**
+	 * Асинхронная отправка события на обработку конечным автоматом.
+	 *
+	 * @return результат, аналогичный {@link StateMachine#accept(Object)}
+	 */
+	CompletableFuture<Boolean> acceptAsync(E event);
+
+	/**
+	 * Асинхронная отправка сообщения на обработку конечным автоматом.
+	 *
+	 * @return результат, аналогичный {@link StateMachine#accept(StateMachineMessage)}
+	 */
+	CompletableFuture<Boolean> acceptAsync(StateMachineMessage<E> message);
+
+}
@@ -0,0 +1,349 @@
+package alex.band.statemachine.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import alex.band.statemachine.BatchResult;
+import alex.band.statemachine.OrthogonalStateMachine;
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.context.StateMachineContext;
+import alex.band.statemachine.listener.ListenerFilter;
+import alex.band.statemachine.listener.StateMachineListener;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.state.State;
+import alex.band.statemachine.timer.EventScheduler;
+import alex.band.statemachine.timer.Timeout;
+
+/**
+ * Потокобезопасный конечный автомат {@link StateMachine}, построенный по модели актора.
+ *
+ * <p>Вызовы {@link #start()}, {@link #stop()} и {@code accept()} из любых потоков помещаются в неблокирующий почтовый ящик
+ * {@link MpscMailbox}. Поток, первым захвативший право обработки, извлекает команды по порядку и выполняет их на исходном
+ * (непотокобезопасном) автомате, поэтому семантика run-to-completion сохраняется, а блокировки на пути добавления сообщений отсутствуют.
+ * Остальные потоки ожидают только результата собственной команды.
+ *
+ * <p>Вызов {@code accept()} из действий самого автомата (в потоке, который обрабатывает почтовый ящик) выполняется немедленно,
+ * как и в исходном автомате. Обработчики {@link CompletableFuture} из {@link #acceptAsync(StateMachineMessage)} выполняются
+ * в потоке почтового ящика вне команды: их {@code accept()} встает в очередь после уже добавленных сообщений.
+ *
+ * <p>Асинхронные вызовы {@link #acceptAsync(StateMachineMessage)} не блокируют вызывающий поток: обработка почтового ящика
+ * планируется на исполнителе {@link Executor}, который может разделяться любым количеством автоматов. В каждый момент времени
+ * почтовый ящик обрабатывается не более чем одной задачей, поэтому отдельный поток на каждый автомат не требуется.
+ * Чтобы один загруженный автомат не занимал поток исполнителя бесконечно, после {@value #DRAIN_BATCH_SIZE} сообщений
+ * обработка переносится в новую задачу.
+ *
+ * <p>Если исходный автомат поддерживает {@link EventScheduler}, сработавшие таймеры (тайм-ауты состояний и отложенные сообщения)
+ * доставляются через {@link #acceptAsync(StateMachineMessage)} и обрабатываются в общем порядке почтового ящика.
+ *
+ * <p>{@link #getCurrentState()} и {@link #isRunning()} возвращают значения, опубликованные при обработке последней команды.
+ * Значения публикуются служебным слушателем исходного автомата, зарегистрированным при создании обертки, то есть до оповещения
+ * слушателей, добавленных через обертку: поток, разбуженный таким слушателем, видит уже новое состояние.
+ * {@link StateMachineContext} не синхронизируется и должен изменяться только компонентами самого автомата.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class ConcurrentStateMachine<S, E> implements AsyncStateMachine<S, E>, EventScheduler<S, E> {
+
+	static final int DRAIN_BATCH_SIZE = 256;
+
+	private final StateMachine<S, E> delegate;
+	private final Executor executor;
+	private final MpscMailbox<Envelope<S, E>> mailbox = new MpscMailbox<>();
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final Runnable drainTask = new Runnable() {
+
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Поток, захвативший право обработки почтового ящика.
+	 */
+	private volatile Thread drainingThread;
+
+	/**
+	 * Поток, выполняющий команду исходного автомата: его вызовы {@code accept()} поступают из действий автомата.
+	 */
+	private volatile Thread executingThread;
+	private volatile State<S, E> currentState;
+	private volatile boolean running;
+
+	public ConcurrentStateMachine(StateMachineFactory<S, E> factory) {
+		this(factory.newStateMachine());
+	}
+
+	public ConcurrentStateMachine(StateMachineFactory<S, E> factory, Executor executor) {
+		this(factory.newStateMachine(), executor);
+	}
+
+	/**
+	 * Асинхронная обработка выполняется на {@link StateMachineExecutors#defaultExecutor()}.
+	 */
+	public ConcurrentStateMachine(StateMachine<S, E> delegate) {
+		this(delegate, StateMachineExecutors.defaultExecutor());
+	}
+
+	public ConcurrentStateMachine(StateMachine<S, E> delegate, Executor executor) {
+		this.delegate = delegate;
+		this.executor = executor;
+		if (delegate instanceof EventScheduler) {
+			getEventScheduler().deliverTo(this);
+		}
+		delegate.addListener(new DetailsPublisher());
+		publishDetails();
+	}
+
+	@Override
+	public void start() {
+		execute(new Envelope<S, E>(Envelope.Command.START, null, Thread.currentThread())).getResult();
+	}
+
+	@Override
+	public void stop() {
+		execute(new Envelope<S, E>(Envelope.Command.STOP, null, Thread.currentThread())).getResult();
+	}
+
+	@Override
+	public boolean accept(E event) {
+		return accept(new StateMachineMessageImpl<>(event));
+	}
+
+	@Override
+	public boolean accept(StateMachineMessage<E> message) {
+		return execute(new Envelope<>(Envelope.Command.ACCEPT, message, Thread.currentThread())).getResult();
+	}
+
+	/**
+	 * Пакет обрабатывается целиком, без чередования с командами других потоков.
+	 *
+	 * <p>В отличие от исходного автомата возвращает независимую копию результатов: буфер исходного автомата может быть
+	 * повторно использован следующей командой другого потока.
+	 */
+	@Override
+	public BatchResult<S, E> acceptAll(Iterable<? extends StateMachineMessage<E>> messages) {
+		return execute(new Envelope<S, E>(messages, Thread.currentThread())).getBatchResult();
+	}
+
+	@Override
+	public CompletableFuture<Boolean> acceptAsync(E event) {
+		return acceptAsync(new StateMachineMessageImpl<>(event));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> acceptAsync(StateMachineMessage<E> message) {
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		mailbox.offer(new Envelope<>(Envelope.Command.ACCEPT, message, future));
+
+		if (draining.compareAndSet(false, true)) {
+			schedule();
+		}
+		return future;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public State<S, E> getCurrentState() {
+		// the current state of several regions is undefined: the delegate fails fast
+		return OrthogonalStateMachine.hasCurrentState(delegate) ? currentState : delegate.getCurrentState();
+	}
+
+	@Override
+	public StateMachineContext getContext() {
+		return delegate.getContext();
+	}
+
+	@Override
+	public void addListener(StateMachineListener<S, E> listener) {
+		delegate.addListener(listener);
+	}
+
+	@Override
+	public void addListener(StateMachineListener<S, E> listener, ListenerFilter<S, E> filter) {
+		delegate.addListener(listener, filter);
+	}
+
+	@Override
+	public void removeListener(StateMachineListener<S, E> listener) {
+		delegate.removeListener(listener);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException если исходный автомат не поддерживает {@link EventScheduler}
+	 */
+	@Override
+	public Timeout schedule(E event, Duration delay) {
+		return getEventScheduler().schedule(event, delay);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException если исходный автомат не поддерживает {@link EventScheduler}
+	 */
+	@Override
+	public Timeout schedule(StateMachineMessage<E> message, Duration delay) {
+		return getEventScheduler().schedule(message, delay);
+	}
+
+	@Override
+	public void deliverTo(AsyncStateMachine<S, E> target) {
+		getEventScheduler().deliverTo(target);
+	}
+
+	@SuppressWarnings("unchecked")
+	private EventScheduler<S, E> getEventScheduler() {
+		if (!(delegate instanceof EventScheduler)) {
+			throw new UnsupportedOperationException("Delegate state machine doesn't support scheduled events.");
+		}
+		return (EventScheduler<S, E>) delegate;
+	}
+
+	private Envelope<S, E> execute(Envelope<S, E> envelope) {
+		Thread currentThread = Thread.currentThread();
+		if (executingThread == currentThread) {
+			// re-entrant call from an action of this state machine
+			envelope.execute(delegate);
+			publishDetails();
+			envelope.complete();
+			return envelope;
+		}
+
+		mailbox.offer(envelope);
+		if (drainingThread == currentThread) {
+			// call from a callback of a completed future: the messages queued before this one are processed first
+			while (!envelope.isDone()) {
+				process(mailbox.poll());
+			}
+			return envelope;
+		}
+		tryDrain();
+
+		// park() returns immediately while the interrupt flag is set, so the flag is cleared for the wait and restored afterwards
+		boolean interrupted = false;
+		while (!envelope.isDone()) {
+			LockSupport.park(this);
+			interrupted |= Thread.interrupted();
+			if (!envelope.isDone()) {
+				tryDrain();
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return envelope;
+	}
+
+	private void tryDrain() {
+		if (draining.compareAndSet(false, true)) {
+			drain();
+		}
+	}
+
+	/**
+	 * Передает право обработки почтового ящика задаче исполнителя. Если исполнитель отклонил задачу,
+	 * ящик обрабатывается пакетами в текущем потоке, пока задачу не удастся передать или ящик не опустеет.
+	 */
+	private void schedule() {
+		do {
+			try {
+				executor.execute(drainTask);
+				return;
+			} catch (RejectedExecutionException e) {
+				// the executor is saturated or shut down: process the next batch in the calling thread
+			}
+		} while (drainBatch());
+	}
+
+	private void drain() {
+		if (drainBatch()) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Обрабатывает не более {@value #DRAIN_BATCH_SIZE} сообщений почтового ящика. Вызывается только потоком, захватившим право обработки.
+	 *
+	 * <p>После освобождения права обработки ящик проверяется повторно: сообщение, добавленное в момент освобождения,
+	 * будет обработано либо текущим потоком, либо потоком, который его добавил.
+	 *
+	 * @return {@code true} - если пакет исчерпан, а в ящике остались сообщения; право обработки в этом случае сохраняется
+	 */
+	private boolean drainBatch() {
+		Thread currentThread = Thread.currentThread();
+		int processed = 0;
+		do {
+			drainingThread = currentThread;
+			Envelope<S, E> envelope;
+			while ((envelope = mailbox.poll()) != null) {
+				process(envelope);
+
+				if (++processed == DRAIN_BATCH_SIZE && !mailbox.isEmpty()) {
+					drainingThread = null;
+					return true;
+				}
+			}
+			drainingThread = null;
+			draining.set(false);
+		} while (!mailbox.isEmpty() && draining.compareAndSet(false, true));
+		return false;
+	}
+
+	/**
+	 * Выполняет команду и публикует ее результат. Обработчики завершенного {@link CompletableFuture} выполняются вне команды.
+	 */
+	private void process(Envelope<S, E> envelope) {
+		executingThread = Thread.currentThread();
+		envelope.execute(delegate);
+		publishDetails();
+		executingThread = null;
+		envelope.complete();
+	}
+
+	private void publishDetails() {
+		if (OrthogonalStateMachine.hasCurrentState(delegate)) {
+			currentState = delegate.getCurrentState();
+		}
+		running = delegate.isRunning();
+	}
+
+	/**
+	 * Публикует состояние исходного автомата до оповещения остальных слушателей.
+	 */
+	private final class DetailsPublisher implements StateMachineListener<S, E> {
+
+		@Override
+		public void onStart(StateMachineDetails<S, E> stateMachineDetails) {
+			publishDetails();
+		}
+
+		@Override
+		public void onStop(StateMachineDetails<S, E> stateMachineDetails) {
+			publishDetails();
+		}
+
+		@Override
+		public void onStateChanged(StateMachineMessage<E> message, State<S, E> previousState, StateMachineDetails<S, E> stateMachineDetails) {
+			publishDetails();
+		}
+
+		@Override
+		public void onEventNotAccepted(StateMachineMessage<E> message, StateMachineDetails<S, E> stateMachineDetails) {
+			publishDetails();
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package alex.band.statemachine.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+import alex.band.statemachine.BatchResult;
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Элемент почтового ящика {@link ConcurrentStateMachine}: команда запуска/остановки либо сообщение для обработки,
+ * а также результат ее выполнения.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class Envelope<S, E> {
+
+	enum Command {
+		START, STOP, ACCEPT, ACCEPT_ALL
+	}
+
+	private static final int PENDING = 0;
+	private static final int COMPLETED = 1;
+	private static final int FAILED = 2;
+
+	private final Command command;
+	private final StateMachineMessage<E> message;
+	private final Iterable<? extends StateMachineMessage<E>> messages;
+	private final Thread waiter;
+	private final CompletableFuture<Boolean> future;
+
+	private volatile int status = PENDING;
+	private boolean result;
+	private BatchResult<S, E> batchResult;
+	private Throwable failure;
+
+	Envelope(Command command, StateMachineMessage<E> message, Thread waiter) {
+		this.command = command;
+		this.message = message;
+		this.messages = null;
+		this.waiter = waiter;
+		this.future = null;
+	}
+
+	Envelope(Command command, StateMachineMessage<E> message, CompletableFuture<Boolean> future) {
+		this.command = command;
+		this.message = message;
+		this.messages = null;
+		this.waiter = null;
+		this.future = future;
+	}
+
+	Envelope(Iterable<? extends StateMachineMessage<E>> messages, Thread waiter) {
+		this.command = Command.ACCEPT_ALL;
+		this.message = null;
+		this.messages = messages;
+		this.waiter = waiter;
+		this.future = null;
+	}
+
+	/**
+	 * Выполняет команду над конечным автоматом и запоминает результат. Ожидающий поток оповещается только вызовом {@link #complete()}.
+	 */
+	void execute(StateMachine<S, E> stateMachine) {
+		try {
+			switch (command) {
+			case START:
+				stateMachine.start();
+				result = true;
+				break;
+			case STOP:
+				stateMachine.stop();
+				result = true;
+				break;
+			case ACCEPT_ALL:
+				// the delegate reuses its buffer, so the results are copied before the next command is executed
+				batchResult = stateMachine.acceptAll(messages).copy();
+				result = batchResult.getAcceptedCount() > 0;
+				break;
+			default:
+				result = stateMachine.accept(message);
+			}
+		} catch (Throwable e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Публикует результат выполнения: будит ожидающий поток либо завершает {@link CompletableFuture}.
+	 */
+	void complete() {
+		status = failure == null ? COMPLETED : FAILED;
+		if (waiter != null && waiter != Thread.currentThread()) {
+			LockSupport.unpark(waiter);
+		}
+		if (future != null) {
+			if (failure == null) {
+				future.complete(result);
+			} else {
+				future.completeExceptionally(failure);
+			}
+		}
+	}
+
+	boolean isDone() {
+		return status != PENDING;
+	}
+
+	/**
+	 * Возвращает результат выполнения. Если при выполнении возникло исключение, оно выбрасывается в вызывающем потоке.
+	 */
+	boolean getResult() {
+		if (status == FAILED) {
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			throw new IllegalStateException(failure);
+		}
+		return result;
+	}
+
+	/**
+	 * Возвращает результаты пакетной обработки. Исключение, возникшее при выполнении, выбрасывается в вызывающем потоке.
+	 */
+	BatchResult<S, E> getBatchResult() {
+		getResult();
+		return batchResult;
+	}
+
+}
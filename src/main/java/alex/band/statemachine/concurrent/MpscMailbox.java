@@ -0,0 +1,87 @@
+package alex.band.statemachine.concurrent;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Неблокирующая очередь для множества производителей и одного потребителя (MPSC).
+ *
+ * <p>Односвязный список с фиктивным головным узлом: производитель атомарно заменяет хвост ({@code getAndSet}) и связывает предыдущий
+ * хвост с новым узлом, потребитель двигает голову. Порядок извлечения совпадает с порядком линеаризации вызовов {@link #offer(Object)}.
+ *
+ * <p>{@link #poll()} можно вызывать только из одного потока-потребителя в каждый момент времени. {@link #isEmpty()} можно вызывать
+ * из любого потока: голова публикуется через {@code volatile}.
+ *
+ * @param <T> - тип элементов очереди
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class MpscMailbox<T> {
+
+	private final AtomicReference<Node<T>> tail;
+	private volatile Node<T> head;
+
+	public MpscMailbox() {
+		head = new Node<>(null);
+		tail = new AtomicReference<>(head);
+	}
+
+	/**
+	 * Добавляет элемент в конец очереди. Может вызываться из любого потока.
+	 */
+	public void offer(T value) {
+		Node<T> node = new Node<>(value);
+		Node<T> previousTail = tail.getAndSet(node);
+		previousTail.lazySetNext(node);
+	}
+
+	/**
+	 * Извлекает элемент из начала очереди либо возвращает {@code null}, если очередь пуста.
+	 *
+	 * <p>Если производитель уже занял место в очереди, но еще не связал узел, метод дожидается связывания,
+	 * поэтому {@code null} означает, что на момент вызова очередь действительно была пуста.
+	 */
+	public T poll() {
+		Node<T> currentHead = head;
+		Node<T> next = currentHead.next;
+		if (next == null) {
+			if (currentHead == tail.get()) {
+				return null;
+			}
+			while ((next = currentHead.next) == null) {
+				// producer has swapped the tail but has not linked the node yet
+				Thread.yield();
+			}
+		}
+
+		T value = next.value;
+		next.value = null;
+		head = next;
+		return value;
+	}
+
+	/**
+	 * {@code True} - если в очереди нет элементов, в том числе еще не связанных.
+	 */
+	public boolean isEmpty() {
+		return head == tail.get();
+	}
+
+	private static final class Node<T> {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Node, Node> NEXT = AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+		private T value;
+		private volatile Node<T> next;
+
+		Node(T value) {
+			this.value = value;
+		}
+
+		void lazySetNext(Node<T> node) {
+			NEXT.lazySet(this, node);
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package alex.band.statemachine.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Элемент очереди сегмента {@link StateMachineRegistry}: ключ экземпляра, сообщение для него (либо {@code null}
+ * для удаления экземпляра) и, если результат ожидается, {@link CompletableFuture}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class RegistryRequest<K, E> {
+
+	private final K key;
+	private final StateMachineMessage<E> message;
+	private final CompletableFuture<Boolean> future;
+
+	RegistryRequest(K key, StateMachineMessage<E> message, CompletableFuture<Boolean> future) {
+		this.key = key;
+		this.message = message;
+		this.future = future;
+	}
+
+	K getKey() {
+		return key;
+	}
+
+	StateMachineMessage<E> getMessage() {
+		return message;
+	}
+
+	/**
+	 * {@code True} - если запрос удаляет экземпляр, а не передает ему сообщение.
+	 */
+	boolean isRemoval() {
+		return message == null;
+	}
+
+	CompletableFuture<Boolean> getFuture() {
+		return future;
+	}
+
+}
@@ -0,0 +1,58 @@
+package alex.band.statemachine.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Исполнители для асинхронной обработки сообщений {@link AsyncStateMachine}.
+ *
+ * <p>Если среда выполнения поддерживает виртуальные потоки (Java 21+), они используются по умолчанию.
+ * Библиотека компилируется под Java 8, поэтому виртуальные потоки подключаются через отражение.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class StateMachineExecutors {
+
+	private static final ExecutorService VIRTUAL_THREADS_EXECUTOR = createVirtualThreadPerTaskExecutor();
+
+	private StateMachineExecutors() {
+	}
+
+	/**
+	 * {@code True} - если среда выполнения поддерживает виртуальные потоки.
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return VIRTUAL_THREADS_EXECUTOR != null;
+	}
+
+	/**
+	 * Возвращает общий исполнитель, создающий виртуальный поток на каждую задачу.
+	 *
+	 * @throws UnsupportedOperationException если виртуальные потоки не поддерживаются
+	 */
+	public static ExecutorService virtualThreadPerTaskExecutor() {
+		if (VIRTUAL_THREADS_EXECUTOR == null) {
+			throw new UnsupportedOperationException("Virtual threads are not supported by the current runtime.");
+		}
+		return VIRTUAL_THREADS_EXECUTOR;
+	}
+
+	/**
+	 * Исполнитель по умолчанию: виртуальные потоки, если они поддерживаются, иначе {@link ForkJoinPool#commonPool()}.
+	 */
+	public static Executor defaultExecutor() {
+		return VIRTUAL_THREADS_EXECUTOR != null ? VIRTUAL_THREADS_EXECUTOR : ForkJoinPool.commonPool();
+	}
+
+	private static ExecutorService createVirtualThreadPerTaskExecutor() {
+		try {
+			Method factoryMethod = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factoryMethod.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,323 @@
+package alex.band.statemachine.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+
+/**
+ * Реестр экземпляров конечного автомата, адресуемых ключом.
+ *
+ * <p>Ключи распределяются по фиксированному набору сегментов по хэш-коду. Каждый сегмент обслуживается собственным
+ * потоком и владеет своими экземплярами единолично: сообщения попадают в неблокирующую очередь {@link MpscMailbox}
+ * сегмента, а поток сегмента извлекает их пакетами и передает экземплярам. Поэтому сообщения одного ключа обрабатываются
+ * последовательно и в порядке отправки из одного потока, а блокировки на пути отправки отсутствуют.
+ *
+ * <p>Экземпляры создаются из {@link StateMachineFactory} и запускаются при первом сообщении для ключа.
+ * Экземпляр, перешедший в конечное состояние, удаляется из реестра; следующее сообщение для того же ключа создаст новый экземпляр.
+ *
+ * <p>Экземпляры доступны только потоку своего сегмента, поэтому ссылки на них наружу не выдаются.
+ *
+ * @param <K> - тип ключа экземпляра
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class StateMachineRegistry<K, S, E> implements AutoCloseable {
+
+	static final int DRAIN_BATCH_SIZE = 1024;
+
+	private static final int SPINS_BEFORE_PARK = 64;
+
+	private final StateMachineFactory<S, E> factory;
+	private final Shard[] shards;
+	private final Thread.UncaughtExceptionHandler exceptionHandler;
+
+	/**
+	 * Запрос, которым {@link #close()} завершает поток сегмента. Все запросы, добавленные в очередь до него, уже обработаны.
+	 */
+	private final RegistryRequest<K, E> closeRequest = new RegistryRequest<>(null, null, null);
+
+	private volatile boolean open = true;
+
+	/**
+	 * Создает реестр с числом сегментов, равным числу доступных процессоров.
+	 */
+	public StateMachineRegistry(StateMachineFactory<S, E> factory) {
+		this(factory, Runtime.getRuntime().availableProcessors());
+	}
+
+	public StateMachineRegistry(StateMachineFactory<S, E> factory, int shardsCount) {
+		this(factory, shardsCount, null);
+	}
+
+	/**
+	 * @param exceptionHandler - получает исключения, возникшие при обработке сообщений, отправленных через {@link #post(Object, Object)}.
+	 *            Если не задан, используется обработчик потока сегмента.
+	 */
+	@SuppressWarnings("unchecked")
+	public StateMachineRegistry(StateMachineFactory<S, E> factory, int shardsCount, Thread.UncaughtExceptionHandler exceptionHandler) {
+		checkArgument(shardsCount > 0, "Shards count must be positive.");
+
+		this.factory = checkNotNull(factory);
+		this.exceptionHandler = exceptionHandler;
+		this.shards = new StateMachineRegistry.Shard[shardsCount];
+
+		for (int i = 0; i < shardsCount; i++) {
+			shards[i] = new Shard(i);
+		}
+		for (Shard shard: shards) {
+			shard.thread.start();
+		}
+	}
+
+	/**
+	 * Отправка события экземпляру с заданным ключом.
+	 *
+	 * @return результат, аналогичный {@link StateMachine#accept(Object)}
+	 */
+	public CompletableFuture<Boolean> send(K key, E event) {
+		return send(key, new StateMachineMessageImpl<>(event));
+	}
+
+	/**
+	 * Отправка сообщения экземпляру с заданным ключом.
+	 *
+	 * @return результат, аналогичный {@link StateMachine#accept(StateMachineMessage)}
+	 */
+	public CompletableFuture<Boolean> send(K key, StateMachineMessage<E> message) {
+		checkNotNull(message);
+
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		enqueue(new RegistryRequest<>(key, message, future));
+		return future;
+	}
+
+	/**
+	 * Отправка события экземпляру с заданным ключом без ожидания результата.
+	 */
+	public void post(K key, E event) {
+		post(key, new StateMachineMessageImpl<>(event));
+	}
+
+	/**
+	 * Отправка сообщения экземпляру с заданным ключом без ожидания результата.
+	 */
+	public void post(K key, StateMachineMessage<E> message) {
+		checkNotNull(message);
+
+		enqueue(new RegistryRequest<K, E>(key, message, null));
+	}
+
+	/**
+	 * Останавливает и удаляет экземпляр с заданным ключом.
+	 *
+	 * @return {@code true} - если экземпляр существовал
+	 */
+	public CompletableFuture<Boolean> remove(K key) {
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		enqueue(new RegistryRequest<K, E>(key, null, future));
+		return future;
+	}
+
+	/**
+	 * Текущее число экземпляров в реестре. Значение приблизительное, если в момент вызова сообщения еще обрабатываются.
+	 */
+	public long size() {
+		long size = 0;
+		for (Shard shard: shards) {
+			size += shard.size;
+		}
+		return size;
+	}
+
+	public int getShardsCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Прекращает прием сообщений, дожидается обработки уже отправленных и завершает потоки сегментов.
+	 * Экземпляры при этом не останавливаются.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		open = false;
+		for (Shard shard: shards) {
+			shard.offer(closeRequest);
+		}
+		for (Shard shard: shards) {
+			shard.thread.join();
+		}
+	}
+
+	/**
+	 * Запрос, прошедший проверку {@code open} одновременно с {@link #close()}, может попасть в очередь после запроса завершения.
+	 * Такой запрос обрабатывает отправивший его поток, см. {@link Shard#offer(RegistryRequest)}.
+	 */
+	private void enqueue(RegistryRequest<K, E> request) {
+		checkNotNull(request.getKey());
+		checkState(open, "State machine registry is closed.");
+
+		shards[shardIndex(request.getKey())].offer(request);
+	}
+
+	private int shardIndex(K key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % shards.length;
+	}
+
+	private final class Shard implements Runnable {
+
+		private final MpscMailbox<RegistryRequest<K, E>> mailbox = new MpscMailbox<>();
+		private final Map<K, StateMachine<S, E>> machines = new HashMap<>();
+		private final Thread thread;
+
+		private volatile boolean sleeping;
+		private volatile boolean terminated;
+		private volatile int size;
+
+		/**
+		 * Поток сегмента извлек запрос завершения. Доступно только потоку сегмента.
+		 */
+		private boolean closing;
+
+		Shard(int index) {
+			thread = new Thread(this, "statemachine-registry-shard-" + index);
+			thread.setDaemon(true);
+		}
+
+		/**
+		 * Добавляет запрос в очередь сегмента. Флаг {@code terminated} читается после добавления, а поток сегмента выставляет его
+		 * до последнего извлечения из очереди, поэтому запрос, добавленный после завершения потока, будет обработан
+		 * либо этим извлечением, либо отправителем.
+		 */
+		void offer(RegistryRequest<K, E> request) {
+			mailbox.offer(request);
+			if (terminated) {
+				drainAfterTermination();
+			} else if (sleeping) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		@Override
+		public void run() {
+			int idleSpins = 0;
+			while (!closing) {
+				if (drainBatch() > 0) {
+					idleSpins = 0;
+				} else if (++idleSpins < SPINS_BEFORE_PARK) {
+					Thread.yield();
+				} else {
+					idle();
+				}
+			}
+			drainAfterTermination();
+		}
+
+		private int drainBatch() {
+			int processed = 0;
+			RegistryRequest<K, E> request;
+			while (processed < DRAIN_BATCH_SIZE && (request = mailbox.poll()) != null) {
+				if (request == closeRequest) {
+					closing = true;
+				} else {
+					process(request);
+				}
+				processed++;
+			}
+			return processed;
+		}
+
+		/**
+		 * Обрабатывает запросы, добавленные после запроса завершения. Вызывается потоком сегмента при завершении
+		 * и отправителями после него; монитор сегмента упорядочивает доступ к экземплярам.
+		 */
+		private synchronized void drainAfterTermination() {
+			terminated = true;
+			RegistryRequest<K, E> request;
+			while ((request = mailbox.poll()) != null) {
+				if (request != closeRequest) {
+					process(request);
+				}
+			}
+		}
+
+		private void process(RegistryRequest<K, E> request) {
+			CompletableFuture<Boolean> future = request.getFuture();
+			try {
+				boolean result = request.isRemoval() ? removeMachine(request.getKey()) : acceptMessage(request);
+				size = machines.size();
+				if (future != null) {
+					future.complete(result);
+				}
+			} catch (Throwable e) {
+				size = machines.size();
+				if (future != null) {
+					future.completeExceptionally(e);
+				} else {
+					handleException(e);
+				}
+			}
+		}
+
+		private boolean acceptMessage(RegistryRequest<K, E> request) {
+			K key = request.getKey();
+			StateMachine<S, E> machine = machines.get(key);
+			if (machine == null) {
+				machine = factory.newStateMachine();
+				machine.start();
+				machines.put(key, machine);
+			}
+
+			try {
+				return machine.accept(request.getMessage());
+			} finally {
+				if (!machine.isRunning()) {
+					machines.remove(key);
+				}
+			}
+		}
+
+		private boolean removeMachine(K key) {
+			StateMachine<S, E> machine = machines.remove(key);
+			if (machine == null) {
+				return false;
+			}
+			if (machine.isRunning()) {
+				machine.stop();
+			}
+			return true;
+		}
+
+		private void handleException(Throwable e) {
+			Thread.UncaughtExceptionHandler handler = exceptionHandler != null ? exceptionHandler : thread.getUncaughtExceptionHandler();
+			handler.uncaughtException(thread, e);
+		}
+
+		/**
+		 * Засыпает до появления сообщений. Флаг {@code sleeping} выставляется до повторной проверки очереди,
+		 * поэтому сообщение, добавленное в этот момент, либо будет замечено проверкой, либо разбудит поток.
+		 */
+		private void idle() {
+			sleeping = true;
+			if (mailbox.isEmpty()) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+			}
+			sleeping = false;
+		}
+	}
+
+}
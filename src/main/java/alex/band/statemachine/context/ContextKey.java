@@ -0,0 +1,48 @@
+package alex.band.statemachine.context;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.builder.ContextConfigurer;
+
+/**
+ * Типизированный ключ значения контекста {@link StateMachineContext}.
+ *
+ * <p>Ключ регистрируется в описании конечного автомата ({@link ContextConfigurer#withKey(ContextKey)}), которое назначает ему
+ * номер ячейки контекста {@link ContextLayout}, поэтому значение хранится в элементе массива, а не в хэш-таблице строк.
+ * Ключи сравниваются по ссылке и предназначены для объявления в виде констант.
+ *
+ * @param <T> - тип значения
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class ContextKey<T> {
+
+	private final String name;
+	private final Class<T> type;
+
+	private ContextKey(String name, Class<T> type) {
+		this.name = Preconditions.checkNotNull(name);
+		this.type = Preconditions.checkNotNull(type);
+	}
+
+	/**
+	 * @param name - имя, по которому значение доступно также через {@link StateMachineContext#getValue(String)}
+	 */
+	public static <T> ContextKey<T> of(String name, Class<T> type) {
+		return new ContextKey<>(name, type);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return "ContextKey [name=" + name + ", type=" + type.getSimpleName() + "]";
+	}
+
+}
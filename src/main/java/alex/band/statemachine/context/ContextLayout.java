@@ -0,0 +1,115 @@
+package alex.band.statemachine.context;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Неизменяемое размещение типизированных ключей {@link ContextKey}, {@link IntKey}, {@link LongKey} по ячейкам контекста
+ * {@link StateMachineContextImpl}. Создается один раз для описания конечного автомата и разделяется всеми его экземплярами.
+ *
+ * <p>Номера ячеек назначаются раскладкой в порядке регистрации ключей, поэтому размер контекста определяется только
+ * ключами описания. Один ключ в разных раскладках может иметь разные номера.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class ContextLayout {
+
+	public static final ContextLayout EMPTY = new ContextLayout(Collections.<ContextKey<?>>emptySet(), Collections.<IntKey>emptySet(),
+			Collections.<LongKey>emptySet());
+
+	private final ContextKey<?>[] objectKeys;
+	private final IntKey[] intKeys;
+	private final LongKey[] longKeys;
+	private final Map<String, Object> keysByName = new HashMap<>();
+	private final Map<Object, Integer> slots = new IdentityHashMap<>();
+
+	/**
+	 * @throws IllegalArgumentException если разные ключи имеют одинаковые имена
+	 */
+	public ContextLayout(Collection<ContextKey<?>> objectKeys, Collection<IntKey> intKeys, Collection<LongKey> longKeys) {
+		this.objectKeys = new LinkedHashSet<>(objectKeys).toArray(new ContextKey<?>[0]);
+		for (int slot = 0; slot < this.objectKeys.length; slot++) {
+			register(this.objectKeys[slot].getName(), this.objectKeys[slot], slot);
+		}
+		this.intKeys = new LinkedHashSet<>(intKeys).toArray(new IntKey[0]);
+		for (int slot = 0; slot < this.intKeys.length; slot++) {
+			register(this.intKeys[slot].getName(), this.intKeys[slot], slot);
+		}
+		this.longKeys = new LinkedHashSet<>(longKeys).toArray(new LongKey[0]);
+		for (int slot = 0; slot < this.longKeys.length; slot++) {
+			register(this.longKeys[slot].getName(), this.longKeys[slot], slot);
+		}
+	}
+
+	/**
+	 * Объединяет ключи нескольких раскладок. Один и тот же ключ может входить в несколько раскладок.
+	 *
+	 * @throws IllegalArgumentException если разные ключи имеют одинаковые имена
+	 */
+	public static ContextLayout merge(Collection<ContextLayout> layouts) {
+		Set<ContextKey<?>> objectKeys = new LinkedHashSet<>();
+		Set<IntKey> intKeys = new LinkedHashSet<>();
+		Set<LongKey> longKeys = new LinkedHashSet<>();
+		for (ContextLayout layout: layouts) {
+			Collections.addAll(objectKeys, layout.objectKeys);
+			Collections.addAll(intKeys, layout.intKeys);
+			Collections.addAll(longKeys, layout.longKeys);
+		}
+		return new ContextLayout(objectKeys, intKeys, longKeys);
+	}
+
+	/**
+	 * Возвращает имена всех зарегистрированных ключей.
+	 */
+	public Set<String> getKeyNames() {
+		return Collections.unmodifiableSet(keysByName.keySet());
+	}
+
+	int objectSlots() {
+		return objectKeys.length;
+	}
+
+	int intSlots() {
+		return intKeys.length;
+	}
+
+	int longSlots() {
+		return longKeys.length;
+	}
+
+	/**
+	 * Номер ячейки ключа ({@link ContextKey}, {@link IntKey} или {@link LongKey}) в массиве значений своего типа.
+	 *
+	 * @throws IllegalArgumentException если ключ не зарегистрирован в раскладке
+	 */
+	int slotOf(Object key) {
+		Integer slot = slots.get(key);
+		Preconditions.checkArgument(slot != null, "Context key is not registered: %s", key);
+		return slot;
+	}
+
+	/**
+	 * Возвращает зарегистрированный ключ ({@link ContextKey}, {@link IntKey} или {@link LongKey}) с заданным именем либо {@code null}.
+	 */
+	Object keyOf(String name) {
+		return keysByName.isEmpty() ? null : keysByName.get(name);
+	}
+
+	Collection<Object> keys() {
+		return keysByName.values();
+	}
+
+	private void register(String name, Object key, int slot) {
+		Object registered = keysByName.put(name, key);
+		Preconditions.checkArgument(registered == null, "Context key with equal name already registered: %s", name);
+		slots.put(key, slot);
+	}
+
+}
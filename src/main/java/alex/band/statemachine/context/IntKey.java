@@ -0,0 +1,38 @@
+package alex.band.statemachine.context;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.builder.ContextConfigurer;
+
+/**
+ * Ключ значения контекста {@link StateMachineContext} типа {@code int}, хранимого в примитивной ячейке без упаковки.
+ *
+ * <p>Ключ регистрируется в описании конечного автомата ({@link ContextConfigurer#withKey(IntKey)}).
+ * Незаписанное значение равно {@code 0}.
+ *
+ * @see ContextKey
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class IntKey {
+
+	private final String name;
+
+	private IntKey(String name) {
+		this.name = Preconditions.checkNotNull(name);
+	}
+
+	public static IntKey of(String name) {
+		return new IntKey(name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "IntKey [name=" + name + "]";
+	}
+
+}
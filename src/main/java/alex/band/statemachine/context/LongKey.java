@@ -0,0 +1,38 @@
+package alex.band.statemachine.context;
+
+import com.google.common.base.Preconditions;
+
+import alex.band.statemachine.builder.ContextConfigurer;
+
+/**
+ * Ключ значения контекста {@link StateMachineContext} типа {@code long}, хранимого в примитивной ячейке без упаковки.
+ *
+ * <p>Ключ регистрируется в описании конечного автомата ({@link ContextConfigurer#withKey(LongKey)}).
+ * Незаписанное значение равно {@code 0}.
+ *
+ * @see ContextKey
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class LongKey {
+
+	private final String name;
+
+	private LongKey(String name) {
+		this.name = Preconditions.checkNotNull(name);
+	}
+
+	public static LongKey of(String name) {
+		return new LongKey(name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "LongKey [name=" + name + "]";
+	}
+
+}
@@ -3,6 +3,7 @@ package alex.band.statemachine.context;
 import alex.band.statemachine.StateMachine;
 import alex.band.statemachine.StateMachineStartAction;
 import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.builder.StateMachineBuilder;
 import alex.band.statemachine.state.StateAction;
 import alex.band.statemachine.transition.TransitionAction;
 
@@ -15,6 +16,11 @@ import alex.band.statemachine.transition.TransitionAction;
  * который доступен всем компонентам, задающим поведение конечного автомата.
  * А именно: {@link StateMachineStartAction}, {@link StateMachineStopAction}, {@link Guard}, {@link StateAction}, {@link TransitionAction}
  *
+ * <p>Значения, к которым часто обращаются компоненты конечного автомата, следует хранить по типизированным ключам
+ * {@link ContextKey}, {@link IntKey}, {@link LongKey}, зарегистрированным в описании конечного автомата
+ * ({@link StateMachineBuilder#defineContext()}). Такие значения хранятся в ячейках фиксированного массива,
+ * а {@code int} и {@code long} значения - без упаковки. Строковые методы доступа к ним сохранены для совместимости.
+ *
  * @author Aliaksandr Bandarchyk
  */
 public interface StateMachineContext {
@@ -36,4 +42,66 @@ public interface StateMachineContext {
 	 */
 	Object removeValue(String key);
 
+	/**
+	 * Возвращает значение по типизированному ключу либо null.
+	 *
+	 * <p>Методы типизированных ключей по умолчанию хранят значения по имени ключа через строковые методы доступа.
+	 *
+	 * @throws IllegalArgumentException если ключ не зарегистрирован в описании конечного автомата
+	 */
+	default <T> T getValue(ContextKey<T> key) {
+		return key.getType().cast(getValue(key.getName()));
+	}
+
+	/**
+	 * Задает значение по типизированному ключу
+	 *
+	 * @throws IllegalArgumentException если ключ не зарегистрирован в описании конечного автомата
+	 */
+	default <T> void setValue(ContextKey<T> key, T value) {
+		setValue(key.getName(), key.getType().cast(value));
+	}
+
+	/**
+	 * Возвращает {@code int} значение либо {@code 0}, если оно не задавалось
+	 */
+	default int getValue(IntKey key) {
+		Object value = getValue(key.getName());
+		return value == null ? 0 : ((Number) value).intValue();
+	}
+
+	default void setValue(IntKey key, int value) {
+		setValue(key.getName(), value);
+	}
+
+	/**
+	 * Прибавляет {@code delta} к {@code int} значению и возвращает результат
+	 */
+	default int addAndGet(IntKey key, int delta) {
+		int value = getValue(key) + delta;
+		setValue(key, value);
+		return value;
+	}
+
+	/**
+	 * Возвращает {@code long} значение либо {@code 0}, если оно не задавалось
+	 */
+	default long getValue(LongKey key) {
+		Object value = getValue(key.getName());
+		return value == null ? 0 : ((Number) value).longValue();
+	}
+
+	default void setValue(LongKey key, long value) {
+		setValue(key.getName(), value);
+	}
+
+	/**
+	 * Прибавляет {@code delta} к {@code long} значению и возвращает результат
+	 */
+	default long addAndGet(LongKey key, long delta) {
+		long value = getValue(key) + delta;
+		setValue(key, value);
+		return value;
+	}
+
 }
@@ -1,31 +1,203 @@
 package alex.band.statemachine.context;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.common.base.Preconditions;
 
 /**
  * Реализация {@link StateMachineContext}
  *
+ * <p>Значения типизированных ключей, зарегистрированных в {@link ContextLayout}, хранятся в массивах фиксированного размера:
+ * {@code int} и {@code long} значения - в примитивных массивах без упаковки. Доступ к ним по имени ({@link #getValue(String)})
+ * сохранен для совместимости; значение неподходящего типа отклоняется. Остальные значения хранятся в хранилище, которое создается при первой записи,
+ * поэтому пустой контекст практически не занимает памяти.
+ *
+ * <p>Контекст только с типизированными ключами ({@code typedOnly}) отклоняет остальные значения: им пользуются области,
+ * обрабатывающие сообщения параллельно, и каждая из них изменяет только ячейки собственных ключей.
+ *
  * @author Aliaksandr Bandarchyk
  */
 public class StateMachineContextImpl implements StateMachineContext {
 
-	private Map<String, Object> values = new HashMap<>();
+	static final String ILLEGAL_VALUE_TYPE = "Value doesn't match the type of %s: %s";
+	static final String UNTYPED_VALUE = "Context accepts only values of its typed keys: %s";
+
+	private static final Object[] NO_OBJECTS = new Object[0];
+	private static final int[] NO_INTS = new int[0];
+	private static final long[] NO_LONGS = new long[0];
+
+	private final ContextLayout layout;
+	private final Object[] objects;
+	private final int[] ints;
+	private final long[] longs;
+	private final boolean typedOnly;
+
+	private Map<String, Object> values;
+
+	public StateMachineContextImpl() {
+		this(ContextLayout.EMPTY);
+	}
+
+	public StateMachineContextImpl(ContextLayout layout) {
+		this(layout, false);
+	}
+
+	/**
+	 * @param typedOnly - {@code true}, если контекст хранит только значения ключей {@code layout}
+	 */
+	public StateMachineContextImpl(ContextLayout layout, boolean typedOnly) {
+		this.layout = layout;
+		this.typedOnly = typedOnly;
+		this.objects = layout.objectSlots() == 0 ? NO_OBJECTS : new Object[layout.objectSlots()];
+		this.ints = layout.intSlots() == 0 ? NO_INTS : new int[layout.intSlots()];
+		this.longs = layout.longSlots() == 0 ? NO_LONGS : new long[layout.longSlots()];
+	}
 
 	@Override
 	public Object getValue(String key) {
-		return values.get(key);
+		Object typedKey = layout.keyOf(key);
+		if (typedKey != null) {
+			return getTypedValue(typedKey);
+		}
+		return values == null ? null : values.get(key);
 	}
 
 	@Override
 	public void setValue(String key, Object value) {
+		Object typedKey = layout.keyOf(key);
+		if (typedKey != null) {
+			setTypedValue(typedKey, value);
+			return;
+		}
+		Preconditions.checkArgument(!typedOnly, UNTYPED_VALUE, key);
+		if (values == null) {
+			values = new HashMap<>();
+		}
 		values.put(key, value);
 	}
 
 	@Override
 	public Object removeValue(String key) {
-		return values.remove(key);
+		Object typedKey = layout.keyOf(key);
+		if (typedKey != null) {
+			Object value = getTypedValue(typedKey);
+			setTypedValue(typedKey, null);
+			return value;
+		}
+		return values == null ? null : values.remove(key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T getValue(ContextKey<T> key) {
+		return (T) objects[layout.slotOf(key)];
+	}
+
+	@Override
+	public <T> void setValue(ContextKey<T> key, T value) {
+		objects[layout.slotOf(key)] = key.getType().cast(value);
+	}
+
+	@Override
+	public int getValue(IntKey key) {
+		return ints[layout.slotOf(key)];
+	}
+
+	@Override
+	public void setValue(IntKey key, int value) {
+		ints[layout.slotOf(key)] = value;
+	}
+
+	@Override
+	public int addAndGet(IntKey key, int delta) {
+		return ints[layout.slotOf(key)] += delta;
+	}
+
+	@Override
+	public long getValue(LongKey key) {
+		return longs[layout.slotOf(key)];
+	}
+
+	@Override
+	public void setValue(LongKey key, long value) {
+		longs[layout.slotOf(key)] = value;
+	}
+
+	@Override
+	public long addAndGet(LongKey key, long delta) {
+		return longs[layout.slotOf(key)] += delta;
+	}
+
+	/**
+	 * Возвращает все значения контекста по именам, включая значения типизированных ключей
+	 * ({@code int} и {@code long} значения - всегда, остальные - если заданы).
+	 */
+	public Map<String, Object> getValues() {
+		if (layout.keys().isEmpty()) {
+			return values == null ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(values);
+		}
+
+		Map<String, Object> allValues = values == null ? new HashMap<String, Object>() : new HashMap<>(values);
+		for (Object typedKey: layout.keys()) {
+			Object value = getTypedValue(typedKey);
+			if (value != null) {
+				allValues.put(nameOf(typedKey), value);
+			}
+		}
+		return Collections.unmodifiableMap(allValues);
+	}
+
+	/**
+	 * Заменяет все значения контекста заданными.
+	 */
+	public void setValues(Map<String, Object> newValues) {
+		values = null;
+		for (Object typedKey: layout.keys()) {
+			setTypedValue(typedKey, null);
+		}
+		for (Map.Entry<String, Object> entry: newValues.entrySet()) {
+			setValue(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private Object getTypedValue(Object typedKey) {
+		if (typedKey instanceof IntKey) {
+			return getValue((IntKey) typedKey);
+		}
+		if (typedKey instanceof LongKey) {
+			return getValue((LongKey) typedKey);
+		}
+		return objects[layout.slotOf((ContextKey<?>) typedKey)];
+	}
+
+	/**
+	 * @throws IllegalArgumentException если тип значения не соответствует типу ключа
+	 */
+	@SuppressWarnings("unchecked")
+	private void setTypedValue(Object typedKey, Object value) {
+		if (typedKey instanceof IntKey) {
+			Preconditions.checkArgument(value == null || value instanceof Number, ILLEGAL_VALUE_TYPE, typedKey, value);
+			setValue((IntKey) typedKey, value == null ? 0 : ((Number) value).intValue());
+		} else if (typedKey instanceof LongKey) {
+			Preconditions.checkArgument(value == null || value instanceof Number, ILLEGAL_VALUE_TYPE, typedKey, value);
+			setValue((LongKey) typedKey, value == null ? 0 : ((Number) value).longValue());
+		} else {
+			ContextKey<Object> key = (ContextKey<Object>) typedKey;
+			Preconditions.checkArgument(value == null || key.getType().isInstance(value), ILLEGAL_VALUE_TYPE, typedKey, value);
+			setValue(key, value);
+		}
+	}
+
+	private static String nameOf(Object typedKey) {
+		if (typedKey instanceof IntKey) {
+			return ((IntKey) typedKey).getName();
+		}
+		if (typedKey instanceof LongKey) {
+			return ((LongKey) typedKey).getName();
+		}
+		return ((ContextKey<?>) typedKey).getName();
 	}
 
 }
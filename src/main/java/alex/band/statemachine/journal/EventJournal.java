@@ -0,0 +1,476 @@
+package alex.band.statemachine.journal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.common.io.ByteStreams;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineFactory;
+import alex.band.statemachine.listener.StateMachineListener;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.snapshot.Codec;
+import alex.band.statemachine.snapshot.SnapshotSerializer;
+
+/**
+ * Журнал сообщений, принятых конечными автоматами {@link StateMachine}: локальное хранилище для восстановления экземпляров
+ * по событиям (event sourcing).
+ *
+ * <p>Журнал хранится в каталоге в виде сегментов {@link JournalSegment}, отображенных в память. Запись сообщения
+ * ({@link #append(Object, StateMachineMessage)}) выполняется копированием в память без системных вызовов и возвращает номер записи.
+ * Сброс на диск выполняется отдельным потоком по принципу group commit: один вызов {@code force()} подтверждает все записи,
+ * накопившиеся к его началу. Ожидание подтверждения - {@link #awaitDurable(long)}.
+ *
+ * <p>Слушатель {@link #listener(Object)} записывает в журнал каждое принятое экземпляром сообщение.
+ *
+ * <p>{@link #checkpoint(Map)} сохраняет снимки экземпляров и удаляет сегменты, все записи которых покрыты снимками.
+ * {@link #recover(StateMachineFactory, Executor)} восстанавливает экземпляры из последней контрольной точки и повторно
+ * обрабатывает последующие записи; записи разных экземпляров обрабатываются параллельно, порядок записей одного экземпляра сохраняется.
+ * При повторной обработке выполняются действия конечного автомата, поэтому они должны быть детерминированы и не должны
+ * повторять внешних побочных эффектов.
+ *
+ * <p>Ошибки ввода-вывода сообщаются исключением {@link UncheckedIOException}.
+ *
+ * @param <K> - тип ключа экземпляра
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class EventJournal<K, S, E> implements AutoCloseable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final String CHECKPOINT_PREFIX = "checkpoint-";
+	private static final String CHECKPOINT_SUFFIX = ".bin";
+
+	private final Path directory;
+	private final Codec<K> keyCodec;
+	private final SnapshotSerializer<S, E> serializer;
+	private final int segmentSize;
+	private final boolean awaitDurability;
+
+	private final RecordBuffer recordBuffer = new RecordBuffer();
+	private final DataOutputStream recordOutput = new DataOutputStream(recordBuffer);
+	private final Object durabilityLock = new Object();
+	private final Thread flusher;
+
+	private JournalSegment currentSegment;
+	private volatile long lastAppended = -1;
+	private volatile long lastDurable = -1;
+	private RuntimeException flushFailure;
+	private volatile boolean closed;
+
+	public EventJournal(Path directory, Codec<K> keyCodec, SnapshotSerializer<S, E> serializer) {
+		this(directory, keyCodec, serializer, DEFAULT_SEGMENT_SIZE, false);
+	}
+
+	/**
+	 * @param segmentSize - размер сегмента в байтах, ограничивает размер одной записи
+	 * @param awaitDurability - слушатель {@link #listener(Object)} ожидает сброса записи на диск
+	 */
+	public EventJournal(Path directory, Codec<K> keyCodec, SnapshotSerializer<S, E> serializer, int segmentSize, boolean awaitDurability) {
+		checkArgument(segmentSize > JournalSegment.HEADER_SIZE, "Segment size is too small.");
+		this.directory = checkNotNull(directory);
+		this.keyCodec = checkNotNull(keyCodec);
+		this.serializer = checkNotNull(serializer);
+		this.segmentSize = segmentSize;
+		this.awaitDurability = awaitDurability;
+
+		try {
+			Files.createDirectories(directory);
+			List<Long> segments = listSegments();
+			long firstSequence = segments.isEmpty() ? Math.max(0, readLatestCheckpointSequence()) : segments.get(segments.size() - 1);
+			currentSegment = JournalSegment.open(directory, firstSequence, segmentSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		lastAppended = currentSegment.getNextSequence() - 1;
+		lastDurable = lastAppended;
+
+		flusher = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "statemachine-journal-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Дописывает сообщение экземпляра с ключом {@code key}. Запись видна {@link #recover(StateMachineFactory, Executor)} сразу,
+	 * но переживает сбой операционной системы только после подтверждения {@link #awaitDurable(long)}.
+	 *
+	 * @return номер записи
+	 */
+	public long append(K key, StateMachineMessage<E> message) {
+		long sequence;
+		synchronized (this) {
+			checkState(!closed, "Journal is closed.");
+			recordBuffer.reset();
+			try {
+				keyCodec.encode(key, recordOutput);
+				serializer.writeMessage(message, recordOutput);
+				recordOutput.flush();
+
+				sequence = currentSegment.append(recordBuffer.array(), recordBuffer.size());
+				if (sequence < 0) {
+					rollSegment();
+					sequence = currentSegment.append(recordBuffer.array(), recordBuffer.size());
+					checkArgument(sequence >= 0, "Record of %s bytes doesn't fit into a segment.", recordBuffer.size());
+				}
+				lastAppended = sequence;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		synchronized (durabilityLock) {
+			durabilityLock.notifyAll();
+		}
+		return sequence;
+	}
+
+	/**
+	 * Ожидает сброса на диск записи с заданным номером и всех предыдущих.
+	 */
+	public void awaitDurable(long sequence) {
+		if (lastDurable >= sequence) {
+			return;
+		}
+		synchronized (durabilityLock) {
+			while (lastDurable < sequence) {
+				if (flushFailure != null) {
+					throw flushFailure;
+				}
+				checkState(!closed || lastDurable >= sequence, "Journal is closed.");
+				try {
+					durabilityLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new UncheckedIOException(new InterruptedIOException());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Создает слушателя, записывающего в журнал каждое сообщение, принятое экземпляром с ключом {@code key}.
+	 * Непринятые сообщения состояние экземпляра не изменяют и не записываются.
+	 */
+	public StateMachineListener<S, E> listener(K key) {
+		return new JournalingListener<>(this, key, awaitDurability);
+	}
+
+	/**
+	 * Сохраняет снимки экземпляров и удаляет сегменты и контрольные точки, полностью покрытые новой контрольной точкой.
+	 *
+	 * <p>Контрольная точка должна включать все экземпляры журнала, и во время ее создания экземпляры не должны обрабатывать сообщения:
+	 * все записи, сделанные до контрольной точки, считаются отраженными в снимках.
+	 *
+	 * @return номер первой записи, не покрытой контрольной точкой
+	 */
+	public long checkpoint(Map<K, ? extends StateMachine<S, E>> stateMachines) {
+		long sequence;
+		synchronized (this) {
+			sequence = lastAppended + 1;
+		}
+
+		try {
+			RecordBuffer buffer = new RecordBuffer();
+			DataOutputStream out = new DataOutputStream(buffer);
+			out.writeInt(stateMachines.size());
+			for (Map.Entry<K, ? extends StateMachine<S, E>> entry: stateMachines.entrySet()) {
+				byte[] snapshot = serializer.snapshot(entry.getValue());
+				keyCodec.encode(entry.getKey(), out);
+				out.writeInt(snapshot.length);
+				out.write(snapshot);
+			}
+			out.flush();
+
+			Path temporary = directory.resolve(checkpointFileName(sequence) + ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel.write(ByteBuffer.wrap(buffer.array(), 0, buffer.size()));
+				channel.force(true);
+			}
+			Files.move(temporary, directory.resolve(checkpointFileName(sequence)), StandardCopyOption.ATOMIC_MOVE);
+
+			compact(sequence);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Восстанавливает экземпляры: из снимков последней контрольной точки и повторной обработкой последующих записей.
+	 * Экземпляр без снимка создается фабрикой и запускается перед обработкой первой записи. Слушатели к восстановленным
+	 * экземплярам не подключаются.
+	 *
+	 * <p>Вызывается до первой записи в журнал.
+	 *
+	 * @param executor - исполнитель, на котором параллельно обрабатываются записи разных экземпляров
+	 */
+	public Map<K, StateMachine<S, E>> recover(StateMachineFactory<S, E> factory, Executor executor) {
+		try {
+			long checkpointSequence = readLatestCheckpointSequence();
+			Map<K, StateMachine<S, E>> recovered = checkpointSequence < 0 ? new HashMap<K, StateMachine<S, E>>()
+					: readCheckpoint(checkpointSequence, factory);
+			long fromSequence = Math.max(0, checkpointSequence);
+
+			int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+			List<List<JournalRecord<K, E>>> partitions = readRecords(fromSequence, parallelism);
+
+			List<CompletableFuture<Map<K, StateMachine<S, E>>>> replays = new ArrayList<>();
+			for (final List<JournalRecord<K, E>> partition: partitions) {
+				final Map<K, StateMachine<S, E>> partitionMachines = new HashMap<>();
+				for (JournalRecord<K, E> record: partition) {
+					if (recovered.containsKey(record.key)) {
+						partitionMachines.put(record.key, recovered.get(record.key));
+					}
+				}
+				replays.add(CompletableFuture.supplyAsync(() -> replay(partition, partitionMachines, factory), executor));
+			}
+
+			for (CompletableFuture<Map<K, StateMachine<S, E>>> replay: replays) {
+				recovered.putAll(replay.join());
+			}
+			return recovered;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Аналог {@link #recover(StateMachineFactory, Executor)}, использующий {@link ForkJoinPool#commonPool()}.
+	 */
+	public Map<K, StateMachine<S, E>> recover(StateMachineFactory<S, E> factory) {
+		return recover(factory, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Сбрасывает на диск все записи, останавливает поток сброса и закрывает журнал.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		synchronized (this) {
+			closed = true;
+		}
+		synchronized (durabilityLock) {
+			durabilityLock.notifyAll();
+		}
+		flusher.join();
+	}
+
+	private void flushLoop() {
+		while (true) {
+			JournalSegment segment;
+			long target;
+			synchronized (durabilityLock) {
+				while (!closed && lastAppended == lastDurable) {
+					try {
+						durabilityLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+			synchronized (this) {
+				segment = currentSegment;
+				target = lastAppended;
+			}
+			if (closed && target == lastDurable) {
+				synchronized (durabilityLock) {
+					durabilityLock.notifyAll();
+				}
+				return;
+			}
+
+			try {
+				// records of previous segments are forced when the segment is rolled
+				segment.force();
+			} catch (RuntimeException e) {
+				synchronized (durabilityLock) {
+					flushFailure = e;
+					durabilityLock.notifyAll();
+				}
+				return;
+			}
+			synchronized (durabilityLock) {
+				lastDurable = target;
+				durabilityLock.notifyAll();
+			}
+		}
+	}
+
+	private void rollSegment() throws IOException {
+		currentSegment.force();
+		currentSegment = JournalSegment.open(directory, currentSegment.getNextSequence(), segmentSize);
+	}
+
+	private Map<K, StateMachine<S, E>> replay(List<JournalRecord<K, E>> records, Map<K, StateMachine<S, E>> stateMachines,
+			StateMachineFactory<S, E> factory) {
+		for (JournalRecord<K, E> record: records) {
+			StateMachine<S, E> stateMachine = stateMachines.get(record.key);
+			if (stateMachine == null) {
+				stateMachine = factory.newStateMachine();
+				stateMachine.start();
+				stateMachines.put(record.key, stateMachine);
+			}
+			stateMachine.accept(record.message);
+		}
+		return stateMachines;
+	}
+
+	private List<List<JournalRecord<K, E>>> readRecords(long fromSequence, int partitionsCount) throws IOException {
+		final List<List<JournalRecord<K, E>>> partitions = new ArrayList<>(partitionsCount);
+		for (int i = 0; i < partitionsCount; i++) {
+			partitions.add(new ArrayList<JournalRecord<K, E>>());
+		}
+
+		List<Long> segments = listSegments();
+		for (int i = 0; i < segments.size(); i++) {
+			if (i + 1 < segments.size() && segments.get(i + 1) <= fromSequence) {
+				continue;
+			}
+			JournalSegment segment = segments.get(i) == currentSegment.getFirstSequence() ? currentSegment
+					: JournalSegment.open(directory, segments.get(i), 0);
+			segment.scan((sequence, data) -> {
+				if (sequence >= fromSequence) {
+					DataInput in = ByteStreams.newDataInput(toArray(data));
+					JournalRecord<K, E> record = new JournalRecord<>(keyCodec.decode(in), serializer.readMessage(in));
+					partitions.get((record.key.hashCode() & Integer.MAX_VALUE) % partitionsCount).add(record);
+				}
+			});
+		}
+		return partitions;
+	}
+
+	private Map<K, StateMachine<S, E>> readCheckpoint(long sequence, StateMachineFactory<S, E> factory) throws IOException {
+		DataInput in = ByteStreams.newDataInput(Files.readAllBytes(directory.resolve(checkpointFileName(sequence))));
+		int count = in.readInt();
+		Map<K, StateMachine<S, E>> stateMachines = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			K key = keyCodec.decode(in);
+			byte[] snapshot = new byte[in.readInt()];
+			in.readFully(snapshot);
+
+			StateMachine<S, E> stateMachine = factory.newStateMachine();
+			serializer.restore(stateMachine, snapshot);
+			stateMachines.put(key, stateMachine);
+		}
+		return stateMachines;
+	}
+
+	/**
+	 * Удаляет сегменты, все записи которых имеют номера меньше {@code sequence}, и предыдущие контрольные точки.
+	 */
+	private void compact(long sequence) throws IOException {
+		List<Long> segments = listSegments();
+		for (int i = 0; i + 1 < segments.size(); i++) {
+			if (segments.get(i + 1) <= sequence) {
+				Files.deleteIfExists(directory.resolve(JournalSegment.fileName(segments.get(i))));
+			}
+		}
+		for (long checkpoint: listCheckpoints()) {
+			if (checkpoint < sequence) {
+				Files.deleteIfExists(directory.resolve(checkpointFileName(checkpoint)));
+			}
+		}
+	}
+
+	private List<Long> listSegments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, JournalSegment.FILE_PREFIX + "*" + JournalSegment.FILE_SUFFIX)) {
+			for (Path file: files) {
+				long firstSequence = JournalSegment.parseFirstSequence(file);
+				if (firstSequence >= 0) {
+					segments.add(firstSequence);
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private List<Long> listCheckpoints() throws IOException {
+		List<Long> checkpoints = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+			for (Path file: files) {
+				String name = file.getFileName().toString();
+				checkpoints.add(Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(), name.length() - CHECKPOINT_SUFFIX.length())));
+			}
+		}
+		Collections.sort(checkpoints);
+		return checkpoints;
+	}
+
+	private long readLatestCheckpointSequence() throws IOException {
+		List<Long> checkpoints = listCheckpoints();
+		return checkpoints.isEmpty() ? -1 : checkpoints.get(checkpoints.size() - 1);
+	}
+
+	private static String checkpointFileName(long sequence) {
+		return String.format("%s%020d%s", CHECKPOINT_PREFIX, sequence, CHECKPOINT_SUFFIX);
+	}
+
+	private static byte[] toArray(ByteBuffer data) {
+		byte[] bytes = new byte[data.remaining()];
+		data.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Запись журнала, прочитанная при восстановлении.
+	 */
+	private static final class JournalRecord<K, E> {
+
+		private final K key;
+		private final StateMachineMessage<E> message;
+
+		JournalRecord(K key, StateMachineMessage<E> message) {
+			this.key = key;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Буфер записи, предоставляющий доступ к внутреннему массиву без копирования.
+	 */
+	private static final class RecordBuffer extends ByteArrayOutputStream {
+
+		byte[] array() {
+			return buf;
+		}
+	}
+
+}
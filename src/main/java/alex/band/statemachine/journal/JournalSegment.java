@@ -0,0 +1,157 @@
+package alex.band.statemachine.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Сегмент журнала {@link EventJournal}: файл фиксированного размера, отображенный в память.
+ *
+ * <p>Запись состоит из заголовка (длина и CRC32 данных) и данных. Нулевая длина означает конец записанных данных:
+ * файл создается заполненным нулями. Запись с неверной контрольной суммой (оборванная при сбое) и все последующие
+ * считаются отсутствующими. Номер первой записи хранится в имени файла.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+final class JournalSegment {
+
+	static final String FILE_PREFIX = "segment-";
+	static final String FILE_SUFFIX = ".log";
+	static final int HEADER_SIZE = 8;
+
+	interface RecordVisitor {
+
+		void visit(long sequence, ByteBuffer data) throws IOException;
+	}
+
+	private final Path file;
+	private final long firstSequence;
+	private final MappedByteBuffer buffer;
+	private final CRC32 crc = new CRC32();
+	private long nextSequence;
+
+	private JournalSegment(Path file, long firstSequence, MappedByteBuffer buffer) {
+		this.file = file;
+		this.firstSequence = firstSequence;
+		this.buffer = buffer;
+		this.nextSequence = firstSequence;
+	}
+
+	/**
+	 * Создает новый сегмент либо открывает существующий для дозаписи: позиция записи устанавливается после последней целой записи.
+	 */
+	static JournalSegment open(Path directory, long firstSequence, int size) throws IOException {
+		Path file = directory.resolve(fileName(firstSequence));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			JournalSegment segment = new JournalSegment(file, firstSequence,
+					channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size())));
+			segment.buffer.position(segment.scan(null));
+			return segment;
+		}
+	}
+
+	static String fileName(long firstSequence) {
+		return String.format("%s%020d%s", FILE_PREFIX, firstSequence, FILE_SUFFIX);
+	}
+
+	/**
+	 * Возвращает номер первой записи по имени файла либо {@code -1}, если файл не является сегментом.
+	 */
+	static long parseFirstSequence(Path file) {
+		String name = file.getFileName().toString();
+		if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Дописывает запись.
+	 *
+	 * @return номер записи либо {@code -1}, если в сегменте недостаточно места
+	 */
+	long append(byte[] data, int length) {
+		if (buffer.remaining() < HEADER_SIZE + length) {
+			return -1;
+		}
+		crc.reset();
+		crc.update(data, 0, length);
+
+		int position = buffer.position();
+		buffer.position(position + 4);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(data, 0, length);
+		// the length is written last, so a reader never sees a partially written record as complete
+		buffer.putInt(position, length);
+		return nextSequence++;
+	}
+
+	/**
+	 * Перебирает целые записи сегмента.
+	 *
+	 * @return позиция после последней целой записи
+	 */
+	int scan(RecordVisitor visitor) throws IOException {
+		ByteBuffer view = buffer.duplicate();
+		view.position(0);
+		CRC32 checksum = new CRC32();
+		long sequence = firstSequence;
+
+		while (view.remaining() >= HEADER_SIZE) {
+			int position = view.position();
+			int length = view.getInt();
+			int expectedCrc = view.getInt();
+			if (length <= 0 || length > view.remaining()) {
+				return position;
+			}
+
+			ByteBuffer data = view.slice();
+			data.limit(length);
+			checksum.reset();
+			checksum.update(data.duplicate());
+			if ((int) checksum.getValue() != expectedCrc) {
+				return position;
+			}
+
+			if (visitor != null) {
+				visitor.visit(sequence, data);
+			}
+			sequence++;
+			nextSequence = Math.max(nextSequence, sequence);
+			view.position(position + HEADER_SIZE + length);
+		}
+		return view.position();
+	}
+
+	void force() {
+		buffer.force();
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	long getFirstSequence() {
+		return firstSequence;
+	}
+
+	/**
+	 * Номер, который получит следующая запись сегмента.
+	 */
+	long getNextSequence() {
+		return nextSequence;
+	}
+
+	int capacity() {
+		return buffer.capacity();
+	}
+
+}
@@ -0,0 +1,33 @@
+package alex.band.statemachine.journal;
+
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.listener.StateMachineListenerAdapter;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Слушатель, записывающий принятые экземпляром сообщения в журнал {@link EventJournal}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class JournalingListener<K, S, E> extends StateMachineListenerAdapter<S, E> {
+
+	private final EventJournal<K, S, E> journal;
+	private final K key;
+	private final boolean awaitDurability;
+
+	JournalingListener(EventJournal<K, S, E> journal, K key, boolean awaitDurability) {
+		this.journal = journal;
+		this.key = key;
+		this.awaitDurability = awaitDurability;
+	}
+
+	@Override
+	public void onStateChanged(StateMachineMessage<E> message, State<S, E> previousState, StateMachineDetails<S, E> stateMachineDetails) {
+		long sequence = journal.append(key, message);
+		if (awaitDurability) {
+			journal.awaitDurable(sequence);
+		}
+	}
+
+}
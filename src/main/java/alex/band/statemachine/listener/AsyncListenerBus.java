@@ -0,0 +1,286 @@
+package alex.band.statemachine.listener;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.ImmutableList;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Асинхронная шина слушателей жизненного цикла конечного автомата {@link StateMachine}.
+ *
+ * <p>Шина регистрируется в конечном автомате как обычный слушатель ({@link StateMachine#addListener(StateMachineListener)})
+ * и только публикует события в заранее созданный кольцевой буфер: в потоке конечного автомата не выполняется ни одного
+ * обращения к подписанным слушателям и не создается объектов. Каждый слушатель, подписанный через {@link #subscribe(StateMachineListener)},
+ * получает события в собственном потоке, в порядке публикации.
+ *
+ * <p>Если самый медленный слушатель отстал на размер буфера, поведение определяется {@link ListenerOverflowPolicy}.
+ * Число потерянных событий доступно через {@link #getDroppedCount()}.
+ *
+ * <p>Слушатель получает в качестве сообщения и {@link StateMachineDetails} снимок, действительный только во время вызова.
+ * Контекст {@link StateMachineDetails#getContext()} не копируется и может изменяться конечным автоматом одновременно с чтением.
+ * Одну шину можно разделять между несколькими конечными автоматами.
+ *
+ * <p>Простаивающий поток слушателя сначала уступает процессор, затем засыпает на короткие интервалы и, если событий
+ * по-прежнему нет, блокируется до публикации следующего события.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class AsyncListenerBus<S, E> implements StateMachineListener<S, E>, AutoCloseable {
+
+	private static final int SPINS_BEFORE_PARK = 100;
+	private static final int TIMED_PARKS_BEFORE_BLOCK = 100;
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final ListenerEvent<S, E>[] events;
+	private final int mask;
+	private final ListenerOverflowPolicy overflowPolicy;
+	private final int sampleRate;
+
+	private final AtomicLong cursor = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong sampleCounter = new AtomicLong();
+
+	private volatile ImmutableList<Consumer> consumers = ImmutableList.of();
+	private volatile boolean closed;
+
+	public AsyncListenerBus(int capacity, ListenerOverflowPolicy overflowPolicy) {
+		this(capacity, overflowPolicy, 1);
+	}
+
+	/**
+	 * @param capacity - размер буфера, округляется вверх до степени двойки
+	 * @param sampleRate - для {@link ListenerOverflowPolicy#SAMPLE}: при отставании слушателей публикуется каждое {@code sampleRate}-е событие
+	 */
+	@SuppressWarnings("unchecked")
+	public AsyncListenerBus(int capacity, ListenerOverflowPolicy overflowPolicy, int sampleRate) {
+		checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity must be in range [1, 2^30].");
+		checkArgument(sampleRate > 0, "Sample rate must be positive.");
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+
+		this.events = new ListenerEvent[size];
+		for (int i = 0; i < size; i++) {
+			events[i] = new ListenerEvent<>();
+		}
+		this.mask = size - 1;
+		this.overflowPolicy = checkNotNull(overflowPolicy);
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Подписывает слушателя и запускает поток, в котором он будет оповещаться. Слушатель получает только события,
+	 * опубликованные после подписки.
+	 */
+	public synchronized void subscribe(StateMachineListener<S, E> listener) {
+		checkNotNull(listener);
+		checkState(!closed, "Listener bus is closed.");
+
+		Consumer consumer = new Consumer(listener, cursor.get());
+		consumers = ImmutableList.<Consumer>builder().addAll(consumers).add(consumer).build();
+		consumer.thread.start();
+	}
+
+	/**
+	 * Количество событий, не доставленных слушателям из-за переполнения буфера.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public int getCapacity() {
+		return events.length;
+	}
+
+	/**
+	 * Прекращает прием событий, дожидается доставки уже опубликованных и завершает потоки слушателей.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		ImmutableList<Consumer> currentConsumers;
+		synchronized (this) {
+			closed = true;
+			currentConsumers = consumers;
+		}
+		for (Consumer consumer: currentConsumers) {
+			LockSupport.unpark(consumer.thread);
+		}
+		for (Consumer consumer: currentConsumers) {
+			consumer.thread.join();
+		}
+	}
+
+	@Override
+	public void onStart(StateMachineDetails<S, E> stateMachineDetails) {
+		publish(ListenerEvent.Type.START, null, null, stateMachineDetails);
+	}
+
+	@Override
+	public void onStop(StateMachineDetails<S, E> stateMachineDetails) {
+		publish(ListenerEvent.Type.STOP, null, null, stateMachineDetails);
+	}
+
+	@Override
+	public void onStateChanged(StateMachineMessage<E> message, State<S, E> previousState, StateMachineDetails<S, E> stateMachineDetails) {
+		publish(ListenerEvent.Type.STATE_CHANGED, message, previousState, stateMachineDetails);
+	}
+
+	@Override
+	public void onEventNotAccepted(StateMachineMessage<E> message, StateMachineDetails<S, E> stateMachineDetails) {
+		publish(ListenerEvent.Type.NOT_ACCEPTED, message, null, stateMachineDetails);
+	}
+
+	private void publish(ListenerEvent.Type type, StateMachineMessage<E> message, State<S, E> previousState, StateMachineDetails<S, E> details) {
+		if (closed) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+
+		long sequence = claim();
+		if (sequence < 0) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+
+		ListenerEvent<S, E> event = events[(int) sequence & mask];
+		event.set(type, message, previousState, details);
+		event.publish(sequence);
+
+		ImmutableList<Consumer> currentConsumers = consumers;
+		for (int i = 0; i < currentConsumers.size(); i++) {
+			currentConsumers.get(i).wakeUp();
+		}
+	}
+
+	/**
+	 * Занимает следующую ячейку буфера с учетом политики переполнения.
+	 *
+	 * @return номер занятой ячейки либо {@code -1}, если событие должно быть отброшено
+	 */
+	private long claim() {
+		int spins = 0;
+		while (true) {
+			long sequence = cursor.get();
+			long backlog = sequence - minConsumedSequence();
+
+			if (backlog >= events.length) {
+				if (overflowPolicy != ListenerOverflowPolicy.BLOCK) {
+					return -1;
+				}
+				spins = idle(spins);
+				continue;
+			}
+			if (overflowPolicy == ListenerOverflowPolicy.SAMPLE && backlog > events.length / 2
+					&& sampleCounter.getAndIncrement() % sampleRate != 0) {
+				return -1;
+			}
+
+			if (cursor.compareAndSet(sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+	}
+
+	private long minConsumedSequence() {
+		long min = Long.MAX_VALUE;
+		ImmutableList<Consumer> currentConsumers = consumers;
+		for (int i = 0; i < currentConsumers.size(); i++) {
+			min = Math.min(min, currentConsumers.get(i).nextSequence);
+		}
+		return min == Long.MAX_VALUE ? cursor.get() : min;
+	}
+
+	private static int idle(int spins) {
+		if (spins < SPINS_BEFORE_PARK) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		return Math.min(spins + 1, SPINS_BEFORE_PARK + TIMED_PARKS_BEFORE_BLOCK);
+	}
+
+	/**
+	 * Поток доставки событий одному слушателю. {@code nextSequence} - номер следующего ожидаемого события;
+	 * все события с меньшими номерами слушателем уже обработаны. {@code waiting} - поток заблокирован (или блокируется)
+	 * до публикации события и должен быть разбужен издателем.
+	 */
+	private final class Consumer implements Runnable {
+
+		private final StateMachineListener<S, E> listener;
+		private final Thread thread;
+		private volatile long nextSequence;
+		private volatile boolean waiting;
+
+		Consumer(StateMachineListener<S, E> listener, long nextSequence) {
+			this.listener = listener;
+			this.nextSequence = nextSequence;
+			this.thread = new Thread(this, "statemachine-listener-" + listener.getClass().getSimpleName());
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long sequence = nextSequence;
+			int spins = 0;
+			while (true) {
+				ListenerEvent<S, E> event = events[(int) sequence & mask];
+				if (event.isPublished(sequence)) {
+					dispatch(event);
+					nextSequence = ++sequence;
+					spins = 0;
+				} else if (closed && sequence >= cursor.get()) {
+					return;
+				} else {
+					spins = await(sequence, spins);
+				}
+			}
+		}
+
+		/**
+		 * Ожидание публикации события {@code sequence}: уступка процессора, затем короткие засыпания, затем блокировка
+		 * до {@link #wakeUp()}. Признак {@code waiting} выставляется до повторной проверки буфера, поэтому издатель,
+		 * опубликовавший событие после проверки, обязательно увидит его и разбудит поток.
+		 */
+		private int await(long sequence, int spins) {
+			if (spins < SPINS_BEFORE_PARK + TIMED_PARKS_BEFORE_BLOCK) {
+				return idle(spins);
+			}
+			waiting = true;
+			if (!events[(int) sequence & mask].isPublished(sequence) && !closed) {
+				LockSupport.park(this);
+			}
+			waiting = false;
+			return spins;
+		}
+
+		void wakeUp() {
+			if (waiting) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		private void dispatch(ListenerEvent<S, E> event) {
+			try {
+				event.dispatch(listener);
+			} catch (Throwable e) {
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+}
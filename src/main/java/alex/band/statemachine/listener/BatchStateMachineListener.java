@@ -0,0 +1,32 @@
+package alex.band.statemachine.listener;
+
+import alex.band.statemachine.BatchResult;
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Слушатель {@link StateMachineListener}, получающий результаты пакетной обработки {@link StateMachine#acceptAll(Iterable)}
+ * одним вызовом.
+ *
+ * <p>При пакетной обработке вместо {@link #onStateChanged(StateMachineMessage, State, StateMachineDetails)} и
+ * {@link #onEventNotAccepted(StateMachineMessage, StateMachineDetails)} для каждого сообщения вызывается только
+ * {@link #onBatchProcessed(BatchResult, StateMachineDetails)} после обработки всего пакета. Сообщения, отправленные
+ * через {@code accept()}, по-прежнему оповещаются по одному.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface BatchStateMachineListener<S, E> extends StateMachineListener<S, E> {
+
+	/**
+	 * Метод вызывается после обработки пакета сообщений.
+	 *
+	 * <p>Результаты {@link BatchResult} действительны только во время вызова.
+	 */
+	void onBatchProcessed(BatchResult<S, E> result, StateMachineDetails<S, E> stateMachineDetails);
+
+}
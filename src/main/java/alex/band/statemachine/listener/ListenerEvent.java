@@ -0,0 +1,98 @@
+package alex.band.statemachine.listener;
+
+import com.google.common.base.Optional;
+
+import alex.band.statemachine.OrthogonalStateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.context.StateMachineContext;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Ячейка кольцевого буфера {@link AsyncListenerBus}: снимок события жизненного цикла конечного автомата.
+ *
+ * <p>Ячейки создаются один раз и повторно используются. Ячейка сама служит слушателям сообщением {@link StateMachineMessage}
+ * и {@link StateMachineDetails}: событие, полезная нагрузка, текущее состояние и признак работы зафиксированы в момент события
+ * (поэтому повторно используемые конечным автоматом сообщения безопасно передавать в другой поток), контекст - общий с конечным автоматом.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+class ListenerEvent<S, E> implements StateMachineDetails<S, E>, StateMachineMessage<E> {
+
+	enum Type {
+		START, STOP, STATE_CHANGED, NOT_ACCEPTED
+	}
+
+	private volatile long sequence = -1;
+
+	private Type type;
+	private E event;
+	private Optional<Object> payload;
+	private State<S, E> previousState;
+	private State<S, E> currentState;
+	private boolean running;
+	private StateMachineContext context;
+
+	void set(Type type, StateMachineMessage<E> message, State<S, E> previousState, StateMachineDetails<S, E> details) {
+		this.type = type;
+		this.event = message == null ? null : message.getEvent();
+		this.payload = message == null ? Optional.absent() : message.getPayload();
+		this.previousState = previousState;
+		this.currentState = OrthogonalStateMachine.hasCurrentState(details) ? details.getCurrentState() : null;
+		this.running = details.isRunning();
+		this.context = details.getContext();
+	}
+
+	/**
+	 * Публикует ячейку для слушателей: запись номера выполняется после записи всех полей события.
+	 */
+	void publish(long sequence) {
+		this.sequence = sequence;
+	}
+
+	boolean isPublished(long sequence) {
+		return this.sequence == sequence;
+	}
+
+	void dispatch(StateMachineListener<S, E> listener) {
+		switch (type) {
+		case START:
+			listener.onStart(this);
+			break;
+		case STOP:
+			listener.onStop(this);
+			break;
+		case STATE_CHANGED:
+			listener.onStateChanged(this, previousState, this);
+			break;
+		default:
+			listener.onEventNotAccepted(this, this);
+		}
+	}
+
+	@Override
+	public E getEvent() {
+		return event;
+	}
+
+	@Override
+	public Optional<Object> getPayload() {
+		return payload;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public State<S, E> getCurrentState() {
+		return currentState;
+	}
+
+	@Override
+	public StateMachineContext getContext() {
+		return context;
+	}
+
+}
@@ -0,0 +1,187 @@
+package alex.band.statemachine.listener;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+/**
+ * Фильтр оповещений слушателя {@link StateMachineListener}, регистрируемого через
+ * {@link StateMachine#addListener(StateMachineListener, ListenerFilter)}.
+ *
+ * <p>Ограничивает вызовы {@link StateMachineListener#onStateChanged(StateMachineMessage, State, StateMachineDetails)} и
+ * {@link StateMachineListener#onEventNotAccepted(StateMachineMessage, StateMachineDetails)}:
+ * <ul><li>{@link #fromStates(Object...)} - состояние, в котором находился конечный автомат при получении сообщения;</li>
+ * <li>{@link #toStates(Object...)} - состояние после смены (для непринятых сообщений фильтр не выполняется никогда);</li>
+ * <li>{@link #onEvents(Object...)} - событие сообщения;</li>
+ * <li>{@link #notAcceptedOnly()} - только непринятые сообщения.</li></ul>
+ * Не заданное ограничение пропускает все значения. {@link StateMachineListener#onStart(StateMachineDetails)} и
+ * {@link StateMachineListener#onStop(StateMachineDetails)} не фильтруются.
+ *
+ * <p>Фильтр должен быть полностью сконфигурирован до регистрации слушателя.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class ListenerFilter<S, E> {
+
+	private Set<S> sourceStates = Collections.emptySet();
+	private Set<S> targetStates = Collections.emptySet();
+	private Set<E> events = Collections.emptySet();
+	private boolean notAcceptedOnly;
+
+	private ListenerFilter() {
+	}
+
+	/**
+	 * Создает фильтр, пропускающий все оповещения.
+	 */
+	public static <S, E> ListenerFilter<S, E> create() {
+		return new ListenerFilter<>();
+	}
+
+	@SafeVarargs
+	public final ListenerFilter<S, E> fromStates(S ...states) {
+		sourceStates = new HashSet<>(Arrays.asList(states));
+		return this;
+	}
+
+	@SafeVarargs
+	public final ListenerFilter<S, E> toStates(S ...states) {
+		targetStates = new HashSet<>(Arrays.asList(states));
+		return this;
+	}
+
+	@SafeVarargs
+	public final ListenerFilter<S, E> onEvents(E ...events) {
+		this.events = new HashSet<>(Arrays.asList(events));
+		return this;
+	}
+
+	public ListenerFilter<S, E> notAcceptedOnly() {
+		notAcceptedOnly = true;
+		return this;
+	}
+
+	/**
+	 * {@code True} - если слушатель должен оповещаться о смене состояния из {@code sourceState} по событию {@code event}
+	 * без учета целевого состояния.
+	 */
+	public boolean acceptsStateChange(S sourceState, E event) {
+		return !notAcceptedOnly && matches(sourceStates, sourceState) && matches(events, event);
+	}
+
+	/**
+	 * {@code True} - если слушатель должен оповещаться о смене состояния на {@code targetState}.
+	 */
+	public boolean acceptsTargetState(S targetState) {
+		return matches(targetStates, targetState);
+	}
+
+	/**
+	 * {@code True} - если слушатель должен оповещаться о непринятом в состоянии {@code state} событии {@code event}.
+	 */
+	public boolean acceptsNotAccepted(S state, E event) {
+		return targetStates.isEmpty() && matches(sourceStates, state) && matches(events, event);
+	}
+
+	/**
+	 * Состояния при получении сообщения, о которых оповещается слушатель; пустой набор - все состояния.
+	 */
+	public Set<S> getSourceStates() {
+		return Collections.unmodifiableSet(sourceStates);
+	}
+
+	/**
+	 * События, о которых оповещается слушатель; пустой набор - все события.
+	 */
+	public Set<E> getEvents() {
+		return Collections.unmodifiableSet(events);
+	}
+
+	/**
+	 * Обертка слушателя, пропускающая к нему только оповещения, удовлетворяющие фильтру. Используется конечными автоматами,
+	 * не поддерживающими фильтры самостоятельно.
+	 */
+	public StateMachineListener<S, E> wrap(StateMachineListener<S, E> listener) {
+		return new FilteredListener<>(listener, this);
+	}
+
+	/**
+	 * {@code True} - если фильтр ограничивает целевые состояния.
+	 */
+	public boolean hasTargetStates() {
+		return !targetStates.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "ListenerFilter [sourceStates=" + sourceStates + ", targetStates=" + targetStates + ", events=" + events
+				+ ", notAcceptedOnly=" + notAcceptedOnly + "]";
+	}
+
+	private static <T> boolean matches(Set<T> allowed, T value) {
+		return allowed.isEmpty() || allowed.contains(value);
+	}
+
+	private static final class FilteredListener<S, E> implements StateMachineListener<S, E> {
+
+		private final StateMachineListener<S, E> listener;
+		private final ListenerFilter<S, E> filter;
+
+		FilteredListener(StateMachineListener<S, E> listener, ListenerFilter<S, E> filter) {
+			this.listener = listener;
+			this.filter = filter;
+		}
+
+		@Override
+		public void onStart(StateMachineDetails<S, E> stateMachineDetails) {
+			listener.onStart(stateMachineDetails);
+		}
+
+		@Override
+		public void onStop(StateMachineDetails<S, E> stateMachineDetails) {
+			listener.onStop(stateMachineDetails);
+		}
+
+		@Override
+		public void onStateChanged(StateMachineMessage<E> message, State<S, E> previousState, StateMachineDetails<S, E> stateMachineDetails) {
+			if (filter.acceptsStateChange(previousState.getId(), message.getEvent())
+					&& filter.acceptsTargetState(stateMachineDetails.getCurrentState().getId())) {
+				listener.onStateChanged(message, previousState, stateMachineDetails);
+			}
+		}
+
+		@Override
+		public void onEventNotAccepted(StateMachineMessage<E> message, StateMachineDetails<S, E> stateMachineDetails) {
+			if (filter.acceptsNotAccepted(stateMachineDetails.getCurrentState().getId(), message.getEvent())) {
+				listener.onEventNotAccepted(message, stateMachineDetails);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof FilteredListener)) {
+				return false;
+			}
+			FilteredListener<?, ?> other = (FilteredListener<?, ?>) obj;
+			return listener.equals(other.listener) && filter == other.filter;
+		}
+
+		@Override
+		public int hashCode() {
+			return listener.hashCode();
+		}
+	}
+
+}
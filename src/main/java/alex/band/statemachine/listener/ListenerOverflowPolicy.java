@@ -0,0 +1,26 @@
+package alex.band.statemachine.listener;
+
+/**
+ * Поведение {@link AsyncListenerBus} в случае, когда слушатели не успевают обрабатывать события жизненного цикла.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public enum ListenerOverflowPolicy {
+
+	/**
+	 * Поток конечного автомата ожидает освобождения места в буфере. Ни одно событие не теряется.
+	 */
+	BLOCK,
+
+	/**
+	 * Событие, для которого нет места в буфере, отбрасывается.
+	 */
+	DROP,
+
+	/**
+	 * Пока буфер заполнен больше чем наполовину, публикуется только каждое N-е событие. Если буфер заполнен полностью,
+	 * событие отбрасывается.
+	 */
+	SAMPLE
+
+}
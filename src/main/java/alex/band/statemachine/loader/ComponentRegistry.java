@@ -0,0 +1,82 @@
+package alex.band.statemachine.loader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Именованные {@link Guard}, действия переходов {@link TransitionAction} и действия состояний {@link StateAction},
+ * на которые ссылается текстовое описание конечного автомата, загружаемое {@link DefinitionLoader}.
+ *
+ * <p>Имена компонентов разных видов независимы. Реестр должен быть заполнен до загрузки описаний.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class ComponentRegistry<S, E> {
+
+	static final String COMPONENT_ALREADY_REGISTERED = "Component with equal name already registered: %s";
+	static final String UNKNOWN_GUARD = "Guard is not registered: %s";
+	static final String UNKNOWN_TRANSITION_ACTION = "Transition action is not registered: %s";
+	static final String UNKNOWN_STATE_ACTION = "State action is not registered: %s";
+
+	private final Map<String, Guard<S, E>> guards = new HashMap<>();
+	private final Map<String, TransitionAction<S, E>> transitionActions = new HashMap<>();
+	private final Map<String, StateAction<S, E>> stateActions = new HashMap<>();
+
+	/**
+	 * @throws IllegalArgumentException если {@code Guard} с таким именем уже зарегистрирован
+	 */
+	public ComponentRegistry<S, E> registerGuard(String name, Guard<S, E> guard) {
+		register(guards, name, guard);
+		return this;
+	}
+
+	/**
+	 * @throws IllegalArgumentException если действие перехода с таким именем уже зарегистрировано
+	 */
+	public ComponentRegistry<S, E> registerTransitionAction(String name, TransitionAction<S, E> action) {
+		register(transitionActions, name, action);
+		return this;
+	}
+
+	/**
+	 * @throws IllegalArgumentException если действие состояния с таким именем уже зарегистрировано
+	 */
+	public ComponentRegistry<S, E> registerStateAction(String name, StateAction<S, E> action) {
+		register(stateActions, name, action);
+		return this;
+	}
+
+	Guard<S, E> getGuard(String name) {
+		return find(guards, name, UNKNOWN_GUARD);
+	}
+
+	TransitionAction<S, E> getTransitionAction(String name) {
+		return find(transitionActions, name, UNKNOWN_TRANSITION_ACTION);
+	}
+
+	StateAction<S, E> getStateAction(String name) {
+		return find(stateActions, name, UNKNOWN_STATE_ACTION);
+	}
+
+	private static <T> void register(Map<String, T> components, String name, T component) {
+		checkArgument(!components.containsKey(name), COMPONENT_ALREADY_REGISTERED, name);
+		components.put(name, checkNotNull(component));
+	}
+
+	private static <T> T find(Map<String, T> components, String name, String errorMessage) {
+		T component = components.get(name);
+		checkArgument(component != null, errorMessage, name);
+		return component;
+	}
+
+}
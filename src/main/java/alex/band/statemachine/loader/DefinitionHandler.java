@@ -0,0 +1,21 @@
+package alex.band.statemachine.loader;
+
+import java.util.List;
+
+/**
+ * Получатель элементов текстового описания, разбираемого {@link DefinitionParser}. Вызывается по одному разу на строку
+ * описания в порядке строк; списки действительны только во время вызова.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+interface DefinitionHandler {
+
+	void state(String state, boolean initial, boolean isFinal, List<String> actions, List<String> deferredEvents);
+
+	/**
+	 * @param target - целевое состояние; {@code null} - переход внутренний
+	 * @param guard - имя {@code Guard}; {@code null} - переход без {@code Guard}
+	 */
+	void transition(String source, String event, String target, String guard, int priority, List<String> actions);
+
+}
@@ -0,0 +1,176 @@
+package alex.band.statemachine.loader;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.common.hash.Hashing;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.ExternalTransitionConfigurer;
+import alex.band.statemachine.builder.InternalTransitionConfigurer;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.StatesConfigurer;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+
+/**
+ * Загрузка описаний конечных автоматов {@link StateMachineDefinition} из текстового формата {@link DefinitionParser}.
+ *
+ * <p>{@link #load(Reader)} разбирает описание потоково и сразу передает каждую строку в {@link StateMachineBuilder}, который
+ * выполняет все проверки. {@link #load(Path, Path)} дополнительно сохраняет скомпилированную форму описания в двоичный файл кэша;
+ * последующие загрузки того же (по хэшу содержимого) описания читают файл кэша и собирают описание без разбора и проверок.
+ * Измененное описание разбирается заново, файл кэша перезаписывается.
+ *
+ * <p>Идентификаторы состояний и событий получаются из текста функциями {@code stateParser} и {@code eventParser},
+ * {@code Guard} и действия - из реестра {@link ComponentRegistry} по именам. Ошибки ввода-вывода сообщаются исключением
+ * {@link UncheckedIOException}.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class DefinitionLoader<S, E> {
+
+	private final Function<String, S> stateParser;
+	private final Function<String, E> eventParser;
+	private final ComponentRegistry<S, E> registry;
+
+	public DefinitionLoader(Function<String, S> stateParser, Function<String, E> eventParser, ComponentRegistry<S, E> registry) {
+		this.stateParser = checkNotNull(stateParser);
+		this.eventParser = checkNotNull(eventParser);
+		this.registry = checkNotNull(registry);
+	}
+
+	/**
+	 * Загрузчик описаний со строковыми идентификаторами состояний и событий.
+	 */
+	public static DefinitionLoader<String, String> forStrings(ComponentRegistry<String, String> registry) {
+		return new DefinitionLoader<>(Function.identity(), Function.identity(), registry);
+	}
+
+	/**
+	 * Загрузчик описаний, идентификаторы которых - имена констант перечислений.
+	 */
+	public static <S extends Enum<S>, E extends Enum<E>> DefinitionLoader<S, E> forEnums(Class<S> stateType, Class<E> eventType,
+			ComponentRegistry<S, E> registry) {
+		return new DefinitionLoader<>(name -> Enum.valueOf(stateType, name), name -> Enum.valueOf(eventType, name), registry);
+	}
+
+	/**
+	 * @throws IllegalArgumentException если описание не соответствует формату или ссылается на незарегистрированный компонент
+	 * @throws IllegalStateException если описание не проходит проверки {@link StateMachineBuilder}
+	 */
+	public StateMachineDefinition<S, E> load(Reader source) {
+		return parse(source, null);
+	}
+
+	/**
+	 * Загружает описание из файла {@code source} (UTF-8), используя файл кэша {@code cacheFile}.
+	 *
+	 * @throws IllegalArgumentException если описание не соответствует формату или ссылается на незарегистрированный компонент
+	 * @throws IllegalStateException если описание не проходит проверки {@link StateMachineBuilder}
+	 */
+	public StateMachineDefinition<S, E> load(Path source, Path cacheFile) {
+		try {
+			byte[] content = Files.readAllBytes(source);
+			byte[] sourceHash = hash(content);
+			DefinitionTables cachedTables = DefinitionTables.read(cacheFile, sourceHash);
+			if (cachedTables != null) {
+				return cachedTables.toDefinition(stateParser, eventParser, registry);
+			}
+
+			DefinitionTables tables = new DefinitionTables();
+			StateMachineDefinition<S, E> definition = parse(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8), tables);
+			tables.write(cacheFile, sourceHash);
+			return definition;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static byte[] hash(byte[] content) {
+		return Hashing.murmur3_128().hashBytes(content).asBytes();
+	}
+
+	private StateMachineDefinition<S, E> parse(Reader source, DefinitionTables tables) {
+		StateMachineBuilder<S, E> builder = new StateMachineBuilderImpl<>();
+		try {
+			DefinitionParser.parse(source, new BuilderHandler(builder, tables));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return builder.buildDefinition();
+	}
+
+	/**
+	 * Передает элементы описания в {@link StateMachineBuilder} и, если заданы, в таблицы скомпилированной формы.
+	 */
+	private final class BuilderHandler implements DefinitionHandler {
+
+		private final StateMachineBuilder<S, E> builder;
+		private final DefinitionTables tables;
+
+		BuilderHandler(StateMachineBuilder<S, E> builder, DefinitionTables tables) {
+			this.builder = builder;
+			this.tables = tables;
+		}
+
+		@Override
+		public void state(String state, boolean initial, boolean isFinal, List<String> actions, List<String> deferredEvents) {
+			StatesConfigurer<S, E> configurer = builder.defineState(stateParser.apply(state));
+			if (initial) {
+				configurer.asInitial();
+			}
+			if (isFinal) {
+				configurer.asFinal();
+			}
+			for (String action: actions) {
+				configurer.withAction(registry.getStateAction(action));
+			}
+			for (String event: deferredEvents) {
+				configurer.withDeferredEvent(eventParser.apply(event));
+			}
+			if (tables != null) {
+				tables.state(state, initial, isFinal, actions, deferredEvents);
+			}
+		}
+
+		@Override
+		public void transition(String source, String event, String target, String guard, int priority, List<String> actions) {
+			if (target != null) {
+				ExternalTransitionConfigurer<S, E> configurer = builder.defineExternalTransitionFor(stateParser.apply(source))
+						.to(stateParser.apply(target)).by(eventParser.apply(event)).withPriority(priority);
+				if (guard != null) {
+					configurer.guardedBy(registry.getGuard(guard));
+				}
+				for (String action: actions) {
+					configurer.withAction(registry.getTransitionAction(action));
+				}
+			} else {
+				InternalTransitionConfigurer<S, E> configurer = builder.defineInternalTransitionFor(stateParser.apply(source))
+						.by(eventParser.apply(event)).withPriority(priority);
+				if (guard != null) {
+					configurer.guardedBy(registry.getGuard(guard));
+				}
+				for (String action: actions) {
+					configurer.withAction(registry.getTransitionAction(action));
+				}
+			}
+			if (tables != null) {
+				tables.transition(source, event, target, guard, priority, actions);
+			}
+		}
+
+	}
+
+}
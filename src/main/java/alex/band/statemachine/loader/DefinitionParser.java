@@ -0,0 +1,169 @@
+package alex.band.statemachine.loader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Потоковый разбор текстового описания конечного автомата. Описание читается построчно, каждая строка сразу передается
+ * получателю {@link DefinitionHandler}; дерево описания не строится.
+ *
+ * <p>Формат строки (слова разделяются пробелами, элементы списков - запятыми без пробелов, {@code #} - комментарий до конца строки):
+ * <pre>
+ * state &lt;state&gt; [initial] [final] [do &lt;action&gt;,...] [defer &lt;event&gt;,...]
+ * on &lt;source&gt; &lt;event&gt; [-&gt; &lt;target&gt;] [if &lt;guard&gt;] [do &lt;action&gt;,...] [priority &lt;n&gt;]
+ * </pre>
+ * Переход без {@code ->} - внутренний. Действия и {@code Guard} задаются именами из {@link ComponentRegistry}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+final class DefinitionParser {
+
+	static final String UNKNOWN_KEYWORD = "Line %s: unknown keyword %s";
+	static final String UNEXPECTED_TOKEN = "Line %s: unexpected token %s";
+	static final String MISSING_VALUE = "Line %s: %s requires a value";
+	static final String ILLEGAL_PRIORITY = "Line %s: priority should be an integer: %s";
+
+	private static final String STATE = "state";
+	private static final String TRANSITION = "on";
+	private static final String INITIAL = "initial";
+	private static final String FINAL = "final";
+	private static final String ACTIONS = "do";
+	private static final String DEFER = "defer";
+	private static final String TARGET = "->";
+	private static final String GUARD = "if";
+	private static final String PRIORITY = "priority";
+
+	private final List<String> tokens = new ArrayList<>();
+	private final DefinitionHandler handler;
+	private int lineNumber;
+
+	private DefinitionParser(DefinitionHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * @throws IllegalArgumentException если строка описания не соответствует формату
+	 */
+	static void parse(Reader reader, DefinitionHandler handler) throws IOException {
+		DefinitionParser parser = new DefinitionParser(handler);
+		BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+			parser.parseLine(line);
+		}
+	}
+
+	private void parseLine(String line) {
+		lineNumber++;
+		tokenize(line);
+		if (tokens.isEmpty()) {
+			return;
+		}
+		if (tokens.get(0).equals(STATE)) {
+			parseState();
+		} else if (tokens.get(0).equals(TRANSITION)) {
+			parseTransition();
+		} else {
+			throw new IllegalArgumentException(String.format(UNKNOWN_KEYWORD, lineNumber, tokens.get(0)));
+		}
+	}
+
+	private void parseState() {
+		String state = value(1, STATE);
+		boolean initial = false;
+		boolean isFinal = false;
+		List<String> actions = Collections.emptyList();
+		List<String> deferredEvents = Collections.emptyList();
+		for (int i = 2; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			if (token.equals(INITIAL)) {
+				initial = true;
+			} else if (token.equals(FINAL)) {
+				isFinal = true;
+			} else if (token.equals(ACTIONS)) {
+				actions = list(value(++i, ACTIONS));
+			} else if (token.equals(DEFER)) {
+				deferredEvents = list(value(++i, DEFER));
+			} else {
+				throw new IllegalArgumentException(String.format(UNEXPECTED_TOKEN, lineNumber, token));
+			}
+		}
+		handler.state(state, initial, isFinal, actions, deferredEvents);
+	}
+
+	private void parseTransition() {
+		String source = value(1, TRANSITION);
+		String event = value(2, TRANSITION);
+		String target = null;
+		String guard = null;
+		int priority = 0;
+		List<String> actions = Collections.emptyList();
+		for (int i = 3; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			if (token.equals(TARGET)) {
+				target = value(++i, TARGET);
+			} else if (token.equals(GUARD)) {
+				guard = value(++i, GUARD);
+			} else if (token.equals(ACTIONS)) {
+				actions = list(value(++i, ACTIONS));
+			} else if (token.equals(PRIORITY)) {
+				priority = priority(value(++i, PRIORITY));
+			} else {
+				throw new IllegalArgumentException(String.format(UNEXPECTED_TOKEN, lineNumber, token));
+			}
+		}
+		handler.transition(source, event, target, guard, priority, actions);
+	}
+
+	private String value(int index, String keyword) {
+		checkArgument(index < tokens.size(), MISSING_VALUE, lineNumber, keyword);
+		return tokens.get(index);
+	}
+
+	private int priority(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format(ILLEGAL_PRIORITY, lineNumber, value), e);
+		}
+	}
+
+	private void tokenize(String line) {
+		tokens.clear();
+		int end = line.indexOf('#');
+		if (end < 0) {
+			end = line.length();
+		}
+		int start = -1;
+		for (int i = 0; i < end; i++) {
+			if (Character.isWhitespace(line.charAt(i))) {
+				if (start >= 0) {
+					tokens.add(line.substring(start, i));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+		if (start >= 0) {
+			tokens.add(line.substring(start, end));
+		}
+	}
+
+	private static List<String> list(String value) {
+		List<String> values = new ArrayList<>();
+		int start = 0;
+		for (int comma = value.indexOf(','); comma >= 0; comma = value.indexOf(',', start)) {
+			values.add(value.substring(start, comma));
+			start = comma + 1;
+		}
+		values.add(value.substring(start));
+		return values;
+	}
+
+}
@@ -0,0 +1,334 @@
+package alex.band.statemachine.loader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.impl.PrecompiledDefinitions;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+/**
+ * Скомпилированная форма текстового описания: таблицы состояний, событий, имен компонентов и переходов, ссылающиеся
+ * друг на друга номерами.
+ *
+ * <p>Таблицы заполняются при разборе описания ({@link DefinitionHandler}), записываются в файл кэша и читаются из него
+ * целиком в буфер. Файл начинается с сигнатуры, версии формата и хэша исходного описания; файл другой версии или
+ * другого описания не читается, как и файл с номерами вне таблиц. Переходы в файле упорядочены по убыванию приоритета,
+ * поэтому описание собирается {@link PrecompiledDefinitions} без повторной проверки.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+final class DefinitionTables implements DefinitionHandler {
+
+	static final int MAGIC = 0x53544d44;
+	static final int VERSION = 1;
+
+	private static final int[] NO_INDEXES = new int[0];
+
+	private final List<String> states = new ArrayList<>();
+	private final List<String> events = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+	private final Map<String, Integer> stateIndexes = new HashMap<>();
+	private final Map<String, Integer> eventIndexes = new HashMap<>();
+	private final Map<String, Integer> nameIndexes = new HashMap<>();
+	private int initialState = -1;
+	private int finalState = -1;
+	private final List<int[]> stateActions = new ArrayList<>();
+	private final List<int[]> deferredEvents = new ArrayList<>();
+
+	/**
+	 * Переход - строка {@code {source, event, target, priority, guard}}; {@code -1} - внутренний переход либо переход без {@code Guard}.
+	 */
+	private final List<int[]> transitions = new ArrayList<>();
+	private final List<int[]> transitionActions = new ArrayList<>();
+
+	@Override
+	public void state(String state, boolean initial, boolean isFinal, List<String> actions, List<String> deferredEvents) {
+		int index = stateIndex(state);
+		if (initial) {
+			initialState = index;
+		}
+		if (isFinal) {
+			finalState = index;
+		}
+		stateActions.set(index, indexes(actions, names, nameIndexes));
+		this.deferredEvents.set(index, indexes(deferredEvents, events, eventIndexes));
+	}
+
+	@Override
+	public void transition(String source, String event, String target, String guard, int priority, List<String> actions) {
+		transitions.add(new int[] {stateIndex(source), intern(event, events, eventIndexes), target != null ? stateIndex(target) : -1, priority,
+				guard != null ? intern(guard, names, nameIndexes) : -1});
+		transitionActions.add(indexes(actions, names, nameIndexes));
+	}
+
+	/**
+	 * Записывает таблицы во временный файл в каталоге {@code file} и атомарно заменяет им {@code file}.
+	 */
+	void write(Path file, byte[] sourceHash) throws IOException {
+		Integer[] order = new Integer[transitions.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingInt((Integer transition) -> transitions.get(transition)[3]).reversed());
+
+		Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			writeTables(temporary, sourceHash, order);
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private void writeTables(Path temporary, byte[] sourceHash, Integer[] order) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(sourceHash.length);
+			output.write(sourceHash);
+			writeStrings(output, states);
+			writeStrings(output, events);
+			writeStrings(output, names);
+			output.writeInt(initialState);
+			output.writeInt(finalState);
+			for (int state = 0; state < states.size(); state++) {
+				writeIndexes(output, stateActions.get(state));
+				writeIndexes(output, deferredEvents.get(state));
+			}
+			output.writeInt(transitions.size());
+			for (int transition: order) {
+				for (int value: transitions.get(transition)) {
+					output.writeInt(value);
+				}
+				writeIndexes(output, transitionActions.get(transition));
+			}
+		}
+	}
+
+	/**
+	 * Читает таблицы из файла. Файл читается целиком в буфер и сразу закрывается, поэтому его можно заменить новым.
+	 *
+	 * @return таблицы либо {@code null}, если файл отсутствует, поврежден, имеет другую версию формата или построен по другому описанию
+	 */
+	static DefinitionTables read(Path file, byte[] sourceHash) throws IOException {
+		ByteBuffer buffer;
+		try {
+			buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != sourceHash.length) {
+				return null;
+			}
+			byte[] hash = new byte[sourceHash.length];
+			buffer.get(hash);
+			if (!Arrays.equals(hash, sourceHash)) {
+				return null;
+			}
+
+			DefinitionTables tables = new DefinitionTables();
+			readStrings(buffer, tables.states);
+			readStrings(buffer, tables.events);
+			readStrings(buffer, tables.names);
+			tables.initialState = buffer.getInt();
+			tables.finalState = buffer.getInt();
+			for (int state = 0; state < tables.states.size(); state++) {
+				tables.stateActions.add(readIndexes(buffer));
+				tables.deferredEvents.add(readIndexes(buffer));
+			}
+			int transitionsCount = buffer.getInt();
+			for (int i = 0; i < transitionsCount; i++) {
+				tables.transitions.add(new int[] {buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()});
+				tables.transitionActions.add(readIndexes(buffer));
+			}
+			return buffer.hasRemaining() || !tables.hasValidIndexes() ? null : tables;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Проверяет, что номера прочитанных таблиц ссылаются на существующие строки таблиц.
+	 */
+	private boolean hasValidIndexes() {
+		int statesCount = states.size();
+		int eventsCount = events.size();
+		int namesCount = names.size();
+		if (!isIndex(initialState, statesCount) || !isIndex(finalState, statesCount)) {
+			return false;
+		}
+		for (int state = 0; state < statesCount; state++) {
+			if (!areIndexes(stateActions.get(state), namesCount) || !areIndexes(deferredEvents.get(state), eventsCount)) {
+				return false;
+			}
+		}
+		for (int i = 0; i < transitions.size(); i++) {
+			int[] transition = transitions.get(i);
+			if (!isIndex(transition[0], statesCount) || !isIndex(transition[1], eventsCount) || !isIndexOrNone(transition[2], statesCount)
+					|| !isIndexOrNone(transition[4], namesCount) || !areIndexes(transitionActions.get(i), namesCount)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Собирает описание из таблиц, прочитанных из файла кэша.
+	 *
+	 * @throws IllegalArgumentException если компонент с именем из описания не зарегистрирован в {@code registry}
+	 */
+	@SuppressWarnings("unchecked")
+	<S, E> StateMachineDefinition<S, E> toDefinition(Function<String, S> stateParser, Function<String, E> eventParser,
+			ComponentRegistry<S, E> registry) {
+		List<S> stateIds = new ArrayList<>(states.size());
+		for (String state: states) {
+			stateIds.add(stateParser.apply(state));
+		}
+		List<E> eventIds = new ArrayList<>(events.size());
+		for (String event: events) {
+			eventIds.add(eventParser.apply(event));
+		}
+
+		StateAction<S, E>[][] stateActionsTable = new StateAction[states.size()][];
+		int[][] deferredEventsTable = new int[states.size()][];
+		for (int state = 0; state < states.size(); state++) {
+			int[] actions = stateActions.get(state);
+			stateActionsTable[state] = new StateAction[actions.length];
+			for (int i = 0; i < actions.length; i++) {
+				stateActionsTable[state][i] = registry.getStateAction(names.get(actions[i]));
+			}
+			deferredEventsTable[state] = deferredEvents.get(state);
+		}
+
+		int transitionsCount = transitions.size();
+		int[] sources = new int[transitionsCount];
+		int[] transitionEvents = new int[transitionsCount];
+		int[] targets = new int[transitionsCount];
+		int[] priorities = new int[transitionsCount];
+		Guard<S, E>[] guards = new Guard[transitionsCount];
+		TransitionAction<S, E>[][] actionsTable = new TransitionAction[transitionsCount][];
+		for (int i = 0; i < transitionsCount; i++) {
+			int[] transition = transitions.get(i);
+			sources[i] = transition[0];
+			transitionEvents[i] = transition[1];
+			targets[i] = transition[2];
+			priorities[i] = transition[3];
+			guards[i] = transition[4] >= 0 ? registry.getGuard(names.get(transition[4])) : null;
+			int[] actions = transitionActions.get(i);
+			actionsTable[i] = new TransitionAction[actions.length];
+			for (int j = 0; j < actions.length; j++) {
+				actionsTable[i][j] = registry.getTransitionAction(names.get(actions[j]));
+			}
+		}
+
+		return PrecompiledDefinitions.create(stateIds, eventIds, initialState, finalState, stateActionsTable, deferredEventsTable,
+				sources, transitionEvents, targets, priorities, guards, actionsTable);
+	}
+
+	private int stateIndex(String state) {
+		int index = intern(state, states, stateIndexes);
+		if (index == stateActions.size()) {
+			stateActions.add(NO_INDEXES);
+			deferredEvents.add(NO_INDEXES);
+		}
+		return index;
+	}
+
+	private static int intern(String value, List<String> values, Map<String, Integer> indexes) {
+		Integer index = indexes.get(value);
+		if (index == null) {
+			index = values.size();
+			indexes.put(value, index);
+			values.add(value);
+		}
+		return index;
+	}
+
+	private static int[] indexes(List<String> values, List<String> table, Map<String, Integer> tableIndexes) {
+		if (values.isEmpty()) {
+			return NO_INDEXES;
+		}
+		int[] indexes = new int[values.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = intern(values.get(i), table, tableIndexes);
+		}
+		return indexes;
+	}
+
+	private static void writeStrings(DataOutputStream output, List<String> values) throws IOException {
+		output.writeInt(values.size());
+		for (String value: values) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static void readStrings(ByteBuffer buffer, List<String> values) {
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			int length = buffer.getInt();
+			ByteBuffer bytes = buffer.slice();
+			bytes.limit(length);
+			values.add(StandardCharsets.UTF_8.decode(bytes).toString());
+			buffer.position(buffer.position() + length);
+		}
+	}
+
+	private static void writeIndexes(DataOutputStream output, int[] indexes) throws IOException {
+		output.writeInt(indexes.length);
+		for (int index: indexes) {
+			output.writeInt(index);
+		}
+	}
+
+	private static boolean isIndex(int index, int count) {
+		return index >= 0 && index < count;
+	}
+
+	private static boolean isIndexOrNone(int index, int count) {
+		return index == -1 || isIndex(index, count);
+	}
+
+	private static boolean areIndexes(int[] indexes, int count) {
+		for (int index: indexes) {
+			if (!isIndex(index, count)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int[] readIndexes(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / 4) {
+			throw new BufferUnderflowException();
+		}
+		int[] indexes = new int[count];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = buffer.getInt();
+		}
+		return indexes;
+	}
+
+}
@@ -0,0 +1,79 @@
+package alex.band.statemachine.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый снимок гистограммы {@link LatencyHistogram}.
+ *
+ * <p>Снимок не атомарен: счетчики интервалов читаются последовательно, поэтому при одновременной записи сумма и количество
+ * могут незначительно расходиться.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class HistogramSnapshot {
+
+	private final long[] counts;
+	private final long count;
+	private final long totalNanos;
+
+	HistogramSnapshot(long[] counts, long totalNanos) {
+		this.counts = counts;
+		this.totalNanos = totalNanos;
+
+		long sum = 0;
+		for (long bucketCount: counts) {
+			sum += bucketCount;
+		}
+		this.count = sum;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public double getMeanNanos() {
+		return count == 0 ? 0 : (double) totalNanos / count;
+	}
+
+	/**
+	 * Возвращает верхнюю границу интервала, в который попадает заданный процентиль. Точность - в пределах степени двойки.
+	 *
+	 * @param percentile - значение из {@code [0, 100]}
+	 */
+	public long getPercentileNanos(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank)) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length - 1);
+	}
+
+	/**
+	 * Количество значений в каждом интервале.
+	 */
+	public long[] getBucketCounts() {
+		return counts.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramSnapshot [count=" + count + ", meanNanos=" + getMeanNanos() + ", p50=" + getPercentileNanos(50) + ", p99="
+				+ getPercentileNanos(99) + ", buckets=" + Arrays.toString(counts) + "]";
+	}
+
+	private static long upperBound(int bucket) {
+		return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+}
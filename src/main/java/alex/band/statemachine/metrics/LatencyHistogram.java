@@ -0,0 +1,44 @@
+package alex.band.statemachine.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с фиксированными интервалами по степеням двойки: интервал {@code i} содержит значения
+ * из {@code [2^(i-1), 2^i)} наносекунд, интервал {@code 0} - нулевые значения.
+ *
+ * <p>Счетчики интервалов распределены по ячейкам ({@link LongAdder}), поэтому запись из нескольких потоков не конкурирует
+ * за одну ячейку памяти и не создает объектов после первого обращения каждого потока.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class LatencyHistogram {
+
+	static final int BUCKETS = 64;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder totalNanos = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Записывает длительность. Отрицательные значения (немонотонные часы) записываются как нулевые.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+		totalNanos.add(value);
+	}
+
+	public HistogramSnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return new HistogramSnapshot(counts, totalNanos.sum());
+	}
+
+}
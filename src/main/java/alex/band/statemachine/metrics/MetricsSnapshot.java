@@ -0,0 +1,78 @@
+package alex.band.statemachine.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок метрик {@link StateMachineMetrics}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class MetricsSnapshot {
+
+	private final HistogramSnapshot acceptLatency;
+	private final HistogramSnapshot guardLatency;
+	private final HistogramSnapshot actionLatency;
+	private final Map<String, Long> transitionCounts;
+	private final Map<String, Long> notAcceptedCounts;
+	private final Map<String, HistogramSnapshot> dwellTimes;
+
+	MetricsSnapshot(HistogramSnapshot acceptLatency, HistogramSnapshot guardLatency, HistogramSnapshot actionLatency,
+			Map<String, Long> transitionCounts, Map<String, Long> notAcceptedCounts, Map<String, HistogramSnapshot> dwellTimes) {
+		this.acceptLatency = acceptLatency;
+		this.guardLatency = guardLatency;
+		this.actionLatency = actionLatency;
+		this.transitionCounts = Collections.unmodifiableMap(transitionCounts);
+		this.notAcceptedCounts = Collections.unmodifiableMap(notAcceptedCounts);
+		this.dwellTimes = Collections.unmodifiableMap(dwellTimes);
+	}
+
+	/**
+	 * Длительность обработки сообщений {@code accept()}, включая повторную обработку отложенных сообщений.
+	 */
+	public HistogramSnapshot getAcceptLatency() {
+		return acceptLatency;
+	}
+
+	/**
+	 * Длительность выбора перехода: поиск кандидатов и вычисление их {@link alex.band.statemachine.transition.Guard}.
+	 */
+	public HistogramSnapshot getGuardLatency() {
+		return guardLatency;
+	}
+
+	/**
+	 * Длительность выполнения перехода: действия выхода из состояния, действия перехода и действия входа в состояние.
+	 */
+	public HistogramSnapshot getActionLatency() {
+		return actionLatency;
+	}
+
+	/**
+	 * Количество выполнений переходов по их описанию {@code "источник -событие-> цель"}.
+	 */
+	public Map<String, Long> getTransitionCounts() {
+		return transitionCounts;
+	}
+
+	/**
+	 * Количество непринятых сообщений по состояниям.
+	 */
+	public Map<String, Long> getNotAcceptedCounts() {
+		return notAcceptedCounts;
+	}
+
+	/**
+	 * Распределение времени пребывания экземпляров в состояниях.
+	 */
+	public Map<String, HistogramSnapshot> getDwellTimes() {
+		return dwellTimes;
+	}
+
+	@Override
+	public String toString() {
+		return "MetricsSnapshot [acceptLatency=" + acceptLatency + ", transitionCounts=" + transitionCounts + ", notAcceptedCounts="
+				+ notAcceptedCounts + "]";
+	}
+
+}
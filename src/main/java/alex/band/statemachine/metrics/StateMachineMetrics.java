@@ -0,0 +1,182 @@
+package alex.band.statemachine.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.OptionsConfigurer;
+
+/**
+ * Метрики всех экземпляров одного описания конечного автомата {@link StateMachineDefinition}, включаемые
+ * {@link OptionsConfigurer#collectMetrics()}.
+ *
+ * <p>Запись выполняется экземплярами конечного автомата и не создает объектов: счетчики и гистограммы {@link LatencyHistogram}
+ * созданы заранее и индексируются номерами состояний и переходов описания. Метрики читаются снимком {@link #snapshot()}
+ * либо через JMX ({@link #registerMBean(String)}).
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public class StateMachineMetrics implements StateMachineMetricsMXBean {
+
+	private final String[] stateNames;
+	private final String[] transitionNames;
+
+	private final LatencyHistogram acceptLatency = new LatencyHistogram();
+	private final LatencyHistogram guardLatency = new LatencyHistogram();
+	private final LatencyHistogram actionLatency = new LatencyHistogram();
+	private final LongAdder[] transitionCounts;
+	private final LongAdder[] notAcceptedCounts;
+	private final LatencyHistogram[] dwellTimes;
+
+	/**
+	 * @param stateNames - имена состояний по их номерам; {@code null} - номер не используется
+	 * @param transitionNames - имена переходов по их номерам
+	 */
+	public StateMachineMetrics(List<String> stateNames, List<String> transitionNames) {
+		this.stateNames = stateNames.toArray(new String[stateNames.size()]);
+		this.transitionNames = transitionNames.toArray(new String[transitionNames.size()]);
+
+		transitionCounts = new LongAdder[this.transitionNames.length];
+		for (int i = 0; i < transitionCounts.length; i++) {
+			transitionCounts[i] = new LongAdder();
+		}
+		notAcceptedCounts = new LongAdder[this.stateNames.length];
+		dwellTimes = new LatencyHistogram[this.stateNames.length];
+		for (int i = 0; i < this.stateNames.length; i++) {
+			if (this.stateNames[i] != null) {
+				notAcceptedCounts[i] = new LongAdder();
+				dwellTimes[i] = new LatencyHistogram();
+			}
+		}
+	}
+
+	public void recordAccept(long nanos) {
+		acceptLatency.record(nanos);
+	}
+
+	public void recordGuards(long nanos) {
+		guardLatency.record(nanos);
+	}
+
+	public void recordActions(long nanos) {
+		actionLatency.record(nanos);
+	}
+
+	public void recordTransition(int transitionIndex) {
+		transitionCounts[transitionIndex].increment();
+	}
+
+	public void recordNotAccepted(int stateIndex) {
+		notAcceptedCounts[stateIndex].increment();
+	}
+
+	public void recordDwellTime(int stateIndex, long nanos) {
+		dwellTimes[stateIndex].record(nanos);
+	}
+
+	public MetricsSnapshot snapshot() {
+		Map<String, HistogramSnapshot> dwellTimeSnapshots = new LinkedHashMap<>();
+		for (int i = 0; i < stateNames.length; i++) {
+			if (stateNames[i] != null) {
+				dwellTimeSnapshots.put(stateNames[i], dwellTimes[i].snapshot());
+			}
+		}
+		return new MetricsSnapshot(acceptLatency.snapshot(), guardLatency.snapshot(), actionLatency.snapshot(), getTransitionCounts(),
+				getNotAcceptedCounts(), dwellTimeSnapshots);
+	}
+
+	/**
+	 * Регистрирует метрики в {@link ManagementFactory#getPlatformMBeanServer()} под именем
+	 * {@code alex.band.statemachine:type=StateMachineMetrics,name=<name>}.
+	 *
+	 * @return имя зарегистрированного MBean
+	 * @throws IllegalStateException если регистрация не удалась (например, имя уже занято)
+	 */
+	public ObjectName registerMBean(String name) {
+		try {
+			ObjectName objectName = ObjectName.getInstance("alex.band.statemachine:type=StateMachineMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Metrics MBean can't be registered: " + name, e);
+		}
+	}
+
+	/**
+	 * Удаляет MBean, зарегистрированный {@link #registerMBean(String)}.
+	 */
+	public void unregisterMBean(ObjectName objectName) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Metrics MBean can't be unregistered: " + objectName, e);
+		}
+	}
+
+	@Override
+	public long getAcceptCount() {
+		return acceptLatency.snapshot().getCount();
+	}
+
+	@Override
+	public double getAcceptLatencyMeanNanos() {
+		return acceptLatency.snapshot().getMeanNanos();
+	}
+
+	@Override
+	public long getAcceptLatencyP99Nanos() {
+		return acceptLatency.snapshot().getPercentileNanos(99);
+	}
+
+	@Override
+	public long getGuardLatencyP99Nanos() {
+		return guardLatency.snapshot().getPercentileNanos(99);
+	}
+
+	@Override
+	public long getActionLatencyP99Nanos() {
+		return actionLatency.snapshot().getPercentileNanos(99);
+	}
+
+	@Override
+	public Map<String, Long> getTransitionCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < transitionNames.length; i++) {
+			counts.put(transitionNames[i], transitionCounts[i].sum());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getNotAcceptedCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < stateNames.length; i++) {
+			if (stateNames[i] != null) {
+				counts.put(stateNames[i], notAcceptedCounts[i].sum());
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getDwellTimeP50Nanos() {
+		Map<String, Long> percentiles = new LinkedHashMap<>();
+		for (int i = 0; i < stateNames.length; i++) {
+			if (stateNames[i] != null) {
+				percentiles.put(stateNames[i], dwellTimes[i].snapshot().getPercentileNanos(50));
+			}
+		}
+		return percentiles;
+	}
+
+}
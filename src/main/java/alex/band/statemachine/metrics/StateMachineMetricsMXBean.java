@@ -0,0 +1,37 @@
+package alex.band.statemachine.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX-представление метрик {@link StateMachineMetrics}. Длительности - в наносекундах, процентили - с точностью до степени двойки.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface StateMachineMetricsMXBean {
+
+	long getAcceptCount();
+
+	double getAcceptLatencyMeanNanos();
+
+	long getAcceptLatencyP99Nanos();
+
+	long getGuardLatencyP99Nanos();
+
+	long getActionLatencyP99Nanos();
+
+	/**
+	 * Количество выполнений каждого перехода.
+	 */
+	Map<String, Long> getTransitionCounts();
+
+	/**
+	 * Количество непринятых сообщений в каждом состоянии.
+	 */
+	Map<String, Long> getNotAcceptedCounts();
+
+	/**
+	 * Медиана времени пребывания в каждом состоянии.
+	 */
+	Map<String, Long> getDwellTimeP50Nanos();
+
+}
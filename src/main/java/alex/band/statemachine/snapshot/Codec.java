@@ -0,0 +1,29 @@
+package alex.band.statemachine.snapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Двоичное представление значений одного типа в снимке конечного автомата {@link StateMachineSnapshot}.
+ *
+ * <p>Используется для идентификаторов состояний и событий, значений контекста и полезной нагрузки отложенных сообщений.
+ * Готовые реализации для распространенных типов предоставляет {@link Codecs}.
+ *
+ * @param <T> - тип значения
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface Codec<T> {
+
+	/**
+	 * Записывает значение. {@code null} в кодек не передается.
+	 */
+	void encode(T value, DataOutput out) throws IOException;
+
+	/**
+	 * Читает значение, записанное {@link #encode(Object, DataOutput)}.
+	 */
+	T decode(DataInput in) throws IOException;
+
+}
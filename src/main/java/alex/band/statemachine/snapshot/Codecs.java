@@ -0,0 +1,163 @@
+package alex.band.statemachine.snapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Готовые кодеки {@link Codec} для распространенных типов.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class Codecs {
+
+	private static final Codec<String> STRING = new Codec<String>() {
+
+		@Override
+		public void encode(String value, DataOutput out) throws IOException {
+			out.writeUTF(value);
+		}
+
+		@Override
+		public String decode(DataInput in) throws IOException {
+			return in.readUTF();
+		}
+	};
+
+	private static final Codec<Integer> INTEGER = new Codec<Integer>() {
+
+		@Override
+		public void encode(Integer value, DataOutput out) throws IOException {
+			writeVarLong(out, zigZag(value));
+		}
+
+		@Override
+		public Integer decode(DataInput in) throws IOException {
+			return (int) unZigZag(readVarLong(in));
+		}
+	};
+
+	private static final Codec<Long> LONG = new Codec<Long>() {
+
+		@Override
+		public void encode(Long value, DataOutput out) throws IOException {
+			writeVarLong(out, zigZag(value));
+		}
+
+		@Override
+		public Long decode(DataInput in) throws IOException {
+			return unZigZag(readVarLong(in));
+		}
+	};
+
+	private static final Codec<Boolean> BOOLEAN = new Codec<Boolean>() {
+
+		@Override
+		public void encode(Boolean value, DataOutput out) throws IOException {
+			out.writeBoolean(value);
+		}
+
+		@Override
+		public Boolean decode(DataInput in) throws IOException {
+			return in.readBoolean();
+		}
+	};
+
+	private static final Codec<Double> DOUBLE = new Codec<Double>() {
+
+		@Override
+		public void encode(Double value, DataOutput out) throws IOException {
+			out.writeDouble(value);
+		}
+
+		@Override
+		public Double decode(DataInput in) throws IOException {
+			return in.readDouble();
+		}
+	};
+
+	private Codecs() {
+	}
+
+	public static Codec<String> strings() {
+		return STRING;
+	}
+
+	/**
+	 * Целые числа записываются в формате переменной длины: небольшие по модулю значения занимают 1-2 байта.
+	 */
+	public static Codec<Integer> integers() {
+		return INTEGER;
+	}
+
+	/**
+	 * Целые числа записываются в формате переменной длины: небольшие по модулю значения занимают 1-2 байта.
+	 */
+	public static Codec<Long> longs() {
+		return LONG;
+	}
+
+	public static Codec<Boolean> booleans() {
+		return BOOLEAN;
+	}
+
+	public static Codec<Double> doubles() {
+		return DOUBLE;
+	}
+
+	/**
+	 * Кодек перечисления: записывается порядковый номер константы, поэтому константы нельзя переупорядочивать,
+	 * пока существуют снимки в старом порядке.
+	 */
+	public static <T extends Enum<T>> Codec<T> enums(final Class<T> enumType) {
+		final T[] constants = enumType.getEnumConstants();
+		return new Codec<T>() {
+
+			@Override
+			public void encode(T value, DataOutput out) throws IOException {
+				writeVarLong(out, value.ordinal());
+			}
+
+			@Override
+			public T decode(DataInput in) throws IOException {
+				int ordinal = (int) readVarLong(in);
+				Preconditions.checkArgument(ordinal < constants.length, "Unknown ordinal %s of %s.", ordinal, enumType.getName());
+				return constants[ordinal];
+			}
+		};
+	}
+
+	/**
+	 * Записывает неотрицательное число по 7 бит в байте, начиная с младших.
+	 */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length number.");
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
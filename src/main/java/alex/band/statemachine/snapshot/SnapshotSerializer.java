@@ -0,0 +1,208 @@
+package alex.band.statemachine.snapshot;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+
+/**
+ * Компактное двоичное представление снимков {@link StateMachineSnapshot}.
+ *
+ * <p>Идентификаторы состояний и событий записываются кодеками, переданными в {@link #create(Codec, Codec)}.
+ * Значения контекста и полезная нагрузка отложенных сообщений записываются с номером кодека их класса:
+ * {@link String}, {@link Integer}, {@link Long}, {@link Boolean} и {@link Double} поддерживаются сразу,
+ * остальные типы регистрируются через {@link #withValueCodec(Class, Codec)}. Номер кодека определяется порядком регистрации,
+ * поэтому снимок читается только сериализатором с тем же набором кодеков.
+ *
+ * <p>Сериализатор конфигурируется один раз и затем может использоваться из любых потоков.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class SnapshotSerializer<S, E> {
+
+	private static final int FORMAT_VERSION = 1;
+	private static final int RUNNING_FLAG = 1;
+	private static final int STATE_FLAG = 2;
+	private static final int NULL_VALUE_TAG = 0;
+
+	private final Codec<S> stateCodec;
+	private final Codec<E> eventCodec;
+	private final List<Codec<Object>> valueCodecs = new ArrayList<>();
+	private final Map<Class<?>, Integer> valueTags = new HashMap<>();
+
+	private SnapshotSerializer(Codec<S> stateCodec, Codec<E> eventCodec) {
+		this.stateCodec = checkNotNull(stateCodec);
+		this.eventCodec = checkNotNull(eventCodec);
+
+		withValueCodec(String.class, Codecs.strings());
+		withValueCodec(Integer.class, Codecs.integers());
+		withValueCodec(Long.class, Codecs.longs());
+		withValueCodec(Boolean.class, Codecs.booleans());
+		withValueCodec(Double.class, Codecs.doubles());
+	}
+
+	public static <S, E> SnapshotSerializer<S, E> create(Codec<S> stateCodec, Codec<E> eventCodec) {
+		return new SnapshotSerializer<>(stateCodec, eventCodec);
+	}
+
+	/**
+	 * Регистрирует кодек значений заданного класса (без учета наследников). Повторная регистрация класса заменяет кодек,
+	 * сохраняя его номер.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> SnapshotSerializer<S, E> withValueCodec(Class<T> valueType, Codec<T> codec) {
+		checkNotNull(valueType);
+		checkNotNull(codec);
+
+		Integer tag = valueTags.get(valueType);
+		if (tag == null) {
+			valueCodecs.add((Codec<Object>) codec);
+			valueTags.put(valueType, valueCodecs.size());
+		} else {
+			valueCodecs.set(tag - 1, (Codec<Object>) codec);
+		}
+		return this;
+	}
+
+	/**
+	 * Создает снимок конечного автомата и возвращает его двоичное представление.
+	 *
+	 * @throws IllegalArgumentException если конечный автомат не поддерживает снимки {@link SnapshotSupport}
+	 */
+	public byte[] snapshot(StateMachine<S, E> stateMachine) {
+		return serialize(asSnapshotSupport(stateMachine).snapshot());
+	}
+
+	/**
+	 * Восстанавливает конечный автомат из двоичного представления снимка.
+	 *
+	 * @see SnapshotSupport#restore(StateMachineSnapshot)
+	 */
+	public void restore(StateMachine<S, E> stateMachine, byte[] snapshot) {
+		asSnapshotSupport(stateMachine).restore(deserialize(snapshot));
+	}
+
+	public byte[] serialize(StateMachineSnapshot<S, E> snapshot) {
+		ByteArrayDataOutput out = ByteStreams.newDataOutput(64);
+		try {
+			S stateId = snapshot.getCurrentStateId();
+			out.writeByte(FORMAT_VERSION);
+			out.writeByte((snapshot.isRunning() ? RUNNING_FLAG : 0) | (stateId != null ? STATE_FLAG : 0));
+			if (stateId != null) {
+				stateCodec.encode(stateId, out);
+			}
+
+			Codecs.writeVarLong(out, snapshot.getContextValues().size());
+			for (Map.Entry<String, Object> entry: snapshot.getContextValues().entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeValue(entry.getValue(), out);
+			}
+
+			Codecs.writeVarLong(out, snapshot.getDeferredMessages().size());
+			for (StateMachineMessage<E> message: snapshot.getDeferredMessages()) {
+				writeMessage(message, out);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Snapshot can't be serialized.", e);
+		}
+		return out.toByteArray();
+	}
+
+	public StateMachineSnapshot<S, E> deserialize(byte[] snapshot) {
+		DataInput in = ByteStreams.newDataInput(snapshot);
+		try {
+			int version = in.readUnsignedByte();
+			checkArgument(version == FORMAT_VERSION, "Unsupported snapshot format version %s.", version);
+			int flags = in.readUnsignedByte();
+			S stateId = (flags & STATE_FLAG) != 0 ? stateCodec.decode(in) : null;
+
+			int contextSize = readCount(in, snapshot.length);
+			Map<String, Object> contextValues = new LinkedHashMap<>();
+			for (int i = 0; i < contextSize; i++) {
+				String key = in.readUTF();
+				contextValues.put(key, readValue(in));
+			}
+
+			int deferredCount = readCount(in, snapshot.length);
+			List<StateMachineMessage<E>> deferredMessages = new ArrayList<>(deferredCount);
+			for (int i = 0; i < deferredCount; i++) {
+				deferredMessages.add(readMessage(in));
+			}
+
+			return new StateMachineSnapshot<>(stateId, (flags & RUNNING_FLAG) != 0, contextValues, deferredMessages);
+		} catch (IOException | IllegalStateException e) {
+			// ByteArrayDataInput reports truncated input with IllegalStateException
+			throw new IllegalArgumentException("Malformed snapshot.", e);
+		}
+	}
+
+	/**
+	 * Записывает сообщение: событие и полезную нагрузку. Используется также журналом событий.
+	 */
+	public void writeMessage(StateMachineMessage<E> message, DataOutput out) throws IOException {
+		eventCodec.encode(message.getEvent(), out);
+		writeValue(message.getPayload().orNull(), out);
+	}
+
+	/**
+	 * Читает сообщение, записанное {@link #writeMessage(StateMachineMessage, DataOutput)}.
+	 */
+	public StateMachineMessage<E> readMessage(DataInput in) throws IOException {
+		E event = eventCodec.decode(in);
+		return new StateMachineMessageImpl<>(event, readValue(in));
+	}
+
+	private void writeValue(Object value, DataOutput out) throws IOException {
+		if (value == null) {
+			Codecs.writeVarLong(out, NULL_VALUE_TAG);
+			return;
+		}
+
+		Integer tag = valueTags.get(value.getClass());
+		checkArgument(tag != null, "No codec registered for %s.", value.getClass().getName());
+		Codecs.writeVarLong(out, tag);
+		valueCodecs.get(tag - 1).encode(value, out);
+	}
+
+	private Object readValue(DataInput in) throws IOException {
+		int tag = (int) Codecs.readVarLong(in);
+		if (tag == NULL_VALUE_TAG) {
+			return null;
+		}
+		checkArgument(tag <= valueCodecs.size(), "Unknown value codec %s.", tag);
+		return valueCodecs.get(tag - 1).decode(in);
+	}
+
+	@SuppressWarnings("unchecked")
+	/**
+	 * Читает количество элементов. Каждый элемент занимает хотя бы один байт, поэтому количество не может превышать размер снимка.
+	 */
+	private static int readCount(DataInput in, int snapshotLength) throws IOException {
+		long count = Codecs.readVarLong(in);
+		checkArgument(count >= 0 && count <= snapshotLength, "Malformed snapshot: illegal elements count %s.", count);
+		return (int) count;
+	}
+
+	private static <S, E> SnapshotSupport<S, E> asSnapshotSupport(StateMachine<S, E> stateMachine) {
+		checkArgument(stateMachine instanceof SnapshotSupport, "%s doesn't support snapshots.", stateMachine.getClass().getName());
+		return (SnapshotSupport<S, E>) stateMachine;
+	}
+
+}
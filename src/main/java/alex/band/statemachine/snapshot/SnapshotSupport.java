@@ -0,0 +1,36 @@
+package alex.band.statemachine.snapshot;
+
+import alex.band.statemachine.StateMachine;
+
+/**
+ * Конечный автомат {@link StateMachine}, состояние которого можно сохранить в снимок {@link StateMachineSnapshot}
+ * и восстановить из него.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface SnapshotSupport<S, E> {
+
+	/**
+	 * Создает снимок текущего состояния экземпляра.
+	 */
+	StateMachineSnapshot<S, E> snapshot();
+
+	/**
+	 * Восстанавливает экземпляр из снимка. Действия запуска, входа в состояние и слушатели не вызываются:
+	 * восстанавливается только состояние, сохраненное в снимке.
+	 *
+	 * @throws IllegalStateException если конечный автомат запущен
+	 * @throws IllegalArgumentException если снимок не соответствует описанию конечного автомата
+	 */
+	void restore(StateMachineSnapshot<S, E> snapshot);
+
+	/**
+	 * Отменяет тайм-аут текущего состояния и все сообщения, запланированные до вызова: они не будут доставлены экземпляру.
+	 * Вызывается перед сохранением снимка экземпляра, который далее не используется (таймеры в снимок не входят).
+	 */
+	void cancelTimers();
+
+}
@@ -0,0 +1,60 @@
+package alex.band.statemachine.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Неизменяемый снимок экземпляра конечного автомата {@link StateMachine}: идентификатор текущего состояния,
+ * признак работы, значения контекста и отложенные сообщения в порядке откладывания.
+ *
+ * <p>Граф состояний и переходов в снимок не входит: снимок восстанавливается в экземпляр, созданный по тому же описанию.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class StateMachineSnapshot<S, E> {
+
+	private final S currentStateId;
+	private final boolean running;
+	private final Map<String, Object> contextValues;
+	private final List<StateMachineMessage<E>> deferredMessages;
+
+	public StateMachineSnapshot(S currentStateId, boolean running, Map<String, Object> contextValues, List<StateMachineMessage<E>> deferredMessages) {
+		this.currentStateId = currentStateId;
+		this.running = running;
+		this.contextValues = Collections.unmodifiableMap(contextValues);
+		this.deferredMessages = Collections.unmodifiableList(deferredMessages);
+	}
+
+	/**
+	 * Идентификатор текущего состояния либо {@code null}, если конечный автомат ни разу не запускался.
+	 */
+	public S getCurrentStateId() {
+		return currentStateId;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public Map<String, Object> getContextValues() {
+		return contextValues;
+	}
+
+	public List<StateMachineMessage<E>> getDeferredMessages() {
+		return deferredMessages;
+	}
+
+	@Override
+	public String toString() {
+		return "StateMachineSnapshot [currentStateId=" + currentStateId + ", running=" + running + ", contextValues=" + contextValues
+				+ ", deferredMessages=" + deferredMessages + "]";
+	}
+
+}
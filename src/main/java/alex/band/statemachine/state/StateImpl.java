@@ -1,7 +1,11 @@
 package alex.band.statemachine.state;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -20,8 +24,12 @@ public class StateImpl<S, E> implements State<S, E> {
 
 	private S stateId;
 	private Set<StateAction<S, E>> actions = new HashSet<>();
-	private Map<E, Set<Transition<S, E>>> transitions = new HashMap<>();
+	private Map<E, List<Transition<S, E>>> transitions = new HashMap<>();
 	private Set<E> deferredEvents = new HashSet<>();
+	private S parent;
+	private boolean initialChild;
+	private Duration timeout;
+	private E timeoutEvent;
 
 	public StateImpl(S stateId) {
 		this.stateId = stateId;
@@ -71,6 +79,36 @@ public class StateImpl<S, E> implements State<S, E> {
 		return "StateImpl [stateId=" + stateId + ", deferredEvents=" + deferredEvents + "]";
 	}
 
+	public Set<StateAction<S, E>> getActions() {
+		return Collections.unmodifiableSet(actions);
+	}
+
+	public Set<E> getDeferredEvents() {
+		return Collections.unmodifiableSet(deferredEvents);
+	}
+
+	/**
+	 * Возвращает идентификатор родительского (составного) состояния.
+	 */
+	public Optional<S> getParent() {
+		return Optional.fromNullable(parent);
+	}
+
+	/**
+	 * {@code True} - если состояние является стартовым вложенным состоянием своего родителя.
+	 */
+	public boolean isInitialChild() {
+		return initialChild;
+	}
+
+	public Optional<Duration> getTimeout() {
+		return Optional.fromNullable(timeout);
+	}
+
+	public E getTimeoutEvent() {
+		return timeoutEvent;
+	}
+
 	public void addActions(Set<StateAction<S, E>> actions) {
 		this.actions.addAll(actions);
 	}
@@ -79,11 +117,23 @@ public class StateImpl<S, E> implements State<S, E> {
 		this.actions.add(action);
 	}
 
+	/**
+	 * Добавляет переход, сохраняя упорядоченность переходов события по убыванию приоритета {@link Transition#getPriority()}.
+	 */
 	public void addTransition(Transition<S, E> transition) {
 		if (!transitions.containsKey(transition.getEvent())) {
-			transitions.put(transition.getEvent(), new HashSet<Transition<S, E>>());
+			transitions.put(transition.getEvent(), new ArrayList<Transition<S, E>>());
+		}
+
+		List<Transition<S, E>> eventTransitions = transitions.get(transition.getEvent());
+		if (eventTransitions.contains(transition)) {
+			return;
 		}
-		transitions.get(transition.getEvent()).add(transition);
+		int position = eventTransitions.size();
+		while (position > 0 && eventTransitions.get(position - 1).getPriority() < transition.getPriority()) {
+			position--;
+		}
+		eventTransitions.add(position, transition);
 	}
 
 	public void addDeferredEvent(E deferredEvent) {
@@ -94,4 +144,17 @@ public class StateImpl<S, E> implements State<S, E> {
 		this.deferredEvents.addAll(deferredEvents);
 	}
 
+	public void setParent(S parent) {
+		this.parent = parent;
+	}
+
+	public void setInitialChild(boolean initialChild) {
+		this.initialChild = initialChild;
+	}
+
+	public void setTimeout(Duration timeout, E timeoutEvent) {
+		this.timeout = timeout;
+		this.timeoutEvent = timeoutEvent;
+	}
+
 }
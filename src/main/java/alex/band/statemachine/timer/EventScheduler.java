@@ -0,0 +1,46 @@
+package alex.band.statemachine.timer;
+
+import java.time.Duration;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.builder.OptionsConfigurer;
+import alex.band.statemachine.concurrent.AsyncStateMachine;
+import alex.band.statemachine.concurrent.ConcurrentStateMachine;
+import alex.band.statemachine.message.StateMachineMessage;
+
+/**
+ * Отложенная отправка сообщений конечному автомату {@link StateMachine} через колесо таймеров {@link TimingWheel},
+ * заданное {@link OptionsConfigurer#withTimer(TimingWheel)}.
+ *
+ * <p>Поток колеса не обрабатывает сработавшие сообщения: они передаются через {@link AsyncStateMachine#acceptAsync(StateMachineMessage)}
+ * получателю {@link #deliverTo(AsyncStateMachine)}. {@link ConcurrentStateMachine} назначает получателем себя; без получателя
+ * планирование сообщений и запуск автомата с тайм-аутами состояний отклоняются. Сообщения, сработавшие после остановки
+ * автомата, отбрасываются.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface EventScheduler<S, E> {
+
+	/**
+	 * Планирует отправку события через {@code delay}.
+	 *
+	 * @throws IllegalStateException если получатель {@link #deliverTo(AsyncStateMachine)} не задан
+	 */
+	Timeout schedule(E event, Duration delay);
+
+	/**
+	 * Планирует отправку сообщения через {@code delay}.
+	 *
+	 * @throws IllegalStateException если получатель {@link #deliverTo(AsyncStateMachine)} не задан
+	 */
+	Timeout schedule(StateMachineMessage<E> message, Duration delay);
+
+	/**
+	 * Направляет сработавшие сообщения, включая тайм-ауты состояний, в {@code target}.
+	 */
+	void deliverTo(AsyncStateMachine<S, E> target);
+
+}
@@ -0,0 +1,82 @@
+package alex.band.statemachine.timer;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Задача {@link TimerTask}, запланированная в {@link TimingWheel}.
+ *
+ * <p>Одновременно является элементом двусвязного списка ячейки колеса, поэтому планирование и отмена не создают
+ * дополнительных объектов и выполняются за O(1).
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class Timeout {
+
+	private static final int INIT = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+	private final TimingWheel timingWheel;
+	private final TimerTask task;
+	private final long deadline;
+
+	private volatile int state = INIT;
+
+	// доступны только потоку колеса
+	long remainingRounds;
+	Timeout next;
+	Timeout prev;
+	TimingWheel.Bucket bucket;
+
+	Timeout(TimingWheel timingWheel, TimerTask task, long deadline) {
+		this.timingWheel = timingWheel;
+		this.task = task;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Отменяет задачу, если она еще не выполнена. Может вызываться из любого потока.
+	 *
+	 * @return {@code true} - если задача отменена этим вызовом
+	 */
+	public boolean cancel() {
+		if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+			return false;
+		}
+		timingWheel.onCancelled(this);
+		return true;
+	}
+
+	public boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	public boolean isExpired() {
+		return state == EXPIRED;
+	}
+
+	public TimerTask getTask() {
+		return task;
+	}
+
+	@Override
+	public String toString() {
+		return "Timeout [deadline=" + deadline + ", state=" + state + ", task=" + task + "]";
+	}
+
+	long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Помечает задачу выполненной, если она не была отменена.
+	 *
+	 * @return {@code true} - если задачу следует выполнить
+	 */
+	boolean tryExpire() {
+		return STATE.compareAndSet(this, INIT, EXPIRED);
+	}
+
+}
@@ -0,0 +1,16 @@
+package alex.band.statemachine.timer;
+
+/**
+ * Задача, выполняемая {@link TimingWheel} по истечении задержки.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface TimerTask {
+
+	/**
+	 * Вызывается в потоке {@link TimingWheel}. Задача должна выполняться быстро: пока она выполняется, остальные
+	 * задачи колеса не срабатывают.
+	 */
+	void run(Timeout timeout);
+
+}
@@ -0,0 +1,261 @@
+package alex.band.statemachine.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Хешированное колесо таймеров: задержки отсчитываются в тиках фиксированной длительности, задача помещается в ячейку
+ * {@code (тик срабатывания) mod (размер колеса)} и хранит число оставшихся оборотов колеса.
+ *
+ * <p>Планирование {@link #schedule(TimerTask, long, TimeUnit)} и отмена {@link Timeout#cancel()} выполняются за O(1)
+ * из любых потоков: новые и отмененные задачи передаются единственному потоку колеса через неблокирующие очереди,
+ * и только он изменяет ячейки. Стоимость тика пропорциональна числу задач одной ячейки, а не общему числу задач, поэтому
+ * колесо подходит для миллионов одновременно взведенных таймеров. Точность срабатывания ограничена длительностью тика.
+ *
+ * <p>Поток колеса создается при первом планировании и завершается {@link #close()}. Исключения задач передаются
+ * обработчику {@link Thread.UncaughtExceptionHandler} потока колеса и не останавливают остальные таймеры.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class TimingWheel implements AutoCloseable {
+
+	public static final long DEFAULT_TICK_MILLIS = 10;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+	private final long tickNanos;
+	private final Bucket[] buckets;
+	private final int mask;
+	private final long startNanos = System.nanoTime();
+	private final boolean shared;
+
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicLong pendingCount = new AtomicLong();
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final Thread worker;
+
+	private volatile boolean closed;
+	private long tick;
+
+	/**
+	 * Колесо из {@value #DEFAULT_WHEEL_SIZE} ячеек с тиком {@value #DEFAULT_TICK_MILLIS} мс.
+	 */
+	public TimingWheel() {
+		this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param wheelSize - число ячеек; округляется вверх до степени двойки
+	 */
+	public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+		this(tickDuration, unit, wheelSize, false);
+	}
+
+	private TimingWheel(long tickDuration, TimeUnit unit, int wheelSize, boolean shared) {
+		Preconditions.checkArgument(tickDuration > 0, "Tick duration must be positive.");
+		Preconditions.checkArgument(wheelSize > 0 && wheelSize <= 1 << 30, "Wheel size must be in range [1, 2^30].");
+
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.buckets = new Bucket[Integer.highestOneBit(((wheelSize - 1) << 1) | 1)];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new Bucket();
+		}
+		this.mask = buckets.length - 1;
+		this.shared = shared;
+
+		this.worker = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				work();
+			}
+		}, "statemachine-timing-wheel");
+		this.worker.setDaemon(true);
+	}
+
+	/**
+	 * Возвращает общее для всех конечных автоматов колесо с параметрами по умолчанию. Общее колесо не закрывается.
+	 */
+	public static TimingWheel shared() {
+		return SharedHolder.INSTANCE;
+	}
+
+	/**
+	 * Планирует выполнение задачи через {@code delay}. Неположительная задержка означает срабатывание на ближайшем тике.
+	 *
+	 * @throws IllegalStateException если колесо закрыто
+	 */
+	public Timeout schedule(TimerTask task, long delay, TimeUnit unit) {
+		Preconditions.checkNotNull(task);
+		Preconditions.checkState(!closed, "Timing wheel is closed.");
+		if (!started.get() && started.compareAndSet(false, true)) {
+			worker.start();
+		}
+
+		long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+		Timeout timeout = new Timeout(this, task, deadline);
+		pendingCount.incrementAndGet();
+		pendingTimeouts.offer(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Число запланированных, но еще не выполненных и не отмененных задач.
+	 */
+	public long getPendingCount() {
+		return pendingCount.get();
+	}
+
+	public long getTickNanos() {
+		return tickNanos;
+	}
+
+	/**
+	 * Останавливает поток колеса. Невыполненные задачи не выполняются.
+	 *
+	 * @throws IllegalStateException для общего колеса {@link #shared()}
+	 */
+	@Override
+	public void close() {
+		Preconditions.checkState(!shared, "Shared timing wheel can't be closed.");
+		closed = true;
+		if (started.get()) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	void onCancelled(Timeout timeout) {
+		pendingCount.decrementAndGet();
+		cancelledTimeouts.offer(timeout);
+	}
+
+	private void work() {
+		while (!closed) {
+			long currentNanos = waitForNextTick();
+			if (closed) {
+				return;
+			}
+			removeCancelledTimeouts();
+			transferPendingTimeouts();
+			expireTimeouts(buckets[(int) (tick & mask)], currentNanos);
+			tick++;
+		}
+	}
+
+	/**
+	 * Ожидает окончания текущего тика и возвращает время относительно создания колеса.
+	 */
+	private long waitForNextTick() {
+		long tickDeadline = tickNanos * (tick + 1);
+		while (true) {
+			long currentNanos = System.nanoTime() - startNanos;
+			long sleepNanos = tickDeadline - currentNanos;
+			if (sleepNanos <= 0 || closed) {
+				return currentNanos;
+			}
+			LockSupport.parkNanos(this, sleepNanos);
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private void transferPendingTimeouts() {
+		for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			Timeout timeout = pendingTimeouts.poll();
+			if (timeout == null) {
+				return;
+			}
+			if (timeout.isCancelled()) {
+				continue;
+			}
+
+			long expirationTick = timeout.getDeadline() / tickNanos;
+			timeout.remainingRounds = (expirationTick - tick) / buckets.length;
+			buckets[(int) (Math.max(expirationTick, tick) & mask)].add(timeout);
+		}
+	}
+
+	private void expireTimeouts(Bucket bucket, long currentNanos) {
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.remainingRounds <= 0 && timeout.getDeadline() <= currentNanos) {
+				bucket.remove(timeout);
+				if (timeout.tryExpire()) {
+					pendingCount.decrementAndGet();
+					runTask(timeout);
+				}
+			} else if (timeout.isCancelled()) {
+				bucket.remove(timeout);
+			} else {
+				timeout.remainingRounds--;
+			}
+			timeout = next;
+		}
+	}
+
+	private void runTask(Timeout timeout) {
+		try {
+			timeout.getTask().run(timeout);
+		} catch (RuntimeException e) {
+			worker.getUncaughtExceptionHandler().uncaughtException(worker, e);
+		}
+	}
+
+	/**
+	 * Ячейка колеса: двусвязный список задач, изменяемый только потоком колеса.
+	 */
+	static final class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.prev != null) {
+				timeout.prev.next = timeout.next;
+			} else {
+				head = timeout.next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			} else {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+
+	private static final class SharedHolder {
+
+		private static final TimingWheel INSTANCE = new TimingWheel(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, true);
+	}
+
+}
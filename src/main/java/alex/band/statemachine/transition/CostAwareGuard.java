@@ -0,0 +1,23 @@
+package alex.band.statemachine.transition;
+
+/**
+ * Защита перехода {@link Guard} с оценкой стоимости вычисления.
+ *
+ * <p>Стоимость - относительная величина: {@link GuardsComposer} вычисляет более дешевые защиты раньше более дорогих.
+ * Защиты, не реализующие этот интерфейс, имеют стоимость {@link #DEFAULT_COST}.
+ *
+ * @param <S> - тип идентификатора состояния
+ * @param <E> - тип идентификатора события
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public interface CostAwareGuard<S, E> extends Guard<S, E> {
+
+	int DEFAULT_COST = 1;
+
+	/**
+	 * Оценка стоимости вычисления защиты. Не может быть отрицательной.
+	 */
+	int getCost();
+
+}
@@ -1,60 +1,249 @@
 package alex.band.statemachine.transition;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
 
 import alex.band.statemachine.StateMachineDetails;
 import alex.band.statemachine.message.StateMachineMessage;
 
 /**
+ * Композиция защит переходов {@link Guard}.
+ *
+ * <p>Композиция строится один раз при конфигурировании: вложенные композиции того же вида разворачиваются в один уровень,
+ * а операнды упорядочиваются по возрастанию стоимости {@link CostAwareGuard#getCost()} (при равной стоимости сохраняется
+ * исходный порядок). Вычисление прекращается на первом операнде, определяющем результат, поэтому дорогие защиты
+ * вычисляются только при необходимости. Защиты не должны рассчитывать на порядок своего вычисления.
+ *
+ * <p>Адаптивные композиции ({@link #considerAllAdaptive(Guard...)}, {@link #considerAnyAdaptive(Guard...)}) дополнительно собирают
+ * статистику вычислений и периодически переупорядочивают операнды по отношению стоимости к наблюдаемой вероятности
+ * определить результат. Статистика собирается без синхронизации и при одновременном использовании из нескольких потоков приблизительна.
+ *
  * @author Aliaksandr Bandarchyk
  */
 public class GuardsComposer {
-	
+
+	/**
+	 * Число вычислений адаптивной композиции между пересчетами порядка операндов.
+	 */
+	static final int ADAPTIVE_REORDER_INTERVAL = 1024;
+
 	private GuardsComposer() {
 	}
-	
+
+	/**
+	 * Композиция, разрешающая переход, если его разрешают все защиты.
+	 */
 	@SafeVarargs
 	public static <S, E> Guard<S, E> considerAll(Guard<S, E> ...guards) {
-		return new ConsiderAllGuard<>(guards);
+		return new CompositeGuard<>(false, flatten(false, guards));
 	}
-	
+
+	/**
+	 * Композиция, разрешающая переход, если его разрешает хотя бы одна защита.
+	 */
 	@SafeVarargs
 	public static <S, E> Guard<S, E> considerAny(Guard<S, E> ...guards) {
-		return new ConsiderAnyGuard<>(guards);
-	}
-	
-	private static class ConsiderAllGuard<S, E> implements Guard<S, E> {
-		
-		private Guard<S, E>[] guards;
-		
-		@SafeVarargs
-		ConsiderAllGuard(Guard<S, E> ...guards) {
+		return new CompositeGuard<>(true, flatten(true, guards));
+	}
+
+	/**
+	 * Аналог {@link #considerAll(Guard...)}, переупорядочивающий операнды по собранной статистике:
+	 * первыми вычисляются дешевые защиты, чаще других запрещающие переход.
+	 */
+	@SafeVarargs
+	public static <S, E> Guard<S, E> considerAllAdaptive(Guard<S, E> ...guards) {
+		return new AdaptiveCompositeGuard<>(false, flatten(false, guards));
+	}
+
+	/**
+	 * Аналог {@link #considerAny(Guard...)}, переупорядочивающий операнды по собранной статистике:
+	 * первыми вычисляются дешевые защиты, чаще других разрешающие переход.
+	 */
+	@SafeVarargs
+	public static <S, E> Guard<S, E> considerAnyAdaptive(Guard<S, E> ...guards) {
+		return new AdaptiveCompositeGuard<>(true, flatten(true, guards));
+	}
+
+	/**
+	 * Назначает защите оценку стоимости вычисления.
+	 */
+	public static <S, E> CostAwareGuard<S, E> withCost(int cost, Guard<S, E> guard) {
+		Preconditions.checkArgument(cost >= 0, "Guard cost must not be negative.");
+		return new CostGuard<>(cost, Preconditions.checkNotNull(guard));
+	}
+
+	/**
+	 * Возвращает оценку стоимости вычисления защиты.
+	 */
+	public static int costOf(Guard<?, ?> guard) {
+		return guard instanceof CostAwareGuard ? ((CostAwareGuard<?, ?>) guard).getCost() : CostAwareGuard.DEFAULT_COST;
+	}
+
+	/**
+	 * Разворачивает вложенные неадаптивные композиции того же вида и упорядочивает операнды по стоимости.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <S, E> Guard<S, E>[] flatten(boolean decisiveResult, Guard<S, E>[] guards) {
+		List<Guard<S, E>> operands = new ArrayList<>(guards.length);
+		for (Guard<S, E> guard: guards) {
+			Preconditions.checkNotNull(guard);
+			if (guard.getClass() == CompositeGuard.class && ((CompositeGuard<S, E>) guard).decisiveResult == decisiveResult) {
+				operands.addAll(Arrays.asList(((CompositeGuard<S, E>) guard).guards));
+			} else {
+				operands.add(guard);
+			}
+		}
+
+		Guard<S, E>[] result = operands.toArray(new Guard[operands.size()]);
+		Arrays.sort(result, Comparator.comparingInt(GuardsComposer::costOf));
+		return result;
+	}
+
+	private static int sumCosts(Guard<?, ?>[] guards) {
+		long cost = 0;
+		for (Guard<?, ?> guard: guards) {
+			cost += costOf(guard);
+		}
+		return (int) Math.min(cost, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Короткозамкнутая композиция: результат {@code decisiveResult} любого операнда становится результатом композиции.
+	 * {@code decisiveResult = false} соответствует {@link #considerAll(Guard...)}, {@code true} - {@link #considerAny(Guard...)}.
+	 */
+	private static class CompositeGuard<S, E> implements CostAwareGuard<S, E> {
+
+		final boolean decisiveResult;
+		final Guard<S, E>[] guards;
+		private final int cost;
+
+		CompositeGuard(boolean decisiveResult, Guard<S, E>[] guards) {
+			this.decisiveResult = decisiveResult;
 			this.guards = guards;
+			this.cost = sumCosts(guards);
 		}
 
 		@Override
 		public boolean evaluate(StateMachineMessage<E> message, StateMachineDetails<S, E> context) {
-			return Arrays.stream(guards)
-					.map(guard -> guard.evaluate(message, context))
-					.reduce(true, (a, b) -> a && b);
+			for (Guard<S, E> guard: guards) {
+				if (guard.evaluate(message, context) == decisiveResult) {
+					return decisiveResult;
+				}
+			}
+			return !decisiveResult;
+		}
+
+		@Override
+		public int getCost() {
+			return cost;
 		}
 	}
-	
-	private static class ConsiderAnyGuard<S, E> implements Guard<S, E> {
 
-		private Guard<S, E>[] guards;
-		
-		@SafeVarargs
-		ConsiderAnyGuard(Guard<S, E> ...guards) {
+	/**
+	 * Композиция, порядок операндов которой пересчитывается каждые {@link GuardsComposer#ADAPTIVE_REORDER_INTERVAL} вычислений.
+	 *
+	 * <p>Операнды упорядочиваются по возрастанию {@code cost / p}, где {@code p} - доля вычислений операнда, определивших результат.
+	 * Такой порядок минимизирует ожидаемую стоимость вычисления независимых защит. После пересчета счетчики уменьшаются вдвое,
+	 * чтобы порядок следовал за изменением нагрузки.
+	 */
+	private static class AdaptiveCompositeGuard<S, E> implements CostAwareGuard<S, E> {
+
+		private final boolean decisiveResult;
+		private final Guard<S, E>[] guards;
+		private final int[] costs;
+		private final int cost;
+		private final long[] evaluations;
+		private final long[] decisions;
+
+		private volatile int[] order;
+		private int evaluationsSinceReorder;
+
+		AdaptiveCompositeGuard(boolean decisiveResult, Guard<S, E>[] guards) {
+			this.decisiveResult = decisiveResult;
 			this.guards = guards;
+			this.costs = new int[guards.length];
+			this.cost = sumCosts(guards);
+			this.evaluations = new long[guards.length];
+			this.decisions = new long[guards.length];
+
+			int[] initialOrder = new int[guards.length];
+			for (int i = 0; i < guards.length; i++) {
+				costs[i] = costOf(guards[i]);
+				initialOrder[i] = i;
+			}
+			this.order = initialOrder;
 		}
 
 		@Override
 		public boolean evaluate(StateMachineMessage<E> message, StateMachineDetails<S, E> context) {
-			return Arrays.stream(guards)
-					.map(guard -> guard.evaluate(message, context))
-					.reduce(false, (a, b) -> a || b);
+			boolean result = !decisiveResult;
+			for (int index: order) {
+				evaluations[index]++;
+				if (guards[index].evaluate(message, context) == decisiveResult) {
+					decisions[index]++;
+					result = decisiveResult;
+					break;
+				}
+			}
+
+			if (++evaluationsSinceReorder >= ADAPTIVE_REORDER_INTERVAL) {
+				evaluationsSinceReorder = 0;
+				reorder();
+			}
+			return result;
+		}
+
+		@Override
+		public int getCost() {
+			return cost;
 		}
-		
+
+		private void reorder() {
+			double[] ranks = new double[guards.length];
+			Integer[] newOrder = new Integer[guards.length];
+			for (int i = 0; i < guards.length; i++) {
+				// Laplace smoothing keeps never-decisive operands comparable instead of dividing by zero
+				double selectivity = (decisions[i] + 1.0) / (evaluations[i] + 2.0);
+				ranks[i] = (costs[i] + 1.0) / selectivity;
+				newOrder[i] = i;
+
+				evaluations[i] >>= 1;
+				decisions[i] >>= 1;
+			}
+			Arrays.sort(newOrder, Comparator.comparingDouble(i -> ranks[i]));
+
+			int[] orderArray = new int[guards.length];
+			for (int i = 0; i < guards.length; i++) {
+				orderArray[i] = newOrder[i];
+			}
+			order = orderArray;
+		}
+
+	}
+
+	private static class CostGuard<S, E> implements CostAwareGuard<S, E> {
+
+		private final int cost;
+		private final Guard<S, E> guard;
+
+		CostGuard(int cost, Guard<S, E> guard) {
+			this.cost = cost;
+			this.guard = guard;
+		}
+
+		@Override
+		public boolean evaluate(StateMachineMessage<E> message, StateMachineDetails<S, E> context) {
+			return guard.evaluate(message, context);
+		}
+
+		@Override
+		public int getCost() {
+			return cost;
+		}
+
 	}
 }
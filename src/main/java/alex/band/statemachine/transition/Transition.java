@@ -16,6 +16,7 @@ import alex.band.statemachine.StateMachine;
  * <li>Разрешение на переход {@link #getGuard()}</li>
  * <li>Действия перехода {@link #getActions()}</li>
  * <li>Тип перехода {@link #isExternal()}</li>
+ * <li>Приоритет перехода {@link #getPriority()}</li>
  * </ul>
  *
  * @param <S> - тип идентификатора состояния
@@ -55,4 +56,12 @@ public interface Transition<S, E> {
 	 */
 	boolean isExternal();
 
+	/**
+	 * Возвращает приоритет перехода. Из переходов одного состояния по одному событию защиты переходов с большим приоритетом
+	 * оцениваются раньше; при равном приоритете сохраняется порядок определения переходов. По умолчанию - {@code 0}.
+	 */
+	default int getPriority() {
+		return 0;
+	}
+
 }
@@ -19,6 +19,7 @@ public class TransitionImpl<S, E> implements Transition<S, E> {
 	private S target;
 	private E event;
 	private Guard<S, E> guard;
+	private int priority;
 	private Set<TransitionAction<S, E>> actions = new HashSet<>();
 
 	@Override
@@ -51,6 +52,11 @@ public class TransitionImpl<S, E> implements Transition<S, E> {
 		return external;
 	}
 
+	@Override
+	public int getPriority() {
+		return priority;
+	}
+
 	@Override
 	public String toString() {
 		return "TransitionImpl [external=" + external + ", source=" + source + ", target=" + target + ", event=" + event + "]";
@@ -72,6 +78,10 @@ public class TransitionImpl<S, E> implements Transition<S, E> {
 		this.guard = guard;
 	}
 
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
 	public void addAction(TransitionAction<S, E> action) {
 		actions.add(action);
 	}
@@ -0,0 +1,40 @@
+package alex.band.statemachine;
+
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+
+/**
+ * Общее для тестов описание конечного автомата: {@code S1 -FORWARD-> S2 -BACKWARD-> S1}, {@code S2 -STOP-> FINAL}.
+ */
+public final class TestStateMachines {
+
+	public static final String S1 = "S1";
+	public static final String S2 = "S2";
+	public static final String FINAL = "FINAL";
+
+	public static final String FORWARD = "FORWARD";
+	public static final String BACKWARD = "BACKWARD";
+	public static final String STOP = "STOP";
+
+	private TestStateMachines() {
+	}
+
+	/**
+	 * Построитель описания, в который тест может добавить собственные переходы и параметры.
+	 */
+	public static StateMachineBuilder<String, String> forwardBackwardBuilder() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2);
+		builder.defineState(FINAL).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(FORWARD);
+		builder.defineExternalTransitionFor(S2).to(S1).by(BACKWARD);
+		builder.defineExternalTransitionFor(S2).to(FINAL).by(STOP);
+		return builder;
+	}
+
+	public static StateMachineDefinition<String, String> forwardBackward() {
+		return forwardBackwardBuilder().buildDefinition();
+	}
+
+}
@@ -0,0 +1,48 @@
+package alex.band.statemachine.annotation.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.StateAction;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+public final class OrderComponents {
+
+	static final List<String> LOG = new ArrayList<>();
+
+	private OrderComponents() {
+	}
+
+	public static class PositiveAmount implements Guard<OrderState, OrderEvent> {
+
+		@Override
+		public boolean evaluate(StateMachineMessage<OrderEvent> message, StateMachineDetails<OrderState, OrderEvent> context) {
+			return message.getPayload().isPresent() && (Integer) message.getPayload().get() > 0;
+		}
+	}
+
+	public static class RecordPayment implements TransitionAction<OrderState, OrderEvent> {
+
+		@Override
+		public void execute(StateMachineMessage<OrderEvent> message, StateMachineDetails<OrderState, OrderEvent> context) {
+			LOG.add("payment:" + message.getPayload().orNull());
+		}
+	}
+
+	public static class RecordState implements StateAction<OrderState, OrderEvent> {
+
+		@Override
+		public void onEnter(StateMachineDetails<OrderState, OrderEvent> stateMachineDetails) {
+			LOG.add("enter:" + stateMachineDetails.getCurrentState().getId());
+		}
+
+		@Override
+		public void onExit(StateMachineDetails<OrderState, OrderEvent> stateMachineDetails) {
+			LOG.add("exit:" + stateMachineDetails.getCurrentState().getId());
+		}
+	}
+
+}
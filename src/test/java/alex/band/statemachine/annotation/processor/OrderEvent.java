@@ -0,0 +1,5 @@
+package alex.band.statemachine.annotation.processor;
+
+public enum OrderEvent {
+	PAY, SHIP, CANCEL
+}
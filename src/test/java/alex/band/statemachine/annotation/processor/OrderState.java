@@ -0,0 +1,28 @@
+package alex.band.statemachine.annotation.processor;
+
+import alex.band.statemachine.annotation.Deferred;
+import alex.band.statemachine.annotation.Final;
+import alex.band.statemachine.annotation.Initial;
+import alex.band.statemachine.annotation.OnEvent;
+import alex.band.statemachine.annotation.StateActions;
+import alex.band.statemachine.annotation.StateMachineModel;
+
+@StateMachineModel(events = OrderEvent.class)
+public enum OrderState {
+
+	@Initial
+	@Deferred("SHIP")
+	@OnEvent(event = "PAY", target = "PAID", guard = OrderComponents.PositiveAmount.class, actions = OrderComponents.RecordPayment.class)
+	@OnEvent(event = "CANCEL", target = "CLOSED")
+	NEW,
+
+	@StateActions(OrderComponents.RecordState.class)
+	@OnEvent(event = "PAY", actions = OrderComponents.RecordPayment.class)
+	@OnEvent(event = "SHIP", target = "CLOSED", priority = 1)
+	@OnEvent(event = "SHIP", target = "NEW")
+	PAID,
+
+	@Final
+	CLOSED
+
+}
@@ -0,0 +1,110 @@
+package alex.band.statemachine.annotation.processor;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.annotation.StateMachineModel;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+
+public class StateMachineModelProcessorTest {
+
+	@Before
+	public void setUp() {
+		OrderComponents.LOG.clear();
+	}
+
+	@Test
+	public void generatedDefinitionShouldFollowModel() {
+		StateMachine<OrderState, OrderEvent> stateMachine = OrderStateDefinition.create().newStateMachine();
+		stateMachine.start();
+
+		assertTrue(stateMachine.accept(OrderEvent.SHIP));
+		assertFalse(stateMachine.accept(new StateMachineMessageImpl<>(OrderEvent.PAY, 0)));
+		assertThat(stateMachine.getCurrentState().getId(), is(OrderState.NEW));
+
+		assertTrue(stateMachine.accept(new StateMachineMessageImpl<>(OrderEvent.PAY, 10)));
+
+		assertThat(stateMachine.getCurrentState().getId(), is(OrderState.CLOSED));
+		assertFalse(stateMachine.isRunning());
+		assertThat(OrderComponents.LOG, is(Arrays.asList("payment:10", "enter:PAID", "exit:PAID")));
+	}
+
+	@Test
+	public void invalidModelShouldFailCompilation() throws URISyntaxException {
+		String source = "package test;\n"
+				+ "import alex.band.statemachine.annotation.*;\n"
+				+ "enum Event { GO }\n"
+				+ "@StateMachineModel(events = Event.class)\n"
+				+ "enum State {\n"
+				+ "	@Initial @OnEvent(event = \"GO\", target = \"MISSING\") START,\n"
+				+ "	@Final END\n"
+				+ "}\n";
+
+		String diagnostics = compile("test/State.java", source);
+
+		assertThat(diagnostics, containsString(String.format(StateMachineModelProcessor.UNKNOWN_TARGET_STATE, "MISSING")));
+	}
+
+	@Test
+	public void unreachableStateShouldFailCompilation() throws URISyntaxException {
+		String source = "package test;\n"
+				+ "import alex.band.statemachine.annotation.*;\n"
+				+ "enum Event { GO, STOP }\n"
+				+ "@StateMachineModel(events = Event.class)\n"
+				+ "enum State {\n"
+				+ "	@Initial @OnEvent(event = \"STOP\", target = \"END\") START,\n"
+				+ "	@OnEvent(event = \"GO\", target = \"END\") ORPHAN,\n"
+				+ "	@Final END\n"
+				+ "}\n";
+
+		String diagnostics = compile("test/State.java", source);
+
+		assertThat(diagnostics, containsString(String.format(StateMachineModelProcessor.UNREACHABLE_STATES, "[ORPHAN]")));
+	}
+
+	private String compile(String fileName, final String source) throws URISyntaxException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + fileName), JavaFileObject.Kind.SOURCE) {
+
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		String classPath = Joiner.on(File.pathSeparator).join(location(StateMachineModel.class), location(Joiner.class));
+
+		JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+				Arrays.asList("-classpath", classPath, "-proc:only"), null, Collections.singletonList(file));
+		task.setProcessors(Collections.singletonList(new StateMachineModelProcessor()));
+		assertFalse(task.call());
+
+		return diagnostics.getDiagnostics().toString();
+	}
+
+	private static String location(Class<?> type) throws URISyntaxException {
+		return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+	}
+
+}
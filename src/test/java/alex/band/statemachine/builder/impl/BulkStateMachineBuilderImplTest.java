@@ -0,0 +1,111 @@
+package alex.band.statemachine.builder.impl;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.transition.Guard;
+
+public class BulkStateMachineBuilderImplTest {
+
+	private static final String S1 = "S1";
+	private static final String S2 = "S2";
+	private static final String S3 = "S3";
+	private static final String S4 = "S4";
+
+	private static final String E1 = "E1";
+	private static final String E2 = "E2";
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	private BulkStateMachineBuilderImpl<String, String> builder;
+
+	@Before
+	public void setUp() {
+		builder = new BulkStateMachineBuilderImpl<>();
+	}
+
+	@Test
+	public void transitionsShouldBeDefinedByArraysAndAdjacencyLists() {
+		Guard<String, String> rejectingGuard = (message, context) -> false;
+		@SuppressWarnings("unchecked")
+		Guard<String, String>[] guards = new Guard[] {rejectingGuard, null};
+
+		builder.withStates(Arrays.asList(S1, S2, S3)).withInitialState(S1).withFinalState(S3)
+				.withTransitions(new String[] {S1, S1}, new String[] {E1, E1}, new String[] {S3, S2}, guards)
+				.withTransitions(S2, new String[] {E2, E1}, new String[] {null, S3});
+
+		StateMachine<String, String> stateMachine = builder.build();
+		stateMachine.start();
+
+		assertTrue(stateMachine.accept(E1));
+		assertThat(stateMachine.getCurrentState().getId(), equalTo(S2));
+		assertTrue(stateMachine.accept(E2));
+		assertThat(stateMachine.getCurrentState().getId(), equalTo(S2));
+		assertTrue(stateMachine.accept(E1));
+		assertThat(stateMachine.getCurrentState().getId(), equalTo(S3));
+	}
+
+	@Test
+	public void transitionWithUnkownTargetStateIsNotAllowed() {
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString(String.format(StateMachineBuilderImpl.UNKOWN_TARGET_STATES_IN_TRANSITIONS, "[" + S4 + "]")));
+
+		builder.withStates(Arrays.asList(S1, S2)).withInitialState(S1).withFinalState(S2)
+				.withTransitions(S1, new String[] {E1, E2}, new String[] {S2, S4});
+		builder.buildDefinition();
+	}
+
+	@Test
+	public void statesCycleDisconnectedFromInitialStateIsNotAllowed() {
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString(String.format(StateMachineBuilderImpl.UNREACHABLE_STATES, "[" + S2 + ", " + S4 + "]")));
+
+		builder.withStates(Arrays.asList(S1, S2, S3, S4)).withInitialState(S1).withFinalState(S3)
+				.withTransitions(new String[] {S1, S2, S4, S4}, new String[] {E1, E1, E1, E2}, new String[] {S3, S4, S2, S3}, null);
+		builder.buildDefinition();
+	}
+
+	@Test
+	public void largeGraphShouldBeValidatedInParallel() {
+		int statesCount = 50000;
+		List<Integer> states = new ArrayList<>();
+		for (int i = 0; i < statesCount; i++) {
+			states.add(i);
+		}
+		Integer[] sources = new Integer[statesCount - 1];
+		String[] events = new String[statesCount - 1];
+		Integer[] targets = new Integer[statesCount - 1];
+		for (int i = 0; i < statesCount - 1; i++) {
+			sources[i] = i;
+			events[i] = E1;
+			targets[i] = i + 1;
+		}
+
+		BulkStateMachineBuilderImpl<Integer, String> bulkBuilder = new BulkStateMachineBuilderImpl<>();
+		bulkBuilder.withStates(states).withInitialState(0).withFinalState(statesCount - 1)
+				.withTransitions(sources, events, targets, null)
+				.withParallelValidation(ForkJoinPool.commonPool());
+
+		StateMachine<Integer, String> stateMachine = bulkBuilder.build();
+		stateMachine.start();
+		for (int i = 0; i < statesCount - 1; i++) {
+			stateMachine.accept(E1);
+		}
+		assertThat(stateMachine.getCurrentState().getId(), equalTo(statesCount - 1));
+	}
+
+}
@@ -0,0 +1,130 @@
+package alex.band.statemachine.builder.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.state.StateAction;
+
+public class DispatcherGeneratorTest {
+
+	private static final String S1 = "S1";
+	private static final String S2 = "S2";
+	private static final String S3 = "S3";
+	private static final String FINAL = "FINAL";
+
+	private static final String E1 = "E1";
+	private static final String E2 = "E2";
+	private static final String E3 = "E3";
+	private static final String STOP = "STOP";
+
+	@Test
+	public void specializedMachineShouldBehaveAsInterfaceDispatchedOne() {
+		List<String> specializedLog = new ArrayList<>();
+		List<String> plainLog = new ArrayList<>();
+		StateMachine<String, String> specialized = buildMachine(specializedLog, true);
+		StateMachine<String, String> plain = buildMachine(plainLog, false);
+
+		for (String event: Arrays.asList(E3, E1, E3, E2, E1, E3, E2, STOP)) {
+			assertThat(event, specialized.accept(event), is(plain.accept(event)));
+		}
+
+		assertFalse(specialized.isRunning());
+		assertThat(specializedLog, is(plainLog));
+		assertThat(specializedLog, is(Arrays.asList("enter:S1",
+				"guard:E1", "exit:S1", "action:E1", "enter:S2", "enter:S3", "guard:E2", "exit:S3", "exit:S2", "action:E2", "enter:S1",
+				"guard:E1", "exit:S1", "action:E1", "enter:S2", "enter:S3", "guard:E2", "exit:S3", "exit:S2", "action:E2", "enter:S1",
+				"exit:S1", "enter:FINAL", "exit:FINAL")));
+	}
+
+	@Test
+	public void dispatcherShouldBeLoadedByOwnClassLoader() {
+		StateMachineDefinitionImpl<String, String> definition = buildDefinition(new ArrayList<String>(), true);
+
+		assertThat(definition.getDispatcher(), notNullValue());
+		assertThat(definition.getDispatcher().getClass().getClassLoader(), not(is(StateMachineImpl.class.getClassLoader())));
+		assertThat(buildDefinition(new ArrayList<String>(), false).getDispatcher(), nullValue());
+	}
+
+	@Test
+	public void tooLargeDefinitionShouldNotBeSpecialized() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineOptions().specializeDispatch();
+		int statesCount = DispatcherGenerator.MAX_METHOD_LENGTH / 4;
+		for (int i = 0; i < statesCount; i++) {
+			if (i == 0) {
+				builder.defineState("S" + i).asInitial();
+			} else {
+				builder.defineState("S" + i);
+			}
+			builder.defineExternalTransitionFor("S" + i).to("S" + ((i + 1) % statesCount)).by(E1);
+		}
+		builder.defineState(FINAL).asFinal().withAction(recordingAction(FINAL, new ArrayList<String>()));
+		builder.defineExternalTransitionFor("S0").to(FINAL).by(STOP);
+
+		StateMachineDefinitionImpl<String, String> definition = (StateMachineDefinitionImpl<String, String>) builder.buildDefinition();
+		assertThat(definition.getDispatcher(), nullValue());
+
+		StateMachine<String, String> stateMachine = definition.newStateMachine();
+		stateMachine.start();
+		assertTrue(stateMachine.accept(E1));
+	}
+
+	private StateMachine<String, String> buildMachine(List<String> log, boolean specializeDispatch) {
+		StateMachine<String, String> stateMachine = buildDefinition(log, specializeDispatch).newStateMachine();
+		stateMachine.start();
+		return stateMachine;
+	}
+
+	private StateMachineDefinitionImpl<String, String> buildDefinition(final List<String> log, boolean specializeDispatch) {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		if (specializeDispatch) {
+			builder.defineOptions().specializeDispatch();
+		}
+
+		builder.defineState(S1).asInitial().withAction(recordingAction(S1, log));
+		builder.defineState(S2).withAction(recordingAction(S2, log));
+		builder.defineState(S3).childOf(S2).asInitialChild().withAction(recordingAction(S3, log));
+		builder.defineState(FINAL).asFinal().withAction(recordingAction(FINAL, log));
+
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1)
+				.guardedBy((message, context) -> log.add("guard:" + message.getEvent()))
+				.withAction((message, context) -> log.add("action:" + message.getEvent()));
+		builder.defineExternalTransitionFor(S2).to(S1).by(E2)
+				.guardedBy((message, context) -> log.add("guard:" + message.getEvent()))
+				.withAction((message, context) -> log.add("action:" + message.getEvent()));
+		builder.defineInternalTransitionFor(S3).by(E3).guardedBy((message, context) -> false);
+		builder.defineExternalTransitionFor(S1).to(FINAL).by(STOP);
+
+		return (StateMachineDefinitionImpl<String, String>) builder.buildDefinition();
+	}
+
+	private StateAction<String, String> recordingAction(final String stateId, final List<String> log) {
+		return new StateAction<String, String>() {
+
+			@Override
+			public void onEnter(StateMachineDetails<String, String> stateMachineDetails) {
+				log.add("enter:" + stateId);
+			}
+
+			@Override
+			public void onExit(StateMachineDetails<String, String> stateMachineDetails) {
+				log.add("exit:" + stateId);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,244 @@
+package alex.band.statemachine.builder.impl;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import alex.band.statemachine.OrthogonalStateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.concurrent.ConcurrentStateMachine;
+import alex.band.statemachine.context.IntKey;
+import alex.band.statemachine.listener.ListenerFilter;
+import alex.band.statemachine.listener.StateMachineListenerAdapter;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+import alex.band.statemachine.timer.TimingWheel;
+
+public class OrthogonalStateMachineImplTest {
+
+	private static final String PAYMENT = "payment";
+	private static final String SHIPPING = "shipping";
+
+	private static final String PENDING = "PENDING";
+	private static final String DONE = "DONE";
+
+	private static final String PAY = "PAY";
+	private static final String SHIP = "SHIP";
+	private static final String TICK = "TICK";
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void messageShouldBeDispatchedToAllRegionsWithNotificationPerRegion() {
+		OrthogonalStateMachine<String, String> sm = new OrthogonalStateMachineBuilderImpl<String, String>()
+				.withRegion(PAYMENT, buildRegion(PAY, IntKey.of("paymentTicks")))
+				.withRegion(SHIPPING, buildRegion(SHIP, IntKey.of("shippingTicks")))
+				.build();
+		final AtomicInteger stateChanges = new AtomicInteger();
+		final AtomicInteger notAccepted = new AtomicInteger();
+		final AtomicInteger stops = new AtomicInteger();
+		sm.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> stateMachineDetails) {
+				stateChanges.incrementAndGet();
+			}
+
+			@Override
+			public void onEventNotAccepted(StateMachineMessage<String> message, StateMachineDetails<String, String> stateMachineDetails) {
+				notAccepted.incrementAndGet();
+			}
+
+			@Override
+			public void onStop(StateMachineDetails<String, String> stateMachineDetails) {
+				stops.incrementAndGet();
+			}
+		});
+		sm.start();
+
+		assertTrue(sm.accept(PAY));
+		assertThat(sm.getCurrentState(PAYMENT).getId(), is(DONE));
+		assertThat(sm.getCurrentState(SHIPPING).getId(), is(PENDING));
+		assertFalse(sm.isRunning(PAYMENT));
+		assertTrue(sm.isRunning());
+		assertThat(stateChanges.get(), is(1));
+		assertThat(notAccepted.get(), is(1));
+
+		assertFalse(sm.accept(PAY));
+		assertThat(notAccepted.get(), is(2));
+
+		assertTrue(sm.accept(SHIP));
+		assertFalse(sm.isRunning());
+		assertThat(stops.get(), is(1));
+	}
+
+	@Test
+	public void listenerFilterShouldBeCheckedAgainstTransitionedRegion() {
+		OrthogonalStateMachine<String, String> sm = new OrthogonalStateMachineBuilderImpl<String, String>()
+				.withRegion(PAYMENT, buildRegion(PAY, IntKey.of("paymentTicks")))
+				.withRegion(SHIPPING, buildRegion(SHIP, IntKey.of("shippingTicks")))
+				.build();
+		final List<String> transitions = new ArrayList<>();
+		sm.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> stateMachineDetails) {
+				transitions.add(previousState.getId() + " " + message.getEvent() + " " + stateMachineDetails.getCurrentState().getId());
+			}
+		}, ListenerFilter.<String, String>create().toStates(DONE));
+		sm.start();
+
+		assertTrue(sm.accept(SHIP));
+
+		assertThat(transitions, is(Arrays.asList(PENDING + " " + SHIP + " " + DONE)));
+	}
+
+	@Test
+	public void currentStateOfSeveralRegionsShouldBeUndefined() {
+		OrthogonalStateMachine<String, String> sm = new OrthogonalStateMachineBuilderImpl<String, String>()
+				.withRegion(PAYMENT, buildRegion(PAY, IntKey.of("paymentTicks")))
+				.withRegion(SHIPPING, buildRegion(SHIP, IntKey.of("shippingTicks")))
+				.build();
+		sm.start();
+
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(OrthogonalStateMachineImpl.SEVERAL_REGIONS);
+
+		sm.getCurrentState();
+	}
+
+	@Test
+	public void stateTimeoutShouldBeDeliveredToRegionThroughConcurrentStateMachine() throws InterruptedException {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(PENDING).asInitial().withTimeout(Duration.ofMillis(10), TICK);
+		builder.defineState(DONE).asFinal();
+		builder.defineExternalTransitionFor(PENDING).to(DONE).by(TICK);
+		OrthogonalStateMachine<String, String> orthogonalStateMachine = new OrthogonalStateMachineBuilderImpl<String, String>()
+				.withRegion(PAYMENT, builder.buildDefinition())
+				.withRegion(SHIPPING, buildRegion(SHIP, IntKey.of("shippingTicks")))
+				.build();
+		ConcurrentStateMachine<String, String> sm = new ConcurrentStateMachine<>(orthogonalStateMachine);
+		final CountDownLatch paid = new CountDownLatch(1);
+		sm.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> stateMachineDetails) {
+				paid.countDown();
+			}
+		});
+		sm.start();
+
+		assertTrue(paid.await(5, TimeUnit.SECONDS));
+		assertFalse(orthogonalStateMachine.isRunning(PAYMENT));
+		assertThat(orthogonalStateMachine.getCurrentState(SHIPPING).getId(), is(PENDING));
+	}
+
+	@Test
+	public void regionsShouldUseCommonTimer() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(PENDING).asInitial();
+		builder.defineState(DONE).asFinal();
+		builder.defineExternalTransitionFor(PENDING).to(DONE).by(SHIP);
+		builder.defineOptions().withTimer(new TimingWheel());
+
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(String.format(OrthogonalStateMachineBuilderImpl.REGIONS_USE_DIFFERENT_TIMERS, PAYMENT, SHIPPING));
+
+		new OrthogonalStateMachineBuilderImpl<String, String>()
+				.withRegion(PAYMENT, buildRegion(PAY, IntKey.of("paymentTicks")))
+				.withRegion(SHIPPING, builder.buildDefinition())
+				.buildFactory();
+	}
+
+	@Test
+	public void independentRegionsShouldBeProcessedInParallel() {
+		IntKey paymentTicks = IntKey.of("paymentTicks");
+		IntKey shippingTicks = IntKey.of("shippingTicks");
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			OrthogonalStateMachine<String, String> sm = new OrthogonalStateMachineBuilderImpl<String, String>()
+					.withRegion(PAYMENT, buildRegion(PAY, paymentTicks))
+					.withRegion(SHIPPING, buildRegion(SHIP, shippingTicks))
+					.withParallelRegions(pool)
+					.build();
+			sm.start();
+
+			for (int i = 0; i < 1000; i++) {
+				assertTrue(sm.accept(TICK));
+			}
+
+			assertThat(sm.getContext().getValue(paymentTicks), is(1000));
+			assertThat(sm.getContext().getValue(shippingTicks), is(1000));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelRegionsShouldRejectUntypedContextValues() {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			OrthogonalStateMachine<String, String> sm = new OrthogonalStateMachineBuilderImpl<String, String>()
+					.withRegion(PAYMENT, buildRegion(PAY, IntKey.of("paymentTicks")))
+					.withRegion(SHIPPING, buildRegion(SHIP, IntKey.of("shippingTicks")))
+					.withParallelRegions(pool)
+					.build();
+
+			expectedException.expect(IllegalArgumentException.class);
+			expectedException.expectMessage(containsString("note"));
+
+			sm.getContext().setValue("note", "fragile");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelRegionsShouldNotShareContextKeys() {
+		IntKey ticks = IntKey.of("ticks");
+
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString("can't be processed in parallel"));
+		expectedException.expectMessage(containsString(PAYMENT));
+		expectedException.expectMessage(containsString(SHIPPING));
+
+		new OrthogonalStateMachineBuilderImpl<String, String>()
+				.withRegion(PAYMENT, buildRegion(PAY, ticks))
+				.withRegion(SHIPPING, buildRegion(SHIP, ticks))
+				.withParallelRegions(ForkJoinPool.commonPool())
+				.buildFactory();
+	}
+
+	private StateMachineDefinition<String, String> buildRegion(String completionEvent, final IntKey ticks) {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineContext().withKey(ticks);
+		builder.defineState(PENDING).asInitial();
+		builder.defineState(DONE).asFinal();
+		builder.defineExternalTransitionFor(PENDING).to(DONE).by(completionEvent);
+		builder.defineInternalTransitionFor(PENDING).by(TICK)
+				.withAction((message, context) -> context.getContext().addAndGet(ticks, 1));
+		return builder.buildDefinition();
+	}
+
+}
@@ -2,6 +2,9 @@ package alex.band.statemachine.builder.impl;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Before;
@@ -12,6 +15,7 @@ import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
 
 @RunWith(MockitoJUnitRunner.class)
 public class StateMachineBuilderImplTest {
@@ -19,6 +23,7 @@ public class StateMachineBuilderImplTest {
 	private static final String S1 = "S1";
 	private static final String S2 = "S2";
 	private static final String S3 = "S3";
+	private static final String S4 = "S4";
 
 	private static final String E1 = "E1";
 	private static final String E2 = "E2";
@@ -124,9 +129,9 @@ public class StateMachineBuilderImplTest {
 	}
 
 	@Test
-	public void allStatesExceptInitialShouldHaveInboundTransition() {
+	public void allStatesShouldBeReachableFromInitialState() {
 		expectedException.expect(IllegalStateException.class);
-		expectedException.expectMessage(containsString(withoutPlaceholder(StateMachineBuilderImpl.STATES_WITHOUT_INBOUND_TRANSITION)));
+		expectedException.expectMessage(containsString(withoutPlaceholder(StateMachineBuilderImpl.UNREACHABLE_STATES)));
 		expectedException.expectMessage(containsString(S2));
 
 		builder.defineState(S1).asInitial();
@@ -134,11 +139,26 @@ public class StateMachineBuilderImplTest {
 		builder.build();
 	}
 
+	@Test
+	public void statesCycleDisconnectedFromInitialStateIsNotAllowed() {
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString(String.format(StateMachineBuilderImpl.UNREACHABLE_STATES, "[" + S2 + ", " + S4 + "]")));
+
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2);
+		builder.defineState(S3).asFinal();
+		builder.defineState(S4);
+		builder.defineExternalTransitionFor(S1).to(S3).by(E1);
+		builder.defineExternalTransitionFor(S2).to(S4).by(E1);
+		builder.defineExternalTransitionFor(S4).to(S2).by(E1);
+		builder.defineExternalTransitionFor(S4).to(S3).by(E2);
+		builder.build();
+	}
 
 	@Test
-	public void allStatesExceptFinalShouldHaveOutboundTransition() {
+	public void finalStateShouldBeReachableFromAllStates() {
 		expectedException.expect(IllegalStateException.class);
-		expectedException.expectMessage(containsString(withoutPlaceholder(StateMachineBuilderImpl.STATES_WITHOUT_OUTBOUND_TRANSITION)));
+		expectedException.expectMessage(containsString(withoutPlaceholder(StateMachineBuilderImpl.STATES_WITHOUT_PATH_TO_FINAL_STATE)));
 		expectedException.expectMessage(containsString(S2));
 
 		builder.defineState(S1).asInitial();
@@ -149,6 +169,44 @@ public class StateMachineBuilderImplTest {
 		builder.build();
 	}
 
+	@Test
+	public void statesCycleWithoutExitIsNotAllowed() {
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString(String.format(StateMachineBuilderImpl.STATES_WITHOUT_PATH_TO_FINAL_STATE, "[" + S2 + ", " + S4 + "]")));
+
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2);
+		builder.defineState(S3).asFinal();
+		builder.defineState(S4);
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		builder.defineExternalTransitionFor(S1).to(S3).by(E2);
+		builder.defineExternalTransitionFor(S2).to(S4).by(E1);
+		builder.defineExternalTransitionFor(S4).to(S2).by(E1);
+		builder.build();
+	}
+
+	@Test
+	public void compositeStateShouldHaveInitialChildState() {
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString("Composite State should have exactly one initial child State: " + S2));
+
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2);
+		builder.defineState(S3).childOf(S2).asFinal();
+		builder.build();
+	}
+
+	@Test
+	public void cyclicStatesHierarchyIsNotAllowed() {
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(containsString(withoutPlaceholder(StateMachineBuilderImpl.CYCLIC_STATES_HIERARCHY)));
+
+		builder.defineState(S1).asInitial().childOf(S2).asInitialChild();
+		builder.defineState(S2).childOf(S1).asInitialChild();
+		builder.defineState(S3).asFinal();
+		builder.build();
+	}
+
 	@Test
 	public void equalStateCannotBeDefinedTwice() {
 		expectedException.expect(IllegalStateException.class);
@@ -200,6 +258,45 @@ public class StateMachineBuilderImplTest {
 		assertThat(stateMachine.getCurrentState().getId(), equalTo(S3));
 	}
 
+	@Test
+	public void definitionShouldProduceIndependentStateMachines() {
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2);
+		builder.defineState(S3).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		builder.defineExternalTransitionFor(S2).to(S3).by(E1);
+
+		StateMachineDefinition<String, String> definition = builder.buildDefinition();
+		StateMachine<String, String> first = definition.newStateMachine();
+		StateMachine<String, String> second = definition.newStateMachine();
+		first.start();
+		second.start();
+
+		first.accept(E1);
+		first.getContext().setValue(S1, E1);
+
+		assertThat(first.getCurrentState().getId(), equalTo(S2));
+		assertThat(second.getCurrentState().getId(), equalTo(S1));
+		assertThat(second.getContext().getValue(S1), nullValue());
+		assertThat(first.getCurrentState(), sameInstance(definition.getState(S2).get()));
+	}
+
+	@Test
+	public void definitionShouldNotBeAffectedByFurtherBuilderConfiguration() {
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+
+		StateMachineDefinition<String, String> definition = builder.buildDefinition();
+		builder.defineState(S3);
+		builder.defineExternalTransitionFor(S1).to(S3).by(E2);
+
+		assertThat(definition.getStates().size(), equalTo(2));
+		StateMachine<String, String> stateMachine = definition.newStateMachine();
+		stateMachine.start();
+		assertFalse(stateMachine.accept(E2));
+	}
+
 	private String withoutPlaceholder(String str) {
 		int placeHolderIndex = str.indexOf("%s");
 
@@ -0,0 +1,134 @@
+package alex.band.statemachine.builder.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.context.LongKey;
+import alex.band.statemachine.listener.StateMachineListenerAdapter;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.TransitionAction;
+
+public class StateMachineImplAllocationTest {
+
+	private static final int WARMUP_ITERATIONS = 200_000;
+	private static final int MEASURED_ITERATIONS = 100_000;
+
+	private static final Guard<TestState, TestEvent> ALLOW_ALL = (message, context) -> message.getEvent() != null;
+	private static final TransitionAction<TestState, TestEvent> NO_OP_ACTION = (message, context) -> { };
+
+	private static final LongKey COUNTER = LongKey.of("counter");
+	private static final TransitionAction<TestState, TestEvent> COUNTING_ACTION = (message, details) -> details.getContext().addAndGet(COUNTER, 1_000_000L);
+
+	private com.sun.management.ThreadMXBean threadMXBean;
+
+	@Before
+	public void setUp() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	@Test
+	public void unguardedInternalTransitionShouldNotAllocate() {
+		StateMachine<TestState, TestEvent> stateMachine = buildMachine();
+		stateMachine.start();
+
+		assertEquals(0, allocatedBytes(stateMachine, TestEvent.PING, TestEvent.PING));
+	}
+
+	@Test
+	public void primitiveContextCounterShouldNotAllocate() {
+		StateMachine<TestState, TestEvent> stateMachine = buildMachine(COUNTING_ACTION);
+		stateMachine.start();
+
+		assertEquals(0, allocatedBytes(stateMachine, TestEvent.PING, TestEvent.PING));
+		assertEquals(2L * (WARMUP_ITERATIONS + MEASURED_ITERATIONS) * 1_000_000L, stateMachine.getContext().getValue(COUNTER));
+	}
+
+	@Test
+	public void guardedExternalTransitionsShouldNotAllocate() {
+		StateMachine<TestState, TestEvent> stateMachine = buildMachine();
+		stateMachine.start();
+
+		assertEquals(0, allocatedBytes(stateMachine, TestEvent.FORWARD, TestEvent.BACKWARD));
+	}
+
+	@Test
+	public void notAcceptedEventShouldNotAllocate() {
+		StateMachine<TestState, TestEvent> stateMachine = buildMachine();
+		stateMachine.start();
+
+		assertEquals(0, allocatedBytes(stateMachine, TestEvent.UNKNOWN, TestEvent.UNKNOWN));
+	}
+
+	private long allocatedBytes(StateMachine<TestState, TestEvent> stateMachine, TestEvent first, TestEvent second) {
+		run(stateMachine, first, second, WARMUP_ITERATIONS);
+
+		long threadId = Thread.currentThread().getId();
+		long before = threadMXBean.getThreadAllocatedBytes(threadId);
+		run(stateMachine, first, second, MEASURED_ITERATIONS);
+		long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+		assertTrue(stateMachine.isRunning());
+		return after - before;
+	}
+
+	private void run(StateMachine<TestState, TestEvent> stateMachine, TestEvent first, TestEvent second, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			stateMachine.accept(first);
+			stateMachine.accept(second);
+		}
+	}
+
+	private StateMachine<TestState, TestEvent> buildMachine() {
+		return buildMachine(NO_OP_ACTION);
+	}
+
+	private StateMachine<TestState, TestEvent> buildMachine(TransitionAction<TestState, TestEvent> pingAction) {
+		StateMachineBuilder<TestState, TestEvent> builder = new StateMachineBuilderImpl<>();
+		builder.defineOptions().reuseEventMessages();
+		builder.defineContext().withKey(COUNTER);
+
+		builder.defineState(TestState.LEFT).asInitial();
+		builder.defineState(TestState.RIGHT);
+		builder.defineState(TestState.DONE).asFinal();
+
+		builder.defineInternalTransitionFor(TestState.LEFT).by(TestEvent.PING).withAction(pingAction);
+		builder.defineExternalTransitionFor(TestState.LEFT).to(TestState.RIGHT).by(TestEvent.FORWARD).guardedBy(ALLOW_ALL).withAction(NO_OP_ACTION);
+		builder.defineExternalTransitionFor(TestState.RIGHT).to(TestState.LEFT).by(TestEvent.BACKWARD).guardedBy(ALLOW_ALL);
+		builder.defineExternalTransitionFor(TestState.RIGHT).to(TestState.DONE).by(TestEvent.STOP);
+
+		StateMachine<TestState, TestEvent> stateMachine = builder.build();
+		stateMachine.addListener(new StateMachineListenerAdapter<TestState, TestEvent>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<TestEvent> message, State<TestState, TestEvent> previousState,
+					StateMachineDetails<TestState, TestEvent> stateMachineDetails) {
+				// listener is notified on every accepted event
+			}
+		});
+		return stateMachine;
+	}
+
+	private enum TestState {
+		LEFT, RIGHT, DONE
+	}
+
+	private enum TestEvent {
+		PING, FORWARD, BACKWARD, STOP, UNKNOWN
+	}
+
+}
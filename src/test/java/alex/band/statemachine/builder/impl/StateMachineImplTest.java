@@ -1,6 +1,7 @@
 package alex.band.statemachine.builder.impl;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -13,6 +14,12 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -23,12 +30,23 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import com.google.common.collect.Sets;
 
+import alex.band.statemachine.BatchResult;
+import alex.band.statemachine.StateMachine;
 import alex.band.statemachine.StateMachineDetails;
 import alex.band.statemachine.StateMachineStartAction;
 import alex.band.statemachine.StateMachineStopAction;
+import alex.band.statemachine.builder.DeferredEventsOverflowPolicy;
 import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.context.ContextKey;
+import alex.band.statemachine.context.IntKey;
+import alex.band.statemachine.context.LongKey;
+import alex.band.statemachine.listener.BatchStateMachineListener;
+import alex.band.statemachine.listener.ListenerFilter;
+import alex.band.statemachine.listener.StateMachineListener;
 import alex.band.statemachine.message.StateMachineMessage;
 import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.snapshot.StateMachineSnapshot;
+import alex.band.statemachine.state.State;
 import alex.band.statemachine.state.StateAction;
 import alex.band.statemachine.transition.Guard;
 import alex.band.statemachine.transition.GuardsComposer;
@@ -51,6 +69,7 @@ public class StateMachineImplTest {
 	private static final String FALSE_EVENT = "FALSE_EVENT";
 	private static final String E1 = "E1";
 	private static final String E2 = "E2";
+	private static final String E3 = "E3";
 
 	@Rule
 	public ExpectedException expectedException = ExpectedException.none();
@@ -73,6 +92,10 @@ public class StateMachineImplTest {
 	private StateMachineStartAction<String, String> startAction;
 	@Mock
 	private StateMachineStopAction<String, String> stopAction;
+	@Mock
+	private StateMachineListener<String, String> listener;
+	@Mock
+	private BatchStateMachineListener<String, String> batchListener;
 	
 
 	@Before
@@ -166,6 +189,31 @@ public class StateMachineImplTest {
 		stateMachine.accept(STOP_EVENT);
 	}
 
+	@Test
+	public void timers_stateMachineWithStateTimeoutsShouldNotStartWithoutDeliveryTarget() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(INITIAL_STATE).asInitial().withTimeout(Duration.ofMinutes(1), E1);
+		builder.defineState(FINAL_STATE).asFinal();
+		builder.defineExternalTransitionFor(INITIAL_STATE).to(FINAL_STATE).by(E1);
+		stateMachine = (StateMachineImpl<String, String>) builder.build();
+
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(StateMachineImpl.NO_DELIVERY_TARGET);
+
+		stateMachine.start();
+	}
+
+	@Test
+	public void timers_eventShouldNotBeScheduledWithoutDeliveryTarget() {
+		stateMachine = buildMachineForStartStopTests();
+		stateMachine.start();
+
+		expectedException.expect(IllegalStateException.class);
+		expectedException.expectMessage(StateMachineImpl.NO_DELIVERY_TARGET);
+
+		stateMachine.schedule(STOP_EVENT, Duration.ofMinutes(1));
+	}
+
 
 	@Test
 	public void deferredEvent_stateMachineShouldAcceptDeferredEvent() {
@@ -202,6 +250,263 @@ public class StateMachineImplTest {
 		assertFalse(stateMachine.hasDeferredMessage());
 	}
 
+	@Test
+	public void deferredEvent_allDeferredEventsShouldBeKeptAndReplayedWhenAccepted() {
+		StateMachineImpl<String, String> sm = buildMachineForDeferredQueueTests(null);
+		sm.start();
+
+		assertTrue(sm.accept(E2));
+		assertTrue(sm.accept(E3));
+		assertThat(sm.getDeferredMessagesCount(), is(2));
+
+		// S1->S2 by E1, S2 accepts only deferred E3: S2->S3, then S3 accepts deferred E2: S3->S4
+		assertTrue(sm.accept(E1));
+		assertThat(sm.getCurrentState().getId(), is(S4));
+		assertFalse(sm.hasDeferredMessage());
+	}
+
+	@Test
+	public void deferredEvent_eventNotAcceptedByNewStateShouldStayDeferred() {
+		StateMachineImpl<String, String> sm = buildMachineForDeferredQueueTests(null);
+		sm.start();
+
+		assertTrue(sm.accept(E2));
+		assertTrue(sm.accept(E1));
+
+		assertThat(sm.getCurrentState().getId(), is(S2));
+		assertThat(sm.getDeferredMessagesCount(), is(1));
+
+		assertTrue(sm.accept(E3)); // S2->S3 by E3, then S3->S4 by deferred E2
+		assertThat(sm.getCurrentState().getId(), is(S4));
+	}
+
+	@Test
+	public void deferredEvent_overflowShouldRejectNewEvent() {
+		StateMachineImpl<String, String> sm = buildMachineForDeferredQueueTests(DeferredEventsOverflowPolicy.REJECT);
+		sm.start();
+
+		assertTrue(sm.accept(E2));
+		assertFalse(sm.accept(E3));
+		assertThat(sm.getDeferredMessagesCount(), is(1));
+	}
+
+	@Test
+	public void deferredEvent_overflowShouldDropOldestEvent() {
+		StateMachineImpl<String, String> sm = buildMachineForDeferredQueueTests(DeferredEventsOverflowPolicy.DROP_OLDEST);
+		sm.start();
+
+		assertTrue(sm.accept(E2));
+		assertTrue(sm.accept(E3));
+		assertThat(sm.getDeferredMessagesCount(), is(1));
+
+		assertTrue(sm.accept(E1)); // S1->S2 by E1, S2->S3 by deferred E3, E2 has been dropped
+		assertThat(sm.getCurrentState().getId(), is(S3));
+	}
+
+	@Test
+	public void deferredEvent_overflowShouldFail() {
+		StateMachineImpl<String, String> sm = buildMachineForDeferredQueueTests(DeferredEventsOverflowPolicy.FAIL);
+		sm.start();
+		sm.accept(E2);
+
+		expectedException.expect(IllegalStateException.class);
+		sm.accept(E3);
+	}
+
+	@Test
+	public void transitionPriority_transitionWithHigherPriorityShouldBeSelected() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2);
+		builder.defineState(S3).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1).guardedBy(trueGuard);
+		builder.defineExternalTransitionFor(S1).to(S3).by(E1).guardedBy(trueGuard).withPriority(1);
+		builder.defineExternalTransitionFor(S2).to(S3).by(E1);
+		StateMachine<String, String> sm = builder.build();
+		sm.start();
+
+		assertTrue(sm.accept(E1));
+		assertThat(sm.getCurrentState().getId(), is(S3));
+	}
+
+	@Test
+	public void transitionPriority_transitionsWithEqualPriorityShouldBeEvaluatedInDefinitionOrder() {
+		for (int i = 0; i < 10; i++) {
+			StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+			builder.defineState(S1).asInitial();
+			builder.defineState(S2);
+			builder.defineState(S3).asFinal();
+			builder.defineExternalTransitionFor(S1).to(S2).by(E1).guardedBy(trueGuard);
+			builder.defineExternalTransitionFor(S1).to(S3).by(E1).guardedBy(trueGuard);
+			builder.defineExternalTransitionFor(S2).to(S3).by(E1);
+			StateMachine<String, String> sm = builder.build();
+			sm.start();
+
+			assertTrue(sm.accept(E1));
+			assertThat(sm.getCurrentState().getId(), is(S2));
+		}
+	}
+
+	@Test
+	public void transitionPriority_adaptiveOrderShouldEvaluateFrequentTransitionFirst() {
+		int[] guardCalls = new int[1];
+		Guard<String, String> countingFalseGuard = (message, context) -> {
+			guardCalls[0]++;
+			return false;
+		};
+		Guard<String, String> countingTrueGuard = (message, context) -> {
+			guardCalls[0]++;
+			return true;
+		};
+
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineOptions().adaptTransitionsOrder();
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2).asFinal();
+		builder.defineInternalTransitionFor(S1).by(E1).guardedBy(countingFalseGuard);
+		builder.defineInternalTransitionFor(S1).by(E1).guardedBy(countingFalseGuard);
+		builder.defineInternalTransitionFor(S1).by(E1).guardedBy(countingTrueGuard);
+		builder.defineExternalTransitionFor(S1).to(S2).by(E2);
+		StateMachine<String, String> sm = builder.build();
+		sm.start();
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(sm.accept(E1));
+		}
+		guardCalls[0] = 0;
+
+		assertTrue(sm.accept(E1));
+		assertThat(guardCalls[0], is(1));
+	}
+
+	@Test
+	public void batch_acceptAllShouldReturnResultForEveryMessage() {
+		stateMachine = buildMachineForDeferredEventTests();
+		stateMachine.start();
+
+		@SuppressWarnings("unchecked")
+		BatchResult<String, String> result = stateMachine.acceptAll(new StateMachineMessage[] {
+				new StateMachineMessageImpl<>(E3), new StateMachineMessageImpl<>(E1), new StateMachineMessageImpl<>(E2)});
+
+		assertThat(result.size(), is(3));
+		assertThat(result.getAcceptedCount(), is(2));
+		assertFalse(result.isAccepted(0));
+		assertTrue(result.isAccepted(1));
+		assertThat(result.getPreviousState(1).getId(), is(S1));
+		assertThat(result.getPreviousState(2).getId(), is(S2));
+		assertThat(result.getMessage(2).getEvent(), is(E2));
+		assertThat(stateMachine.getCurrentState().getId(), is(S3));
+	}
+
+	@Test
+	public void batch_resultBufferShouldBeReused() {
+		stateMachine = buildMachineForDeferredEventTests();
+		stateMachine.start();
+
+		BatchResult<String, String> first = stateMachine.acceptAll(Arrays.asList(new StateMachineMessageImpl<>(E3)));
+		BatchResult<String, String> copy = first.copy();
+		BatchResult<String, String> second = stateMachine.acceptAll(Arrays.asList(new StateMachineMessageImpl<>(E1), new StateMachineMessageImpl<>(E2)));
+
+		assertTrue(first == second);
+		assertThat(second.size(), is(2));
+		assertThat(copy.size(), is(1));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void batch_batchListenerShouldBeNotifiedOncePerBatch() {
+		stateMachine = buildMachineForDeferredEventTests();
+		stateMachine.addListener(listener);
+		stateMachine.addListener(batchListener);
+		stateMachine.start();
+
+		stateMachine.acceptAll(Arrays.asList(new StateMachineMessageImpl<>(E3), new StateMachineMessageImpl<>(E1)));
+
+		verify(batchListener).onBatchProcessed(isA(BatchResult.class), isA(StateMachineDetails.class));
+		verify(batchListener, never()).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(batchListener, never()).onEventNotAccepted(isA(StateMachineMessage.class), isA(StateMachineDetails.class));
+		verify(listener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(listener).onEventNotAccepted(isA(StateMachineMessage.class), isA(StateMachineDetails.class));
+
+		stateMachine.accept(E2);
+		verify(batchListener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void listenerFilter_listenerShouldBeNotifiedOnlyAboutMatchingSourceStatesAndEvents() {
+		stateMachine = buildMachineForDeferredQueueTests(null);
+		stateMachine.addListener(listener, ListenerFilter.<String, String>create().fromStates(S2, S3).onEvents(E3));
+		stateMachine.start();
+
+		stateMachine.accept(E1);
+		verify(listener, never()).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+
+		stateMachine.accept(E3);
+		verify(listener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+
+		stateMachine.accept(E3);
+		verify(listener).onEventNotAccepted(isA(StateMachineMessage.class), isA(StateMachineDetails.class));
+
+		stateMachine.accept(E2);
+		verify(listener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(listener).onStart(isA(StateMachineDetails.class));
+		verify(listener).onStop(isA(StateMachineDetails.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void listenerFilter_listenerShouldBeNotifiedOnlyAboutMatchingTargetStates() {
+		stateMachine = buildMachineForDeferredQueueTests(null);
+		stateMachine.addListener(listener, ListenerFilter.<String, String>create().toStates(S3));
+		stateMachine.start();
+
+		stateMachine.accept(E1);
+		stateMachine.accept(E1);
+		verify(listener, never()).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(listener, never()).onEventNotAccepted(isA(StateMachineMessage.class), isA(StateMachineDetails.class));
+
+		stateMachine.accept(E3);
+		verify(listener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void listenerFilter_wrappedListenerShouldBeNotifiedOnlyAboutMatchingMessages() {
+		stateMachine = buildMachineForDeferredQueueTests(null);
+		stateMachine.addListener(ListenerFilter.<String, String>create().fromStates(S2).toStates(S3).wrap(listener));
+		stateMachine.start();
+
+		stateMachine.accept(E1);
+		stateMachine.accept(E1);
+		verify(listener, never()).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(listener, never()).onEventNotAccepted(isA(StateMachineMessage.class), isA(StateMachineDetails.class));
+
+		stateMachine.accept(E3);
+		verify(listener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(listener).onStart(isA(StateMachineDetails.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void listenerFilter_notAcceptedOnlyListenerShouldIgnoreStateChanges() {
+		stateMachine = buildMachineForDeferredQueueTests(null);
+		stateMachine.addListener(listener, ListenerFilter.<String, String>create().notAcceptedOnly());
+		stateMachine.addListener(batchListener, ListenerFilter.<String, String>create().notAcceptedOnly());
+		stateMachine.start();
+
+		stateMachine.acceptAll(Arrays.asList(new StateMachineMessageImpl<>(E1), new StateMachineMessageImpl<>(E1)));
+		verify(listener, never()).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(listener).onEventNotAccepted(isA(StateMachineMessage.class), isA(StateMachineDetails.class));
+		verify(batchListener).onBatchProcessed(isA(BatchResult.class), isA(StateMachineDetails.class));
+
+		stateMachine.removeListener(listener);
+		stateMachine.addListener(listener);
+		stateMachine.accept(E3);
+		verify(listener).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+		verify(batchListener, never()).onStateChanged(isA(StateMachineMessage.class), isA(State.class), isA(StateMachineDetails.class));
+	}
+
 	@Test
 	public void eventProcessing_stateMachineShouldReturnTrueIfTransitionHappend() {
 		stateMachine = buildMachineForEventProcessingTests();
@@ -379,6 +684,214 @@ public class StateMachineImplTest {
 		assertEquals(S2, sm.getCurrentState().getId());
 	}
 	
+	@Test
+	public void enumDispatch_enumStatesAndEventsShouldBeCompiledToDenseTable() {
+		StateMachineImpl<TestState, TestEvent> sm = buildEnumMachine();
+
+		assertThat(sm.getDefinition().getTransitionTable(), instanceOf(EnumTransitionTable.class));
+	}
+
+	@Test
+	public void enumDispatch_stringStatesShouldBeCompiledToHashTable() {
+		stateMachine = buildMachineForEventProcessingTests();
+
+		assertThat(stateMachine.getDefinition().getTransitionTable(), instanceOf(HashTransitionTable.class));
+	}
+
+	@Test
+	public void enumDispatch_stateMachineShouldProcessEventsThroughDenseTable() {
+		StateMachineImpl<TestState, TestEvent> sm = buildEnumMachine();
+		sm.start();
+
+		assertTrue(sm.accept(TestEvent.DEFERRED));
+		assertTrue(sm.hasDeferredMessage());
+		assertTrue(sm.accept(TestEvent.INTERNAL));
+		assertThat(sm.getCurrentState().getId(), is(TestState.FIRST));
+		assertFalse(sm.accept(TestEvent.UNUSED));
+
+		assertTrue(sm.accept(TestEvent.NEXT)); // FIRST->SECOND by NEXT and then SECOND->LAST by deferred event
+		assertThat(sm.getCurrentState().getId(), is(TestState.LAST));
+		assertFalse(sm.isRunning());
+	}
+
+	@Test
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public void enumDispatch_foreignEventsShouldNotBeAccepted() {
+		StateMachine rawStateMachine = buildEnumMachine();
+		rawStateMachine.start();
+
+		assertFalse(rawStateMachine.accept(TestState.SECOND));
+		assertFalse(rawStateMachine.accept("NEXT"));
+		assertThat(rawStateMachine.getCurrentState().getId(), is((Object) TestState.FIRST));
+	}
+
+	@Test
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void enumDispatch_foreignDeferredEventsShouldNotBeRestored() {
+		StateMachineImpl rawStateMachine = buildEnumMachine();
+		List<StateMachineMessage> deferred = Arrays.asList(new StateMachineMessageImpl<>(TestState.LAST));
+
+		expectedException.expect(IllegalArgumentException.class);
+		expectedException.expectMessage("is not deferred in any state");
+
+		rawStateMachine.restore(new StateMachineSnapshot(TestState.FIRST, true, Collections.emptyMap(), deferred));
+	}
+
+	@Test
+	public void enumDispatch_guardedTransitionsShouldBeEvaluatedInDenseTable() {
+		StateMachineBuilder<TestState, TestEvent> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(TestState.FIRST).asInitial();
+		builder.defineState(TestState.SECOND).asFinal();
+		builder.defineExternalTransitionFor(TestState.FIRST).to(TestState.SECOND).by(TestEvent.NEXT).guardedBy((message, context) -> false);
+		StateMachine<TestState, TestEvent> sm = builder.build();
+		sm.start();
+
+		assertFalse(sm.accept(TestEvent.NEXT));
+		assertThat(sm.getCurrentState().getId(), is(TestState.FIRST));
+	}
+
+	@Test
+	public void messageReuse_deferredEventShouldSurviveMessageReuse() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineOptions().reuseEventMessages();
+		builder.defineState(S1).asInitial().withDeferredEvent(E2);
+		builder.defineState(S2);
+		builder.defineState(S3).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		builder.defineExternalTransitionFor(S2).to(S3).by(E2);
+		StateMachine<String, String> sm = builder.build();
+		sm.start();
+
+		assertTrue(sm.accept(E2));
+		assertTrue(sm.accept(E1));
+		assertThat(sm.getCurrentState().getId(), is(S3));
+	}
+
+	@Test
+	public void context_typedValuesShouldBeAccessibleByName() {
+		ContextKey<String> name = ContextKey.of("name", String.class);
+		IntKey attempts = IntKey.of("attempts");
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineContext().withKey(name).withKey(attempts);
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		StateMachine<String, String> sm = builder.build();
+
+		sm.getContext().setValue(name, "order");
+		assertThat(sm.getContext().addAndGet(attempts, 2), is(2));
+		sm.getContext().setValue("untyped", 1L);
+
+		assertThat(sm.getContext().getValue("name"), equalTo((Object) "order"));
+		assertThat(sm.getContext().getValue("attempts"), equalTo((Object) 2));
+		sm.getContext().setValue("attempts", 5);
+		assertThat(sm.getContext().getValue(attempts), is(5));
+		assertThat(sm.getContext().getValue("untyped"), equalTo((Object) 1L));
+	}
+
+	@Test
+	public void context_untypedValueOfWrongTypeShouldBeRejected() {
+		IntKey attempts = IntKey.of("attempts");
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineContext().withKey(attempts);
+		builder.defineState(S1).asInitial();
+		builder.defineState(S2).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		StateMachine<String, String> sm = builder.build();
+
+		expectedException.expect(IllegalArgumentException.class);
+		expectedException.expectMessage("Value doesn't match the type of IntKey [name=attempts]: many");
+
+		sm.getContext().setValue("attempts", "many");
+	}
+
+	@Test
+	public void context_unregisteredKeyShouldBeRejected() {
+		stateMachine = buildMachineForDeferredEventTests();
+
+		expectedException.expect(IllegalArgumentException.class);
+		expectedException.expectMessage("Context key is not registered");
+
+		stateMachine.getContext().getValue(LongKey.of("unregistered"));
+	}
+
+	@Test
+	public void hierarchy_transitionToCompositeStateShouldEnterInitialChild() {
+		List<String> log = new ArrayList<>();
+		stateMachine = buildHierarchicalMachine(log);
+		stateMachine.start();
+		stateMachine.accept(E1);
+
+		assertThat(stateMachine.getCurrentState().getId(), is(S2));
+		assertThat(log, equalTo(Arrays.asList("enter:" + S1, "exit:" + S1, "enter:" + S4, "enter:" + S2)));
+	}
+
+	@Test
+	public void hierarchy_inheritedTransitionShouldExitAllNestedStates() {
+		List<String> log = new ArrayList<>();
+		stateMachine = buildHierarchicalMachine(log);
+		stateMachine.start();
+		stateMachine.accept(E1);
+		log.clear();
+
+		assertTrue(stateMachine.accept(E3));
+		assertThat(stateMachine.getCurrentState().getId(), is(S1));
+		assertThat(log, equalTo(Arrays.asList("exit:" + S2, "exit:" + S4, "enter:" + S1)));
+	}
+
+	@Test
+	public void hierarchy_childTransitionShouldOverrideInheritedTransitionAndDeferral() {
+		List<String> log = new ArrayList<>();
+		stateMachine = buildHierarchicalMachine(log);
+		stateMachine.start();
+		stateMachine.accept(E1);
+		log.clear();
+
+		// S2 handles E2 itself, so the deferral inherited from S4 does not apply
+		assertTrue(stateMachine.accept(E2));
+		assertThat(stateMachine.getCurrentState().getId(), is(S3));
+		assertThat(log, equalTo(Arrays.asList("exit:" + S2, "enter:" + S3)));
+
+		assertTrue(stateMachine.accept(E2));
+		assertThat(stateMachine.getDeferredMessagesCount(), is(1));
+
+		assertTrue(stateMachine.accept(E3));
+		assertThat(stateMachine.getCurrentState().getId(), is(FINAL_STATE));
+		assertFalse(stateMachine.isRunning());
+	}
+
+	private StateMachineImpl<String, String> buildHierarchicalMachine(List<String> log) {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+
+		builder.defineState(S1).asInitial().withAction(recordingAction(S1, log));
+		builder.defineState(S4).withAction(recordingAction(S4, log)).withDeferredEvent(E2);
+		builder.defineState(S2).childOf(S4).asInitialChild().withAction(recordingAction(S2, log));
+		builder.defineState(S3).childOf(S4).withAction(recordingAction(S3, log));
+		builder.defineState(FINAL_STATE).asFinal();
+
+		builder.defineExternalTransitionFor(S1).to(S4).by(E1);
+		builder.defineExternalTransitionFor(S2).to(S3).by(E2);
+		builder.defineExternalTransitionFor(S4).to(S1).by(E3);
+		builder.defineExternalTransitionFor(S3).to(FINAL_STATE).by(E3);
+
+		return (StateMachineImpl<String, String>) builder.build();
+	}
+
+	private StateAction<String, String> recordingAction(final String stateId, final List<String> log) {
+		return new StateAction<String, String>() {
+
+			@Override
+			public void onEnter(StateMachineDetails<String, String> stateMachineDetails) {
+				log.add("enter:" + stateId);
+			}
+
+			@Override
+			public void onExit(StateMachineDetails<String, String> stateMachineDetails) {
+				log.add("exit:" + stateId);
+			}
+		};
+	}
+
 	@SuppressWarnings("unchecked")
 	private StateMachineImpl<String, String> buildMachineForStartStopTests() {
 		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
@@ -408,6 +921,24 @@ public class StateMachineImplTest {
 		return (StateMachineImpl<String, String>) builder.build();
 	}
 
+	private StateMachineImpl<String, String> buildMachineForDeferredQueueTests(DeferredEventsOverflowPolicy overflowPolicy) {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		if (overflowPolicy != null) {
+			builder.defineOptions().withDeferredEventsLimit(1, overflowPolicy);
+		}
+
+		builder.defineState(S1).asInitial().withDeferredEvent(E2).withDeferredEvent(E3);
+		builder.defineState(S2);
+		builder.defineState(S3);
+		builder.defineState(S4).asFinal();
+
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		builder.defineExternalTransitionFor(S2).to(S3).by(E3);
+		builder.defineExternalTransitionFor(S3).to(S4).by(E2);
+
+		return (StateMachineImpl<String, String>) builder.build();
+	}
+
 	private StateMachineImpl<String, String> buildMachineForEventProcessingTests() {
 		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
 
@@ -439,6 +970,20 @@ public class StateMachineImplTest {
 		return (StateMachineImpl<String, String>) builder.build();
 	}
 
+	private StateMachineImpl<TestState, TestEvent> buildEnumMachine() {
+		StateMachineBuilder<TestState, TestEvent> builder = new StateMachineBuilderImpl<>();
+
+		builder.defineState(TestState.FIRST).asInitial().withDeferredEvent(TestEvent.DEFERRED);
+		builder.defineState(TestState.SECOND);
+		builder.defineState(TestState.LAST).asFinal();
+
+		builder.defineExternalTransitionFor(TestState.FIRST).to(TestState.SECOND).by(TestEvent.NEXT);
+		builder.defineInternalTransitionFor(TestState.FIRST).by(TestEvent.INTERNAL);
+		builder.defineExternalTransitionFor(TestState.SECOND).to(TestState.LAST).by(TestEvent.DEFERRED);
+
+		return (StateMachineImpl<TestState, TestEvent>) builder.build();
+	}
+
 	private StateMachineImpl<String, String> buildMachineForInternalTransitionTests() {
 		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
 
@@ -452,4 +997,12 @@ public class StateMachineImplTest {
 		return (StateMachineImpl<String, String>) builder.build();
 	}
 
+	private enum TestState {
+		FIRST, SECOND, LAST
+	}
+
+	private enum TestEvent {
+		NEXT, INTERNAL, DEFERRED, UNUSED
+	}
+
 }
@@ -0,0 +1,97 @@
+package alex.band.statemachine.cache;
+
+import static alex.band.statemachine.TestStateMachines.BACKWARD;
+import static alex.band.statemachine.TestStateMachines.FINAL;
+import static alex.band.statemachine.TestStateMachines.FORWARD;
+import static alex.band.statemachine.TestStateMachines.S1;
+import static alex.band.statemachine.TestStateMachines.STOP;
+import static alex.band.statemachine.TestStateMachines.forwardBackward;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import alex.band.statemachine.snapshot.Codecs;
+import alex.band.statemachine.snapshot.SnapshotSerializer;
+
+public class StateMachineCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final SnapshotSerializer<String, String> serializer = SnapshotSerializer.create(Codecs.strings(), Codecs.strings());
+
+	@Test
+	public void evictedInstanceShouldBeReactivatedFromSnapshot() {
+		StateMachineCache<String, String, String> cache = new StateMachineCache<>(forwardBackward(), serializer,
+				new FileSnapshotStore<String>(folder.getRoot().toPath()), 2, EvictionPolicy.LRU);
+
+		assertTrue(cache.accept("order/1", FORWARD));
+		cache.get("order/1").getContext().setValue("amount", 10L);
+		assertTrue(cache.accept("order-2", FORWARD));
+		assertTrue(cache.accept("order-3", FORWARD));
+
+		assertThat(cache.size(), is(2));
+		assertThat(cache.getEvictionCount(), is(1L));
+
+		assertTrue(cache.accept("order/1", STOP));
+		assertThat(cache.get("order/1").getCurrentState().getId(), is(FINAL));
+		assertThat(cache.get("order/1").getContext().getValue("amount"), is((Object) 10L));
+		assertThat(cache.getActivationCount(), is(1L));
+		assertThat(cache.getMissCount(), is(4L));
+		assertThat(cache.getHitCount(), is(3L));
+	}
+
+	@Test
+	public void tinyLfuShouldKeepFrequentlyUsedInstancesDuringScan() {
+		assertTrue(hotInstanceMissesAfterScan(EvictionPolicy.TINY_LFU) < 5);
+		assertThat(hotInstanceMissesAfterScan(EvictionPolicy.LRU), is(50L));
+	}
+
+	private long hotInstanceMissesAfterScan(EvictionPolicy evictionPolicy) {
+		StateMachineCache<Integer, String, String> cache = new StateMachineCache<>(forwardBackward(), serializer,
+				new InMemorySnapshotStore(), 100, evictionPolicy);
+
+		for (int round = 0; round < 20; round++) {
+			for (int key = 0; key < 50; key++) {
+				cache.accept(key, round % 2 == 0 ? FORWARD : BACKWARD);
+			}
+		}
+		for (int key = 1000; key < 3000; key++) {
+			cache.accept(key, FORWARD);
+		}
+
+		long missesBeforeHotAccess = cache.getMissCount();
+		for (int key = 0; key < 50; key++) {
+			assertThat(cache.get(key).getCurrentState().getId(), is(S1));
+		}
+		return cache.getMissCount() - missesBeforeHotAccess;
+	}
+
+	private static class InMemorySnapshotStore implements SnapshotStore<Integer> {
+
+		private final Map<Integer, byte[]> snapshots = new HashMap<>();
+
+		@Override
+		public void save(Integer key, byte[] snapshot) {
+			snapshots.put(key, snapshot);
+		}
+
+		@Override
+		public byte[] load(Integer key) {
+			return snapshots.get(key);
+		}
+
+		@Override
+		public void delete(Integer key) {
+			snapshots.remove(key);
+		}
+	}
+
+}
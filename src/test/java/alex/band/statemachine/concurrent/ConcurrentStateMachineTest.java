@@ -0,0 +1,344 @@
+package alex.band.statemachine.concurrent;
+
+import static alex.band.statemachine.TestStateMachines.BACKWARD;
+import static alex.band.statemachine.TestStateMachines.FINAL;
+import static alex.band.statemachine.TestStateMachines.FORWARD;
+import static alex.band.statemachine.TestStateMachines.S1;
+import static alex.band.statemachine.TestStateMachines.S2;
+import static alex.band.statemachine.TestStateMachines.STOP;
+import static alex.band.statemachine.TestStateMachines.forwardBackward;
+import static alex.band.statemachine.TestStateMachines.forwardBackwardBuilder;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import alex.band.statemachine.BatchResult;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+import alex.band.statemachine.listener.StateMachineListenerAdapter;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.state.State;
+
+public class ConcurrentStateMachineTest {
+
+	private static final String INCREMENT = "INCREMENT";
+	private static final String NESTED = "NESTED";
+	private static final String FAIL = "FAIL";
+
+	private static final String COUNTER = "COUNTER";
+
+	private static final int THREADS = 8;
+	private static final int EVENTS_PER_THREAD = 20_000;
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	private ExecutorService executor;
+	private ConcurrentStateMachine<String, String> stateMachine;
+	private long counter;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+		stateMachine = new ConcurrentStateMachine<>(buildDefinition());
+		stateMachine.start();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void concurrentAcceptShouldBeSerialized() throws Exception {
+		CountDownLatch startLatch = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+
+		for (int i = 0; i < THREADS; i++) {
+			results.add(executor.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+					startLatch.await();
+					int accepted = 0;
+					for (int j = 0; j < EVENTS_PER_THREAD; j++) {
+						if (stateMachine.accept(INCREMENT)) {
+							accepted++;
+						}
+					}
+					return accepted;
+				}
+			}));
+		}
+		startLatch.countDown();
+
+		int accepted = 0;
+		for (Future<Integer> result: results) {
+			accepted += result.get();
+		}
+
+		assertThat(accepted, equalTo(THREADS * EVENTS_PER_THREAD));
+		assertThat(counter, equalTo((long) THREADS * EVENTS_PER_THREAD));
+	}
+
+	@Test
+	public void stateShouldBePublishedAfterAccept() {
+		assertTrue(stateMachine.accept(FORWARD));
+		assertThat(stateMachine.getCurrentState().getId(), is(S2));
+
+		assertTrue(stateMachine.accept(STOP));
+		assertThat(stateMachine.getCurrentState().getId(), is(FINAL));
+		assertFalse(stateMachine.isRunning());
+	}
+
+	@Test
+	public void stateShouldBePublishedBeforeListenersAreNotified() throws Exception {
+		List<String> observedStates = new ArrayList<>();
+		stateMachine.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> stateMachineDetails) {
+				observedStates.add(stateMachine.getCurrentState().getId());
+			}
+
+			@Override
+			public void onStop(StateMachineDetails<String, String> stateMachineDetails) {
+				observedStates.add(String.valueOf(stateMachine.isRunning()));
+			}
+		});
+
+		stateMachine.acceptAsync(FORWARD).get(5, TimeUnit.SECONDS);
+		stateMachine.acceptAsync(STOP).get(5, TimeUnit.SECONDS);
+
+		// entering the final state stops the machine before the transition is reported
+		assertThat(observedStates, equalTo(Arrays.asList(S2, "false", FINAL)));
+	}
+
+	@Test
+	public void nestedAcceptFromActionShouldBeExecutedImmediately() {
+		assertTrue(stateMachine.accept(NESTED));
+		assertThat(stateMachine.getCurrentState().getId(), is(S2));
+	}
+
+	@Test
+	public void exceptionShouldBeRethrownInCallingThread() {
+		expectedException.expect(IllegalArgumentException.class);
+
+		stateMachine.accept(FAIL);
+	}
+
+	@Test
+	public void stateMachineShouldRemainUsableAfterException() {
+		try {
+			stateMachine.accept(FAIL);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		assertTrue(stateMachine.accept(INCREMENT));
+	}
+
+	@Test
+	public void acceptAsyncShouldCompleteWithResult() throws Exception {
+		assertTrue(stateMachine.acceptAsync(FORWARD).get(5, TimeUnit.SECONDS));
+		assertFalse(stateMachine.acceptAsync(FORWARD).get(5, TimeUnit.SECONDS));
+		assertThat(stateMachine.getCurrentState().getId(), is(S2));
+	}
+
+	@Test
+	public void acceptAsyncShouldCompleteExceptionallyOnFailure() throws Exception {
+		CompletableFuture<Boolean> result = stateMachine.acceptAsync(FAIL);
+
+		try {
+			result.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertTrue(result.isCompletedExceptionally());
+		assertTrue(stateMachine.acceptAsync(INCREMENT).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void machinesSharingExecutorShouldProcessMessagesSerially() throws Exception {
+		int machinesCount = 100;
+		int eventsPerMachine = 1_000;
+		StateMachineDefinition<String, String> definition = buildDefinition();
+
+		List<ConcurrentStateMachine<String, String>> machines = new ArrayList<>();
+		for (int i = 0; i < machinesCount; i++) {
+			ConcurrentStateMachine<String, String> machine = new ConcurrentStateMachine<>(definition, executor);
+			machine.start();
+			machines.add(machine);
+		}
+
+		List<CompletableFuture<Boolean>> results = new ArrayList<>();
+		for (int j = 0; j < eventsPerMachine; j++) {
+			for (ConcurrentStateMachine<String, String> machine: machines) {
+				results.add(machine.acceptAsync(INCREMENT));
+			}
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		for (ConcurrentStateMachine<String, String> machine: machines) {
+			assertThat(machine.getContext().getValue(COUNTER), equalTo((Object) eventsPerMachine));
+		}
+	}
+
+	@Test
+	public void acceptAsyncShouldWorkOnDefaultExecutor() throws Exception {
+		ConcurrentStateMachine<String, String> machine = new ConcurrentStateMachine<>(buildDefinition());
+		machine.start();
+
+		List<CompletableFuture<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+			results.add(machine.acceptAsync(INCREMENT));
+		}
+		assertTrue(machine.accept(FORWARD));
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		assertThat(machine.getContext().getValue(COUNTER), equalTo((Object) EVENTS_PER_THREAD));
+		assertThat(machine.getCurrentState().getId(), is(S2));
+	}
+
+	@Test
+	public void interruptedCallerShouldWaitForResultAndKeepInterruptStatus() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch released = new CountDownLatch(1);
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(S1).asInitial();
+		builder.defineState(FINAL).asFinal();
+		builder.defineInternalTransitionFor(S1).by(NESTED).withAction((message, context) -> {
+			blocked.countDown();
+			Uninterruptibles.awaitUninterruptibly(released);
+		});
+		builder.defineExternalTransitionFor(S1).to(FINAL).by(STOP);
+		ConcurrentStateMachine<String, String> machine = new ConcurrentStateMachine<>(builder.buildDefinition());
+		machine.start();
+
+		Future<Boolean> blockingCall = executor.submit(() -> machine.accept(NESTED));
+		blocked.await();
+		Future<Boolean> interruptedCall = executor.submit(() -> {
+			Thread.currentThread().interrupt();
+			return machine.accept(STOP) && Thread.currentThread().isInterrupted();
+		});
+		Thread.sleep(50);
+		released.countDown();
+
+		assertTrue(blockingCall.get(5, TimeUnit.SECONDS));
+		assertTrue(interruptedCall.get(5, TimeUnit.SECONDS));
+		assertFalse(machine.isRunning());
+	}
+
+	@Test
+	public void rejectingExecutorShouldProcessAllBatchesInCallingThread() throws Exception {
+		int eventsCount = ConcurrentStateMachine.DRAIN_BATCH_SIZE * 100;
+		List<CompletableFuture<Boolean>> results = new ArrayList<>();
+		AtomicReference<ConcurrentStateMachine<String, String>> machine = new AtomicReference<>();
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(S1).asInitial();
+		builder.defineState(FINAL).asFinal();
+		builder.defineInternalTransitionFor(S1).by(NESTED).withAction((message, context) -> {
+			for (int i = 0; i < eventsCount; i++) {
+				results.add(machine.get().acceptAsync(INCREMENT));
+			}
+		});
+		builder.defineInternalTransitionFor(S1).by(INCREMENT).withAction((message, details) -> counter++);
+		builder.defineExternalTransitionFor(S1).to(FINAL).by(STOP);
+		ExecutorService shutdownExecutor = Executors.newSingleThreadExecutor();
+		shutdownExecutor.shutdown();
+		machine.set(new ConcurrentStateMachine<>(builder.buildDefinition(), shutdownExecutor));
+		machine.get().start();
+		counter = 0;
+
+		assertTrue(machine.get().acceptAsync(NESTED).get(30, TimeUnit.SECONDS));
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		assertThat(counter, equalTo((long) eventsCount));
+	}
+
+	@Test
+	public void acceptFromFutureCallbackShouldBeQueuedAfterPendingMessages() throws Exception {
+		Queue<Runnable> tasks = new ArrayDeque<>();
+		ConcurrentStateMachine<String, String> machine = new ConcurrentStateMachine<>(forwardBackward(), tasks::add);
+		List<String> events = new ArrayList<>();
+		machine.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> stateMachineDetails) {
+				events.add(message.getEvent());
+			}
+
+			@Override
+			public void onEventNotAccepted(StateMachineMessage<String> message, StateMachineDetails<String, String> stateMachineDetails) {
+				events.add(message.getEvent());
+			}
+		});
+		machine.start();
+
+		CompletableFuture<Boolean> stopAccepted = machine.acceptAsync(FORWARD).thenApply(accepted -> machine.accept(STOP));
+		machine.acceptAsync(BACKWARD);
+		tasks.poll().run();
+
+		assertThat(events, equalTo(Arrays.asList(FORWARD, BACKWARD, STOP)));
+		assertFalse(stopAccepted.get(5, TimeUnit.SECONDS));
+		assertThat(machine.getCurrentState().getId(), is(S1));
+	}
+
+	@Test
+	public void acceptAllShouldReturnDetachedResults() {
+		BatchResult<String, String> result = stateMachine.acceptAll(Arrays.asList(
+				new StateMachineMessageImpl<>(INCREMENT), new StateMachineMessageImpl<>(FORWARD), new StateMachineMessageImpl<>(INCREMENT)));
+		BatchResult<String, String> nextResult = stateMachine.acceptAll(Arrays.asList(new StateMachineMessageImpl<>(STOP)));
+
+		assertThat(result.size(), is(3));
+		assertThat(result.getAcceptedCount(), is(2));
+		assertFalse(result.isAccepted(2));
+		assertThat(nextResult.size(), is(1));
+		assertFalse(stateMachine.isRunning());
+	}
+
+	private StateMachineDefinition<String, String> buildDefinition() {
+		StateMachineBuilder<String, String> builder = forwardBackwardBuilder();
+		builder.defineInternalTransitionFor(S1).by(INCREMENT).withAction((message, details) -> {
+			counter++;
+			Integer machineCounter = (Integer) details.getContext().getValue(COUNTER);
+			details.getContext().setValue(COUNTER, machineCounter == null ? 1 : machineCounter + 1);
+		});
+		builder.defineInternalTransitionFor(S1).by(NESTED).withAction((message, context) -> stateMachine.accept(FORWARD));
+		builder.defineInternalTransitionFor(S1).by(FAIL).withAction((message, context) -> {
+			throw new IllegalArgumentException(FAIL);
+		});
+		return builder.buildDefinition();
+	}
+
+}
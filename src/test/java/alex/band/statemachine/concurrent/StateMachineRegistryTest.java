@@ -0,0 +1,178 @@
+package alex.band.statemachine.concurrent;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+
+public class StateMachineRegistryTest {
+
+	private static final String ACTIVE = "ACTIVE";
+	private static final String FINAL = "FINAL";
+
+	private static final String INCREMENT = "INCREMENT";
+	private static final String FAIL = "FAIL";
+	private static final String STOP = "STOP";
+
+	private static final String COUNTER = "COUNTER";
+
+	private static final int SHARDS = 4;
+	private static final int KEYS = 1_000;
+	private static final int EVENTS_PER_KEY = 100;
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	private final AtomicInteger createdMachines = new AtomicInteger();
+	private final ConcurrentHashMap<Integer, Integer> lastCounters = new ConcurrentHashMap<>();
+
+	private StateMachineRegistry<Integer, String, String> registry;
+
+	@Before
+	public void setUp() {
+		StateMachineDefinition<String, String> definition = buildDefinition();
+		registry = new StateMachineRegistry<>(() -> {
+			createdMachines.incrementAndGet();
+			return definition.newStateMachine();
+		}, SHARDS);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		registry.close();
+	}
+
+	@Test
+	public void messagesShouldBeRoutedToInstancesByKey() throws Exception {
+		List<CompletableFuture<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < EVENTS_PER_KEY; i++) {
+			for (int key = 0; key < KEYS; key++) {
+				registry.post(key, INCREMENT);
+			}
+		}
+		for (int key = 0; key < KEYS; key++) {
+			results.add(registry.send(key, new StateMachineMessageImpl<>(STOP, key)));
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+		assertThat(createdMachines.get(), equalTo(KEYS));
+		assertThat(lastCounters.size(), equalTo(KEYS));
+		for (Integer counter: lastCounters.values()) {
+			assertThat(counter, equalTo(EVENTS_PER_KEY));
+		}
+	}
+
+	@Test
+	public void instanceShouldBeRemovedAfterFinalState() throws Exception {
+		assertTrue(registry.send(1, INCREMENT).get(5, TimeUnit.SECONDS));
+		assertThat(registry.size(), equalTo(1L));
+
+		assertTrue(registry.send(1, new StateMachineMessageImpl<>(STOP, 1)).get(5, TimeUnit.SECONDS));
+		assertThat(registry.size(), equalTo(0L));
+
+		assertTrue(registry.send(1, INCREMENT).get(5, TimeUnit.SECONDS));
+		assertThat(createdMachines.get(), equalTo(2));
+	}
+
+	@Test
+	public void removeShouldStopInstance() throws Exception {
+		registry.send(1, INCREMENT).get(5, TimeUnit.SECONDS);
+
+		assertTrue(registry.remove(1).get(5, TimeUnit.SECONDS));
+		assertFalse(registry.remove(1).get(5, TimeUnit.SECONDS));
+		assertThat(registry.size(), equalTo(0L));
+	}
+
+	@Test
+	public void exceptionShouldCompleteFutureExceptionally() throws Exception {
+		CompletableFuture<Boolean> result = registry.send(1, FAIL);
+		try {
+			result.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+
+		assertTrue(result.isCompletedExceptionally());
+		assertTrue(registry.send(1, INCREMENT).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void sendAfterCloseShouldFail() throws InterruptedException {
+		registry.close();
+
+		expectedException.expect(IllegalStateException.class);
+		registry.post(1, INCREMENT);
+	}
+
+	@Test
+	public void requestsSentConcurrentlyWithCloseShouldBeCompleted() throws Exception {
+		List<CompletableFuture<Boolean>> results = Collections.synchronizedList(new ArrayList<CompletableFuture<Boolean>>());
+		List<Thread> senders = new ArrayList<>();
+		for (int i = 0; i < SHARDS; i++) {
+			int key = i;
+			senders.add(new Thread(() -> {
+				try {
+					while (true) {
+						results.add(registry.send(key, INCREMENT));
+					}
+				} catch (IllegalStateException e) {
+					// registry is closed
+				}
+			}));
+		}
+		for (Thread sender: senders) {
+			sender.start();
+		}
+		Thread.sleep(20);
+		registry.close();
+		for (Thread sender: senders) {
+			sender.join();
+		}
+
+		for (CompletableFuture<Boolean> result: results) {
+			assertTrue(result.isDone());
+		}
+	}
+
+	private StateMachineDefinition<String, String> buildDefinition() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+
+		builder.defineState(ACTIVE).asInitial();
+		builder.defineState(FINAL).asFinal();
+
+		builder.defineInternalTransitionFor(ACTIVE).by(INCREMENT).withAction((message, details) -> {
+			Integer counter = (Integer) details.getContext().getValue(COUNTER);
+			details.getContext().setValue(COUNTER, counter == null ? 1 : counter + 1);
+		});
+		builder.defineInternalTransitionFor(ACTIVE).by(FAIL).withAction((message, details) -> {
+			throw new IllegalArgumentException(FAIL);
+		});
+		builder.defineExternalTransitionFor(ACTIVE).to(FINAL).by(STOP).withAction((message, details) -> {
+			Integer counter = (Integer) details.getContext().getValue(COUNTER);
+			lastCounters.put((Integer) message.getPayload().get(), counter == null ? 0 : counter);
+		});
+
+		return builder.buildDefinition();
+	}
+
+}
@@ -0,0 +1,144 @@
+package alex.band.statemachine.journal;
+
+import static alex.band.statemachine.TestStateMachines.BACKWARD;
+import static alex.band.statemachine.TestStateMachines.FINAL;
+import static alex.band.statemachine.TestStateMachines.FORWARD;
+import static alex.band.statemachine.TestStateMachines.S2;
+import static alex.band.statemachine.TestStateMachines.STOP;
+import static alex.band.statemachine.TestStateMachines.forwardBackward;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.snapshot.Codecs;
+import alex.band.statemachine.snapshot.SnapshotSerializer;
+
+public class EventJournalTest {
+
+	private static final int MACHINES = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final StateMachineDefinition<String, String> definition = forwardBackward();
+	private final SnapshotSerializer<String, String> serializer = SnapshotSerializer.create(Codecs.strings(), Codecs.strings());
+
+	@Test
+	public void recoveryShouldReplayJournaledMessagesOfEveryInstance() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Map<Integer, StateMachine<String, String>> original = new HashMap<>();
+
+		try (EventJournal<Integer, String, String> journal = new EventJournal<>(directory, Codecs.integers(), serializer, 512, false)) {
+			for (int key = 0; key < MACHINES; key++) {
+				StateMachine<String, String> stateMachine = definition.newStateMachine();
+				stateMachine.start();
+				stateMachine.addListener(journal.listener(key));
+				for (int i = 0; i < key; i++) {
+					stateMachine.accept(i % 2 == 0 ? FORWARD : BACKWARD);
+				}
+				stateMachine.accept("UNKNOWN");
+				original.put(key, stateMachine);
+			}
+		}
+		assertTrue(countFiles(directory, "segment-") > 1);
+
+		try (EventJournal<Integer, String, String> journal = new EventJournal<>(directory, Codecs.integers(), serializer, 512, false)) {
+			Map<Integer, StateMachine<String, String>> recovered = journal.recover(definition);
+
+			assertThat(recovered.size(), is(MACHINES - 1)); // the first machine has not accepted any message
+			for (int key = 1; key < MACHINES; key++) {
+				assertThat(recovered.get(key).getCurrentState().getId(), is(original.get(key).getCurrentState().getId()));
+			}
+		}
+	}
+
+	@Test
+	public void checkpointShouldCompactCoveredSegments() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Map<Integer, StateMachine<String, String>> stateMachines = new HashMap<>();
+
+		try (EventJournal<Integer, String, String> journal = new EventJournal<>(directory, Codecs.integers(), serializer, 256, false)) {
+			for (int key = 0; key < MACHINES; key++) {
+				StateMachine<String, String> stateMachine = definition.newStateMachine();
+				stateMachine.start();
+				stateMachine.addListener(journal.listener(key));
+				stateMachine.accept(FORWARD);
+				stateMachines.put(key, stateMachine);
+			}
+			int segmentsBeforeCheckpoint = countFiles(directory, "segment-");
+
+			journal.checkpoint(stateMachines);
+			assertThat(countFiles(directory, "checkpoint-"), is(1));
+			assertTrue(countFiles(directory, "segment-") < segmentsBeforeCheckpoint);
+
+			stateMachines.get(3).accept(STOP);
+		}
+
+		try (EventJournal<Integer, String, String> journal = new EventJournal<>(directory, Codecs.integers(), serializer, 256, false)) {
+			Map<Integer, StateMachine<String, String>> recovered = journal.recover(definition);
+
+			assertThat(recovered.size(), is(MACHINES));
+			assertThat(recovered.get(0).getCurrentState().getId(), is(S2));
+			assertThat(recovered.get(3).getCurrentState().getId(), is(FINAL));
+			assertThat(recovered.get(3).isRunning(), is(false));
+		}
+	}
+
+	@Test
+	public void concurrentWritersShouldShareGroupCommits() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try (EventJournal<Integer, String, String> journal = new EventJournal<>(directory, Codecs.integers(), serializer, 1 << 20, true)) {
+			Future<?>[] writers = new Future<?>[4];
+			for (int w = 0; w < writers.length; w++) {
+				final int key = w;
+				writers[w] = executor.submit(() -> {
+					StateMachine<String, String> stateMachine = definition.newStateMachine();
+					stateMachine.start();
+					stateMachine.addListener(journal.listener(key));
+					for (int i = 0; i < 200; i++) {
+						stateMachine.accept(i % 2 == 0 ? FORWARD : BACKWARD);
+					}
+				});
+			}
+			for (Future<?> writer: writers) {
+				writer.get();
+			}
+
+			long last = journal.append(0, new StateMachineMessageImpl<>(FORWARD));
+			journal.awaitDurable(last);
+			assertThat(last, is(800L));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static int countFiles(Path directory, String prefix) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+			for (Path file: files) {
+				count += file != null ? 1 : 0;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,189 @@
+package alex.band.statemachine.listener;
+
+import static alex.band.statemachine.TestStateMachines.BACKWARD;
+import static alex.band.statemachine.TestStateMachines.FORWARD;
+import static alex.band.statemachine.TestStateMachines.STOP;
+import static alex.band.statemachine.TestStateMachines.forwardBackward;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+public class AsyncListenerBusTest {
+
+	private static final String UNKNOWN = "UNKNOWN";
+
+	private static final int EVENTS = 10_000;
+
+	private AsyncListenerBus<String, String> bus;
+
+	@After
+	public void tearDown() throws InterruptedException {
+		bus.close();
+	}
+
+	@Test
+	public void listenerShouldReceiveAllEventsInOrder() throws InterruptedException {
+		bus = new AsyncListenerBus<>(1024, ListenerOverflowPolicy.BLOCK);
+		RecordingListener listener = new RecordingListener(0);
+		bus.subscribe(listener);
+
+		StateMachine<String, String> stateMachine = forwardBackward().newStateMachine();
+		stateMachine.addListener(bus);
+		stateMachine.start();
+		stateMachine.accept(FORWARD);
+		stateMachine.accept(UNKNOWN);
+		stateMachine.accept(STOP);
+		bus.close();
+
+		// same order as synchronous listeners: the final state stops the machine before the transition is reported
+		assertThat(listener.records.toString(), equalTo("[start:S1, changed:FORWARD:S1->S2, notAccepted:UNKNOWN:S2, stop:FINAL, changed:STOP:S2->FINAL]"));
+	}
+
+	@Test
+	public void blockPolicyShouldDeliverEveryEventToSlowListener() throws InterruptedException {
+		bus = new AsyncListenerBus<>(16, ListenerOverflowPolicy.BLOCK);
+		RecordingListener listener = new RecordingListener(10);
+		bus.subscribe(listener);
+
+		StateMachine<String, String> stateMachine = startedStateMachine();
+		for (int i = 0; i < EVENTS / 10; i++) {
+			stateMachine.accept(i % 2 == 0 ? FORWARD : BACKWARD);
+		}
+		bus.close();
+
+		assertThat(listener.stateChanges, is(EVENTS / 10));
+		assertThat(bus.getDroppedCount(), is(0L));
+	}
+
+	@Test
+	public void dropPolicyShouldNotBlockStateMachine() throws InterruptedException {
+		bus = new AsyncListenerBus<>(16, ListenerOverflowPolicy.DROP);
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener(0) {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState, StateMachineDetails<String, String> details) {
+				awaitQuietly(release);
+				super.onStateChanged(message, previousState, details);
+			}
+		};
+		bus.subscribe(listener);
+
+		StateMachine<String, String> stateMachine = startedStateMachine();
+		for (int i = 0; i < EVENTS; i++) {
+			stateMachine.accept(i % 2 == 0 ? FORWARD : BACKWARD);
+		}
+		release.countDown();
+		bus.close();
+
+		assertTrue(bus.getDroppedCount() > 0);
+		assertThat(listener.stateChanges + bus.getDroppedCount(), is((long) EVENTS));
+	}
+
+	@Test
+	public void samplePolicyShouldDeliverPartOfEventsWhenListenerFallsBehind() throws InterruptedException {
+		bus = new AsyncListenerBus<>(64, ListenerOverflowPolicy.SAMPLE, 4);
+		RecordingListener listener = new RecordingListener(1);
+		bus.subscribe(listener);
+
+		StateMachine<String, String> stateMachine = startedStateMachine();
+		for (int i = 0; i < EVENTS; i++) {
+			stateMachine.accept(i % 2 == 0 ? FORWARD : BACKWARD);
+		}
+		bus.close();
+
+		assertNotEquals(0L, bus.getDroppedCount());
+		assertThat(listener.stateChanges + bus.getDroppedCount(), is((long) EVENTS));
+	}
+
+	@Test
+	public void idleListenerShouldBeWokenUpByNextEvent() throws InterruptedException {
+		bus = new AsyncListenerBus<>(16, ListenerOverflowPolicy.BLOCK);
+		CountDownLatch delivered = new CountDownLatch(1);
+		bus.subscribe(new RecordingListener(0) {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState, StateMachineDetails<String, String> details) {
+				delivered.countDown();
+			}
+		});
+
+		StateMachine<String, String> stateMachine = startedStateMachine();
+		Thread.sleep(200); // let the listener thread back off to a blocking park
+		stateMachine.accept(FORWARD);
+
+		assertTrue(delivered.await(1, TimeUnit.SECONDS));
+	}
+
+	private StateMachine<String, String> startedStateMachine() {
+		StateMachine<String, String> stateMachine = forwardBackward().newStateMachine();
+		stateMachine.start();
+		stateMachine.addListener(bus);
+		return stateMachine;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class RecordingListener implements StateMachineListener<String, String> {
+
+		private final long delayNanos;
+		private final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+		private volatile int stateChanges;
+
+		RecordingListener(long delayMicros) {
+			this.delayNanos = TimeUnit.MICROSECONDS.toNanos(delayMicros);
+		}
+
+		@Override
+		public void onStart(StateMachineDetails<String, String> details) {
+			records.add("start:" + details.getCurrentState().getId());
+		}
+
+		@Override
+		public void onStop(StateMachineDetails<String, String> details) {
+			records.add("stop:" + details.getCurrentState().getId());
+		}
+
+		@Override
+		public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState, StateMachineDetails<String, String> details) {
+			if (delayNanos > 0) {
+				long deadline = System.nanoTime() + delayNanos;
+				while (System.nanoTime() < deadline) {
+					// busy wait to simulate a slow listener
+				}
+			}
+			stateChanges++;
+			if (records.size() < 16) {
+				records.add("changed:" + message.getEvent() + ":" + previousState.getId() + "->" + details.getCurrentState().getId());
+			}
+		}
+
+		@Override
+		public void onEventNotAccepted(StateMachineMessage<String> message, StateMachineDetails<String, String> details) {
+			records.add("notAccepted:" + message.getEvent() + ":" + details.getCurrentState().getId());
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package alex.band.statemachine.loader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.state.StateAction;
+
+public class DefinitionLoaderTest {
+
+	private static final String DEFINITION = "# order processing\n"
+			+ "state NEW initial defer SHIP\n"
+			+ "state PAID do logState\n"
+			+ "state DONE final\n"
+			+ "on NEW PAY -> PAID if positive do record\n"
+			+ "on NEW PING do record   # internal transition\n"
+			+ "on PAID SHIP -> DONE priority 1\n";
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<String> log = new ArrayList<>();
+	private DefinitionLoader<String, String> loader;
+
+	@Before
+	public void setUp() {
+		ComponentRegistry<String, String> registry = new ComponentRegistry<String, String>()
+				.registerGuard("positive", (message, context) -> true)
+				.registerTransitionAction("record", (message, context) -> log.add(message.getEvent()))
+				.registerStateAction("logState", new StateAction<String, String>() {
+
+					@Override
+					public void onEnter(StateMachineDetails<String, String> stateMachineDetails) {
+						log.add("enter " + stateMachineDetails.getCurrentState().getId());
+					}
+
+					@Override
+					public void onExit(StateMachineDetails<String, String> stateMachineDetails) {
+						log.add("exit " + stateMachineDetails.getCurrentState().getId());
+					}
+				});
+		loader = DefinitionLoader.forStrings(registry);
+	}
+
+	@Test
+	public void definitionShouldBeLoadedFromText() {
+		assertProcessesOrder(loader.load(new StringReader(DEFINITION)));
+	}
+
+	@Test
+	public void cachedDefinitionShouldBeUsedUntilSourceChanges() throws IOException {
+		Path source = folder.getRoot().toPath().resolve("order.fsm");
+		Path cache = folder.getRoot().toPath().resolve("order.fsm.bin");
+		Files.write(source, DEFINITION.getBytes(StandardCharsets.UTF_8));
+
+		assertProcessesOrder(loader.load(source, cache));
+		assertThat(DefinitionTables.read(cache, DefinitionLoader.hash(Files.readAllBytes(source))), notNullValue());
+
+		log.clear();
+		assertProcessesOrder(loader.load(source, cache));
+
+		Files.write(source, (DEFINITION + "on PAID PING do record\n").getBytes(StandardCharsets.UTF_8));
+		byte[] changedHash = DefinitionLoader.hash(Files.readAllBytes(source));
+		assertThat(DefinitionTables.read(cache, changedHash), nullValue());
+
+		StateMachine<String, String> stateMachine = loader.load(source, cache).newStateMachine();
+		stateMachine.start();
+		stateMachine.accept("PAY");
+		log.clear();
+		stateMachine.accept("PING");
+		assertThat(log, equalTo(Arrays.asList("PING")));
+		assertThat(DefinitionTables.read(cache, changedHash), notNullValue());
+	}
+
+	@Test
+	public void cacheWithIllegalIndexesShouldNotBeRead() throws IOException {
+		Path cache = folder.getRoot().toPath().resolve("single.fsm.bin");
+		byte[] sourceHash = DefinitionLoader.hash(new byte[0]);
+		DefinitionTables tables = new DefinitionTables();
+		tables.state("NEW", true, true, Collections.<String>emptyList(), Collections.<String>emptyList());
+		tables.write(cache, sourceHash);
+		assertThat(DefinitionTables.read(cache, sourceHash), notNullValue());
+		assertThat(folder.getRoot().list().length, equalTo(1));
+
+		// header, states ["NEW"], no events, no names - then the initial state index
+		int initialStateOffset = 12 + sourceHash.length + 11 + 4 + 4;
+		byte[] content = Files.readAllBytes(cache);
+		ByteBuffer.wrap(content).putInt(initialStateOffset, 1);
+		Files.write(cache, content);
+
+		assertThat(DefinitionTables.read(cache, sourceHash), nullValue());
+	}
+
+	@Test
+	public void illegalLineShouldBeReportedWithLineNumber() {
+		expectedException.expect(IllegalArgumentException.class);
+		expectedException.expectMessage(String.format(DefinitionParser.UNEXPECTED_TOKEN, 2, "fast"));
+
+		loader.load(new StringReader("state NEW initial\nstate DONE final fast\n"));
+	}
+
+	private void assertProcessesOrder(StateMachineDefinition<String, String> definition) {
+		StateMachine<String, String> stateMachine = definition.newStateMachine();
+		stateMachine.start();
+
+		stateMachine.accept("PING");
+		stateMachine.accept("SHIP");
+		assertThat(stateMachine.getCurrentState().getId(), equalTo("NEW"));
+
+		stateMachine.accept("PAY");
+		assertThat(stateMachine.getCurrentState().getId(), equalTo("DONE"));
+		assertThat(log, equalTo(Arrays.asList("PING", "PAY", "enter PAID", "exit PAID")));
+	}
+
+}
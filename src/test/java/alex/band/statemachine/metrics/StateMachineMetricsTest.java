@@ -0,0 +1,112 @@
+package alex.band.statemachine.metrics;
+
+import static alex.band.statemachine.TestStateMachines.BACKWARD;
+import static alex.band.statemachine.TestStateMachines.FINAL;
+import static alex.band.statemachine.TestStateMachines.FORWARD;
+import static alex.band.statemachine.TestStateMachines.S1;
+import static alex.band.statemachine.TestStateMachines.S2;
+import static alex.band.statemachine.TestStateMachines.STOP;
+import static alex.band.statemachine.TestStateMachines.forwardBackwardBuilder;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.StateMachineBuilder;
+
+public class StateMachineMetricsTest {
+
+	private static final String PING = "PING";
+	private static final String UNKNOWN = "UNKNOWN";
+
+	@Test
+	public void metricsShouldBeAbsentByDefault() {
+		assertFalse(buildDefinition(false).getMetrics().isPresent());
+	}
+
+	@Test
+	public void metricsShouldBeSharedByAllInstancesOfDefinition() {
+		StateMachineDefinition<String, String> definition = buildDefinition(true);
+
+		for (int i = 0; i < 3; i++) {
+			StateMachine<String, String> stateMachine = definition.newStateMachine();
+			stateMachine.start();
+			stateMachine.accept(FORWARD);
+			stateMachine.accept(PING);
+			stateMachine.accept(UNKNOWN);
+			stateMachine.accept(BACKWARD);
+			stateMachine.accept(FORWARD);
+			stateMachine.accept(STOP);
+		}
+
+		MetricsSnapshot snapshot = definition.getMetrics().get().snapshot();
+		assertThat(snapshot.getAcceptLatency().getCount(), is(18L));
+		assertThat(snapshot.getGuardLatency().getCount(), is(18L));
+		assertThat(snapshot.getActionLatency().getCount(), is(15L));
+
+		assertThat(snapshot.getTransitionCounts().get("S1 -FORWARD-> S2"), is(6L));
+		assertThat(snapshot.getTransitionCounts().get("S2 -BACKWARD-> S1"), is(3L));
+		assertThat(snapshot.getTransitionCounts().get("S2 -PING-> (internal)"), is(3L));
+		assertThat(snapshot.getTransitionCounts().get("S2 -STOP-> FINAL"), is(3L));
+		assertThat(snapshot.getNotAcceptedCounts().get(S2), is(3L));
+		assertThat(snapshot.getNotAcceptedCounts().get(S1), is(0L));
+
+		assertThat(snapshot.getDwellTimes().get(S1).getCount(), is(6L));
+		assertThat(snapshot.getDwellTimes().get(S2).getCount(), is(6L));
+		assertThat(snapshot.getDwellTimes().get(FINAL).getCount(), is(3L));
+	}
+
+	@Test
+	public void histogramShouldReportPercentilesByPowerOfTwoBuckets() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(100);
+		}
+		histogram.record(1_000_000);
+
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount(), is(100L));
+		assertThat(snapshot.getPercentileNanos(50), is(127L));
+		assertThat(snapshot.getPercentileNanos(100), is((1L << 20) - 1));
+		assertThat(snapshot.getTotalNanos(), is(99 * 100L + 1_000_000L));
+	}
+
+	@Test
+	public void metricsShouldBeExposedAsMBean() throws Exception {
+		StateMachineDefinition<String, String> definition = buildDefinition(true);
+		StateMachine<String, String> stateMachine = definition.newStateMachine();
+		stateMachine.start();
+		stateMachine.accept(FORWARD);
+
+		StateMachineMetrics metrics = definition.getMetrics().get();
+		ObjectName objectName = metrics.registerMBean("test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertTrue(server.isRegistered(objectName));
+			assertThat(server.getAttribute(objectName, "AcceptCount"), equalTo((Object) 1L));
+		} finally {
+			metrics.unregisterMBean(objectName);
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+	}
+
+	private StateMachineDefinition<String, String> buildDefinition(boolean collectMetrics) {
+		StateMachineBuilder<String, String> builder = forwardBackwardBuilder();
+		builder.defineInternalTransitionFor(S2).by(PING);
+		if (collectMetrics) {
+			builder.defineOptions().collectMetrics();
+		}
+		return builder.buildDefinition();
+	}
+
+}
@@ -0,0 +1,190 @@
+package alex.band.statemachine.snapshot;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.state.StateAction;
+
+public class SnapshotSerializerTest {
+
+	private static final String S1 = "S1";
+	private static final String S2 = "S2";
+	private static final String S3 = "S3";
+
+	private static final String E1 = "E1";
+	private static final String E2 = "E2";
+
+	private static final String COUNTER = "counter";
+
+	private final AtomicInteger entries = new AtomicInteger();
+	private final StateAction<String, String> countingAction = new StateAction<String, String>() {
+
+		@Override
+		public void onEnter(StateMachineDetails<String, String> stateMachineDetails) {
+			entries.incrementAndGet();
+		}
+
+		@Override
+		public void onExit(StateMachineDetails<String, String> stateMachineDetails) {
+		}
+	};
+
+	@Test
+	public void restoredStateMachineShouldContinueFromSnapshotWithoutEntryActions() {
+		StateMachineDefinition<String, String> definition = buildDefinition();
+		SnapshotSerializer<String, String> serializer = SnapshotSerializer.create(Codecs.strings(), Codecs.strings());
+
+		StateMachine<String, String> original = definition.newStateMachine();
+		original.start();
+		original.getContext().setValue(COUNTER, 42L);
+		original.getContext().setValue("name", "order-1");
+		original.accept(new StateMachineMessageImpl<>(E2, 7));
+		byte[] snapshot = serializer.snapshot(original);
+
+		StateMachine<String, String> restored = definition.newStateMachine();
+		int entriesBeforeRestore = entries.get();
+		serializer.restore(restored, snapshot);
+
+		assertThat(entries.get(), is(entriesBeforeRestore));
+		assertTrue(restored.isRunning());
+		assertThat(restored.getCurrentState().getId(), is(S1));
+		assertThat(restored.getContext().getValue(COUNTER), equalTo((Object) 42L));
+		assertThat(restored.getContext().getValue("name"), equalTo((Object) "order-1"));
+
+		assertTrue(restored.accept(E1)); // S1->S2 by E1 and then S2->S3 by the restored deferred event
+		assertThat(restored.getCurrentState().getId(), is(S3));
+		assertFalse(restored.isRunning());
+	}
+
+	@Test
+	public void enumSnapshotShouldBeCompact() {
+		StateMachineBuilder<State, Event> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(State.FIRST).asInitial();
+		builder.defineState(State.SECOND).asFinal();
+		builder.defineExternalTransitionFor(State.FIRST).to(State.SECOND).by(Event.NEXT);
+		StateMachine<State, Event> stateMachine = builder.build();
+		stateMachine.start();
+		stateMachine.getContext().setValue("n", 5);
+
+		SnapshotSerializer<State, Event> serializer = SnapshotSerializer.create(Codecs.enums(State.class), Codecs.enums(Event.class));
+		byte[] snapshot = serializer.snapshot(stateMachine);
+
+		// version, flags, state, context size, key, value tag, value, deferred count
+		assertThat(snapshot.length, is(10));
+		assertThat(serializer.deserialize(snapshot).getCurrentStateId(), is(State.FIRST));
+	}
+
+	@Test
+	public void customValueCodecShouldBeUsedForContextValues() {
+		StateMachineDefinition<String, String> definition = buildDefinition();
+		SnapshotSerializer<String, String> serializer = SnapshotSerializer.create(Codecs.strings(), Codecs.strings())
+				.withValueCodec(Money.class, new MoneyCodec());
+
+		StateMachine<String, String> original = definition.newStateMachine();
+		original.start();
+		original.getContext().setValue("amount", new Money(1250));
+
+		StateMachine<String, String> restored = definition.newStateMachine();
+		serializer.restore(restored, serializer.snapshot(original));
+
+		assertThat(((Money) restored.getContext().getValue("amount")).cents, is(1250L));
+	}
+
+	@Test
+	public void snapshotShouldNotChangeWithContext() {
+		StateMachine<String, String> stateMachine = buildDefinition().newStateMachine();
+		stateMachine.start();
+		stateMachine.getContext().setValue(COUNTER, 1L);
+
+		StateMachineSnapshot<String, String> snapshot = ((SnapshotSupport<String, String>) stateMachine).snapshot();
+		stateMachine.getContext().setValue(COUNTER, 2L);
+		stateMachine.getContext().setValue("name", "order-1");
+
+		assertThat(snapshot.getContextValues(), equalTo(Collections.<String, Object>singletonMap(COUNTER, 1L)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void deserializeShouldFailForIllegalElementsCount() {
+		SnapshotSerializer<String, String> serializer = SnapshotSerializer.create(Codecs.strings(), Codecs.strings());
+
+		// version, flags without state, empty context, deferred count 7 * 2^28
+		serializer.deserialize(new byte[] {1, 0, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 7});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void snapshotShouldFailForValueWithoutCodec() {
+		StateMachine<String, String> stateMachine = buildDefinition().newStateMachine();
+		stateMachine.start();
+		stateMachine.getContext().setValue("amount", new Money(1));
+
+		SnapshotSerializer.create(Codecs.strings(), Codecs.strings()).snapshot(stateMachine);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void restoreShouldFailForRunningStateMachine() {
+		StateMachineDefinition<String, String> definition = buildDefinition();
+		SnapshotSerializer<String, String> serializer = SnapshotSerializer.create(Codecs.strings(), Codecs.strings());
+		StateMachine<String, String> stateMachine = definition.newStateMachine();
+		stateMachine.start();
+
+		serializer.restore(stateMachine, serializer.snapshot(stateMachine));
+	}
+
+	private StateMachineDefinition<String, String> buildDefinition() {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(S1).asInitial().withDeferredEvent(E2).withAction(countingAction);
+		builder.defineState(S2).withAction(countingAction);
+		builder.defineState(S3).asFinal();
+		builder.defineExternalTransitionFor(S1).to(S2).by(E1);
+		builder.defineExternalTransitionFor(S2).to(S3).by(E2);
+		return builder.buildDefinition();
+	}
+
+	private enum State {
+		FIRST, SECOND
+	}
+
+	private enum Event {
+		NEXT
+	}
+
+	private static class Money {
+
+		private final long cents;
+
+		Money(long cents) {
+			this.cents = cents;
+		}
+	}
+
+	private static class MoneyCodec implements Codec<Money> {
+
+		@Override
+		public void encode(Money value, DataOutput out) throws IOException {
+			out.writeLong(value.cents);
+		}
+
+		@Override
+		public Money decode(DataInput in) throws IOException {
+			return new Money(in.readLong());
+		}
+	}
+
+}
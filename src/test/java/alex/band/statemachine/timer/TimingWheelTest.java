@@ -0,0 +1,204 @@
+package alex.band.statemachine.timer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+import alex.band.statemachine.builder.impl.StateMachineImpl;
+import alex.band.statemachine.concurrent.ConcurrentStateMachine;
+import alex.band.statemachine.listener.StateMachineListenerAdapter;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.state.State;
+
+public class TimingWheelTest {
+
+	private static final String IDLE = "IDLE";
+	private static final String PROCESSING = "PROCESSING";
+	private static final String FAILED = "FAILED";
+	private static final String FINAL = "FINAL";
+
+	private static final String START = "START";
+	private static final String DONE = "DONE";
+	private static final String TIMEOUT = "TIMEOUT";
+	private static final String STOP = "STOP";
+
+	private final TimingWheel timingWheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 64);
+
+	@After
+	public void tearDown() {
+		timingWheel.close();
+	}
+
+	@Test
+	public void scheduledTasksShouldExpireAfterDelayAcrossWheelRounds() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(3);
+		List<Long> delays = new ArrayList<>();
+		long startNanos = System.nanoTime();
+		for (long delayMillis: new long[] {5, 70, 150}) {
+			timingWheel.schedule(timeout -> {
+				synchronized (delays) {
+					delays.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+				}
+				latch.countDown();
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(delays.get(0) >= 5);
+		assertTrue(delays.get(1) >= 70);
+		assertTrue(delays.get(2) >= 150);
+		assertThat(timingWheel.getPendingCount(), is(0L));
+	}
+
+	@Test
+	public void cancelledTasksShouldNotExpire() throws InterruptedException {
+		AtomicInteger expired = new AtomicInteger();
+		List<Timeout> timeouts = new ArrayList<>();
+		for (int i = 0; i < 100_000; i++) {
+			timeouts.add(timingWheel.schedule(timeout -> expired.incrementAndGet(), 500, TimeUnit.MILLISECONDS));
+		}
+		for (Timeout timeout: timeouts) {
+			assertTrue(timeout.cancel());
+		}
+		assertThat(timingWheel.getPendingCount(), is(0L));
+
+		CountDownLatch latch = new CountDownLatch(1);
+		timingWheel.schedule(timeout -> latch.countDown(), 600, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+		assertThat(expired.get(), is(0));
+		assertTrue(timeouts.get(0).isCancelled());
+		assertFalse(timeouts.get(0).cancel());
+	}
+
+	@Test
+	public void stateTimeoutShouldFireWhileStateIsActive() throws InterruptedException {
+		StateMachine<String, String> stateMachine = new ConcurrentStateMachine<>(buildStateMachine(Duration.ofMillis(20)));
+		CountDownLatch failed = new CountDownLatch(1);
+		List<String> transition = new ArrayList<>();
+		stateMachine.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> details) {
+				if (details.getCurrentState().getId().equals(FAILED)) {
+					// the latch publishes the values to the test thread
+					transition.add(previousState.getId());
+					transition.add(message.getEvent());
+					transition.add(details.getCurrentState().getId());
+					failed.countDown();
+				}
+			}
+		});
+		stateMachine.start();
+		stateMachine.accept(START);
+
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		assertThat(transition, equalTo(Arrays.asList(PROCESSING, TIMEOUT, FAILED)));
+	}
+
+	@Test
+	public void stateTimeoutShouldBeCancelledOnStateExit() throws InterruptedException {
+		StateMachine<String, String> stateMachine = new ConcurrentStateMachine<>(buildStateMachine(Duration.ofMillis(30)));
+		AtomicInteger notAccepted = new AtomicInteger();
+		stateMachine.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onEventNotAccepted(StateMachineMessage<String> message, StateMachineDetails<String, String> details) {
+				notAccepted.incrementAndGet();
+			}
+		});
+		stateMachine.start();
+		for (int i = 0; i < 1000; i++) {
+			stateMachine.accept(START);
+			stateMachine.accept(DONE);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		timingWheel.schedule(timeout -> latch.countDown(), 60, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+		assertThat(stateMachine.getCurrentState().getId(), equalTo(IDLE));
+		assertThat(notAccepted.get(), is(0));
+		assertThat(timingWheel.getPendingCount(), is(0L));
+	}
+
+	@Test
+	public void cancelledTimersShouldNotBeDelivered() throws InterruptedException {
+		StateMachineImpl<String, String> stateMachine = (StateMachineImpl<String, String>) buildStateMachine(Duration.ofMillis(20));
+		ConcurrentStateMachine<String, String> concurrentStateMachine = new ConcurrentStateMachine<>(stateMachine);
+		concurrentStateMachine.start();
+		concurrentStateMachine.accept(START);
+		stateMachine.schedule(DONE, Duration.ofMillis(10));
+		stateMachine.cancelTimers();
+
+		CountDownLatch latch = new CountDownLatch(1);
+		timingWheel.schedule(timeout -> latch.countDown(), 60, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+		assertThat(stateMachine.getCurrentState().getId(), equalTo(PROCESSING));
+	}
+
+	@Test
+	public void scheduledEventsShouldBeDeliveredThroughConcurrentStateMachine() throws InterruptedException {
+		ConcurrentStateMachine<String, String> stateMachine = new ConcurrentStateMachine<>(buildStateMachine(Duration.ofMinutes(1)));
+		CountDownLatch processing = awaitState(stateMachine, PROCESSING);
+		stateMachine.start();
+
+		Timeout timeout = stateMachine.schedule(START, Duration.ofMillis(10));
+		assertTrue(processing.await(5, TimeUnit.SECONDS));
+		assertTrue(timeout.isExpired());
+
+		stateMachine.accept(STOP);
+		assertFalse(stateMachine.isRunning());
+		assertThat(timingWheel.getPendingCount(), is(0L));
+	}
+
+	private CountDownLatch awaitState(StateMachine<String, String> stateMachine, String stateId) {
+		CountDownLatch latch = new CountDownLatch(1);
+		stateMachine.addListener(new StateMachineListenerAdapter<String, String>() {
+
+			@Override
+			public void onStateChanged(StateMachineMessage<String> message, State<String, String> previousState,
+					StateMachineDetails<String, String> details) {
+				if (details.getCurrentState().getId().equals(stateId)) {
+					latch.countDown();
+				}
+			}
+		});
+		return latch;
+	}
+
+	private StateMachine<String, String> buildStateMachine(Duration processingTimeout) {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		builder.defineState(IDLE).asInitial();
+		builder.defineState(PROCESSING).withTimeout(processingTimeout, TIMEOUT);
+		builder.defineState(FAILED);
+		builder.defineState(FINAL).asFinal();
+		builder.defineExternalTransitionFor(IDLE).to(PROCESSING).by(START);
+		builder.defineExternalTransitionFor(PROCESSING).to(IDLE).by(DONE);
+		builder.defineExternalTransitionFor(PROCESSING).to(FAILED).by(TIMEOUT);
+		builder.defineExternalTransitionFor(PROCESSING).to(FINAL).by(STOP);
+		builder.defineExternalTransitionFor(FAILED).to(FINAL).by(STOP);
+		builder.defineOptions().withTimer(timingWheel);
+		return builder.build();
+	}
+
+}
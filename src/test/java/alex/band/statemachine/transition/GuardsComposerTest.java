@@ -0,0 +1,85 @@
+package alex.band.statemachine.transition;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+
+public class GuardsComposerTest {
+
+	private final StateMachineMessage<String> message = new StateMachineMessageImpl<>("EVENT");
+	private final List<String> evaluated = new ArrayList<>();
+
+	@Test
+	public void considerAllShouldStopOnFirstFalse() {
+		Guard<String, String> guard = GuardsComposer.considerAll(guard("first", false), guard("second", true));
+
+		assertFalse(guard.evaluate(message, null));
+		assertThat(evaluated.size(), equalTo(1));
+	}
+
+	@Test
+	public void considerAnyShouldStopOnFirstTrue() {
+		Guard<String, String> guard = GuardsComposer.considerAny(guard("first", true), guard("second", false));
+
+		assertTrue(guard.evaluate(message, null));
+		assertThat(evaluated.size(), equalTo(1));
+	}
+
+	@Test
+	public void emptyCompositionsShouldKeepNeutralResult() {
+		assertTrue(GuardsComposer.<String, String>considerAll().evaluate(message, null));
+		assertFalse(GuardsComposer.<String, String>considerAny().evaluate(message, null));
+	}
+
+	@Test
+	public void cheapGuardsShouldBeEvaluatedFirst() {
+		Guard<String, String> guard = GuardsComposer.considerAll(
+				GuardsComposer.withCost(100, guard("expensive", true)),
+				guard("default", true),
+				GuardsComposer.withCost(0, guard("cheap", true)));
+
+		assertTrue(guard.evaluate(message, null));
+		assertThat(evaluated.toString(), equalTo("[cheap, default, expensive]"));
+	}
+
+	@Test
+	public void nestedCompositionsShouldBeFlattenedAndOrderedByCost() {
+		Guard<String, String> guard = GuardsComposer.considerAll(
+				GuardsComposer.withCost(10, guard("expensive", true)),
+				GuardsComposer.considerAll(GuardsComposer.withCost(5, guard("medium", true)), GuardsComposer.withCost(0, guard("cheap", true))));
+
+		assertTrue(guard.evaluate(message, null));
+		assertThat(evaluated.toString(), equalTo("[cheap, medium, expensive]"));
+		assertThat(GuardsComposer.costOf(guard), equalTo(15));
+	}
+
+	@Test
+	public void adaptiveCompositionShouldMoveSelectiveGuardForward() {
+		Guard<String, String> guard = GuardsComposer.considerAllAdaptive(guard("rarelyFalse", true), guard("alwaysFalse", false));
+
+		for (int i = 0; i < GuardsComposer.ADAPTIVE_REORDER_INTERVAL; i++) {
+			assertFalse(guard.evaluate(message, null));
+		}
+		evaluated.clear();
+
+		assertFalse(guard.evaluate(message, null));
+		assertThat(evaluated.toString(), equalTo("[alwaysFalse]"));
+	}
+
+	private Guard<String, String> guard(String name, boolean result) {
+		return (message, context) -> {
+			evaluated.add(name);
+			return result;
+		};
+	}
+
+}
@@ -0,0 +1,87 @@
+package alex.band.statemachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.Event;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.LargeState;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.SmallState;
+
+/**
+ * Пропускная способность {@link StateMachine#accept(Object)} на маленьких и больших автоматах
+ * с состояниями и событиями в виде перечислений и строк.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AcceptBenchmark {
+
+	@Param({"false", "true"})
+	private boolean reuseMessages;
+
+	private StateMachine<SmallState, Event> smallEnumMachine;
+	private StateMachine<LargeState, Event> largeEnumMachine;
+	private StateMachine<String, String> smallStringMachine;
+	private StateMachine<String, String> largeStringMachine;
+
+	@Setup
+	public void setUp() {
+		smallEnumMachine = BenchmarkMachines.enumRing(SmallState.class, reuseMessages);
+		largeEnumMachine = BenchmarkMachines.enumRing(LargeState.class, reuseMessages);
+		smallStringMachine = BenchmarkMachines.stringRing(SmallState.values().length - 1, reuseMessages);
+		largeStringMachine = BenchmarkMachines.stringRing(BenchmarkMachines.LARGE_STRING_MACHINE_SIZE, reuseMessages);
+	}
+
+	@Benchmark
+	public boolean smallEnumExternalTransition() {
+		return smallEnumMachine.accept(Event.NEXT);
+	}
+
+	@Benchmark
+	public boolean smallEnumInternalTransition() {
+		return smallEnumMachine.accept(Event.TICK);
+	}
+
+	@Benchmark
+	public boolean largeEnumExternalTransition() {
+		return largeEnumMachine.accept(Event.NEXT);
+	}
+
+	@Benchmark
+	public boolean smallStringExternalTransition() {
+		return smallStringMachine.accept(BenchmarkMachines.NEXT);
+	}
+
+	@Benchmark
+	public boolean smallStringInternalTransition() {
+		return smallStringMachine.accept(BenchmarkMachines.TICK);
+	}
+
+	@Benchmark
+	public boolean largeStringExternalTransition() {
+		return largeStringMachine.accept(BenchmarkMachines.NEXT);
+	}
+
+	@Benchmark
+	public boolean notAcceptedEvent() {
+		return smallEnumMachine.accept(Event.RESUME);
+	}
+
+}
@@ -0,0 +1,107 @@
+package alex.band.statemachine.benchmarks;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+
+/**
+ * Конфигурации конечных автоматов, используемые в бенчмарках.
+ *
+ * <p>Все автоматы устроены как кольцо: событие {@code NEXT} переводит автомат в следующее состояние,
+ * событие {@code TICK} обрабатывается внутренним переходом, событие {@code FINISH} ведет из первого состояния в финальное.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+final class BenchmarkMachines {
+
+	static final int LARGE_STRING_MACHINE_SIZE = 1_000;
+
+	enum SmallState {
+		S0, S1, S2, DONE
+	}
+
+	enum LargeState {
+		S0, S1, S2, S3, S4, S5, S6, S7, S8, S9, S10, S11, S12, S13, S14, S15,
+		S16, S17, S18, S19, S20, S21, S22, S23, S24, S25, S26, S27, S28, S29, S30, S31,
+		S32, S33, S34, S35, S36, S37, S38, S39, S40, S41, S42, S43, S44, S45, S46, S47,
+		S48, S49, S50, S51, S52, S53, S54, S55, S56, S57, S58, S59, S60, S61, S62, S63,
+		DONE
+	}
+
+	enum Event {
+		NEXT, TICK, FINISH, RESUME, DEFERRED
+	}
+
+	static final String NEXT = "NEXT";
+	static final String TICK = "TICK";
+	static final String FINISH = "FINISH";
+	static final String DONE = "DONE";
+
+	private BenchmarkMachines() {
+	}
+
+	static <S extends Enum<S>> StateMachine<S, Event> enumRing(Class<S> stateType, boolean reuseMessages) {
+		StateMachineBuilder<S, Event> builder = new StateMachineBuilderImpl<>();
+		if (reuseMessages) {
+			builder.defineOptions().reuseEventMessages();
+		}
+
+		S[] states = stateType.getEnumConstants();
+		int ringSize = states.length - 1;
+		S finalState = states[ringSize];
+
+		for (int i = 0; i < ringSize; i++) {
+			if (i == 0) {
+				builder.defineState(states[i]).asInitial();
+			} else {
+				builder.defineState(states[i]);
+			}
+			builder.defineExternalTransitionFor(states[i]).to(states[(i + 1) % ringSize]).by(Event.NEXT);
+			builder.defineInternalTransitionFor(states[i]).by(Event.TICK);
+		}
+		builder.defineState(finalState).asFinal();
+		builder.defineExternalTransitionFor(states[0]).to(finalState).by(Event.FINISH);
+
+		return started(builder.build());
+	}
+
+	static StateMachine<String, String> stringRing(int size, boolean reuseMessages) {
+		return started(stringRingDefinition(stateIds(size), reuseMessages).newStateMachine());
+	}
+
+	static StateMachineDefinition<String, String> stringRingDefinition(String[] stateIds, boolean reuseMessages) {
+		StateMachineBuilder<String, String> builder = new StateMachineBuilderImpl<>();
+		if (reuseMessages) {
+			builder.defineOptions().reuseEventMessages();
+		}
+
+		for (int i = 0; i < stateIds.length; i++) {
+			if (i == 0) {
+				builder.defineState(stateIds[i]).asInitial();
+			} else {
+				builder.defineState(stateIds[i]);
+			}
+			builder.defineExternalTransitionFor(stateIds[i]).to(stateIds[(i + 1) % stateIds.length]).by(NEXT);
+			builder.defineInternalTransitionFor(stateIds[i]).by(TICK);
+		}
+		builder.defineState(DONE).asFinal();
+		builder.defineExternalTransitionFor(stateIds[0]).to(DONE).by(FINISH);
+
+		return builder.buildDefinition();
+	}
+
+	static String[] stateIds(int size) {
+		String[] stateIds = new String[size];
+		for (int i = 0; i < size; i++) {
+			stateIds[i] = "S" + i;
+		}
+		return stateIds;
+	}
+
+	private static <S, E> StateMachine<S, E> started(StateMachine<S, E> stateMachine) {
+		stateMachine.start();
+		return stateMachine;
+	}
+
+}
@@ -0,0 +1,30 @@
+package alex.band.statemachine.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Точка входа {@code benchmarks.jar}. Принимает стандартные параметры командной строки JMH
+ * и всегда подключает {@link GCProfiler}, чтобы каждый бенчмарк сообщал скорость и объем выделения памяти
+ * ({@code gc.alloc.rate}, {@code gc.alloc.rate.norm}).
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+public final class BenchmarksRunner {
+
+	private BenchmarksRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build())
+			.run();
+	}
+
+}
@@ -0,0 +1,48 @@
+package alex.band.statemachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import alex.band.statemachine.StateMachineDefinition;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+
+/**
+ * Время конфигурирования и построения {@link StateMachineBuilderImpl} для больших графов состояний.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildBenchmark {
+
+	@Param({"10000", "50000"})
+	private int statesCount;
+
+	private String[] stateIds;
+
+	@Setup
+	public void setUp() {
+		stateIds = BenchmarkMachines.stateIds(statesCount);
+	}
+
+	@Benchmark
+	public StateMachineDefinition<String, String> buildDefinition() {
+		return BenchmarkMachines.stringRingDefinition(stateIds, false);
+	}
+
+}
@@ -0,0 +1,67 @@
+package alex.band.statemachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.Event;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.SmallState;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+
+/**
+ * Стоимость откладывания события и его повторной обработки после смены состояния.
+ *
+ * <p>В состоянии {@code S0} событие {@code DEFERRED} откладывается. Событие {@code RESUME} переводит автомат в {@code S1},
+ * где отложенное событие обрабатывается и возвращает автомат в {@code S0}.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeferredEventsBenchmark {
+
+	@Param({"false", "true"})
+	private boolean reuseMessages;
+
+	private StateMachine<SmallState, Event> stateMachine;
+
+	@Setup
+	public void setUp() {
+		StateMachineBuilder<SmallState, Event> builder = new StateMachineBuilderImpl<>();
+		if (reuseMessages) {
+			builder.defineOptions().reuseEventMessages();
+		}
+		builder.defineState(SmallState.S0).asInitial().withDeferredEvent(Event.DEFERRED);
+		builder.defineState(SmallState.S1);
+		builder.defineState(SmallState.DONE).asFinal();
+		builder.defineExternalTransitionFor(SmallState.S0).to(SmallState.S1).by(Event.RESUME);
+		builder.defineExternalTransitionFor(SmallState.S1).to(SmallState.S0).by(Event.DEFERRED);
+		builder.defineExternalTransitionFor(SmallState.S0).to(SmallState.DONE).by(Event.FINISH);
+
+		stateMachine = builder.build();
+		stateMachine.start();
+	}
+
+	@Benchmark
+	public boolean deferAndReplay() {
+		stateMachine.accept(Event.DEFERRED);
+		return stateMachine.accept(Event.RESUME);
+	}
+
+}
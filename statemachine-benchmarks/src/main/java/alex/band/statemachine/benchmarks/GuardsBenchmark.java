@@ -0,0 +1,106 @@
+package alex.band.statemachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.Event;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.SmallState;
+import alex.band.statemachine.builder.StateMachineBuilder;
+import alex.band.statemachine.builder.impl.StateMachineBuilderImpl;
+import alex.band.statemachine.transition.Guard;
+import alex.band.statemachine.transition.GuardsComposer;
+
+/**
+ * Стоимость переходов, защищенных композициями {@link GuardsComposer}.
+ *
+ * <p>Композиция состоит из одного дорогого защитника, стоящего первым, и {@code guardsCount - 1} дешевых.
+ * Дешевые защитники {@code considerAll} разрешают переход, {@code considerAny} - запрещают, кроме последнего,
+ * который определяет результат. При {@code declareCost = true} дорогой защитник объявляет свою стоимость
+ * и вычисляется последним, то есть не вычисляется вовсе. При {@code specializeDispatch = true} описание использует
+ * сгенерированный диспетчер.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuardsBenchmark {
+
+	private static final long EXPENSIVE_GUARD_TOKENS = 100;
+
+	@Param({"2", "8"})
+	private int guardsCount;
+
+	@Param({"false", "true"})
+	private boolean declareCost;
+
+	@Param({"false", "true"})
+	private boolean specializeDispatch;
+
+	private StateMachine<SmallState, Event> considerAllMachine;
+	private StateMachine<SmallState, Event> considerAnyMachine;
+
+	@Setup
+	public void setUp() {
+		considerAllMachine = buildMachine(GuardsComposer.considerAll(guards(true)));
+		considerAnyMachine = buildMachine(GuardsComposer.considerAny(guards(false)));
+	}
+
+	@Benchmark
+	public boolean considerAll() {
+		return considerAllMachine.accept(Event.TICK);
+	}
+
+	@Benchmark
+	public boolean considerAny() {
+		return considerAnyMachine.accept(Event.TICK);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Guard<SmallState, Event>[] guards(boolean cheapGuardResult) {
+		Guard<SmallState, Event>[] guards = new Guard[guardsCount];
+		Guard<SmallState, Event> expensiveGuard = (message, context) -> {
+			Blackhole.consumeCPU(EXPENSIVE_GUARD_TOKENS);
+			return cheapGuardResult;
+		};
+		guards[0] = declareCost ? GuardsComposer.withCost((int) EXPENSIVE_GUARD_TOKENS, expensiveGuard) : expensiveGuard;
+		for (int i = 1; i < guardsCount - 1; i++) {
+			guards[i] = (message, context) -> cheapGuardResult;
+		}
+		guards[guardsCount - 1] = (message, context) -> !cheapGuardResult;
+		return guards;
+	}
+
+	private StateMachine<SmallState, Event> buildMachine(Guard<SmallState, Event> guard) {
+		StateMachineBuilder<SmallState, Event> builder = new StateMachineBuilderImpl<>();
+		builder.defineOptions().reuseEventMessages();
+		if (specializeDispatch) {
+			builder.defineOptions().specializeDispatch();
+		}
+		builder.defineState(SmallState.S0).asInitial();
+		builder.defineState(SmallState.DONE).asFinal();
+		builder.defineInternalTransitionFor(SmallState.S0).by(Event.TICK).guardedBy(guard);
+		builder.defineExternalTransitionFor(SmallState.S0).to(SmallState.DONE).by(Event.FINISH);
+
+		StateMachine<SmallState, Event> stateMachine = builder.build();
+		stateMachine.start();
+		return stateMachine;
+	}
+
+}
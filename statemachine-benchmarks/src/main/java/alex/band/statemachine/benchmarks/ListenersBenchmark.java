@@ -0,0 +1,123 @@
+package alex.band.statemachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import alex.band.statemachine.BatchResult;
+import alex.band.statemachine.ListenableStateMachine;
+import alex.band.statemachine.StateMachine;
+import alex.band.statemachine.StateMachineDetails;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.Event;
+import alex.band.statemachine.benchmarks.BenchmarkMachines.SmallState;
+import alex.band.statemachine.listener.BatchStateMachineListener;
+import alex.band.statemachine.listener.ListenerFilter;
+import alex.band.statemachine.listener.StateMachineListenerAdapter;
+import alex.band.statemachine.message.StateMachineMessage;
+import alex.band.statemachine.message.StateMachineMessageImpl;
+import alex.band.statemachine.state.State;
+
+/**
+ * Стоимость оповещения слушателей в {@link ListenableStateMachine} в зависимости от их количества.
+ *
+ * <p>{@code acceptBatch} обрабатывает пакет из {@value #BATCH_SIZE} событий через {@code acceptAll()}: слушатели
+ * {@link BatchStateMachineListener} оповещаются один раз на пакет. При {@code filteredListeners} каждый слушатель подписан
+ * через {@link ListenerFilter} только на одно состояние кольца.
+ *
+ * @author Aliaksandr Bandarchyk
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenersBenchmark {
+
+	static final int BATCH_SIZE = 256;
+
+	@Param({"0", "1", "8", "32"})
+	private int listenersCount;
+
+	@Param({"false", "true"})
+	private boolean batchListeners;
+
+	@Param({"false", "true"})
+	private boolean filteredListeners;
+
+	private StateMachine<SmallState, Event> stateMachine;
+	private StateMachineMessage<Event>[] batch;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		stateMachine = BenchmarkMachines.enumRing(SmallState.class, true);
+		SmallState[] states = SmallState.values();
+		for (int i = 0; i < listenersCount; i++) {
+			CountingListener listener = batchListeners ? new CountingBatchListener() : new CountingListener();
+			if (filteredListeners) {
+				stateMachine.addListener(listener, ListenerFilter.<SmallState, Event>create().fromStates(states[i % states.length]));
+			} else {
+				stateMachine.addListener(listener);
+			}
+		}
+
+		batch = new StateMachineMessage[BATCH_SIZE];
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch[i] = new StateMachineMessageImpl<>(Event.NEXT);
+		}
+	}
+
+	@Benchmark
+	public boolean acceptedEvent() {
+		return stateMachine.accept(Event.NEXT);
+	}
+
+	@Benchmark
+	public boolean notAcceptedEvent() {
+		return stateMachine.accept(Event.RESUME);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public BatchResult<SmallState, Event> acceptBatch() {
+		return stateMachine.acceptAll(batch);
+	}
+
+	private static class CountingBatchListener extends CountingListener implements BatchStateMachineListener<SmallState, Event> {
+
+		private long batches;
+
+		@Override
+		public void onBatchProcessed(BatchResult<SmallState, Event> result, StateMachineDetails<SmallState, Event> stateMachineDetails) {
+			batches++;
+		}
+	}
+
+	private static class CountingListener extends StateMachineListenerAdapter<SmallState, Event> {
+
+		private long notifications;
+
+		@Override
+		public void onStateChanged(StateMachineMessage<Event> message, State<SmallState, Event> previousState,
+				StateMachineDetails<SmallState, Event> stateMachineDetails) {
+			notifications++;
+		}
+
+		@Override
+		public void onEventNotAccepted(StateMachineMessage<Event> message, StateMachineDetails<SmallState, Event> stateMachineDetails) {
+			notifications++;
+		}
+	}
+
+}